@@ -2,16 +2,13 @@ package com.victor.EventDrop;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.data.redis.core.RedisKeyValueAdapter;
-import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
-import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableAsync
 @EnableScheduling
-@EnableRedisRepositories(keyspaceConfiguration = KeyspaceConfiguration.class, enableKeyspaceEvents = RedisKeyValueAdapter.EnableKeyspaceEvents.ON_STARTUP)
+//Redis repositories are enabled by IndexedRepositoryConfig or replaced by the minimal schema's, see spring.redis.schema.mode
 public class EventDropApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,65 @@
+package com.victor.EventDrop.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small thread safe bloom filter over strings.
+ * It never reports a false negative, and false positives happen at roughly the rate it was sized for.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    BloomFilter(int expectedInsertions, double falsePositiveRate){
+        int n = Math.max(1, expectedInsertions);
+        //Standard sizing: m = -n ln(p) / (ln 2)^2, k = m/n ln 2
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.bits = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+    void put(String value){
+        long hash = hash(value);
+        int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++){
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            do{
+                current = bits.get(index);
+                if((current & mask) != 0) break;
+            }while (!bits.compareAndSet(index, current, current | mask));
+        }
+    }
+
+    boolean mightContain(String value){
+        long hash = hash(value);
+        int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++){
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if((bits.get(bit >>> 6) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //64-bit FNV-1a, split into two 32-bit halves for double hashing
+    private static long hash(String value){
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)){
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        //Finalizer from murmur3 to spread FNV's weak low bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
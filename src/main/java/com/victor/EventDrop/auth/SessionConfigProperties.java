@@ -0,0 +1,32 @@
+package com.victor.EventDrop.auth;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("session")
+@Component
+@Getter
+@Setter
+public class SessionConfigProperties {
+    //How long an authenticated session is served from memory before it is checked against redis again
+    private long nearCacheTtlInSeconds = 30;
+    private int nearCacheMaxSize = 10_000;
+
+    private long ttlInSeconds = 300;
+    //A session's TTL is only extended once less than this much of it is left
+    private long refreshThresholdInSeconds = 240;
+    //How often connected SSE clients are pinged. Each ping counts as activity on the session
+    private long heartbeatIntervalInSeconds = 30;
+    //How often stale sessions are pruned from room presence sets
+    private long presencePruneIntervalInSeconds = 30;
+
+    //Signed, self contained session cookies that are verified without any redis lookup
+    private boolean tokenModeEnabled = false;
+    private String tokenSecret;
+    //How often each node rebuilds its local copy of the revocation list from redis
+    private long revocationRefreshInSeconds = 60;
+    //Expected false positive rate of the local revocation filter. False positives cost one redis lookup
+    private double revocationFalsePositiveRate = 0.01;
+}
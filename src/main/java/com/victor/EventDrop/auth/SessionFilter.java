@@ -11,7 +11,6 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -19,8 +18,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 
 
@@ -31,7 +30,10 @@ public class SessionFilter extends OncePerRequestFilter {
 
     private final OccupantRepository occupantRepository;
     private final RoomRepository roomRepository;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final SessionNearCache sessionNearCache;
+    private final SessionTokenService sessionTokenService;
+    private final SessionRevocationList sessionRevocationList;
+    private final SessionTtlRefresher sessionTtlRefresher;
 
 
     @Override
@@ -65,28 +67,57 @@ public class SessionFilter extends OncePerRequestFilter {
             return;
         }
 
-        Occupant occupant = occupantRepository.findBySessionId(sessionId);
+        Occupant occupant;
+        if(sessionTokenService.isEnabled() && sessionTokenService.isToken(sessionId)){
+            occupant = authenticateToken(sessionId);
+        }else{
+            //Recently seen sessions are served from memory without touching redis
+            occupant = sessionNearCache.get(sessionId).orElseGet(() -> loadSession(sessionId));
+        }
 
         if(occupant != null){
-            if(!roomRepository.existsByRoomCode(occupant.getRoomCode())){
-                SecurityContextHolder.clearContext();
-            }else{
-                UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(occupant, null , List.of(occupant.getOccupantRole()));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-                redisTemplate.expire("occupant:" + sessionId, Duration.ofMinutes(5));
-                log.info("Successfully authenticated user and refreshed session ID.");
-
-            }
-
+            sessionTtlRefresher.touch(occupant.getSessionId().toString(), occupant.getRoomCode());
+            UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(occupant, null , List.of(occupant.getOccupantRole()));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         }else{
-            log.info("Occupant not found for the session ID");
             SecurityContextHolder.clearContext();
         }
 
         filterChain.doFilter(request, response);
     }
 
+    //Verifies a signed session token locally. Returns null if the token is invalid or revoked
+    private Occupant authenticateToken(String token){
+        Optional<SessionToken> sessionToken = sessionTokenService.verify(token);
+
+        if(sessionToken.isEmpty() || sessionRevocationList.isRevoked(sessionToken.get())){
+            log.info("Rejected invalid or revoked session token");
+            return null;
+        }
+
+        return sessionToken.get().toOccupant();
+    }
+
+    //Loads a session from redis and caches it. Returns null if the session or its room is gone
+    private Occupant loadSession(String sessionId){
+        long stamp = sessionNearCache.stamp();
+        Occupant occupant = occupantRepository.findBySessionId(sessionId);
+
+        if(occupant == null){
+            log.info("Occupant not found for the session ID");
+            return null;
+        }
+
+        if(!roomRepository.existsByRoomCode(occupant.getRoomCode())){
+            return null;
+        }
+
+        sessionNearCache.put(occupant, stamp);
+        log.info("Successfully authenticated user.");
+        return occupant;
+    }
+
     private String extractSessionIdFromCookie(HttpServletRequest request){
         Cookie[] cookies = request.getCookies();
         if(cookies != null){
@@ -0,0 +1,136 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.redis.KeyspaceEventSubscriber;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process cache of recently authenticated sessions, so the session filter doesn't hit redis on every request.
+ * Entries are dropped as soon as redis reports the occupant's or the room's key as deleted or expired.
+ * Entries also expire after a short TTL, which bounds staleness if a keyspace event is ever missed.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SessionNearCache implements MessageListener {
+
+    private final KeyspaceEventSubscriber keyspaceEventSubscriber;
+    private final SessionConfigProperties sessionConfigProperties;
+    private final SessionTtlRefresher sessionTtlRefresher;
+
+    private final ConcurrentHashMap<String, CachedSession> sessions = new ConcurrentHashMap<>();
+
+    //Bumped on every invalidation, so a load that raced with one doesn't cache what it read
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static final String OCCUPANT_KEYSPACE = "occupant";
+    private static final String ROOM_KEYSPACE = "room";
+
+    @PostConstruct
+    public void subscribe(){
+        //Keyevent (E) notifications for deleted (g) and expired (x) keys
+        keyspaceEventSubscriber.subscribe(this, List.of(
+                new PatternTopic("__keyevent@*__:del"),
+                new PatternTopic("__keyevent@*__:expired")
+        ), "Egx");
+    }
+
+    /**
+     * Gets a recently authenticated session.
+     *
+     * @param sessionId The session ID from the request's cookie
+     * @return The session's occupant, or an empty optional if it has to be loaded from redis
+     * */
+    public Optional<Occupant> get(String sessionId){
+        CachedSession cached = sessions.get(sessionId);
+        if(cached == null){
+            return Optional.empty();
+        }
+
+        if(cached.expiresAt() - System.nanoTime() <= 0){
+            sessions.remove(sessionId, cached);
+            return Optional.empty();
+        }
+
+        return Optional.of(cached.occupant());
+    }
+
+    //Call before loading a session from redis and hand the stamp back to put
+    public long stamp(){
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a session loaded from redis, unless something was invalidated since the load started.
+     *
+     * @param occupant The session's occupant
+     * @param stamp The stamp taken before the session was loaded
+     * */
+    public void put(Occupant occupant, long stamp){
+        if(sessions.size() >= sessionConfigProperties.getNearCacheMaxSize()){
+            return;
+        }
+
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(sessionConfigProperties.getNearCacheTtlInSeconds());
+        String sessionId = occupant.getSessionId().toString();
+        sessions.put(sessionId, new CachedSession(occupant, expiresAt));
+
+        //An invalidation slipped in between the load and the put, don't trust what was loaded
+        if(invalidations.get() != stamp){
+            sessions.remove(sessionId);
+        }
+    }
+
+    public void invalidate(String sessionId){
+        invalidations.incrementAndGet();
+        sessions.remove(sessionId);
+    }
+
+    public void invalidateRoom(String roomCode){
+        invalidations.incrementAndGet();
+        sessions.values().removeIf(cached -> roomCode.equals(cached.occupant().getRoomCode()));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern){
+        //Index and phantom keys, e.g. occupant:roomCode:1234ABCD, don't split and are skipped
+        String[] keyspaceAndId = RedisEntityWriter.splitKey(new String(message.getBody(), StandardCharsets.UTF_8));
+        if(keyspaceAndId == null){
+            return;
+        }
+
+        if(OCCUPANT_KEYSPACE.equals(keyspaceAndId[0])){
+            String sessionId = keyspaceAndId[1];
+            invalidate(sessionId);
+            sessionTtlRefresher.forget(sessionId);
+        }else if(ROOM_KEYSPACE.equals(keyspaceAndId[0])){
+            String roomCode = keyspaceAndId[1];
+            invalidateRoom(roomCode);
+            log.debug("Dropped cached sessions of room: {}", roomCode);
+        }
+    }
+
+    //Drops entries that expired without being read again
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpired(){
+        long now = System.nanoTime();
+        sessions.values().removeIf(cached -> cached.expiresAt() - now <= 0);
+    }
+
+    private record CachedSession(Occupant occupant, long expiresAt) {}
+}
@@ -0,0 +1,170 @@
+package com.victor.EventDrop.auth;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deny list for signed session tokens.
+ * Revoked sessions and rooms live in a redis sorted set scored by when the revocation can be forgotten,
+ * which is once every token it could apply to has expired anyway.
+ * Each node mirrors the set locally as a bloom filter, so checking a token that isn't revoked needs no I/O.
+ * Filter hits are confirmed against redis, so a false positive costs one lookup and never a wrong rejection.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SessionRevocationList implements MessageListener {
+
+    @Qualifier("sessionRedisTemplate")
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final SessionConfigProperties sessionConfigProperties;
+
+    @Value("${room.max-ttl-in-minutes}")
+    private long maxTtlInMins;
+
+    private static final String REVOCATIONS_KEY = "session-revocations";
+    private static final String REVOCATIONS_CHANNEL = "session-revocations";
+    private static final String ROOM_PREFIX = "room:";
+    private static final int MIN_EXPECTED_REVOCATIONS = 1024;
+
+    private volatile BloomFilter filter;
+    //Revocations that arrive while the filter is being rebuilt go into both filters
+    private volatile BloomFilter pendingFilter;
+
+    @PostConstruct
+    public void init(){
+        if(!sessionConfigProperties.isTokenModeEnabled()){
+            return;
+        }
+
+        filter = new BloomFilter(MIN_EXPECTED_REVOCATIONS, sessionConfigProperties.getRevocationFalsePositiveRate());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(REVOCATIONS_CHANNEL));
+        refresh();
+    }
+
+    //Revokes a single session, e.g. when its occupant leaves or its session expires
+    public void revokeSession(String sessionId){
+        revoke(sessionId);
+    }
+
+    //Revokes every session of a room, e.g. when its owner deletes it
+    public void revokeRoom(String roomCode){
+        revoke(ROOM_PREFIX + roomCode);
+    }
+
+    /**
+     * Checks whether a token's session or room has been revoked.
+     *
+     * @param token The verified token
+     * @return true if the token must be rejected
+     * */
+    public boolean isRevoked(SessionToken token){
+        BloomFilter current = filter;
+        if(current == null){
+            return false;
+        }
+
+        String session = token.sessionId().toString();
+        String room = ROOM_PREFIX + token.roomCode();
+        boolean sessionHit = current.mightContain(session);
+        boolean roomHit = current.mightContain(room);
+
+        if(!sessionHit && !roomHit){
+            return false;
+        }
+
+        //Either really revoked or a false positive, redis has the final say
+        return (sessionHit && isRevokedInRedis(session)) || (roomHit && isRevokedInRedis(room));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern){
+        Object member = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if(member != null){
+            addLocally(member.toString());
+        }
+    }
+
+    /**
+     * Rebuilds the local filter from redis and forgets revocations whose tokens have all expired.
+     * The rebuild catches anything missed while the pub/sub connection was down.
+     * */
+    @Scheduled(fixedDelayString = "${session.revocation-refresh-in-seconds:60}", timeUnit = TimeUnit.SECONDS)
+    public void refresh(){
+        if(!sessionConfigProperties.isTokenModeEnabled()){
+            return;
+        }
+
+        try{
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(REVOCATIONS_KEY, Double.NEGATIVE_INFINITY, now);
+            Long size = redisTemplate.opsForZSet().zCard(REVOCATIONS_KEY);
+
+            //Publish the new filter as pending before reading, so nothing revoked during the read is lost
+            BloomFilter rebuilt = new BloomFilter(
+                    (int) Math.max(MIN_EXPECTED_REVOCATIONS, size == null ? 0 : size * 2),
+                    sessionConfigProperties.getRevocationFalsePositiveRate()
+            );
+            pendingFilter = rebuilt;
+
+            Set<Object> revoked = redisTemplate.opsForZSet().rangeByScore(REVOCATIONS_KEY, now, Double.POSITIVE_INFINITY);
+            if(revoked != null){
+                revoked.forEach(member -> rebuilt.put(member.toString()));
+            }
+
+            filter = rebuilt;
+            log.debug("Rebuilt session revocation filter with {} entries", revoked == null ? 0 : revoked.size());
+        }catch (Exception e){
+            log.error("Failed to refresh session revocation filter", e);
+        }finally {
+            pendingFilter = null;
+        }
+    }
+
+    private void revoke(String member){
+        if(!sessionConfigProperties.isTokenModeEnabled()){
+            return;
+        }
+
+        //No token outlives the longest possible room, so that's how long a revocation has to be kept
+        long forgetAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(maxTtlInMins);
+        addLocally(member);
+
+        try{
+            redisTemplate.opsForZSet().add(REVOCATIONS_KEY, member, forgetAt);
+            redisTemplate.convertAndSend(REVOCATIONS_CHANNEL, member);
+        }catch (Exception e){
+            log.error("Failed to revoke: {}", member, e);
+        }
+    }
+
+    private void addLocally(String member){
+        BloomFilter current = filter;
+        if(current != null){
+            current.put(member);
+        }
+
+        BloomFilter pending = pendingFilter;
+        if(pending != null){
+            pending.put(member);
+        }
+    }
+
+    private boolean isRevokedInRedis(String member){
+        return redisTemplate.opsForZSet().score(REVOCATIONS_KEY, member) != null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+
+import java.util.UUID;
+
+/**
+ * The verified contents of a signed session cookie.
+ */
+public record SessionToken(
+        UUID sessionId,
+        String roomCode,
+        OccupantRole role,
+        String occupantName,
+        long roomExpiresAtEpochSecond
+) {
+    public Occupant toOccupant(){
+        return Occupant.builder()
+                .sessionId(sessionId)
+                .roomCode(roomCode)
+                .occupantRole(role)
+                .occupantName(occupantName)
+                .build();
+    }
+}
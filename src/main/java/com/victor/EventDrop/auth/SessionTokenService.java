@@ -0,0 +1,148 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Issues and verifies signed session cookies.
+ * A token is {@code base64url(payload).base64url(HMAC-SHA256(payload))}, where the payload carries
+ * the session ID, room code, role, occupant name and the room's expiry. Verifying one needs no I/O.
+ * When token mode is off, the cookie is the plain session ID like before.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SessionTokenService {
+
+    private final SessionConfigProperties sessionConfigProperties;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String TOKEN_VERSION = "v1";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private SecretKeySpec secretKey;
+
+    @PostConstruct
+    public void init(){
+        if(!sessionConfigProperties.isTokenModeEnabled()){
+            return;
+        }
+
+        String secret = sessionConfigProperties.getTokenSecret();
+        if(secret == null || secret.length() < 32){
+            throw new IllegalStateException("session.token-secret must be at least 32 characters when token mode is enabled");
+        }
+
+        secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        log.info("Session token mode enabled");
+    }
+
+    public boolean isEnabled(){
+        return sessionConfigProperties.isTokenModeEnabled();
+    }
+
+    /**
+     * Gets the value of the session cookie for a freshly joined occupant.
+     *
+     * @param occupant The occupant that joined
+     * @param roomExpiresAt When the occupant's room expires, the token is not accepted past that
+     * @return A signed token in token mode, otherwise the plain session ID
+     * */
+    public String issue(Occupant occupant, LocalDateTime roomExpiresAt){
+        if(!isEnabled()){
+            return occupant.getSessionId().toString();
+        }
+
+        String payload = String.join("|",
+                TOKEN_VERSION,
+                occupant.getSessionId().toString(),
+                occupant.getRoomCode(),
+                occupant.getOccupantRole().name(),
+                ENCODER.encodeToString(occupant.getOccupantName().getBytes(StandardCharsets.UTF_8)),
+                String.valueOf(roomExpiresAt.atZone(ZoneId.systemDefault()).toEpochSecond())
+        );
+
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+    }
+
+    /**
+     * Verifies a session cookie locally.
+     *
+     * @param token The cookie's value
+     * @return The token's contents, or an empty optional if the token is malformed, tampered with or past its room's expiry
+     * */
+    public Optional<SessionToken> verify(String token){
+        if(!isEnabled()){
+            return Optional.empty();
+        }
+
+        int dot = token.indexOf('.');
+        if(dot <= 0 || dot == token.length() - 1){
+            return Optional.empty();
+        }
+
+        try{
+            byte[] payloadBytes = DECODER.decode(token.substring(0, dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+
+            if(!MessageDigest.isEqual(sign(payloadBytes), signature)){
+                log.info("Rejected session token with an invalid signature");
+                return Optional.empty();
+            }
+
+            String[] parts = new String(payloadBytes, StandardCharsets.UTF_8).split("\\|");
+            if(parts.length != 6 || !TOKEN_VERSION.equals(parts[0])){
+                return Optional.empty();
+            }
+
+            long roomExpiresAt = Long.parseLong(parts[5]);
+            if(roomExpiresAt <= System.currentTimeMillis() / 1000){
+                return Optional.empty();
+            }
+
+            return Optional.of(new SessionToken(
+                    UUID.fromString(parts[1]),
+                    parts[2],
+                    OccupantRole.valueOf(parts[3]),
+                    new String(DECODER.decode(parts[4]), StandardCharsets.UTF_8),
+                    roomExpiresAt
+            ));
+        }catch (IllegalArgumentException e){
+            log.info("Rejected malformed session token");
+            return Optional.empty();
+        }
+    }
+
+    //Tokens contain a dot, plain session IDs never do
+    public boolean isToken(String cookieValue){
+        return cookieValue.indexOf('.') > 0;
+    }
+
+    private byte[] sign(byte[] payload){
+        try{
+            //Mac instances are not thread safe and requests run on virtual threads, so create one per call
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secretKey);
+            return mac.doFinal(payload);
+        }catch (GeneralSecurityException e){
+            throw new IllegalStateException("Failed to sign session token", e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.redis.ExpiryDeadlines;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps active sessions alive without an EXPIRE per request.
+ * A session's TTL is only extended once its remaining time drops below the refresh threshold,
+ * and the extensions of all sessions are written together in one pipelined flush.
+ * Each refresh also bumps the session's last seen score in its room's presence set.
+ * The deadline tracked per session is the one this node last set, other nodes can only push it further out,
+ * so a session is never refreshed too late because of another node.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SessionTtlRefresher {
+
+    @Qualifier("sessionRedisTemplate")
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SessionConfigProperties sessionConfigProperties;
+    private final ExpiryDeadlines expiryDeadlines;
+    private final RedisEntityWriter redisEntityWriter;
+
+    //The deadline in nanos this node last pushed each session's TTL to
+    private final ConcurrentHashMap<String, Long> deadlines = new ConcurrentHashMap<>();
+    //Session ID -> room code of the sessions waiting for the next flush
+    private final ConcurrentHashMap<String, String> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Records activity on a session, from a request or an SSE heartbeat.
+     * Schedules a TTL refresh if the session is close enough to expiring.
+     *
+     * @param sessionId The session ID of the active occupant
+     * @param roomCode The room code of the occupant's room
+     * */
+    public void touch(String sessionId, String roomCode){
+        Long deadline = deadlines.get(sessionId);
+        long thresholdNanos = TimeUnit.SECONDS.toNanos(sessionConfigProperties.getRefreshThresholdInSeconds());
+
+        //Unknown sessions are refreshed right away, their remaining TTL could be anything
+        if(deadline == null || deadline - System.nanoTime() < thresholdNanos){
+            pending.put(sessionId, roomCode);
+        }
+    }
+
+    //Stops tracking a session that is gone
+    public void forget(String sessionId){
+        deadlines.remove(sessionId);
+        pending.remove(sessionId);
+    }
+
+    /**
+     * Writes all pending refreshes in a single pipeline.
+     * The occupant's phantom copy is extended too, so the session's room is still known when it finally expires,
+     * or under the minimal schema the pointer from the session to its room.
+     * */
+    @Scheduled(fixedDelayString = "${session.refresh-flush-interval-in-millis:1000}")
+    public void flush(){
+        if(pending.isEmpty()){
+            return;
+        }
+
+        Map<String, String> batch = new HashMap<>(pending.size());
+        for (String sessionId : pending.keySet()){
+            String roomCode = pending.remove(sessionId);
+            if(roomCode != null){
+                batch.put(sessionId, roomCode);
+            }
+        }
+
+        if(batch.isEmpty()) return;
+
+        long ttl = sessionConfigProperties.getTtlInSeconds();
+        //Taken before the write, so the tracked deadline is never later than the real one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl);
+
+        try{
+            long now = System.currentTimeMillis();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                batch.forEach((sessionId, roomCode) -> {
+                    String key = redisEntityWriter.keyOf("occupant", sessionId, roomCode);
+                    byte[] member = sessionId.getBytes(StandardCharsets.UTF_8);
+                    connection.keyCommands().expire(key.getBytes(StandardCharsets.UTF_8), ttl);
+                    if(redisEntityWriter.isMinimalSchema()){
+                        connection.keyCommands().expire(redisEntityWriter.roomPointerKeyOf("occupant", sessionId).getBytes(StandardCharsets.UTF_8), ttl);
+                    }else{
+                        connection.keyCommands().expire((key + ":phantom").getBytes(StandardCharsets.UTF_8), ttl + RedisEntityWriter.PHANTOM_KEY_TTL_IN_SECONDS);
+                    }
+                    expiryDeadlines.reschedule(connection, key, now + TimeUnit.SECONDS.toMillis(ttl));
+                    //XX so a session that already left or was pruned isn't added back
+                    connection.zSetCommands().zAdd(
+                            Occupant.presenceKey(roomCode).getBytes(StandardCharsets.UTF_8),
+                            now, member, RedisZSetCommands.ZAddArgs.ifExists()
+                    );
+                });
+                return null;
+            });
+
+            batch.keySet().forEach(sessionId -> deadlines.put(sessionId, deadline));
+            log.debug("Refreshed TTL of {} sessions", batch.size());
+        }catch (Exception e){
+            //Try again on the next flush
+            batch.forEach(pending::putIfAbsent);
+            log.error("Failed to refresh TTL of {} sessions", batch.size(), e);
+        }
+    }
+
+    //Drops sessions that went quiet long enough to have expired
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpired(){
+        long now = System.nanoTime();
+        deadlines.values().removeIf(deadline -> deadline - now <= 0);
+    }
+}
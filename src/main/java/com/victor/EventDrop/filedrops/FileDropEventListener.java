@@ -3,14 +3,17 @@ package com.victor.EventDrop.filedrops;
 import com.azure.core.exception.AzureException;
 import com.azure.storage.blob.batch.BlobBatchStorageException;
 import com.victor.EventDrop.filedrops.client.FileDropStorageClient;
+import com.victor.EventDrop.redis.KeyExpiryHandler;
 import com.victor.EventDrop.rooms.RoomServiceImpl;
+import com.victor.EventDrop.rooms.events.FileDropsChangedEvent;
 import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStage;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStageMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
-import org.springframework.context.event.EventListener;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.redis.core.RedisKeyExpiredEvent;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Async;
@@ -29,11 +32,13 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 @Slf4j
 @Service
-public class FileDropEventListener {
+public class FileDropEventListener implements KeyExpiryHandler<FileDrop> {
 
     private final FileDropRepository fileDropRepository;
     private final RedisTemplate<String, Object> redisTemplate;
     private final FileDropStorageClient fileDropStorageClient;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final RoomExpiryStageMetrics roomExpiryStageMetrics;
 
     /**
      * Listens for room expiry events to trigger a cascading cleanup of all associated file drops.
@@ -42,13 +47,15 @@ public class FileDropEventListener {
      *
      * @param roomExpiryEvent The event containing the room code of the expired room.
      */
-    @RabbitListener(queues = "${room.expiry.queue-name}")
     public void handleRoomExpiry(RoomExpiryEvent roomExpiryEvent){
         String roomCode = roomExpiryEvent.roomCode();
         try{
             List<FileDrop> fileDrops = fileDropRepository.findByRoomCode(roomCode);
 
-            if(fileDrops.isEmpty())return;
+            if(fileDrops.isEmpty()){
+                roomExpiryStageMetrics.record(RoomExpiryStage.FILES, roomExpiryEvent);
+                return;
+            }
 
             log.info("Handling room expiry for file drops for room with room code: {}", roomCode);
             fileDrops
@@ -63,6 +70,7 @@ public class FileDropEventListener {
                     .toList();
 
             fileDropStorageClient.deleteFiles(fileNames);
+            roomExpiryStageMetrics.record(RoomExpiryStage.FILES, roomExpiryEvent);
 
         }catch (ListenerExecutionFailedException e){
             log.error("Listener execution failed while trying to delete file drops in room with code: {}", roomCode, e);
@@ -74,29 +82,30 @@ public class FileDropEventListener {
     }
 
 
+    @Override
+    public String keyspace() {
+        return "fileDrop";
+    }
+
+    @Override
+    public Class<FileDrop> type() {
+        return FileDrop.class;
+    }
+
+    @Override
+    public void onKeyExpired(RedisKeyExpiredEvent<FileDrop> expiredEvent) {
+        handleExpiredKeys(expiredEvent);
+    }
+
     /**
-     * Listens for Redis key expiration events for 'FileDrop' keys.
+     * Handles the expiry of 'FileDrop' keys, routed here by {@link com.victor.EventDrop.redis.KeyExpiryDispatcher}.
      * When a key expires, this method deletes the corresponding file drop
      * from the database using the file ID extracted from the expired key.
      *
      * @param expiredEvent The event containing the expired Redis key.
      */
-    @EventListener
     public void handleExpiredKeys(RedisKeyExpiredEvent<FileDrop> expiredEvent){
-        byte[] keyBytes = expiredEvent.getId();
-
-        if (keyBytes.length == 0) {
-            log.warn("Received Redis expiry event with null or empty key");
-            return;
-        }
-
-        String fileId = new String(keyBytes, StandardCharsets.UTF_8);
-
-        if (fileId.length() <= 8) {
-            log.warn("Received Redis expiry event with invalid file ID");
-            return;
-        }
-
+        String fileId = new String(expiredEvent.getId(), StandardCharsets.UTF_8);
         UUID uuid;
 
         try{
@@ -110,6 +119,10 @@ public class FileDropEventListener {
             fileDropRepository.deleteById(uuid);
             log.info("Successfully deleted expired file drop with ID: {}", fileId);
 
+            if(expiredEvent.getValue() instanceof FileDrop fileDrop){
+                applicationEventPublisher.publishEvent(new FileDropsChangedEvent(fileDrop.getRoomCode(), List.of(), List.of(uuid)));
+            }
+
         } catch (IllegalArgumentException e) {
             log.error("Invalid UUID format for expired file drop ID: {}", fileId, e);
         } catch (Exception e) {
@@ -6,7 +6,7 @@ import org.springframework.stereotype.Service;
 
 @Service
 public class FileDropMapper {
-     FileDropResponseDto toResponseDto(FileDrop fileDrop){
+     public FileDropResponseDto toResponseDto(FileDrop fileDrop){
           return new FileDropResponseDto(
                   fileDrop.getFileId().toString(),
                   fileDrop.getOriginalFileName(),
@@ -9,7 +9,12 @@ import com.victor.EventDrop.filedrops.dtos.BatchDeleteResult;
 import com.victor.EventDrop.filedrops.dtos.BatchUploadResult;
 import com.victor.EventDrop.filedrops.dtos.FileDownloadResponseDto;
 import com.victor.EventDrop.filedrops.dtos.FileDropResponseDto;
+import com.victor.EventDrop.redis.ReadPreference;
+import com.victor.EventDrop.redis.RedisSchemaConfigProperties;
+import com.victor.EventDrop.redis.ReplicaReadRouter;
+import com.victor.EventDrop.rooms.events.FileDropsChangedEvent;
 import com.victor.EventDrop.rooms.events.RoomEvent;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
@@ -36,6 +41,11 @@ public class FileDropServiceImpl implements FileDropService {
     private final FileDropUtils fileDropUtils;
     private final AsyncTaskExecutor asyncTaskExecutor;
     private final ApplicationEventPublisher applicationEventPublisher;
+    private final RoomStateCache roomStateCache;
+    private final ReplicaReadRouter replicaReadRouter;
+    private final RedisSchemaConfigProperties redisSchemaConfigProperties;
+
+    private static final String FILE_DROP_KEYSPACE = "fileDrop";
 
 
     /**
@@ -99,7 +109,8 @@ public class FileDropServiceImpl implements FileDropService {
 
     /**
      * Asynchronously handles a file download request.
-     * Finds the file's URL and sends a download event to a room-specific RabbitMQ queue.
+     * Finds the file's metadata in the room's view, falling back to redis for files this node hasn't seen yet.
+     * That lookup may be served by a replica, a file the replica doesn't have yet is looked up on the primary.
      *
      * @param fileDropId the unique ID of the file drop.
      * @param roomCode   the room's unique code.
@@ -113,8 +124,9 @@ public class FileDropServiceImpl implements FileDropService {
         }
 
         String downloadUrl = CompletableFuture.supplyAsync(() -> {
-                    FileDrop fileDrop = fileDropRepository
-                            .findById(fileDropId)
+                    FileDrop fileDrop = roomStateCache
+                            .findFileDrop(roomCode, fileDropId)
+                            .or(() -> replicaReadRouter.findById(ReadPreference.REPLICA_PREFERRED, FileDrop.class, FILE_DROP_KEYSPACE, fileDropId))
                             .orElseThrow(() -> new NoSuchFileDropException(String.format("Could not find file drop with ID: %s", fileDropId)));
                     log.info("Found file drop with ID: {}. Name: {}", fileDrop, fileDrop.getFileName());
                     if(!fileDrop.getRoomCode().equals(roomCode)){
@@ -183,6 +195,7 @@ public class FileDropServiceImpl implements FileDropService {
                         // Remove metadata from DB
                         fileDropRepository.deleteAll(fileDrops);
                         deletedNow.addAll(blobNames);
+                        publishFileDropsChanged(roomCode, List.of(), fileDrops.stream().map(FileDrop::getFileId).toList());
                     } catch (Exception e) {
                         log.error("Batch delete failed for room {}: {}", roomCode, e.getMessage(), e);
 
@@ -191,6 +204,7 @@ public class FileDropServiceImpl implements FileDropService {
                                 fileDrop.setDeleted(true);
                                 fileDropRepository.save(fileDrop);
                                 markedDeleted.add(fileDrop.getFileName());
+                                publishFileDropsChanged(roomCode, List.of(fileDrop), List.of());
                             } catch (Exception inner) {
                                 log.error("Failed to mark file {} as deleted", fileDrop.getFileName(), inner);
                             }
@@ -235,12 +249,14 @@ public class FileDropServiceImpl implements FileDropService {
                                 FileDrop saved = fileDropRepository.save(fileDropUtils.buildFileDrop(
                                         roomCode, originalFileName, fileDropName, fileSize, blobUrl
                                 ));
+                                publishFileDropsChanged(roomCode, List.of(saved), List.of());
                                 return fileDropMapper.toResponseDto(saved);
                             }else {
                                 FileDrop fileDrop = fileDropRepository.findByFileName(fileDropName);
 
                                 if(fileDrop.isDeleted()){
                                     fileDropRepository.save(fileDrop);
+                                    publishFileDropsChanged(roomCode, List.of(fileDrop), List.of());
                                     return fileDropMapper.toResponseDto(fileDrop);
                                 }else{
                                     log.error("Failed to upload {} because it already exists in your room", originalFileName);
@@ -261,10 +277,15 @@ public class FileDropServiceImpl implements FileDropService {
         }
     }
 
+    //A listing may be slightly stale, so it's served by a replica when one is caught up. Upload quota checks read the primary
+    //The minimal schema writes no index sets, its room's file ids are in the room-files set instead
     @Override
     public List<FileDropResponseDto> getFileDrops(String roomCode){
-        return fileDropRepository
-                .findByRoomCode(roomCode)
+        List<FileDrop> fileDrops = redisSchemaConfigProperties.isMinimal()
+                ? replicaReadRouter.findAllInSet(ReadPreference.REPLICA_PREFERRED, FileDrop.class, FILE_DROP_KEYSPACE, MinimalFileDropRepository.roomFilesKey(roomCode))
+                : replicaReadRouter.findAllByIndex(ReadPreference.REPLICA_PREFERRED, FileDrop.class, FILE_DROP_KEYSPACE, "roomCode", roomCode);
+
+        return fileDrops
                 .stream()
                 .filter(fileDrop -> !fileDrop.isDeleted())
                 .map(fileDropMapper::toResponseDto)
@@ -276,4 +297,9 @@ public class FileDropServiceImpl implements FileDropService {
         applicationEventPublisher.publishEvent(roomEvent);
     }
 
+    //Keeps the room state views in sync with the file drop metadata in redis
+    private void publishFileDropsChanged(String roomCode, List<FileDrop> upserted, List<UUID> removed){
+        applicationEventPublisher.publishEvent(new FileDropsChangedEvent(roomCode, upserted, removed));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.victor.EventDrop.filedrops;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.redis.MinimalRedisRepository;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ExpirationOptions;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The file drop repository of the minimal schema. The only lookup key is one set of file ids per room,
+ * room-files:{roomCode}. File names start with their room code, so name lookups search that room's files
+ * instead of keeping a name index.
+ */
+@Repository
+@ConditionalOnProperty(name = "spring.redis.schema.mode", havingValue = "minimal")
+public class MinimalFileDropRepository extends MinimalRedisRepository<FileDrop, UUID> implements FileDropRepository {
+
+    public MinimalFileDropRepository(RedisTemplate<String, Object> redisTemplate, RedisEntityWriter redisEntityWriter) {
+        super(redisTemplate, redisEntityWriter, FileDrop.class, "fileDrop");
+    }
+
+    public static String roomFilesKey(String roomCode){
+        return "room-files:" + Occupant.roomTag(roomCode);
+    }
+
+    @Override
+    protected UUID idOf(FileDrop fileDrop) {
+        return fileDrop.getFileId();
+    }
+
+    //The set lives as long as the newest file in it. GT keeps a later save from shortening it
+    @Override
+    protected void onSave(RedisConnection connection, FileDrop fileDrop, RedisData redisData) {
+        byte[] roomFilesKey = bytes(roomFilesKey(fileDrop.getRoomCode()));
+        connection.setCommands().sAdd(roomFilesKey, bytes(fileDrop.getFileId().toString()));
+
+        Long ttl = redisData.getTimeToLive();
+        if(ttl != null && ttl > 0){
+            connection.keyCommands().expire(roomFilesKey, ttl, ExpirationOptions.Condition.NX);
+            connection.keyCommands().expire(roomFilesKey, ttl, ExpirationOptions.Condition.GT);
+        }
+    }
+
+    @Override
+    protected void onDelete(RedisConnection connection, FileDrop fileDrop) {
+        connection.setCommands().sRem(bytes(roomFilesKey(fileDrop.getRoomCode())), bytes(fileDrop.getFileId().toString()));
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        List<UUID> fileIds = new ArrayList<>();
+        ids.forEach(fileIds::add);
+        deleteAll(findAllById(fileIds));
+        super.deleteAllById(fileIds);
+    }
+
+    @Override
+    public List<FileDrop> findByRoomCode(String roomCode) {
+        byte[] roomFilesKey = bytes(roomFilesKey(roomCode));
+        Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection.setCommands().sMembers(roomFilesKey));
+        if(members == null || members.isEmpty()){
+            return List.of();
+        }
+
+        List<UUID> ids = new ArrayList<>(members.size());
+        members.forEach(member -> ids.add(UUID.fromString(new String(member, StandardCharsets.UTF_8))));
+        return findAllById(ids);
+    }
+
+    @Override
+    public void deleteByRoomCode(String roomCode) {
+        deleteAll(findByRoomCode(roomCode));
+        byte[] roomFilesKey = bytes(roomFilesKey(roomCode));
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(roomFilesKey));
+    }
+
+    @Override
+    public boolean existsByFileName(String fileDropName) {
+        return findByFileName(fileDropName) != null;
+    }
+
+    @Override
+    public FileDrop findByFileName(String fileDropName) {
+        int separator = fileDropName.indexOf('/');
+        if(separator <= 0){
+            return null;
+        }
+
+        return findByRoomCode(fileDropName.substring(0, separator)).stream()
+                .filter(fileDrop -> fileDropName.equals(fileDrop.getFileName()))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -1,13 +1,25 @@
 package com.victor.EventDrop.metrics;
 
+import com.victor.EventDrop.rabbitmq.ConsumerLagDto;
+import com.victor.EventDrop.rabbitmq.ConsumerLagMetrics;
+import com.victor.EventDrop.rabbitmq.DuplicateMetricsDto;
+import com.victor.EventDrop.rabbitmq.MessageDeduplicator;
+import com.victor.EventDrop.rabbitmq.RetryStageMetrics;
+import com.victor.EventDrop.rabbitmq.RetryStageMetricsDto;
+import com.victor.EventDrop.rooms.dtos.RoomExpiryStageMetricsDto;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStageMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.function.Function;
+
 @RestController
 @RequiredArgsConstructor
 @Slf4j
@@ -15,10 +27,44 @@ import org.springframework.web.bind.annotation.RestController;
 public class SimpleMetricsController {
 
     private final SimpleMetricsService simpleMetricsService;
+    private final RoomExpiryStageMetrics roomExpiryStageMetrics;
+    //RabbitMQ only, empty with the other transports
+    private final ObjectProvider<RetryStageMetrics> retryStageMetrics;
+    private final ObjectProvider<ConsumerLagMetrics> consumerLagMetrics;
+    private final ObjectProvider<MessageDeduplicator> messageDeduplicator;
 
     @GetMapping
     public ResponseEntity<SimpleMetricsDto> simpleMetricsDto(){
         return new ResponseEntity<>(simpleMetricsService.metricsDto(), HttpStatus.OK);
     }
 
+    //Depth of each retry tier and parking lot, and its change since the last sample
+    @GetMapping("/retries")
+    public ResponseEntity<List<RetryStageMetricsDto>> retryStageMetrics(){
+        return new ResponseEntity<>(metrics(retryStageMetrics, RetryStageMetrics::metrics), HttpStatus.OK);
+    }
+
+    //Cleanup latency of each room expiry stage on this node
+    @GetMapping("/expiry")
+    public ResponseEntity<List<RoomExpiryStageMetricsDto>> roomExpiryStageMetrics(){
+        return new ResponseEntity<>(roomExpiryStageMetrics.metrics(), HttpStatus.OK);
+    }
+
+    //Lag, queue depth and consumers of each listener container
+    @GetMapping("/consumers")
+    public ResponseEntity<List<ConsumerLagDto>> consumerLag(){
+        return new ResponseEntity<>(metrics(consumerLagMetrics, ConsumerLagMetrics::metrics), HttpStatus.OK);
+    }
+
+    //Redeliveries each queue's listener skipped on this node
+    @GetMapping("/duplicates")
+    public ResponseEntity<List<DuplicateMetricsDto>> duplicates(){
+        return new ResponseEntity<>(metrics(messageDeduplicator, MessageDeduplicator::metrics), HttpStatus.OK);
+    }
+
+    private <T, D> List<D> metrics(ObjectProvider<T> source, Function<T, List<D>> metrics){
+        T available = source.getIfAvailable();
+        return available == null ? List.of() : metrics.apply(available);
+    }
+
 }
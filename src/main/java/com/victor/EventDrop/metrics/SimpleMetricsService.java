@@ -1,5 +1,7 @@
 package com.victor.EventDrop.metrics;
 
+import com.victor.EventDrop.redis.ReadPreference;
+import com.victor.EventDrop.redis.ReplicaReadRouter;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomEventType;
 import lombok.RequiredArgsConstructor;
@@ -9,11 +11,15 @@ import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.List;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class SimpleMetricsService implements CommandLineRunner {
     private final RedisTemplate<String, Object> redisTemplate;
+    private final ReplicaReadRouter replicaReadRouter;
 
     @EventListener
     public void logMetrics(RoomEvent roomEvent){
@@ -40,10 +46,17 @@ public class SimpleMetricsService implements CommandLineRunner {
         log.info("Successfully incremented simple metrics");
     }
 
+    //Counters are fine slightly behind, so they're read from a replica when one is caught up
     public SimpleMetricsDto metricsDto(){
-        Integer roomsCreated = (Integer) redisTemplate.opsForValue().get("metrics:1:roomsCreated");
-        Integer filesUploaded = (Integer) redisTemplate.opsForValue().get("metrics:1:filesUploaded");
-        Integer filesDownloaded = (Integer) redisTemplate.opsForValue().get("metrics:1:filesDownloaded");
+        List<Object> counters = replicaReadRouter.read(ReadPreference.REPLICA_PREFERRED, template ->
+                template.opsForValue().multiGet(List.of("metrics:1:roomsCreated", "metrics:1:filesUploaded", "metrics:1:filesDownloaded")));
+        if(counters == null){
+            counters = Arrays.asList(null, null, null);
+        }
+
+        Integer roomsCreated = (Integer) counters.get(0);
+        Integer filesUploaded = (Integer) counters.get(1);
+        Integer filesDownloaded = (Integer) counters.get(2);
 
         if(filesDownloaded == null){
             filesDownloaded = 0;
@@ -0,0 +1,137 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.redis.MinimalRedisRepository;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.redis.RedisPipelines;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The occupant repository of the minimal schema. A room's occupants are found through its presence set,
+ * which already holds the session id of everyone in the room, so occupants need no index set of their own.
+ * Occupants are keyed under their room's hash tag, occupant:{1234ABCD}:ID, so a lookup by session id
+ * first reads the session's pointer to its room, occupant-room:ID.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "spring.redis.schema.mode", havingValue = "minimal")
+public class MinimalOccupantRepository extends MinimalRedisRepository<Occupant, UUID> implements OccupantRepository {
+
+    public MinimalOccupantRepository(RedisTemplate<String, Object> redisTemplate, RedisEntityWriter redisEntityWriter) {
+        super(redisTemplate, redisEntityWriter, Occupant.class, "occupant");
+    }
+
+    @Override
+    protected UUID idOf(Occupant occupant) {
+        return occupant.getSessionId();
+    }
+
+    @Override
+    public Occupant findBySessionId(String sessionId) {
+        UUID id = parse(sessionId);
+        return id == null ? null : findById(id).orElse(null);
+    }
+
+    //Sessions still in the presence set whose hash already expired are skipped
+    @Override
+    public List<Occupant> findByRoomCode(String roomCode) {
+        byte[] presenceKey = bytes(Occupant.presenceKey(roomCode));
+        Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.zSetCommands().zRange(presenceKey, 0, -1));
+        if(members == null || members.isEmpty()){
+            return List.of();
+        }
+
+        //The room is known, so the keys are built without going through the pointers
+        List<byte[]> keys = new ArrayList<>(members.size());
+        members.forEach(member -> {
+            UUID id = parse(new String(member, StandardCharsets.UTF_8));
+            if(id != null) keys.add(bytes(redisEntityWriter.keyOf("occupant", id, roomCode)));
+        });
+
+        return readAll(keys);
+    }
+
+    @Override
+    public int countByRoomCode(String roomCode) {
+        return findByRoomCode(roomCode).size();
+    }
+
+    @Override
+    public void deleteByRoomCode(String roomCode) {
+        deleteAll(findByRoomCode(roomCode));
+    }
+
+    @Override
+    public void deleteByRoomCodeAndSessionId(String roomCode, String sessionId) {
+        Occupant occupant = findBySessionId(sessionId);
+        if(occupant != null && roomCode.equals(occupant.getRoomCode())){
+            delete(occupant);
+        }
+    }
+
+    @Override
+    public void deleteBySessionId(String sessionId) {
+        UUID id = parse(sessionId);
+        if(id != null){
+            deleteAllById(List.of(id));
+        }
+    }
+
+    //Hashes, pointers and deadlines of the sessions, whether or not their hash is still there
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        List<UUID> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        if(idList.isEmpty()){
+            return;
+        }
+        List<byte[]> keys = keysOf(idList);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> {
+                connection.keyCommands().del(key);
+                redisEntityWriter.cancelExpiry(connection, new String(key, StandardCharsets.UTF_8));
+            });
+            idList.forEach(id -> connection.keyCommands().del(bytes(redisEntityWriter.roomPointerKeyOf("occupant", id))));
+            return null;
+        });
+    }
+
+    //Reads the sessions' pointers in one pipeline. Sessions without one are gone
+    @Override
+    protected List<byte[]> keysOf(List<UUID> ids) {
+        if(ids.isEmpty()){
+            return List.of();
+        }
+
+        List<Object> roomCodes = RedisPipelines.raw(redisTemplate, connection ->
+                ids.forEach(id -> connection.stringCommands().get(bytes(redisEntityWriter.roomPointerKeyOf("occupant", id)))));
+
+        List<byte[]> keys = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++){
+            if(roomCodes.get(i) instanceof byte[] roomCode){
+                keys.add(bytes(redisEntityWriter.keyOf("occupant", ids.get(i), new String(roomCode, StandardCharsets.UTF_8))));
+            }
+        }
+        return keys;
+    }
+
+    private static UUID parse(String sessionId){
+        try{
+            return UUID.fromString(sessionId);
+        }catch (IllegalArgumentException e){
+            log.info("Invalid session ID: {}", sessionId);
+            return null;
+        }
+    }
+}
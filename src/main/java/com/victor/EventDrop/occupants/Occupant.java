@@ -30,4 +30,24 @@ public class Occupant {
     @Indexed
     private OccupantRole occupantRole;
     private LocalDateTime joinedAt;
+
+    //The set of every room that has a presence set, so they can be pruned without scanning the keyspace
+    public static final String PRESENCE_ROOMS_KEY = "room-presence-rooms";
+
+    //The sorted set of session IDs in a room scored by when they were last seen. Room capacity is enforced on it
+    public static String presenceKey(String roomCode){
+        return "room-presence:" + roomTag(roomCode);
+    }
+
+    //The presence key from before room keys were hash tagged. Only read to fold it into the tagged one, see PresencePruner
+    public static String legacyPresenceKey(String roomCode){
+        return "room-presence:" + roomCode;
+    }
+
+    //A room's keys carry the room code as a redis cluster hash tag, so scripts over them stay in one slot:
+    //the presence set, the minimal schema's room-files set and, under the minimal schema, the room and occupant hashes too.
+    //The indexed schema keeps Spring Data's untagged layout and global keyspace sets, so it only runs on a single node
+    public static String roomTag(String roomCode){
+        return "{" + roomCode + "}";
+    }
 }
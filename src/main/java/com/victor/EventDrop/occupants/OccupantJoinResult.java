@@ -0,0 +1,13 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.rooms.Room;
+
+public record OccupantJoinResult(
+        Status status,
+        int occupantCount,
+        Room room
+) {
+    public enum Status {
+        JOINED, ROOM_FULL, NO_SUCH_ROOM
+    }
+}
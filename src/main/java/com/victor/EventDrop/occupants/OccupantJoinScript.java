@@ -0,0 +1,164 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.rooms.Room;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the room join as a single server side script.
+ * The room lookup, the capacity check and the occupant write happen atomically in one round trip,
+ * so concurrent joins can't push a room past its max size.
+ * Under the minimal schema the room, its presence set and its occupants are all keyed under the room's hash tag,
+ * so the join is one single slot script on a redis cluster too. The session's pointer to its room
+ * and the occupant's expiry deadline are pipelined right after it.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class OccupantJoinScript {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisEntityWriter redisEntityWriter;
+    private final SessionConfigProperties sessionConfigProperties;
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final DefaultRedisScript<List<Object>> JOIN_ROOM_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/join-room.lua"), (Class<List<Object>>) (Class) List.class);
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final DefaultRedisScript<List<Object>> JOIN_ROOM_MINIMAL_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/join-room-minimal.lua"), (Class<List<Object>>) (Class) List.class);
+
+    /**
+     * Joins an occupant to its room.
+     *
+     * @param occupant The occupant to create
+     * @param maxRoomSize The max amount of occupants allowed in the room
+     * @return The outcome of the join. On success it carries the room and its new occupant count
+     * */
+    public OccupantJoinResult join(Occupant occupant, int maxRoomSize){
+        String roomCode = occupant.getRoomCode();
+        RedisData redisData = redisEntityWriter.toRedisData(occupant);
+
+        List<Object> result = redisEntityWriter.isMinimalSchema()
+                ? joinMinimal(redisData, roomCode, maxRoomSize)
+                : joinIndexed(redisData, roomCode, maxRoomSize);
+
+        if(result == null || result.isEmpty()){
+            throw new IllegalStateException("Join room script returned no result for room: " + roomCode);
+        }
+
+        long occupantCount = (Long) result.get(0);
+        if(occupantCount == 0){
+            return new OccupantJoinResult(OccupantJoinResult.Status.NO_SUCH_ROOM, 0, null);
+        }
+        if(occupantCount < 0){
+            return new OccupantJoinResult(OccupantJoinResult.Status.ROOM_FULL, maxRoomSize, null);
+        }
+
+        if(redisEntityWriter.isMinimalSchema()){
+            writeAroundJoin(redisData);
+        }
+
+        Map<byte[], byte[]> roomHash = new LinkedHashMap<>();
+        for (int i = 1; i + 1 < result.size(); i += 2){
+            roomHash.put((byte[]) result.get(i), (byte[]) result.get(i + 1));
+        }
+
+        Room room = redisEntityWriter.read(Room.class, roomHash);
+        log.debug("Joined room: {} as occupant number: {}", roomCode, occupantCount);
+        return new OccupantJoinResult(OccupantJoinResult.Status.JOINED, (int) occupantCount, room);
+    }
+
+    private List<Object> joinIndexed(RedisData redisData, String roomCode, int maxRoomSize){
+        List<String> keys = new ArrayList<>();
+        keys.add(redisEntityWriter.keyOf("room", roomCode, roomCode));
+        keys.add(Occupant.presenceKey(roomCode));
+        keys.add(redisEntityWriter.keyOf(redisData));
+        keys.add(redisEntityWriter.phantomKeyOf(redisData));
+        keys.add(redisData.getKeyspace());
+        keys.add(redisEntityWriter.indexSetKeyOf(redisData));
+        keys.add(redisEntityWriter.expiryKeyOf(redisData));
+        keys.addAll(redisEntityWriter.indexKeysOf(redisData));
+
+        Long ttl = redisData.getTimeToLive();
+        List<Object> args = new ArrayList<>();
+        args.add(redisEntityWriter.toBytes(redisData.getId()));
+        args.add(bytes(String.valueOf(maxRoomSize)));
+        args.add(bytes(String.valueOf(ttl == null ? -1 : ttl)));
+        args.add(bytes(String.valueOf(redisEntityWriter.getPhantomKeyTtlInSeconds())));
+        args.add(bytes(String.valueOf(sessionConfigProperties.getTtlInSeconds())));
+        args.add(bytes(redisEntityWriter.isExpiryScheduled() ? redisEntityWriter.keyOf(redisData) : ""));
+        addFields(args, redisData);
+
+        return redisTemplate.execute(JOIN_ROOM_SCRIPT, RedisSerializer.byteArray(), rawResult(), keys, args.toArray());
+    }
+
+    private List<Object> joinMinimal(RedisData redisData, String roomCode, int maxRoomSize){
+        List<String> keys = List.of(
+                redisEntityWriter.keyOf("room", roomCode, roomCode),
+                Occupant.presenceKey(roomCode),
+                redisEntityWriter.keyOf(redisData)
+        );
+
+        Long ttl = redisData.getTimeToLive();
+        List<Object> args = new ArrayList<>();
+        args.add(redisEntityWriter.toBytes(redisData.getId()));
+        args.add(bytes(String.valueOf(maxRoomSize)));
+        args.add(bytes(String.valueOf(ttl == null ? -1 : ttl)));
+        args.add(bytes(String.valueOf(sessionConfigProperties.getTtlInSeconds())));
+        addFields(args, redisData);
+
+        return redisTemplate.execute(JOIN_ROOM_MINIMAL_SCRIPT, RedisSerializer.byteArray(), rawResult(), keys, args.toArray());
+    }
+
+    //The keys of other slots the minimal join leaves out. The occupant is already in and its hash expires on its own,
+    //so a failed write only costs lookups by session ID until the session rejoins
+    private void writeAroundJoin(RedisData redisData){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            redisEntityWriter.writeRoomPointer(connection, redisData);
+            redisEntityWriter.scheduleExpiry(connection, redisData);
+            return null;
+        });
+    }
+
+    private static void addFields(List<Object> args, RedisData redisData){
+        redisData.getBucket().rawMap().forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+    }
+
+    //Script replies are read as raw bytes, whatever type the script declares
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> rawResult(){
+        return (RedisSerializer<T>) RedisSerializer.byteArray();
+    }
+
+    private static String loadScript(String path){
+        try{
+            return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to load script: " + path, e);
+        }
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,13 @@
 package com.victor.EventDrop.occupants;
 
+import com.victor.EventDrop.rooms.Room;
+
 public record OccupantRoomJoinResponse(
          boolean success,
-         int status
+         int status,
+         Room room
 ) {
+    public OccupantRoomJoinResponse(boolean success, int status){
+        this(success, status, null);
+    }
 }
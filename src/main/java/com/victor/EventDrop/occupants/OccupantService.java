@@ -1,13 +1,22 @@
 package com.victor.EventDrop.occupants;
 
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
 import com.victor.EventDrop.rooms.events.RoomJoinEvent;
 import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
 
+import java.util.List;
+
 public interface OccupantService {
     OccupantRoomJoinResponse createOccupant(RoomJoinEvent roomJoinEvent);
 
     //Listens for room join events to create occupants
     void deleteOccupant(RoomLeaveEvent roomLeaveEvent);
 
+    //Listens for batches of room leave events to delete their occupants together
+    void deleteOccupants(List<RoomLeaveEvent> roomLeaveEvents);
+
+    //Expires a room's occupants, in order with the room's leaves on its shard
+    void handleRoomExpiry(RoomExpiryEvent roomExpiryEvent);
+
     int getOccupantCount(String roomCode);
 }
@@ -1,19 +1,26 @@
 package com.victor.EventDrop.occupants;
 
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.auth.SessionRevocationList;
 import com.victor.EventDrop.exceptions.OccupantDeletionException;
+import com.victor.EventDrop.redis.KeyExpiryHandler;
+import com.victor.EventDrop.redis.RedisEntityWriter;
 import com.victor.EventDrop.rooms.events.*;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStage;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStageMetrics;
 import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisKeyExpiredEvent;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
@@ -22,21 +29,33 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Slf4j
 @Service
-public class OccupantServiceImpl implements OccupantService {
+public class OccupantServiceImpl implements OccupantService, KeyExpiryHandler<Occupant> {
 
     private final RedisTemplate<String, Object> redisTemplate;
     private final OccupantRepository occupantRepository;
     private final ApplicationEventPublisher eventPublisher;
+    private final OccupantJoinScript occupantJoinScript;
+    private final SessionRevocationList sessionRevocationList;
+    private final SessionConfigProperties sessionConfigProperties;
+    private final RedisEntityWriter redisEntityWriter;
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, SseEmitter>> sseEmitters;
+    private final RoomExpiryStageMetrics roomExpiryStageMetrics;
+
+    private static final int MAX_NAMES_PER_LEAVE_MESSAGE = 5;
 
     @Value("${room.max-size}")
     private int maxRoomSize;
@@ -50,14 +69,6 @@ public class OccupantServiceImpl implements OccupantService {
     public OccupantRoomJoinResponse createOccupant(RoomJoinEvent roomJoinEvent){
         log.info("Initiating room occupant creation for room: {}", roomJoinEvent.roomCode());
 
-        List<Occupant> occupants = occupantRepository.findByRoomCode(roomJoinEvent.roomCode());
-        int size = occupants.size();
-
-        if(size >= maxRoomSize){
-            log.info("Join request failed because room is already full");
-            return new OccupantRoomJoinResponse(false, 409);
-        }
-
         Occupant occupant = Occupant
                 .builder()
                 .occupantName(roomJoinEvent.username())
@@ -68,9 +79,23 @@ public class OccupantServiceImpl implements OccupantService {
 
         try {
             log.info("Attempting to save occupant: {}", occupant.getOccupantName());
-            occupantRepository.save(occupant);
-            log.info("Successfully saved occupant: {}", occupant.getOccupantName());
-            return new OccupantRoomJoinResponse(true, 200);
+            OccupantJoinResult joinResult = occupantJoinScript.join(occupant, maxRoomSize);
+
+            switch (joinResult.status()){
+                case NO_SUCH_ROOM -> {
+                    log.info("Join request failed because room: {} does not exist", occupant.getRoomCode());
+                    return new OccupantRoomJoinResponse(false, 404);
+                }
+                case ROOM_FULL -> {
+                    log.info("Join request failed because room is already full");
+                    return new OccupantRoomJoinResponse(false, 409);
+                }
+                default -> {
+                    log.info("Successfully saved occupant: {}", occupant.getOccupantName());
+                    eventPublisher.publishEvent(new OccupancyChangedEvent(occupant.getRoomCode(), joinResult.occupantCount()));
+                    return new OccupantRoomJoinResponse(true, 200, joinResult.room());
+                }
+            }
         }catch (Exception e){
             log.info("An unexpected error occurred while trying to save occupant: {}", occupant.getOccupantName(), e);
             return new OccupantRoomJoinResponse(false, 500);
@@ -83,16 +108,16 @@ public class OccupantServiceImpl implements OccupantService {
      * @param roomLeaveEvent The event containing metadata relating to room leave
      * */
     @Override
-    @RabbitListener(queues = "${room.leave.queue-name}")
     public void deleteOccupant(RoomLeaveEvent roomLeaveEvent){
         String name = roomLeaveEvent.occupantName(), session = roomLeaveEvent.sessionId().toString(), roomCode = roomLeaveEvent.roomCode();
         log.info("Initiating  occupant deletion for room: {}. Occupant name: {}", roomCode, name);
-        log.info("Count before leave: {}", this.getOccupantCount(roomCode));
             try {
                 log.info("Attempting to deleted occupant: {}", name);
                 occupantRepository.deleteById(UUID.fromString(session)); //I'm not expiring here for instant updates
+                int count = removeFromOccupancy(roomCode, session);
                 log.info("Successfully deleted occupant: {}", roomLeaveEvent.occupantName());
                 cleanupEmitter(roomCode, session);
+                this.eventPublisher.publishEvent(new OccupancyChangedEvent(roomCode, count));
                 this.eventPublisher.publishEvent(
                         new RoomEvent(
                                 name + " left the room",
@@ -102,7 +127,7 @@ public class OccupantServiceImpl implements OccupantService {
                                 null
                         )
                 ); //Publish an event after leave
-                log.info("Count after leave: {}", this.getOccupantCount(roomCode));
+                log.info("Count after leave: {}", count);
             } catch (Exception e) {
                 log.info("An unexpected error occurred while trying to delete occupant: {}", roomLeaveEvent.occupantName(), e);
                 throw new OccupantDeletionException(String.format("An unexpected error occurred while trying to delete occupant: %s", name), e);
@@ -111,13 +136,90 @@ public class OccupantServiceImpl implements OccupantService {
     }
 
     /**
-     * Gets the count of all occupants in a room
+     * A batch listener for {@link RoomLeaveEvent} events, used instead of {@link #deleteOccupant(RoomLeaveEvent)} when batching is enabled.
+     * Leaves are grouped by room. All occupants are deleted in two pipelines, one to read their index entries and one to delete them,
+     * and each room gets a single occupancy update and leave notification no matter how many occupants left it.
+     * @param roomLeaveEvents The leave events drained from the queue
+     * */
+    @Override
+    public void deleteOccupants(List<RoomLeaveEvent> roomLeaveEvents){
+        if(roomLeaveEvents.isEmpty()){
+            return;
+        }
+
+        //Room code -> session ID -> leave event, duplicates of the same leave collapse into one
+        Map<String, Map<String, RoomLeaveEvent>> leavesByRoom = new LinkedHashMap<>();
+        roomLeaveEvents.forEach(event -> leavesByRoom
+                .computeIfAbsent(event.roomCode(), k -> new LinkedHashMap<>())
+                .put(event.sessionId().toString(), event));
+        log.info("Initiating batch deletion of {} occupants across {} rooms", roomLeaveEvents.size(), leavesByRoom.size());
+
+        try {
+            List<String> sessionIds = leavesByRoom.values().stream().flatMap(leaves -> leaves.keySet().stream()).toList();
+            List<String> roomCodes = leavesByRoom.entrySet().stream()
+                    .flatMap(entry -> entry.getValue().keySet().stream().map(sessionId -> entry.getKey()))
+                    .toList();
+            //The minimal schema keeps no index set per occupant, the room code from the leave events is all its keys need
+            List<Object> indexKeys = redisEntityWriter.isMinimalSchema() ? List.of() : redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                sessionIds.forEach(sessionId -> connection.setCommands().sMembers(bytes("occupant:" + sessionId + ":idx")));
+                return null;
+            }, RedisSerializer.byteArray());
+
+            //Presence updates go first so each room's count sits at a known position in the results
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                leavesByRoom.forEach((roomCode, leaves) -> {
+                    byte[] presenceKey = bytes(Occupant.presenceKey(roomCode));
+                    connection.zSetCommands().zRem(presenceKey, leaves.keySet().stream().map(this::bytes).toArray(byte[][]::new));
+                    connection.zSetCommands().zCount(presenceKey, presenceRange());
+                });
+
+                for (int i = 0; i < sessionIds.size(); i++){
+                    @SuppressWarnings("unchecked")
+                    Set<byte[]> occupantIndexKeys = i < indexKeys.size() && indexKeys.get(i) instanceof Set<?> set ? (Set<byte[]>) set : Set.of();
+                    redisEntityWriter.delete(connection, "occupant", sessionIds.get(i), roomCodes.get(i), occupantIndexKeys);
+                }
+                return null;
+            });
+
+            int position = 1;
+            for (Map.Entry<String, Map<String, RoomLeaveEvent>> entry : leavesByRoom.entrySet()){
+                String roomCode = entry.getKey();
+                Map<String, RoomLeaveEvent> leaves = entry.getValue();
+                int count = results.get(position) instanceof Long value ? value.intValue() : -1;
+                position += 2;
+
+                leaves.keySet().forEach(sessionId -> cleanupEmitter(roomCode, sessionId));
+                this.eventPublisher.publishEvent(new OccupancyChangedEvent(roomCode, count));
+                this.eventPublisher.publishEvent(
+                        new RoomEvent(
+                                leaveMessage(leaves.values()),
+                                LocalDateTime.now(),
+                                RoomEventType.ROOM_LEAVE,
+                                roomCode,
+                                null
+                        )
+                ); //One event per room, not per leave
+                log.info("Deleted {} occupants from room: {}. Count after leave: {}", leaves.size(), roomCode, count);
+            }
+        } catch (Exception e) {
+            log.info("An unexpected error occurred while trying to delete a batch of {} occupants", roomLeaveEvents.size(), e);
+            throw new OccupantDeletionException(String.format("An unexpected error occurred while trying to delete a batch of %d occupants", roomLeaveEvents.size()), e);
+        }
+    }
+
+    /**
+     * Gets the count of all occupants in a room.
+     * The count comes from the room's presence set with one command, members that went stale but weren't pruned yet
+     * aren't counted
      * @param roomCode The room code of the room
      * @return The count of all occupants in a room
      * */
     @Override
     public int getOccupantCount(String roomCode){
-        return occupantRepository.findByRoomCode(roomCode).size();
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.zSetCommands().zCount(Occupant.presenceKey(roomCode).getBytes(StandardCharsets.UTF_8), presenceRange())
+        );
+        return count == null ? 0 : count.intValue();
     }
 
     /**
@@ -125,9 +227,11 @@ public class OccupantServiceImpl implements OccupantService {
      * The listener listens for {@link RoomExpiryEvent}, then finds all the occupants in a room
      * and sets their TTL(Time to live) to 2 seconds to allows redis expiration to handle expired values
      *
+     * Consumed from the room's shard, see {@link com.victor.EventDrop.rooms.listeners.RoomShardListener}
+     *
      * @param roomExpiryEvent The event containing metadata relating to room expiry
      * */
-    @RabbitListener(queues = "${room.expiry.queue-name}")
+    @Override
     public void handleRoomExpiry(RoomExpiryEvent roomExpiryEvent){
         String roomCode = roomExpiryEvent.roomCode();
         log.info("Handling room expiry for occupants for room with room code: {}", roomCode);
@@ -139,6 +243,7 @@ public class OccupantServiceImpl implements OccupantService {
 
             if (occupants.isEmpty()) {
                 log.info("No occupants to process found. Returning...");
+                roomExpiryStageMetrics.record(RoomExpiryStage.OCCUPANTS, roomExpiryEvent);
                 return;
             }
 
@@ -148,6 +253,7 @@ public class OccupantServiceImpl implements OccupantService {
                     );
 
             log.info("Successfully expired all occupants in room with room code: {}", roomCode);
+            roomExpiryStageMetrics.record(RoomExpiryStage.OCCUPANTS, roomExpiryEvent);
         }catch (ListenerExecutionFailedException e){
             log.error("Listener execution failed while trying to delete occupants in room with code: {}", roomCode, e);
             throw e;
@@ -159,28 +265,31 @@ public class OccupantServiceImpl implements OccupantService {
 
 
 
+    @Override
+    public String keyspace() {
+        return "occupant";
+    }
+
+    @Override
+    public Class<Occupant> type() {
+        return Occupant.class;
+    }
+
+    @Override
+    public void onKeyExpired(RedisKeyExpiredEvent<Occupant> expiredEvent) {
+        handleSessionExpiry(expiredEvent);
+    }
+
     /**
-     * A listener method that handles Redis key expiration events for occupants.
+     * Handles the expiry of occupant keys, routed here by {@link com.victor.EventDrop.redis.KeyExpiryDispatcher}.
      * When an occupant's key expires in Redis, this method is triggered to
      * delete the corresponding occupant record from the repository.
+     * Room occupancy isn't touched here, stale sessions are pruned from presence in bulk by {@link PresencePruner}.
      *
      * @param expiredEvent The event containing metadata about the expired occupant's key.
      */
-    @EventListener
     public void handleSessionExpiry(RedisKeyExpiredEvent<Occupant> expiredEvent){
-        byte[] keyBytes = expiredEvent.getId();
-
-        if (keyBytes.length == 0) {
-            log.warn("Received Redis expiry event with null or empty key");
-            return;
-        }
-
-        String sessionId = new String(keyBytes, StandardCharsets.UTF_8);
-
-        if (sessionId.length() <= 8){
-            log.warn("Received Redis expiry event with invalid session ID");
-            return;
-        }
+        String sessionId = new String(expiredEvent.getId(), StandardCharsets.UTF_8);
 
         try{
             UUID.fromString(sessionId);
@@ -191,6 +300,7 @@ public class OccupantServiceImpl implements OccupantService {
 
         try {
             occupantRepository.deleteBySessionId(sessionId);
+            sessionRevocationList.revokeSession(sessionId);
             log.info("Successfully deleted expired occupant with session ID: {}", sessionId);
         }catch (Exception e){
             log.error("Failed to delete expired occupant with session ID: {}", sessionId, e);
@@ -198,6 +308,36 @@ public class OccupantServiceImpl implements OccupantService {
 
     }
 
+    //The presence set holds raw session IDs written by the join script, so skip the template's serializers.
+    //Removes the session and returns the room's new occupant count in one round trip
+    private int removeFromOccupancy(String roomCode, String sessionId){
+        byte[] presenceKey = Occupant.presenceKey(roomCode).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zRem(presenceKey, sessionId.getBytes(StandardCharsets.UTF_8));
+            connection.zSetCommands().zCount(presenceKey, presenceRange());
+            return null;
+        });
+
+        return results.size() > 1 && results.get(1) instanceof Long count ? count.intValue() : -1;
+    }
+
+    private String leaveMessage(Collection<RoomLeaveEvent> leaves){
+        if(leaves.size() > MAX_NAMES_PER_LEAVE_MESSAGE){
+            return leaves.size() + " occupants left the room";
+        }
+        return leaves.stream().map(RoomLeaveEvent::occupantName).collect(Collectors.joining(", ")) + " left the room";
+    }
+
+    private byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Everyone seen within the presence window
+    private Range<Double> presenceRange(){
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(sessionConfigProperties.getTtlInSeconds());
+        return Range.rightUnbounded(Range.Bound.inclusive((double) cutoff));
+    }
+
     private synchronized void cleanupEmitter(String roomCode, String session){
         ConcurrentHashMap<String, SseEmitter> map = sseEmitters.get(roomCode);
         if(map != null && !map.isEmpty()){
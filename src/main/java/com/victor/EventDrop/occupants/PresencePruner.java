@@ -0,0 +1,246 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.auth.SessionRevocationList;
+import com.victor.EventDrop.redis.RedisClusterConfigProperties;
+import com.victor.EventDrop.redis.RedisLease;
+import com.victor.EventDrop.rooms.RoomEmitterHandler;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
+import com.victor.EventDrop.rooms.events.RoomEvent;
+import com.victor.EventDrop.rooms.events.RoomEventType;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes sessions that haven't been seen within the presence window from every room's presence set.
+ * Rooms are pruned in bulk on a schedule instead of on every occupant key expiry.
+ * Only the node holding the lease prunes, so every stale session is announced once.
+ * The room's clients can be connected to any node, so the timed out sessions are also published to the other nodes,
+ * which drop their emitters and push the room's new state to their own clients.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PresencePruner implements MessageListener {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final OccupantRepository occupantRepository;
+    private final SessionRevocationList sessionRevocationList;
+    private final SessionConfigProperties sessionConfigProperties;
+    private final RoomEmitterHandler roomEmitterHandler;
+    private final ApplicationEventPublisher eventPublisher;
+    private final RedisClusterConfigProperties redisClusterConfigProperties;
+    private final RedisLease redisLease;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final RoomStateCache roomStateCache;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private static final String LEASE_KEY = "presence-pruner-lease";
+    private static final String PRUNED_CHANNEL = "presence-pruned";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final DefaultRedisScript<List<Object>> PRUNE_PRESENCE_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/prune-presence.lua"), (Class<List<Object>>) (Class) List.class);
+
+    private static final DefaultRedisScript<Long> FOLD_LEGACY_PRESENCE_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/fold-legacy-presence.lua"), Long.class);
+
+    @PostConstruct
+    public void subscribe(){
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(PRUNED_CHANNEL));
+    }
+
+    @Scheduled(fixedDelayString = "${session.presence-prune-interval-in-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void prune(){
+        if(!acquireLease()){
+            return;
+        }
+
+        Set<byte[]> rooms = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.setCommands().sMembers(Occupant.PRESENCE_ROOMS_KEY.getBytes(StandardCharsets.UTF_8))
+        );
+
+        if(rooms == null || rooms.isEmpty()){
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(sessionConfigProperties.getTtlInSeconds());
+        int pruned = 0;
+        for (byte[] room : rooms){
+            String roomCode = new String(room, StandardCharsets.UTF_8);
+            try{
+                pruned += pruneRoom(roomCode, cutoff);
+            }catch (Exception e){
+                log.error("Failed to prune presence of room: {}", roomCode, e);
+            }
+        }
+
+        if(pruned > 0){
+            log.info("Pruned {} stale sessions across {} rooms", pruned, rooms.size());
+        }
+    }
+
+    /**
+     * Prunes one room's presence set and announces the sessions that timed out.
+     *
+     * @param roomCode The room code of the room
+     * @param cutoff Sessions last seen before this epoch millis are stale
+     * @return The amount of stale sessions removed
+     * */
+    int pruneRoom(String roomCode, long cutoff){
+        if(!redisClusterConfigProperties.isEnabled()){
+            foldLegacyPresence(roomCode);
+        }
+
+        List<Object> result = redisTemplate.execute(
+                PRUNE_PRESENCE_SCRIPT, RedisSerializer.byteArray(), rawResult(),
+                List.of(Occupant.presenceKey(roomCode)), String.valueOf(cutoff).getBytes(StandardCharsets.UTF_8)
+        );
+
+        if(result == null || result.isEmpty()){
+            return 0;
+        }
+
+        //The room expired. The rooms index lives in another slot, so it's cleaned up outside the script
+        if(result.size() == 1 && (Long) result.get(0) < 0){
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.setCommands().sRem(Occupant.PRESENCE_ROOMS_KEY.getBytes(StandardCharsets.UTF_8), roomCode.getBytes(StandardCharsets.UTF_8))
+            );
+            return 0;
+        }
+
+        if(result.size() == 1){
+            return 0;
+        }
+
+        int remaining = ((Long) result.get(0)).intValue();
+        List<UUID> stale = new ArrayList<>(result.size() - 1);
+        for (int i = 1; i < result.size(); i++){
+            String sessionId = new String((byte[]) result.get(i), StandardCharsets.UTF_8);
+            try{
+                stale.add(UUID.fromString(sessionId));
+            }catch (IllegalArgumentException e){
+                log.warn("Pruned invalid session ID: {} from room: {}", sessionId, roomCode);
+            }
+        }
+
+        //Most of these hashes expired already, this clears whatever index entries they left behind
+        occupantRepository.deleteAllById(stale);
+        stale.forEach(sessionId -> sessionRevocationList.revokeSession(sessionId.toString()));
+        eventPublisher.publishEvent(new OccupancyChangedEvent(roomCode, remaining));
+        announce(roomCode, stale);
+        publishToOtherNodes(roomCode, stale);
+
+        log.info("Pruned {} stale sessions from room: {}. {} left", result.size() - 1, roomCode, remaining);
+        return result.size() - 1;
+    }
+
+    /**
+     * Drops the emitters of sessions another node pruned and pushes the room's new state to this node's clients.
+     * Messages are node id|room code|session id,session id...
+     * */
+    @Override
+    public void onMessage(Message message, byte[] pattern){
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if(parts.length < 3 || parts[0].equals(nodeId)){
+            return;
+        }
+
+        List<UUID> stale = new ArrayList<>();
+        for (String sessionId : parts[2].split(",")){
+            try{
+                stale.add(UUID.fromString(sessionId));
+            }catch (IllegalArgumentException e){
+                log.warn("Got invalid pruned session ID: {} for room: {}", sessionId, parts[1]);
+            }
+        }
+
+        //The room's occupancy changed on the pruning node, this node's view of it is out of date
+        roomStateCache.invalidate(parts[1]);
+        announce(parts[1], stale);
+    }
+
+    //Tells this node's clients in the room that the sessions timed out
+    private void announce(String roomCode, List<UUID> stale){
+        stale.forEach(sessionId -> roomEmitterHandler.removeEmitter(roomCode, sessionId.toString()));
+        eventPublisher.publishEvent(
+                new RoomEvent(
+                        stale.size() + " occupant(s) timed out",
+                        LocalDateTime.now(),
+                        RoomEventType.ROOM_LEAVE,
+                        roomCode,
+                        null
+                )
+        );
+    }
+
+    private void publishToOtherNodes(String roomCode, List<UUID> stale){
+        if(stale.isEmpty()){
+            return;
+        }
+
+        StringJoiner sessionIds = new StringJoiner(",");
+        stale.forEach(sessionId -> sessionIds.add(sessionId.toString()));
+        byte[] channel = PRUNED_CHANNEL.getBytes(StandardCharsets.UTF_8);
+        byte[] message = (nodeId + "|" + roomCode + "|" + sessionIds).getBytes(StandardCharsets.UTF_8);
+        try{
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+        }catch (Exception e){
+            //Their clients catch up on the room's next event
+            log.warn("Failed to publish the pruned sessions of room: {} to the other nodes", roomCode, e);
+        }
+    }
+
+    //Presence sets from before the hash tags, and ones nodes that aren't upgraded yet still write, join the tagged set before it's pruned
+    private void foldLegacyPresence(String roomCode){
+        Long folded = redisTemplate.execute(FOLD_LEGACY_PRESENCE_SCRIPT, List.of(Occupant.legacyPresenceKey(roomCode), Occupant.presenceKey(roomCode)));
+        if(folded != null && folded > 0){
+            log.info("Folded {} sessions of room: {} from its presence set without a hash tag", folded, roomCode);
+        }
+    }
+
+    //The lease outlives one interval slightly, so a slow node doesn't overlap the next holder
+    private boolean acquireLease(){
+        Duration leaseTtl = Duration.ofSeconds(sessionConfigProperties.getPresencePruneIntervalInSeconds()).plusSeconds(5);
+        return redisLease.acquire(LEASE_KEY, nodeId, leaseTtl);
+    }
+
+    //Script replies are read as raw bytes, whatever type the script declares
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> rawResult(){
+        return (RedisSerializer<T>) RedisSerializer.byteArray();
+    }
+
+    private static String loadScript(String path){
+        try{
+            return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to load script: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.victor.EventDrop.rabbitmq;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes events with an {@link EventSchema} as a tag, a schema version and the event's fields, without type headers or field names.
+ * Every other payload, and compact events while writing them is off, goes through the fallback converter.
+ * Both formats are always read, by content type, so nodes can be rolled onto compact writes one at a time
+ * once every node reads them. The event type comes from the payload, not the listener's inferred type.
+ */
+public class CompactMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-eventdrop-compact";
+
+    private final MessageConverter fallback;
+    private final boolean writeCompact;
+    private final Map<Class<?>, EventSchema<?>> schemasByType = new HashMap<>();
+    private final Map<Integer, EventSchema<?>> schemasByTag = new HashMap<>();
+
+    public CompactMessageConverter(MessageConverter fallback, List<EventSchema<?>> eventSchemas, boolean writeCompact) {
+        this.fallback = fallback;
+        this.writeCompact = writeCompact;
+        for (EventSchema<?> schema : eventSchemas){
+            if(schemasByTag.putIfAbsent(schema.tag(), schema) != null){
+                throw new IllegalStateException("Event schema tag: " + schema.tag() + " is used twice");
+            }
+            schemasByType.put(schema.type(), schema);
+        }
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        EventSchema<?> schema = writeCompact ? schemasByType.get(object.getClass()) : null;
+        if(schema == null){
+            return fallback.toMessage(object, messageProperties);
+        }
+
+        byte[] body = encode(schema, object);
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        if(!CONTENT_TYPE.equals(message.getMessageProperties().getContentType())){
+            return fallback.fromMessage(message);
+        }
+
+        try{
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getBody()));
+            int tag = EventSchema.readVarInt(in);
+            int version = EventSchema.readVarInt(in);
+            EventSchema<?> schema = schemasByTag.get(tag);
+            if(schema == null){
+                throw new MessageConversionException("Unknown event schema tag: " + tag);
+            }
+            return schema.read(version, in);
+        }catch (IOException e){
+            throw new MessageConversionException("Failed to read compact event", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> byte[] encode(EventSchema<T> schema, Object event){
+        try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            EventSchema.writeVarInt(out, schema.tag());
+            EventSchema.writeVarInt(out, schema.version());
+            schema.write((T) event, out);
+            return bytes.toByteArray();
+        }catch (IOException e){
+            throw new MessageConversionException("Failed to write compact event: " + schema.type().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.victor.EventDrop.rabbitmq;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes events to RabbitMQ without holding up the caller on the broker.
+ * {@link #publish} only converts the event and buffers it in its lane, one lane per exchange and routing key.
+ * Every batch window the lanes' next events go out together on one channel, and each is tracked until the broker confirms it.
+ * A lane only has one event out at a time, the next is sent once it's confirmed, so the broker gets each lane's events in the order they were published.
+ * Nacked events, events that failed to send and events left unconfirmed past the confirm timeout are sent again in the background,
+ * holding their lane until then. Events are delivered at least once, an event only gives up its place once it's dropped after max attempts.
+ * The buffer is bounded, once it's full new events are dropped and counted rather than blocked on.
+ * Without publisher confirms on the connection factory an event counts as confirmed once it's sent.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class ConfirmedEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitPublisherConfigProperties rabbitPublisherConfigProperties;
+    private final boolean confirmsEnabled;
+
+    //Exchange and routing key -> events waiting to be sent or confirmed, in publish order. One per routing key this node publishes to
+    private final ConcurrentHashMap<LaneKey, Lane> lanes = new ConcurrentHashMap<>();
+    //Correlation ID -> events sent but not confirmed yet
+    private final ConcurrentHashMap<String, PendingEvent> unconfirmed = new ConcurrentHashMap<>();
+    //Every event on this node that isn't confirmed yet, wherever it is. Bounded by the buffer capacity
+    private final AtomicInteger held = new AtomicInteger();
+
+    @Getter
+    private final AtomicLong confirmed = new AtomicLong();
+    @Getter
+    private final AtomicLong redelivered = new AtomicLong();
+    @Getter
+    private final AtomicLong dropped = new AtomicLong();
+
+    public ConfirmedEventPublisher(@Qualifier("publisherRabbitTemplate") RabbitTemplate rabbitTemplate,
+                                   RabbitPublisherConfigProperties rabbitPublisherConfigProperties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.rabbitPublisherConfigProperties = rabbitPublisherConfigProperties;
+        this.confirmsEnabled = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+        if(!confirmsEnabled){
+            log.warn("Publisher confirms are off, events count as delivered once they're sent");
+        }
+    }
+
+    /**
+     * Buffers an event to be sent in the next batch. Never waits on the broker.
+     *
+     * @param exchange The exchange to publish to
+     * @param routingKey The routing key
+     * @param event The event, converted with the template's message converter
+     * @return False if the buffer is full and the event was dropped
+     * */
+    public boolean publish(String exchange, String routingKey, Object event){
+        return enqueue(exchange, routingKey, event) != null;
+    }
+
+    /**
+     * Buffers an event like {@link #publish}, for callers that have to know once the broker has it, e.g. to ack what it was moved from.
+     *
+     * @param exchange The exchange to publish to
+     * @param routingKey The routing key
+     * @param event The event, converted with the template's message converter
+     * @return Completes with true once the event is confirmed, or false once it's dropped: buffer full, unroutable or out of attempts
+     * */
+    public CompletableFuture<Boolean> publishConfirmed(String exchange, String routingKey, Object event){
+        PendingEvent pending = enqueue(exchange, routingKey, event);
+        return pending == null ? CompletableFuture.completedFuture(false) : pending.confirmation();
+    }
+
+    //Null if the buffer is full and the event was dropped
+    private PendingEvent enqueue(String exchange, String routingKey, Object event){
+        if(held.incrementAndGet() > rabbitPublisherConfigProperties.getBufferCapacity()){
+            held.decrementAndGet();
+            dropped.incrementAndGet();
+            log.error("Publisher buffer is full, dropping event for exchange: {}, routing key: {}", exchange, routingKey);
+            return null;
+        }
+
+        String id = UUID.randomUUID().toString();
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setMessageId(id);
+        //Consumers measure their lag from it
+        messageProperties.setTimestamp(new Date());
+        Message message = rabbitTemplate.getMessageConverter().toMessage(event, messageProperties);
+        PendingEvent pending = new PendingEvent(id, exchange, routingKey, message, 1, 0, new CompletableFuture<>());
+        lanes.computeIfAbsent(new LaneKey(exchange, routingKey), key -> new Lane()).add(pending);
+        return pending;
+    }
+
+    /**
+     * Sends the next event of every lane that has none out, up to a batch, on one channel.
+     * A lane whose event is confirmed while the batch goes out has its next one sent in the same batch.
+     * */
+    @Scheduled(fixedDelayString = "${spring.rabbitmq.publisher.batch-window-in-millis:10}")
+    public void flush(){
+        if(lanes.values().stream().noneMatch(Lane::isReady)){
+            return;
+        }
+
+        try{
+            rabbitTemplate.invoke(operations -> {
+                int sent = 0;
+                boolean progressed = true;
+                while (progressed && sent < rabbitPublisherConfigProperties.getBatchSize()){
+                    progressed = false;
+                    for (Lane lane : lanes.values()){
+                        PendingEvent event = sent < rabbitPublisherConfigProperties.getBatchSize() ? lane.take() : null;
+                        if(event != null){
+                            send(operations, event);
+                            sent++;
+                            progressed = true;
+                        }
+                    }
+                }
+                return null;
+            });
+        }catch (Exception e){
+            //The channel couldn't be opened, or failed midway. What was taken is timed out and sent again
+            log.error("Failed to publish a batch of events", e);
+        }
+    }
+
+    /**
+     * Times out events that went unconfirmed for too long, and lets lanes held by a nacked, unsent or timed out event send it again.
+     * */
+    @Scheduled(fixedDelayString = "${spring.rabbitmq.publisher.redelivery-interval-in-millis:1000}")
+    public void redeliver(){
+        long timedOutBefore = System.currentTimeMillis() - rabbitPublisherConfigProperties.getConfirmTimeoutInMillis();
+        unconfirmed.forEach((id, event) -> {
+            if(event.sentAt() < timedOutBefore && unconfirmed.remove(id, event)){
+                log.warn("Event: {} wasn't confirmed within {}ms", id, rabbitPublisherConfigProperties.getConfirmTimeoutInMillis());
+                retry(event);
+            }
+        });
+
+        for (Lane lane : lanes.values()){
+            if(lane.resume()){
+                redelivered.incrementAndGet();
+            }
+        }
+    }
+
+    //Sends what's left before the connection goes away, waiting up to the confirm timeout. What's still held then is lost with the node
+    @PreDestroy
+    public void close(){
+        long deadline = System.currentTimeMillis() + rabbitPublisherConfigProperties.getConfirmTimeoutInMillis();
+        while (held.get() > 0 && System.currentTimeMillis() < deadline){
+            redeliver();
+            flush();
+            try{
+                Thread.sleep(rabbitPublisherConfigProperties.getBatchWindowInMillis());
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if(held.get() > 0){
+            log.error("Shutting down with {} events not confirmed", held.get());
+        }
+    }
+
+    //Events on this node that aren't confirmed yet
+    public int getHeld(){
+        return held.get();
+    }
+
+    //Tracks the event before sending it, its confirm can come back before send returns
+    private void send(RabbitOperations operations, PendingEvent event){
+        PendingEvent sent = event.sentAt(System.currentTimeMillis());
+        CorrelationData correlationData = new CorrelationData(event.id());
+        unconfirmed.put(event.id(), sent);
+
+        try{
+            operations.send(event.exchange(), event.routingKey(), event.message(), correlationData);
+        }catch (RuntimeException e){
+            if(unconfirmed.remove(event.id(), sent)){
+                log.warn("Failed to send event: {}", event.id(), e);
+                retry(event);
+            }
+            return;
+        }
+
+        if(!confirmsEnabled){
+            onConfirm(sent, correlationData, new CorrelationData.Confirm(true, null), null);
+            return;
+        }
+        correlationData.getFuture().whenComplete((confirm, e) -> onConfirm(sent, correlationData, confirm, e));
+    }
+
+    private void onConfirm(PendingEvent event, CorrelationData correlationData, CorrelationData.Confirm confirm, Throwable e){
+        String id = event.id();
+        //Already timed out, a late confirm of an earlier send isn't this one's
+        if(!unconfirmed.remove(id, event)){
+            return;
+        }
+
+        if(e != null || confirm == null || !confirm.isAck()){
+            log.warn("Event: {} was nacked. Cause: {}", id, e != null ? e.getMessage() : confirm == null ? null : confirm.getReason());
+            retry(event);
+            return;
+        }
+
+        //A returned event was confirmed but routed nowhere, sending it again won't route it
+        ReturnedMessage returned = correlationData.getReturned();
+        if(returned != null){
+            log.error("Event: {} couldn't be routed by exchange: {}, routing key: {}. Reply: {}",
+                    id, returned.getExchange(), returned.getRoutingKey(), returned.getReplyText());
+            settle(event, false);
+            return;
+        }
+
+        settle(event, true);
+    }
+
+    //Keeps the event at the head of its lane until the next redelivery, or gives up its place once it's out of attempts
+    private void retry(PendingEvent event){
+        if(event.attempts() >= rabbitPublisherConfigProperties.getMaxAttempts()){
+            log.error("Dropping event: {} for exchange: {} after {} attempts", event.id(), event.exchange(), event.attempts());
+            settle(event, false);
+            return;
+        }
+        lane(event).hold(event.retried());
+    }
+
+    private Lane lane(PendingEvent event){
+        return lanes.get(new LaneKey(event.exchange(), event.routingKey()));
+    }
+
+    //The event is confirmed or dropped. It gives up its place in its lane and its slot in the buffer
+    private void settle(PendingEvent event, boolean delivered){
+        lane(event).pass();
+        held.decrementAndGet();
+        (delivered ? confirmed : dropped).incrementAndGet();
+        event.confirmation().complete(delivered);
+    }
+
+    private record LaneKey(String exchange, String routingKey) {}
+
+    //A lane's events in publish order. Its head is out or waiting to be sent again until it's confirmed or dropped
+    private static final class Lane {
+
+        private final ArrayDeque<PendingEvent> events = new ArrayDeque<>();
+        private boolean sending;
+        private boolean waiting;
+
+        synchronized void add(PendingEvent event){
+            events.addLast(event);
+        }
+
+        synchronized boolean isReady(){
+            return !sending && !waiting && !events.isEmpty();
+        }
+
+        //The head to send, or null while it's out or waiting for a redelivery
+        synchronized PendingEvent take(){
+            if(!isReady()){
+                return null;
+            }
+            sending = true;
+            return events.peekFirst();
+        }
+
+        //The head was confirmed or dropped, the next event can go
+        synchronized void pass(){
+            events.pollFirst();
+            sending = false;
+        }
+
+        //The head failed, it stays first and waits for the next redelivery
+        synchronized void hold(PendingEvent retried){
+            events.pollFirst();
+            events.addFirst(retried);
+            sending = false;
+            waiting = true;
+        }
+
+        //Lets a held head be sent again. True if the lane was held
+        synchronized boolean resume(){
+            boolean held = waiting;
+            waiting = false;
+            return held;
+        }
+    }
+
+    //The confirmation is shared by every send of the event
+    private record PendingEvent(String id, String exchange, String routingKey, Message message, int attempts, long sentAt,
+                                CompletableFuture<Boolean> confirmation) {
+
+        PendingEvent sentAt(long sentAt){
+            return new PendingEvent(id, exchange, routingKey, message, attempts, sentAt, confirmation);
+        }
+
+        PendingEvent retried(){
+            return new PendingEvent(id, exchange, routingKey, message, attempts + 1, 0, confirmation);
+        }
+    }
+}
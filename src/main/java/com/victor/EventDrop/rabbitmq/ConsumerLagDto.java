@@ -0,0 +1,15 @@
+package com.victor.EventDrop.rabbitmq;
+
+import java.util.List;
+
+public record ConsumerLagDto(
+        String listenerId,
+        List<String> queues,
+        long depth,
+        long consumers,
+        long received,
+        long lastLagInMillis,
+        long averageLagInMillis,
+        long maxLagInMillis
+) {
+}
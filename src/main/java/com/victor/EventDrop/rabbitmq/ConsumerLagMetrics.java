@@ -0,0 +1,102 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consumer lag of each listener container on this node.
+ * The lag of a message is how long after it was published it was received, from the timestamp {@link ConfirmedEventPublisher} stamps.
+ * Messages coming back from a retry tier aren't counted, their wait was on purpose.
+ * The depth and consumer count of each container's queues, across all nodes, are sampled from the broker while the amqp transport is used.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class ConsumerLagMetrics {
+
+    private final AmqpAdmin amqpAdmin;
+
+    //Listener ID -> its container's lag
+    private final Map<String, Lag> lags = new ConcurrentHashMap<>();
+
+    public void register(String listenerId, String... queues){
+        lags.computeIfAbsent(listenerId, k -> new Lag(List.of(queues)));
+    }
+
+    //Called as each message is received, before the listener runs
+    public void record(String listenerId, Message message){
+        Date timestamp = message.getMessageProperties().getTimestamp();
+        Lag lag = lags.get(listenerId);
+        if(lag == null || timestamp == null || message.getMessageProperties().getHeader(TieredRetryRecoverer.ATTEMPT_HEADER) != null){
+            return;
+        }
+        lag.record(Math.max(0, System.currentTimeMillis() - timestamp.getTime()));
+    }
+
+    @Scheduled(fixedDelayString = "${spring.rabbitmq.containers.lag-sample-interval-in-millis:10000}")
+    public void sample(){
+        lags.forEach((listenerId, lag) -> {
+            long depth = 0, consumers = 0;
+            try{
+                for (String queue : lag.queues){
+                    QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                    if(info != null){
+                        depth += info.getMessageCount();
+                        consumers += info.getConsumerCount();
+                    }
+                }
+                lag.depth = depth;
+                lag.consumers = consumers;
+            }catch (Exception e){
+                log.warn("Failed to sample the queues of listener: {}", listenerId, e);
+            }
+        });
+    }
+
+    public List<ConsumerLagDto> metrics(){
+        return lags.entrySet().stream()
+                .map(entry -> entry.getValue().toDto(entry.getKey()))
+                .toList();
+    }
+
+    private static class Lag {
+        private final List<String> queues;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong last = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        //As of the last sample
+        private volatile long depth;
+        private volatile long consumers;
+
+        Lag(List<String> queues){
+            this.queues = queues;
+        }
+
+        void record(long lag){
+            received.increment();
+            total.add(lag);
+            last.set(lag);
+            max.accumulateAndGet(lag, Math::max);
+        }
+
+        ConsumerLagDto toDto(String listenerId){
+            long count = received.sum();
+            return new ConsumerLagDto(listenerId, queues, depth, consumers, count, last.get(), count == 0 ? 0 : total.sum() / count, max.get());
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.victor.EventDrop.rabbitmq;
+
+public record DuplicateMetricsDto(
+        String queue,
+        long suppressed,
+        long suppressedLocally,
+        long deferred
+) {
+}
@@ -0,0 +1,87 @@
+package com.victor.EventDrop.rabbitmq;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * The compact wire schema of one event type, see {@link CompactMessageConverter}.
+ * A new version may only append fields, so a reader skips the fields of versions newer than its own
+ * and fills in defaults for the fields older versions don't have. Any other change needs a new tag.
+ *
+ * @param <T> The event type
+ */
+public interface EventSchema<T> {
+
+    //Identifies the event type on the wire, never reused for another type
+    int tag();
+
+    Class<T> type();
+
+    //The version written, every older one can still be read
+    int version();
+
+    void write(T event, DataOutput out) throws IOException;
+
+    /**
+     * @param version The version the event was written with, may be newer than {@link #version()}
+     * @param in The event's fields, positioned after the tag and version
+     * */
+    T read(int version, DataInput in) throws IOException;
+
+    //Length prefixed, 0 for null
+    static void writeString(DataOutput out, String value) throws IOException {
+        if(value == null){
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if(length == 0){
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeUuid(DataOutput out, UUID value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null){
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    static UUID readUuid(DataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    //Seven bits a byte, lowest first. Small values take one byte
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0){
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("Malformed var int");
+    }
+}
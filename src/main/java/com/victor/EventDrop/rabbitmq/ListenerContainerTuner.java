@@ -0,0 +1,58 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.config.ContainerCustomizer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets up each listener container from its entry in spring.rabbitmq.containers.listeners, keyed by the @RabbitListener's id.
+ * Every container gets its own executor, so a slow queue's consumers can't take threads from another queue's,
+ * and its received messages are timed by {@link ConsumerLagMetrics}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class ListenerContainerTuner implements ContainerCustomizer<SimpleMessageListenerContainer> {
+
+    private final RabbitContainerConfigProperties rabbitContainerConfigProperties;
+    private final ConsumerLagMetrics consumerLagMetrics;
+
+    @Override
+    public void configure(SimpleMessageListenerContainer container) {
+        String listenerId = container.getListenerId();
+
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(listenerId + "-");
+        executor.setVirtualThreads(true);
+        container.setTaskExecutor(executor);
+
+        consumerLagMetrics.register(listenerId, container.getQueueNames());
+        container.addAfterReceivePostProcessors(message -> {
+            consumerLagMetrics.record(listenerId, message);
+            return message;
+        });
+
+        RabbitContainerConfigProperties.Container settings = rabbitContainerConfigProperties.getListeners().get(listenerId);
+        if(settings == null){
+            return;
+        }
+
+        //The max goes first, it can't be set below the current consumer count
+        container.setMaxConcurrentConsumers(Math.max(settings.getMaxConcurrentConsumers(), settings.getConcurrentConsumers()));
+        container.setConcurrentConsumers(settings.getConcurrentConsumers());
+        container.setPrefetchCount(settings.getPrefetchCount());
+        container.setBatchSize(settings.getBatchSize());
+        container.setReceiveTimeout(settings.getReceiveTimeoutInMillis());
+        container.setConsecutiveActiveTrigger(settings.getConsecutiveActiveTrigger());
+        container.setConsecutiveIdleTrigger(settings.getConsecutiveIdleTrigger());
+        container.setStartConsumerMinInterval(settings.getStartConsumerMinIntervalInMillis());
+        container.setStopConsumerMinInterval(settings.getStopConsumerMinIntervalInMillis());
+        log.info("Listener: {} on {} runs {}-{} consumers with a prefetch of {} and batches of {}",
+                listenerId, container.getQueueNames(), settings.getConcurrentConsumers(), settings.getMaxConcurrentConsumers(),
+                settings.getPrefetchCount(), settings.getBatchSize());
+    }
+}
@@ -0,0 +1,232 @@
+package com.victor.EventDrop.rabbitmq;
+
+import com.victor.EventDrop.redis.RedisLease;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Skips messages a queue's listener already handled, by the message ID {@link ConfirmedEventPublisher} stamps.
+ * Sits in the listener containers' advice chain, inside the retry advice, so it sees each attempt.
+ * A message is claimed in redis with SET NX before its listener runs and marked done for the dedup window once it succeeds,
+ * a failure releases the claim if this node still holds it, see {@link RedisLease#release(String, String)}.
+ * Claims and done marks are written as plain strings, so the release can compare the holder in a script.
+ * A redelivery of a done message is acked without running the listener. A redelivery of one that's still being handled,
+ * usually after a consumer timeout, fails and goes through the retry path, by the time it's back the first is done or released.
+ * Done IDs are also kept in a bounded local set, oldest out first, so duplicates landing on the node that handled them don't reach redis.
+ * If redis can't be reached messages are handled, a duplicate beats a lost event.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class MessageDeduplicator implements MethodInterceptor {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RabbitDedupConfigProperties rabbitDedupConfigProperties;
+    private final RedisLease redisLease;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    //Listener threads of every queue check it, so it's lock free. The order queue evicts the oldest IDs past the size limit
+    private final Set<String> handled = ConcurrentHashMap.newKeySet();
+    private final Queue<String> handledOrder = new ConcurrentLinkedQueue<>();
+    //Queue -> its suppressed duplicates
+    private final Map<String, Duplicates> duplicates = new ConcurrentHashMap<>();
+
+    private static final byte[] DONE = "done".getBytes(StandardCharsets.UTF_8);
+    private static final String KEY_PREFIX = "dedup:";
+
+    //The container calls its listener with the channel and a message, or a list of them for batch listeners
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if(!rabbitDedupConfigProperties.isEnabled() || arguments.length < 2){
+            return invocation.proceed();
+        }
+
+        List<Message> claimed = new ArrayList<>();
+        try{
+            if(arguments[1] instanceof Message message){
+                if(!claim(message)){
+                    return null;
+                }
+                claimed.add(message);
+            }else if(arguments[1] instanceof List<?> messages){
+                for (Object data : messages){
+                    if(data instanceof Message message && claim(message)){
+                        claimed.add(message);
+                    }
+                }
+                if(claimed.isEmpty()){
+                    return null;
+                }
+                //Only the batch's first deliveries reach the listener, the whole batch is still acked
+                arguments[1] = claimed;
+            }else {
+                return invocation.proceed();
+            }
+
+            Object result = invocation.proceed();
+            claimed.forEach(this::complete);
+            return result;
+        }catch (Throwable t){
+            claimed.forEach(this::release);
+            throw t;
+        }
+    }
+
+    /**
+     * Claims a message for this delivery.
+     *
+     * @param message The delivered message
+     * @return True if the listener should handle it, false if it's a duplicate of a handled message
+     * @throws AmqpException If another delivery of it is still being handled
+     * */
+    public boolean claim(Message message){
+        String queue = message.getMessageProperties().getConsumerQueue();
+        String messageId = message.getMessageProperties().getMessageId();
+        if(messageId == null || queue == null){
+            return true;
+        }
+
+        String key = key(queue, messageId);
+        if(handled.contains(key)){
+            duplicatesOf(queue).suppressedLocally.increment();
+            return false;
+        }
+
+        try{
+            byte[] rawKey = bytes(KEY_PREFIX + key);
+            Expiration claimTimeout = Expiration.from(Duration.ofSeconds(rabbitDedupConfigProperties.getClaimTimeoutInSeconds()));
+            Claim claim = redisTemplate.execute((RedisCallback<Claim>) connection -> {
+                Boolean acquired = connection.stringCommands().set(rawKey, bytes(nodeId), claimTimeout, RedisStringCommands.SetOption.SET_IF_ABSENT);
+                return Boolean.TRUE.equals(acquired) ? new Claim(true, null) : new Claim(false, connection.stringCommands().get(rawKey));
+            });
+            if(claim == null || claim.acquired()){
+                return true;
+            }
+
+            if(Arrays.equals(DONE, claim.holder())){
+                remember(key);
+                duplicatesOf(queue).suppressed.increment();
+                return false;
+            }
+        }catch (RuntimeException e){
+            log.warn("Failed to check message: {} from queue: {} for duplicates, handling it. Cause: {}", messageId, queue, e.getMessage());
+            return true;
+        }
+
+        duplicatesOf(queue).deferred.increment();
+        throw new AmqpException("Message: " + messageId + " from queue: " + queue + " is still being handled");
+    }
+
+    public void complete(Message message){
+        String key = keyOf(message);
+        if(key == null){
+            return;
+        }
+
+        remember(key);
+        byte[] rawKey = bytes(KEY_PREFIX + key);
+        try{
+            redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.stringCommands().set(rawKey, DONE, Expiration.from(window()), RedisStringCommands.SetOption.UPSERT));
+        }catch (RuntimeException e){
+            log.warn("Failed to mark message: {} as handled. Cause: {}", key, e.getMessage());
+        }
+    }
+
+    public void release(Message message){
+        String key = keyOf(message);
+        if(key == null){
+            return;
+        }
+
+        try{
+            //Only this node's own claim, not a done mark or a claim another node took after this one timed out
+            redisLease.release(KEY_PREFIX + key, nodeId);
+        }catch (RuntimeException e){
+            //The claim times out on its own
+            log.warn("Failed to release message: {}. Cause: {}", key, e.getMessage());
+        }
+    }
+
+    public List<DuplicateMetricsDto> metrics(){
+        return duplicates.entrySet().stream()
+                .map(entry -> new DuplicateMetricsDto(
+                        entry.getKey(),
+                        entry.getValue().suppressed.sum() + entry.getValue().suppressedLocally.sum(),
+                        entry.getValue().suppressedLocally.sum(),
+                        entry.getValue().deferred.sum()
+                ))
+                .toList();
+    }
+
+    private String keyOf(Message message){
+        String queue = message.getMessageProperties().getConsumerQueue();
+        String messageId = message.getMessageProperties().getMessageId();
+        return messageId == null || queue == null ? null : key(queue, messageId);
+    }
+
+    //The same event fans out to several queues under one ID, each queue's listener handles it once
+    private String key(String queue, String messageId){
+        return queue + ":" + messageId;
+    }
+
+    private void remember(String key){
+        if(handled.add(key)){
+            handledOrder.add(key);
+        }
+        while (handled.size() > rabbitDedupConfigProperties.getLocalCacheSize()){
+            String oldest = handledOrder.poll();
+            if(oldest == null){
+                break;
+            }
+            handled.remove(oldest);
+        }
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Duration window(){
+        return Duration.ofSeconds(rabbitDedupConfigProperties.getWindowInSeconds());
+    }
+
+    private Duplicates duplicatesOf(String queue){
+        return duplicates.computeIfAbsent(queue, k -> new Duplicates());
+    }
+
+    //Whether this delivery claimed the message, and if not who holds it: a node ID or done
+    record Claim(boolean acquired, byte[] holder) {
+    }
+
+    private static class Duplicates {
+        private final LongAdder suppressed = new LongAdder();
+        private final LongAdder suppressedLocally = new LongAdder();
+        private final LongAdder deferred = new LongAdder();
+    }
+}
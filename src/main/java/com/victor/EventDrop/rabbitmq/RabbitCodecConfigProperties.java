@@ -0,0 +1,15 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.rabbitmq.codec")
+public class RabbitCodecConfigProperties {
+    //Writes room events compact instead of JSON. Every node reads both, only turn it on once no node older than the compact reader is left
+    private boolean writeCompact = false;
+}
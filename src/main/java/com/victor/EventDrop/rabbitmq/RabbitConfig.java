@@ -3,15 +3,22 @@ package com.victor.EventDrop.rabbitmq;
 import com.azure.storage.common.policy.RetryPolicyType;
 import com.victor.EventDrop.filedrops.client.FileDropStorageClient;
 import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.configproperties.RoomLeaveConfigProperties;
+import com.victor.EventDrop.rooms.configproperties.RoomShardConfigProperties;
 import lombok.RequiredArgsConstructor;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
 import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -28,9 +35,11 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 
 @Configuration
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
 public class RabbitConfig {
 
     private final RabbitConfigProperties rabbitConfigProperties;
@@ -42,7 +51,24 @@ public class RabbitConfig {
 
     @Bean
     public Jackson2JsonMessageConverter jackson2JsonMessageConverter(){
-        return new Jackson2JsonMessageConverter();
+        Jackson2JsonMessageConverter jackson2JsonMessageConverter = new Jackson2JsonMessageConverter();
+        //Consumers dedupe by it, see MessageDeduplicator
+        jackson2JsonMessageConverter.setCreateMessageIds(true);
+        return jackson2JsonMessageConverter;
+    }
+
+    /**
+     * The converter of every template and listener factory. Events with a schema are written compact once
+     * spring.rabbitmq.codec.write-compact is on, everything else goes out as JSON. Both are always read.
+     * */
+    @Bean
+    @Primary
+    public CompactMessageConverter compactMessageConverter(Jackson2JsonMessageConverter jackson2JsonMessageConverter,
+                                                           List<EventSchema<?>> eventSchemas,
+                                                           RabbitCodecConfigProperties rabbitCodecConfigProperties){
+        CompactMessageConverter compactMessageConverter = new CompactMessageConverter(jackson2JsonMessageConverter, eventSchemas, rabbitCodecConfigProperties.isWriteCompact());
+        compactMessageConverter.setCreateMessageIds(true);
+        return compactMessageConverter;
     }
 
     @Bean
@@ -59,32 +85,129 @@ public class RabbitConfig {
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(CachingConnectionFactory cachingConnectionFactory, Jackson2JsonMessageConverter jackson2JsonMessageConverter, RetryTemplate rabbitRetryTemplate){
+    @Primary
+    public RabbitTemplate rabbitTemplate(CachingConnectionFactory cachingConnectionFactory, CompactMessageConverter compactMessageConverter, RetryTemplate rabbitRetryTemplate){
         RabbitTemplate rabbitTemplate = new RabbitTemplate(cachingConnectionFactory);
-        rabbitTemplate.setMessageConverter(jackson2JsonMessageConverter);
+        rabbitTemplate.setMessageConverter(compactMessageConverter);
         rabbitTemplate.setReplyTimeout(replyTimeout);
         rabbitTemplate.setRetryTemplate(rabbitRetryTemplate);
         rabbitTemplate.setTaskExecutor(asyncTaskExecutor);
         return rabbitTemplate;
     }
 
+    /**
+     * The template behind {@link ConfirmedEventPublisher}. It has no retry template, a failed send is retried
+     * by the publisher in the background instead of blocking the flush.
+     * Mandatory, so unroutable events come back with their confirms.
+     * */
+    @Bean
+    public RabbitTemplate publisherRabbitTemplate(ConnectionFactory connectionFactory, CompactMessageConverter compactMessageConverter){
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(compactMessageConverter);
+        rabbitTemplate.setMandatory(connectionFactory.isPublisherReturns());
+        return rabbitTemplate;
+    }
+
     @Bean
     public RabbitAdmin rabbitAdmin(CachingConnectionFactory cachingConnectionFactory){
         return new RabbitAdmin(cachingConnectionFactory);
     }
 
-    @Bean
-    @Profile("prod")
-    public SimpleRabbitListenerContainerFactory simpleRabbitListenerContainerFactory(CachingConnectionFactory cachingConnectionFactory,RetryTemplate rabbitRetryTemplate){
+    /**
+     * The default factory of the @RabbitListener methods.
+     * A failed message is moved to its queue's next retry tier and acked, instead of being retried in place.
+     * The global prefetch is only a default, {@link ListenerContainerTuner} tunes each listener's container.
+     * */
+    @Bean("rabbitListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory simpleRabbitListenerContainerFactory(CachingConnectionFactory cachingConnectionFactory,
+                                                                                     RetryTemplate rabbitRetryTemplate,
+                                                                                     CompactMessageConverter compactMessageConverter,
+                                                                                     TieredRetryRecoverer tieredRetryRecoverer,
+                                                                                     MessageDeduplicator messageDeduplicator,
+                                                                                     ListenerContainerTuner listenerContainerTuner){
         SimpleRabbitListenerContainerFactory simpleRabbitListenerContainerFactory = new SimpleRabbitListenerContainerFactory();
         simpleRabbitListenerContainerFactory.setConnectionFactory(cachingConnectionFactory);
+        simpleRabbitListenerContainerFactory.setMessageConverter(compactMessageConverter);
         simpleRabbitListenerContainerFactory.setPrefetchCount(prefetchCount);
-        simpleRabbitListenerContainerFactory.setTaskExecutor(asyncTaskExecutor);
+        //Per listener consumers, prefetch, batching and executor
+        simpleRabbitListenerContainerFactory.setContainerCustomizer(listenerContainerTuner);
         simpleRabbitListenerContainerFactory.setRetryTemplate(rabbitRetryTemplate);
+        //The deduplicator goes inside the retry advice, a failed attempt releases its claim before the message is retried
+        simpleRabbitListenerContainerFactory.setAdviceChain(tieredRetry(tieredRetryRecoverer), messageDeduplicator);
         return simpleRabbitListenerContainerFactory;
 
     }
 
+    @Bean
+    public Declarables retryTierDeclarables(RetryTiers retryTiers){
+        return retryTiers.declarables();
+    }
+
+    //One attempt in place, then the recoverer moves the message on
+    private static Advice tieredRetry(TieredRetryRecoverer tieredRetryRecoverer){
+        return RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(tieredRetryRecoverer)
+                .build();
+    }
+
+    /**
+     * A listener container factory that hands listeners a list of up to batch size messages at once.
+     * Used by the room leave consumer when batching is enabled.
+     * */
+    @Bean
+    public SimpleRabbitListenerContainerFactory roomLeaveBatchContainerFactory(ConnectionFactory connectionFactory,
+                                                                               CompactMessageConverter compactMessageConverter,
+                                                                               RoomLeaveConfigProperties roomLeaveConfigProperties,
+                                                                               TieredRetryRecoverer tieredRetryRecoverer,
+                                                                               MessageDeduplicator messageDeduplicator,
+                                                                               ListenerContainerTuner listenerContainerTuner){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(compactMessageConverter);
+        factory.setContainerCustomizer(listenerContainerTuner);
+        factory.setAdviceChain(tieredRetry(tieredRetryRecoverer), messageDeduplicator);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(roomLeaveConfigProperties.getBatchSize());
+        factory.setReceiveTimeout(roomLeaveConfigProperties.getBatchReceiveTimeoutInMillis());
+        //A whole batch has to be prefetched for it to fill up
+        factory.setPrefetchCount(Math.max(prefetchCount, roomLeaveConfigProperties.getBatchSize()));
+        return factory;
+    }
+
+    /**
+     * The factory of the room shard consumers, see {@link com.victor.EventDrop.rooms.RoomShardRouter}.
+     * One consumer per container and a batch at a time, so a shard's events are handled in the order they were published.
+     * A failed batch is retried in place with a backoff instead of going through the retry tiers, which would let later events of its rooms
+     * overtake it. Only its own shard waits on it. Once out of attempts its messages are parked.
+     * */
+    @Bean
+    public SimpleRabbitListenerContainerFactory roomShardContainerFactory(ConnectionFactory connectionFactory,
+                                                                          CompactMessageConverter compactMessageConverter,
+                                                                          RoomShardConfigProperties roomShardConfigProperties,
+                                                                          TieredRetryRecoverer tieredRetryRecoverer,
+                                                                          MessageDeduplicator messageDeduplicator,
+                                                                          ListenerContainerTuner listenerContainerTuner){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(compactMessageConverter);
+        factory.setContainerCustomizer(listenerContainerTuner);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(roomShardConfigProperties.getMaxAttempts())
+                .backOffOptions(roomShardConfigProperties.getInitialBackoffInMillis(), 2.0, roomShardConfigProperties.getMaxBackoffInMillis())
+                .recoverer((MessageBatchRecoverer) (messages, cause) -> messages.forEach(message -> tieredRetryRecoverer.park(message, cause)))
+                .build(), messageDeduplicator);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(roomShardConfigProperties.getBatchSize());
+        factory.setReceiveTimeout(roomShardConfigProperties.getBatchReceiveTimeoutInMillis());
+        factory.setPrefetchCount(Math.max(prefetchCount, roomShardConfigProperties.getBatchSize()));
+        return factory;
+    }
+
     @Bean
     @Profile("prod")
     public CachingConnectionFactory cachingConnectionFactory() throws NoSuchAlgorithmException, KeyManagementException {
@@ -95,6 +218,9 @@ public class RabbitConfig {
         connectionFactory.setVirtualHost(rabbitConfigProperties.getVirtualHost());
         connectionFactory.setHost(rabbitConfigProperties.getHost());
         connectionFactory.getRabbitConnectionFactory().useSslProtocol();
+        //Confirms are tracked per event by ConfirmedEventPublisher
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        connectionFactory.setPublisherReturns(true);
         return connectionFactory;
     }
 
@@ -0,0 +1,36 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.rabbitmq.containers")
+public class RabbitContainerConfigProperties {
+    //@RabbitListener id -> the settings of its container. Listeners without an entry keep their factory's settings
+    private Map<String, Container> listeners = new HashMap<>();
+    private long lagSampleIntervalInMillis = 10000;
+
+    @Getter
+    @Setter
+    public static class Container {
+        //Consumers start at concurrent-consumers and scale up to max-concurrent-consumers while the queue stays busy
+        private int concurrentConsumers = 1;
+        private int maxConcurrentConsumers = 1;
+        private int prefetchCount = 5;
+        //Messages acked together. For batch listeners, the most handed over at once
+        private int batchSize = 1;
+        private long receiveTimeoutInMillis = 1000;
+        //Consecutive busy receives before a consumer is added, and idle ones before one is stopped
+        private int consecutiveActiveTrigger = 10;
+        private int consecutiveIdleTrigger = 10;
+        private long startConsumerMinIntervalInMillis = 10000;
+        private long stopConsumerMinIntervalInMillis = 60000;
+    }
+}
@@ -0,0 +1,21 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.rabbitmq.dedup")
+public class RabbitDedupConfigProperties {
+    private boolean enabled = true;
+    //How long a handled message ID is remembered in redis. Redeliveries later than this are handled again
+    private long windowInSeconds = 600;
+    //How long a message is held by the delivery handling it. A node that dies mid-handle frees it after this.
+    //Keep it under the time a message spends retrying, or a redelivery of a dead node's message is parked
+    private long claimTimeoutInSeconds = 20;
+    //Message IDs this node handled, checked before redis
+    private int localCacheSize = 10000;
+}
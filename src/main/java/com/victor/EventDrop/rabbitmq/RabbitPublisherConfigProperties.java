@@ -0,0 +1,23 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.rabbitmq.publisher")
+public class RabbitPublisherConfigProperties {
+    //How long events are gathered before they go out together on one channel
+    private long batchWindowInMillis = 10;
+    //Most events sent per flush. Each routing key has at most one event out, its next goes once it's confirmed
+    private int batchSize = 100;
+    //Events held on this node, waiting to be sent or confirmed. Past this new events are dropped rather than waited on
+    private int bufferCapacity = 10000;
+    //An event the broker hasn't confirmed within this is sent again
+    private long confirmTimeoutInMillis = 5000;
+    private long redeliveryIntervalInMillis = 1000;
+    private int maxAttempts = 10;
+}
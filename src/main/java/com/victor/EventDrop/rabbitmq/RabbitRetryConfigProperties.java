@@ -0,0 +1,23 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.rabbitmq.retry")
+public class RabbitRetryConfigProperties {
+    //The queues whose failed messages go through the retry tiers. Failures on other queues are rejected
+    private List<String> queues = new ArrayList<>();
+    //One delayed retry queue per delay, in order. A message that fails after the last one is parked
+    private List<Long> delaysInMillis = new ArrayList<>(List.of(1000L, 5000L, 30000L));
+    //How long a failed message's republish waits on the broker's confirm before the message is requeued instead
+    private long confirmTimeoutInMillis = 5000;
+    private long metricsIntervalInMillis = 10000;
+}
@@ -0,0 +1,61 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samples the depth of every retry stage from the broker's message counts, and how much it changed since the last sample.
+ * A parking lot that keeps growing shows up without touching its messages.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class RetryStageMetrics {
+
+    private final AmqpAdmin amqpAdmin;
+    private final RetryTiers retryTiers;
+    private final TieredRetryRecoverer tieredRetryRecoverer;
+    private final RabbitRetryConfigProperties rabbitRetryConfigProperties;
+
+    private volatile List<RetryStageMetricsDto> latest = List.of();
+    //Stage -> its depth as of the last sample
+    private final Map<String, Long> lastDepths = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${spring.rabbitmq.retry.metrics-interval-in-millis:10000}")
+    public void sample(){
+        List<RetryStageMetricsDto> sampled = new ArrayList<>();
+        for (String queue : rabbitRetryConfigProperties.getQueues()){
+            for (String stage : retryTiers.stages(queue)){
+                try{
+                    QueueInformation info = amqpAdmin.getQueueInfo(stage);
+                    long depth = info == null ? 0 : info.getMessageCount();
+                    Long lastDepth = lastDepths.put(stage, depth);
+                    sampled.add(new RetryStageMetricsDto(
+                            queue, stage, depth,
+                            lastDepth == null ? 0 : depth - lastDepth,
+                            tieredRetryRecoverer.getRouted(stage)
+                    ));
+                }catch (Exception e){
+                    log.warn("Failed to sample retry stage: {}", stage, e);
+                }
+            }
+        }
+        latest = List.copyOf(sampled);
+    }
+
+    //As of the last sample
+    public List<RetryStageMetricsDto> metrics(){
+        return latest;
+    }
+}
@@ -0,0 +1,10 @@
+package com.victor.EventDrop.rabbitmq;
+
+public record RetryStageMetricsDto(
+        String queue,
+        String stage,
+        long depth,
+        long depthChange,
+        long routedByThisNode
+) {
+}
@@ -0,0 +1,69 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Names and declares the retry stages of each queue in spring.rabbitmq.retry.queues.
+ * A failed message is published to its queue's retry tier through the default exchange. The tier holds it for its delay (the queue's TTL),
+ * then dead letters it back to the queue through the default exchange again, so no extra exchanges or bindings are needed.
+ * A message that fails after the last tier is parked in the queue's parking lot, which nothing consumes.
+ * Tier names carry their delay, changing a delay declares a new tier rather than clashing with the old one's TTL.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class RetryTiers {
+
+    private final RabbitRetryConfigProperties rabbitRetryConfigProperties;
+
+    public boolean hasTiers(String queue){
+        return queue != null && rabbitRetryConfigProperties.getQueues().contains(queue);
+    }
+
+    public int tierCount(){
+        return rabbitRetryConfigProperties.getDelaysInMillis().size();
+    }
+
+    //e.g. room-leave-queue.retry.5s
+    public String tierQueue(String queue, int tier){
+        long delay = rabbitRetryConfigProperties.getDelaysInMillis().get(tier);
+        return queue + ".retry." + (delay % 1000 == 0 ? delay / 1000 + "s" : delay + "ms");
+    }
+
+    public String parkingLot(String queue){
+        return queue + ".parking-lot";
+    }
+
+    //The tiers of a queue in order, then its parking lot
+    public List<String> stages(String queue){
+        List<String> stages = new ArrayList<>(tierCount() + 1);
+        for (int tier = 0; tier < tierCount(); tier++){
+            stages.add(tierQueue(queue, tier));
+        }
+        stages.add(parkingLot(queue));
+        return stages;
+    }
+
+    public Declarables declarables(){
+        List<Declarable> declarables = new ArrayList<>();
+        for (String queue : rabbitRetryConfigProperties.getQueues()){
+            for (int tier = 0; tier < tierCount(); tier++){
+                declarables.add(QueueBuilder.durable(tierQueue(queue, tier))
+                        .ttl(Math.toIntExact(rabbitRetryConfigProperties.getDelaysInMillis().get(tier)))
+                        .deadLetterExchange("")
+                        .deadLetterRoutingKey(queue)
+                        .build());
+            }
+            declarables.add(QueueBuilder.durable(parkingLot(queue)).build());
+        }
+        return new Declarables(declarables);
+    }
+}
@@ -0,0 +1,155 @@
+package com.victor.EventDrop.rabbitmq;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves a message whose listener failed to its queue's next retry tier, or to its parking lot after the last tier,
+ * then lets the listener ack it. The consumer goes straight on to the next message instead of retrying in place.
+ * Messages that can't be converted are parked right away, retrying won't fix them.
+ * If the republish isn't confirmed the original is requeued, so a failed message is never lost on the way.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class TieredRetryRecoverer implements MessageBatchRecoverer {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RetryTiers retryTiers;
+    private final RabbitRetryConfigProperties rabbitRetryConfigProperties;
+
+    //Stage queue -> messages this node moved into it
+    private final Map<String, AtomicLong> routed = new ConcurrentHashMap<>();
+
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String STAGE_ENTERED_AT_HEADER = "x-stage-entered-at";
+    public static final String EXCEPTION_HEADER = "x-exception-message";
+
+    private static final int MAX_EXCEPTION_LENGTH = 500;
+
+    public TieredRetryRecoverer(@Qualifier("publisherRabbitTemplate") RabbitTemplate rabbitTemplate,
+                                RetryTiers retryTiers,
+                                RabbitRetryConfigProperties rabbitRetryConfigProperties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.retryTiers = retryTiers;
+        this.rabbitRetryConfigProperties = rabbitRetryConfigProperties;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        MessageProperties messageProperties = message.getMessageProperties();
+        String queue = messageProperties.getConsumerQueue();
+        if(!retryTiers.hasTiers(queue)){
+            throw new AmqpRejectAndDontRequeueException("No retry tiers for queue: " + queue, cause);
+        }
+
+        int attempt = attemptOf(messageProperties);
+        boolean park = attempt >= retryTiers.tierCount() || isFatal(cause);
+        String stage = park ? retryTiers.parkingLot(queue) : retryTiers.tierQueue(queue, attempt);
+        moveTo(stage, message, attempt + 1, cause);
+
+        if(park){
+            log.error("Parked message from queue: {} in: {} after {} attempts", queue, stage, attempt + 1, cause);
+        }else {
+            log.warn("Retrying message from queue: {} through: {}. Cause: {}", queue, stage, cause.getMessage());
+        }
+    }
+
+    /**
+     * Parks a message in its queue's parking lot without going through the tiers.
+     * For queues that must stay in order, whose messages are retried in place instead.
+     * The parking lot has to be declared by whoever declares the queue.
+     *
+     * @param message The message that failed
+     * @param cause Why it failed
+     * */
+    public void park(Message message, Throwable cause){
+        String queue = message.getMessageProperties().getConsumerQueue();
+        String stage = retryTiers.parkingLot(queue);
+        moveTo(stage, message, attemptOf(message.getMessageProperties()) + 1, cause);
+        log.error("Parked message from queue: {} in: {}", queue, stage, cause);
+    }
+
+    //A batch failed as a whole, every message in it goes through the tiers on its own
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        messages.forEach(message -> recover(message, cause));
+    }
+
+    //Messages this node moved into a stage since it started
+    public long getRouted(String stage){
+        AtomicLong count = routed.get(stage);
+        return count == null ? 0 : count.get();
+    }
+
+    private void moveTo(String stage, Message message, int attempt, Throwable cause){
+        MessageProperties messageProperties = message.getMessageProperties();
+        messageProperties.setHeader(ATTEMPT_HEADER, attempt);
+        messageProperties.setHeader(STAGE_ENTERED_AT_HEADER, System.currentTimeMillis());
+        messageProperties.setHeader(EXCEPTION_HEADER, exceptionMessage(cause));
+        publish(stage, message);
+        routed.computeIfAbsent(stage, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    //Through the default exchange, the stage's name is the routing key
+    private void publish(String stage, Message message){
+        CorrelationData correlationData = new CorrelationData();
+        rabbitTemplate.send("", stage, message, correlationData);
+        if(!rabbitTemplate.getConnectionFactory().isPublisherConfirms()){
+            return;
+        }
+
+        try{
+            CorrelationData.Confirm confirm = correlationData.getFuture().get(rabbitRetryConfigProperties.getConfirmTimeoutInMillis(), TimeUnit.MILLISECONDS);
+            if(!confirm.isAck() || correlationData.getReturned() != null){
+                throw new AmqpException("Failed to move message to: " + stage + ". Cause: " + confirm.getReason());
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while moving message to: " + stage, e);
+        }catch (AmqpException e){
+            throw e;
+        }catch (Exception e){
+            throw new AmqpException("Failed to move message to: " + stage, e);
+        }
+    }
+
+    private int attemptOf(MessageProperties messageProperties){
+        Object attempt = messageProperties.getHeader(ATTEMPT_HEADER);
+        return attempt instanceof Number number ? number.intValue() : 0;
+    }
+
+    private boolean isFatal(Throwable cause){
+        for (Throwable t = cause; t != null; t = t.getCause()){
+            if(t instanceof MessageConversionException){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String exceptionMessage(Throwable cause){
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root){
+            root = root.getCause();
+        }
+        String message = root.getClass().getSimpleName() + ": " + root.getMessage();
+        return message.length() > MAX_EXCEPTION_LENGTH ? message.substring(0, MAX_EXCEPTION_LENGTH) : message;
+    }
+}
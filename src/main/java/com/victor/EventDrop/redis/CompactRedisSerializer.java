@@ -0,0 +1,96 @@
+package com.victor.EventDrop.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * A value serializer that writes registered types in a compact binary format and everything else as JSON.
+ * A compact value is a marker byte, a format version, the type's ID from {@link RedisTypeRegistry} and the type's fields.
+ * The marker (0xC1) can't start valid UTF-8, so compact values never clash with JSON or plain INCR counters,
+ * and anything without it is handed to the JSON serializer. That makes reads work with both formats,
+ * which is what lets existing keys be migrated in place and nodes be switched to compact writes one at a time.
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    static final byte MARKER = (byte) 0xC1;
+    static final byte FORMAT_VERSION = 1;
+
+    private final RedisTypeRegistry redisTypeRegistry;
+    private final RedisSerializer<Object> jsonSerializer;
+    private final boolean writeCompact;
+
+    /**
+     * @param redisTypeRegistry The types that can be written compactly
+     * @param jsonSerializer The serializer for unregistered types and for reading values written before the switch
+     * @param writeCompact Whether registered types are written compactly. When false only reads understand the compact format
+     * */
+    public CompactRedisSerializer(RedisTypeRegistry redisTypeRegistry, RedisSerializer<Object> jsonSerializer, boolean writeCompact) {
+        this.redisTypeRegistry = redisTypeRegistry;
+        this.jsonSerializer = jsonSerializer;
+        this.writeCompact = writeCompact;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if(value == null){
+            return jsonSerializer.serialize(null);
+        }
+
+        RedisTypeRegistry.Registration<Object> registration = writeCompact ? registrationOf(value) : null;
+        if(registration == null){
+            return jsonSerializer.serialize(value);
+        }
+
+        try{
+            RedisTypeCodec.Writer writer = new RedisTypeCodec.Writer(64)
+                    .writeByte(MARKER)
+                    .writeByte(FORMAT_VERSION)
+                    .writeByte(registration.id());
+            registration.codec().write(writer, value);
+            return writer.toByteArray();
+        }catch (RuntimeException e){
+            throw new SerializationException("Could not write compact value of type: " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if(!isCompact(bytes)){
+            return jsonSerializer.deserialize(bytes);
+        }
+
+        if(bytes.length < 3 || bytes[1] != FORMAT_VERSION){
+            throw new SerializationException("Unsupported compact value format version: " + (bytes.length < 2 ? "none" : bytes[1]));
+        }
+
+        RedisTypeRegistry.Registration<?> registration = redisTypeRegistry.forId(bytes[2]);
+        if(registration == null){
+            throw new SerializationException("Unknown compact type ID: " + bytes[2]);
+        }
+
+        try{
+            return registration.codec().read(new RedisTypeCodec.Reader(bytes, 3));
+        }catch (RuntimeException e){
+            throw new SerializationException("Could not read compact value of type: " + registration.type().getName(), e);
+        }
+    }
+
+    //Whether a raw value is in the compact format
+    public static boolean isCompact(byte[] bytes){
+        return bytes != null && bytes.length > 0 && bytes[0] == MARKER;
+    }
+
+    public boolean isWriteCompact(){
+        return writeCompact;
+    }
+
+    //Whether a value would be written compactly
+    public boolean supports(Object value){
+        return value != null && redisTypeRegistry.forType(value.getClass()) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTypeRegistry.Registration<Object> registrationOf(Object value){
+        return (RedisTypeRegistry.Registration<Object>) redisTypeRegistry.forType(value.getClass());
+    }
+}
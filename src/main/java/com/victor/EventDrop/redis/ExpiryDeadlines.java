@@ -0,0 +1,135 @@
+package com.victor.EventDrop.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the expiry deadlines {@link ExpiryScheduler} polls, one sorted set per partition (expiry:{3}, key -> deadline millis).
+ * Deadlines are written next to the TTL on the same connection, usually in the same pipeline, by {@link RedisEntityWriter},
+ * the minimal repositories and the join script. Saves and deletes through Spring Data's repositories are picked up from their events.
+ * Nothing is written unless spring.redis.expiry.mode is scheduler.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ExpiryDeadlines {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisConverter redisConverter;
+    private final RedisExpiryConfigProperties redisExpiryConfigProperties;
+
+    public boolean isEnabled(){
+        return redisExpiryConfigProperties.isScheduler();
+    }
+
+    /**
+     * Sets a key's deadline, replacing any it had.
+     *
+     * @param connection The connection to write on, usually a pipelined one
+     * @param key The key, e.g. room:1234ABCD
+     * @param deadline When the key expires, in millis
+     * */
+    public void schedule(RedisConnection connection, String key, long deadline){
+        if(!isEnabled()) return;
+        connection.zSetCommands().zAdd(bytes(partitionKeyOf(key)), deadline, bytes(key));
+    }
+
+    //Moves a deadline that's still pending, e.g. when a TTL is changed. XX so a key that was already handled isn't added back
+    public void reschedule(RedisConnection connection, String key, long deadline){
+        if(!isEnabled()) return;
+        connection.zSetCommands().zAdd(bytes(partitionKeyOf(key)), deadline, bytes(key), RedisZSetCommands.ZAddArgs.ifExists());
+    }
+
+    //Moves a pending deadline on its own round trip
+    public void reschedule(String key, long deadline){
+        if(!isEnabled()) return;
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            reschedule(connection, key, deadline);
+            return null;
+        });
+    }
+
+    //Drops a key's deadline, when it's deleted before it expires
+    public void cancel(RedisConnection connection, String key){
+        if(!isEnabled()) return;
+        connection.zSetCommands().zRem(bytes(partitionKeyOf(key)), bytes(key));
+    }
+
+    //The hash tag keeps each partition, and its lease, in one slot on a cluster
+    public String partitionKey(int partition){
+        return "expiry:{" + partition + "}";
+    }
+
+    public String partitionKeyOf(String key){
+        return partitionKey(partitionOf(key));
+    }
+
+    //String's hash is the same on every node, so every node puts a key in the same partition
+    public int partitionOf(String key){
+        return Math.floorMod(key.hashCode(), redisExpiryConfigProperties.getPartitions());
+    }
+
+    public int getPartitions(){
+        return redisExpiryConfigProperties.getPartitions();
+    }
+
+    @EventListener
+    public void onInsert(KeyValueEvent.AfterInsertEvent<?> event){
+        onSave(event.getKeyspace(), event.getKey(), event.getPayload());
+    }
+
+    //Spring Data resets the TTL on every save, so does the deadline
+    @EventListener
+    public void onUpdate(KeyValueEvent.AfterUpdateEvent<?> event){
+        onSave(event.getKeyspace(), event.getKey(), event.getPayload());
+    }
+
+    @EventListener
+    public void onDelete(KeyValueEvent.AfterDeleteEvent<?> event){
+        if(!isEnabled()) return;
+        String key = keyOf(event.getKeyspace(), event.getKey());
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            cancel(connection, key);
+            return null;
+        });
+    }
+
+    private void onSave(String keyspace, Object id, Object entity){
+        if(!isEnabled() || entity == null) return;
+
+        RedisData redisData = new RedisData();
+        redisConverter.write(entity, redisData);
+        Long ttl = redisData.getTimeToLive();
+        if(ttl == null || ttl <= 0){
+            return;
+        }
+
+        String key = keyOf(keyspace, id);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            schedule(connection, key, deadline);
+            return null;
+        });
+    }
+
+    private String keyOf(String keyspace, Object id){
+        byte[] rawId = id instanceof byte[] bytes ? bytes : redisConverter.getConversionService().convert(id, byte[].class);
+        return keyspace + ":" + new String(rawId, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,233 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires keys at their deadlines from {@link ExpiryDeadlines}, instead of waiting on keyspace notifications.
+ * The deadline sets are split into partitions, each leased to one node. Nodes heartbeat into a shared set and
+ * each only holds its fair share of partitions, so the work spreads out and moves over when a node goes away.
+ * A poll claims the due keys of each held partition in batches through a script, so a key is handed out once
+ * even while two nodes briefly hold the same lease, and only due keys are ever read.
+ * Keys are acknowledged after they're handled, so an expiry is handled at least once, not exactly once:
+ * a key claimed by a node that died, or whose acknowledgement failed, comes due again after the claim timeout and is handled again.
+ * The handlers are safe to repeat, see {@link KeyExpiryHandler}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ExpiryScheduler {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyExpiryDispatcher keyExpiryDispatcher;
+    private final ExpiryDeadlines expiryDeadlines;
+    private final RedisExpiryConfigProperties redisExpiryConfigProperties;
+    private final RedisLease redisLease;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    //The partitions this node holds the lease of
+    private final Set<Integer> partitions = ConcurrentHashMap.newKeySet();
+
+    //Expiries handled by this node since it started, and how late the last one was handled past its deadline
+    @Getter
+    private final AtomicLong expiriesHandled = new AtomicLong();
+    @Getter
+    private final AtomicLong lastLagInMillis = new AtomicLong();
+
+    private static final String NODES_KEY = "expiry:nodes";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final DefaultRedisScript<List<Object>> CLAIM_EXPIRIES_SCRIPT =
+            new DefaultRedisScript<>(loadScript(), (Class<List<Object>>) (Class) List.class);
+
+    /**
+     * Renews this node's leases, then takes or gives up partitions until it holds its share.
+     * Held partitions are renewed first, so partitions don't move between nodes needlessly.
+     * */
+    @Scheduled(fixedDelayString = "${spring.redis.expiry.rebalance-interval-in-millis:2000}")
+    public void rebalance(){
+        if(!redisExpiryConfigProperties.isScheduler()){
+            return;
+        }
+
+        try{
+            int share = Math.ceilDiv(expiryDeadlines.getPartitions(), heartbeat());
+            partitions.removeIf(partition -> !acquireLease(partition));
+
+            //Highest first, so two nodes giving partitions up at once don't both give up the same ones
+            for (Integer partition : new TreeSet<>(partitions).descendingSet()){
+                if(partitions.size() <= share) break;
+                releaseLease(partition);
+                partitions.remove(partition);
+            }
+
+            for (int partition = 0; partition < expiryDeadlines.getPartitions() && partitions.size() < share; partition++){
+                if(!partitions.contains(partition) && acquireLease(partition)){
+                    partitions.add(partition);
+                }
+            }
+        }catch (Exception e){
+            log.error("Failed to rebalance expiry partitions", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${spring.redis.expiry.poll-interval-in-millis:250}")
+    public void poll(){
+        if(!redisExpiryConfigProperties.isScheduler()){
+            return;
+        }
+
+        for (Integer partition : partitions){
+            try{
+                drain(partition);
+            }catch (Exception e){
+                log.error("Failed to poll expiry partition: {}", partition, e);
+            }
+        }
+    }
+
+    /**
+     * Handles every due key of one partition, a batch at a time.
+     *
+     * @param partition The partition
+     * @return How many keys were handled
+     * */
+    int drain(int partition){
+        String partitionKey = expiryDeadlines.partitionKey(partition);
+        int handled = 0;
+        for (int batch = 0; batch < redisExpiryConfigProperties.getMaxBatchesPerPoll(); batch++){
+            long now = System.currentTimeMillis();
+            List<Object> claimed = claim(partitionKey, now);
+
+            Map<String, Long> rescheduled = new LinkedHashMap<>();
+            List<String> acknowledged = new ArrayList<>();
+            for (int i = 0; i + 1 < claimed.size(); i += 2){
+                String key = new String((byte[]) claimed.get(i), StandardCharsets.UTF_8);
+                long deadline = (long) Double.parseDouble(new String((byte[]) claimed.get(i + 1), StandardCharsets.UTF_8));
+                try{
+                    long remaining = keyExpiryDispatcher.expire(partitionKey, key);
+                    if(remaining > 0){
+                        rescheduled.put(key, System.currentTimeMillis() + remaining);
+                        continue;
+                    }
+
+                    acknowledged.add(key);
+                    expiriesHandled.incrementAndGet();
+                    lastLagInMillis.set(Math.max(0, now - deadline));
+                }catch (Exception e){
+                    //Left claimed, it comes due again after the claim timeout
+                    log.error("Failed to expire key: {}. Retrying in {}ms", key, redisExpiryConfigProperties.getClaimTimeoutInMillis(), e);
+                }
+            }
+
+            acknowledge(partitionKey, acknowledged, rescheduled);
+            handled += acknowledged.size();
+
+            if(claimed.size() / 2 < redisExpiryConfigProperties.getBatchSize()){
+                break;
+            }
+        }
+
+        if(handled > 0){
+            log.debug("Expired {} keys from partition: {}, the last {}ms past its deadline", handled, partition, lastLagInMillis.get());
+        }
+        return handled;
+    }
+
+    //Claims up to a batch of due keys as {key, deadline...}
+    private List<Object> claim(String partitionKey, long now){
+        List<Object> claimed = redisTemplate.execute(
+                CLAIM_EXPIRIES_SCRIPT, RedisSerializer.byteArray(), rawResult(), List.of(partitionKey),
+                bytes(String.valueOf(now)),
+                bytes(String.valueOf(redisExpiryConfigProperties.getBatchSize())),
+                bytes(String.valueOf(redisExpiryConfigProperties.getClaimTimeoutInMillis()))
+        );
+        return claimed == null ? List.of() : claimed;
+    }
+
+    //Drops handled keys and moves the deadlines of keys whose TTL was extended, in one round trip on the partition's slot
+    private void acknowledge(String partitionKey, List<String> acknowledged, Map<String, Long> rescheduled){
+        if(acknowledged.isEmpty() && rescheduled.isEmpty()){
+            return;
+        }
+
+        byte[] rawPartitionKey = bytes(partitionKey);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if(!acknowledged.isEmpty()){
+                connection.zSetCommands().zRem(rawPartitionKey, acknowledged.stream().map(ExpiryScheduler::bytes).toArray(byte[][]::new));
+            }
+            rescheduled.forEach((key, deadline) -> connection.zSetCommands().zAdd(rawPartitionKey, deadline, bytes(key)));
+            return null;
+        });
+    }
+
+    //Marks this node alive and forgets nodes that stopped heartbeating. Returns how many nodes share the partitions
+    private int heartbeat(){
+        long now = System.currentTimeMillis();
+        Long liveNodes = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            byte[] nodesKey = bytes(NODES_KEY);
+            connection.zSetCommands().zAdd(nodesKey, now, bytes(nodeId));
+            connection.zSetCommands().zRemRangeByScore(nodesKey, Double.NEGATIVE_INFINITY, now - redisExpiryConfigProperties.getLeaseTtlInMillis());
+            return connection.zSetCommands().zCard(nodesKey);
+        });
+        return liveNodes == null || liveNodes < 1 ? 1 : liveNodes.intValue();
+    }
+
+    private boolean acquireLease(int partition){
+        String leaseKey = leaseKeyOf(partition);
+        Duration leaseTtl = Duration.ofMillis(redisExpiryConfigProperties.getLeaseTtlInMillis());
+        return redisLease.acquire(leaseKey, nodeId, leaseTtl);
+    }
+
+    private void releaseLease(int partition){
+        redisLease.release(leaseKeyOf(partition), nodeId);
+    }
+
+    //Next to its partition's deadlines, in the same slot
+    private String leaseKeyOf(int partition){
+        return expiryDeadlines.partitionKey(partition) + ":lease";
+    }
+
+    //The partitions this node currently holds
+    public Set<Integer> getPartitions(){
+        return Set.copyOf(partitions);
+    }
+
+    //Script replies are read as raw bytes, whatever type the script declares
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> rawResult(){
+        return (RedisSerializer<T>) RedisSerializer.byteArray();
+    }
+
+    private static String loadScript(){
+        try{
+            return new ClassPathResource("scripts/claim-expiries.lua").getContentAsString(StandardCharsets.UTF_8);
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to load script: scripts/claim-expiries.lua", e);
+        }
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
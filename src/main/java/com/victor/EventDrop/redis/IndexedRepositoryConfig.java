@@ -0,0 +1,20 @@
+package com.victor.EventDrop.redis;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
+import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
+
+/**
+ * Spring Data's redis repositories, used unless the minimal schema is switched on.
+ * Key expiries are routed by {@link KeyExpiryDispatcher}, phantom copies are still written for it to read.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.redis.schema.mode", havingValue = "indexed", matchIfMissing = true)
+@EnableRedisRepositories(basePackages = "com.victor.EventDrop",
+        keyspaceConfiguration = KeyspaceConfiguration.class,
+        enableKeyspaceEvents = RedisKeyValueAdapter.EnableKeyspaceEvents.OFF,
+        shadowCopy = RedisKeyValueAdapter.ShadowCopy.ON)
+public class IndexedRepositoryConfig {
+}
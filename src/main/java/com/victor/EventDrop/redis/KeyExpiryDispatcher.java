@@ -0,0 +1,204 @@
+package com.victor.EventDrop.redis;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyExpiredEvent;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes key expiries to the {@link KeyExpiryHandler} of the key's keyspace.
+ * Only the keyspaces that have a handler are subscribed to, through keyspace notifications (__keyspace@*__:room:*),
+ * so keys like the per minute rate limit counters and metrics never reach this node at all.
+ * This replaces Spring Data's expiry listener, which read and published every expired key in the database as a Spring event.
+ * When expiries are scheduled nothing is subscribed, {@link ExpiryScheduler} hands each due key to {@link #expire} instead.
+ */
+@Component
+@Slf4j
+public class KeyExpiryDispatcher implements MessageListener {
+
+    private final KeyspaceEventSubscriber keyspaceEventSubscriber;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisEntityWriter redisEntityWriter;
+    private final RedisExpiryConfigProperties redisExpiryConfigProperties;
+    private final Map<String, KeyExpiryHandler<?>> handlers = new HashMap<>();
+
+    private static final byte[] EXPIRED = "expired".getBytes(StandardCharsets.UTF_8);
+
+    public KeyExpiryDispatcher(KeyspaceEventSubscriber keyspaceEventSubscriber,
+                               RedisTemplate<String, Object> redisTemplate,
+                               RedisEntityWriter redisEntityWriter,
+                               RedisExpiryConfigProperties redisExpiryConfigProperties,
+                               List<KeyExpiryHandler<?>> keyExpiryHandlers) {
+        this.keyspaceEventSubscriber = keyspaceEventSubscriber;
+        this.redisTemplate = redisTemplate;
+        this.redisEntityWriter = redisEntityWriter;
+        this.redisExpiryConfigProperties = redisExpiryConfigProperties;
+        keyExpiryHandlers.forEach(handler -> {
+            if(handlers.putIfAbsent(handler.keyspace(), handler) != null){
+                throw new IllegalStateException("More than one key expiry handler for keyspace: " + handler.keyspace());
+            }
+        });
+    }
+
+    @PostConstruct
+    public void subscribe(){
+        if(redisExpiryConfigProperties.isScheduler()){
+            log.info("Key expiries for keyspaces: {} are scheduled, not subscribed to", handlers.keySet());
+            return;
+        }
+
+        List<PatternTopic> topics = handlers.keySet().stream()
+                .map(keyspace -> new PatternTopic("__keyspace@*__:" + keyspace + ":*"))
+                .toList();
+        //Keyspace (K) notifications for expired (x) keys
+        keyspaceEventSubscriber.subscribe(this, topics, "Kx");
+        log.info("Routing key expiries for keyspaces: {}", handlers.keySet());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        //Keyspace notifications carry the event in the body and the key in the channel
+        if(!Arrays.equals(EXPIRED, message.getBody())){
+            return;
+        }
+
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        int keyStart = channel.indexOf("__:");
+        if(keyStart < 0){
+            return;
+        }
+
+        String key = channel.substring(keyStart + 3);
+        String[] keyspaceAndId = RedisEntityWriter.splitKey(key);
+        if(keyspaceAndId == null){
+            return;
+        }
+
+        KeyExpiryHandler<?> handler = handlers.get(keyspaceAndId[0]);
+        if(handler == null){
+            return;
+        }
+
+        try{
+            dispatch(handler, channel, key, keyspaceAndId[0], keyspaceAndId[1]);
+        }catch (Exception e){
+            log.error("Failed to handle expiry of key: {}", key, e);
+        }
+    }
+
+    /**
+     * Expires a key whose deadline came up, for {@link ExpiryScheduler}.
+     * Unlike a keyspace notification the key may still be there, redis' own TTL can fire a little before or after the deadline.
+     * A key that's still there is removed here, so the handler sees it expired either way.
+     *
+     * @param source Where the deadline came from, the event's channel
+     * @param key The key, e.g. room:1234ABCD
+     * @return The key's remaining TTL in millis if its TTL was extended past the deadline, the caller reschedules it then. Otherwise 0
+     * */
+    public long expire(String source, String key){
+        String[] keyspaceAndId = RedisEntityWriter.splitKey(key);
+        KeyExpiryHandler<?> handler = keyspaceAndId == null ? null : handlers.get(keyspaceAndId[0]);
+        if(handler == null){
+            return 0;
+        }
+        return expire(handler, source, key, keyspaceAndId[0], keyspaceAndId[1]);
+    }
+
+    /**
+     * Reads the expired entity's phantom copy, removes the entity from its keyspace and index sets
+     * the way Spring Data's repositories would, then hands the expiry to the keyspace's handler.
+     * Handlers always get the key as keyspace:id, whichever layout it was written in.
+     * */
+    private <T> void dispatch(KeyExpiryHandler<T> handler, String channel, String key, String keyspace, String id){
+        //The minimal schema keeps no phantom copy or index sets, there's nothing left to read or clean up
+        if(redisEntityWriter.isMinimalSchema()){
+            handler.onKeyExpired(new RedisKeyExpiredEvent<>(channel, bytes(keyspace + ":" + id), null));
+            return;
+        }
+
+        byte[] phantomKey = bytes(key + ":phantom");
+        byte[] indexSetKey = bytes(key + ":idx");
+
+        List<Object> reads = RedisPipelines.raw(redisTemplate, connection -> {
+            connection.hashCommands().hGetAll(phantomKey);
+            connection.setCommands().sMembers(indexSetKey);
+        });
+
+        @SuppressWarnings("unchecked")
+        Map<byte[], byte[]> phantom = reads.get(0) instanceof Map<?, ?> map ? (Map<byte[], byte[]>) map : Map.of();
+        @SuppressWarnings("unchecked")
+        Set<byte[]> indexKeys = reads.get(1) instanceof Set<?> set ? (Set<byte[]>) set : Set.of();
+
+        finish(handler, channel, key, keyspace, id, phantom, indexKeys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> long expire(KeyExpiryHandler<T> handler, String source, String key, String keyspace, String id){
+        byte[] rawKey = bytes(key);
+        byte[] phantomKey = bytes(key + ":phantom");
+        byte[] indexSetKey = bytes(key + ":idx");
+
+        List<Object> reads = RedisPipelines.raw(redisTemplate, connection -> {
+            connection.keyCommands().pTtl(rawKey);
+            connection.hashCommands().hGetAll(rawKey);
+            connection.hashCommands().hGetAll(phantomKey);
+            connection.setCommands().sMembers(indexSetKey);
+        });
+
+        if(reads.get(0) instanceof Long ttl && ttl > 0){
+            return ttl;
+        }
+
+        Map<byte[], byte[]> hash = reads.get(1) instanceof Map<?, ?> map && !map.isEmpty() ? (Map<byte[], byte[]>) map
+                : reads.get(2) instanceof Map<?, ?> map ? (Map<byte[], byte[]>) map : Map.of();
+        Set<byte[]> indexKeys = reads.get(3) instanceof Set<?> set ? (Set<byte[]>) set : Set.of();
+
+        //Without a hash or phantom copy the entity was deleted before its deadline, it didn't expire
+        if(hash.isEmpty() && !redisEntityWriter.isMinimalSchema()){
+            log.debug("Skipping expiry of key: {}, it was already deleted", key);
+            return 0;
+        }
+
+        try{
+            finish(handler, source, key, keyspace, id, hash, indexKeys);
+        }catch (Exception e){
+            log.error("Failed to handle expiry of key: {}", key, e);
+        }
+        return 0;
+    }
+
+    //Removes the entity from its keyspace and index sets, then hands the expiry to the handler
+    private <T> void finish(KeyExpiryHandler<T> handler, String channel, String key, String keyspace, String id,
+                            Map<byte[], byte[]> hash, Set<byte[]> indexKeys){
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            redisEntityWriter.delete(connection, keyspace, id, roomTagOf(key), indexKeys);
+            return null;
+        });
+
+        T value = hash.isEmpty() ? null : redisEntityWriter.read(handler.type(), hash);
+        handler.onKeyExpired(new RedisKeyExpiredEvent<>(channel, bytes(keyspace + ":" + id), value));
+    }
+
+    //The room code a key is tagged with, e.g. 1234ABCD for occupant:{1234ABCD}:ID. Null for untagged keys
+    private static String roomTagOf(String key){
+        int tagStart = key.indexOf('{');
+        int tagEnd = key.indexOf('}', tagStart + 1);
+        return tagStart < 0 || tagEnd < 0 ? null : key.substring(tagStart + 1, tagEnd);
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
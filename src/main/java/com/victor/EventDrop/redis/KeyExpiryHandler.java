@@ -0,0 +1,26 @@
+package com.victor.EventDrop.redis;
+
+import org.springframework.data.redis.core.RedisKeyExpiredEvent;
+
+/**
+ * Handles the expiry of the entities of one keyspace.
+ * Handlers are called by {@link KeyExpiryDispatcher}, only for keys of their own keyspace,
+ * after the entity's phantom copy has been read and its keyspace and index entries cleaned up.
+ * The same expiry can reach a handler more than once, {@link ExpiryScheduler} hands keys out at least once,
+ * so handling it again must be harmless: deletes by ID, revocations and cleanup events that are themselves safe to repeat.
+ *
+ * @param <T> The entity type stored in the keyspace
+ */
+public interface KeyExpiryHandler<T> {
+
+    //The keyspace handled, e.g. room for room:1234ABCD
+    String keyspace();
+
+    //The entity type the phantom copy is read as
+    Class<T> type();
+
+    /**
+     * @param expiredEvent The expired key. Its value is the entity read from the phantom copy, or null if there was none
+     * */
+    void onKeyExpired(RedisKeyExpiredEvent<T> expiredEvent);
+}
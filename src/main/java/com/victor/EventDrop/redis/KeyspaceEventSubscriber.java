@@ -0,0 +1,154 @@
+package com.victor.EventDrop.redis;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Subscribes listeners to keyspace and keyevent notifications, and turns on the notify-keyspace-events flags they need.
+ * Redis publishes a key's notifications only on the master that owns the key, unlike regular pub/sub messages,
+ * so on a cluster every master gets a listener container of its own. The masters are re-read on a schedule,
+ * and the subscriptions follow them. On a single node the shared listener container is used.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class KeyspaceEventSubscriber {
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final RedisClusterNodes redisClusterNodes;
+    private final RedisClusterConfigProperties redisClusterConfigProperties;
+    private final AsyncTaskExecutor asyncTaskExecutor;
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final StringBuilder flags = new StringBuilder();
+    //The containers of the cluster's masters, by node id
+    private final Map<String, RedisMessageListenerContainer> containers = new HashMap<>();
+
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+    //The event type flags all (A) stands for
+    private static final String ALL_ALIAS = "g$lshzxetd";
+
+    private record Subscription(MessageListener listener, Collection<? extends Topic> topics) {
+    }
+
+    /**
+     * Subscribes a listener to keyspace or keyevent notifications on every master.
+     *
+     * @param listener The listener
+     * @param topics The notification channels, e.g. __keyevent@*__:del
+     * @param requiredFlags The notify-keyspace-events flags the listener needs, e.g. Egx. They're added to the node's flags, none are removed
+     * */
+    public synchronized void subscribe(MessageListener listener, Collection<? extends Topic> topics, String requiredFlags){
+        subscriptions.add(new Subscription(listener, topics));
+        for (char flag : requiredFlags.toCharArray()){
+            if(flags.indexOf(String.valueOf(flag)) < 0){
+                flags.append(flag);
+            }
+        }
+
+        if(!redisClusterConfigProperties.isEnabled()){
+            enableNotifications(redisClusterNodes.masters().get(0));
+            redisMessageListenerContainer.addMessageListener(listener, topics);
+            return;
+        }
+
+        for (RedisClusterNodes.RedisNode node : redisClusterNodes.masters()){
+            enableNotifications(node);
+            containers.computeIfAbsent(node.id(), id -> container(node)).addMessageListener(listener, topics);
+        }
+    }
+
+    //Subscribes on masters that joined the cluster and drops the containers of the ones that left
+    @Scheduled(fixedDelayString = "${spring.redis.cluster.topology-refresh-interval-in-millis:30000}")
+    public synchronized void refresh(){
+        if(!redisClusterConfigProperties.isEnabled() || subscriptions.isEmpty()){
+            return;
+        }
+
+        try{
+            List<RedisClusterNodes.RedisNode> masters = redisClusterNodes.refresh();
+            Set<String> ids = masters.stream().map(RedisClusterNodes.RedisNode::id).collect(Collectors.toSet());
+            containers.keySet().removeIf(id -> {
+                if(ids.contains(id)){
+                    return false;
+                }
+                destroy(containers.get(id));
+                return true;
+            });
+
+            for (RedisClusterNodes.RedisNode node : masters){
+                if(!containers.containsKey(node.id())){
+                    enableNotifications(node);
+                    RedisMessageListenerContainer container = container(node);
+                    subscriptions.forEach(subscription -> container.addMessageListener(subscription.listener(), subscription.topics()));
+                    containers.put(node.id(), container);
+                }
+            }
+        }catch (Exception e){
+            log.warn("Failed to refresh the cluster's masters. Keeping the current keyspace subscriptions", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close(){
+        containers.values().forEach(this::destroy);
+        containers.clear();
+    }
+
+    private RedisMessageListenerContainer container(RedisClusterNodes.RedisNode node){
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(node.connectionFactory());
+        container.setTaskExecutor(asyncTaskExecutor);
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    private void destroy(RedisMessageListenerContainer container){
+        try{
+            container.destroy();
+        }catch (Exception e){
+            log.debug("Failed to stop a keyspace listener container", e);
+        }
+    }
+
+    private void enableNotifications(RedisClusterNodes.RedisNode node){
+        try (RedisConnection connection = node.connectionFactory().getConnection()) {
+            Properties config = connection.serverCommands().getConfig(NOTIFY_KEYSPACE_EVENTS);
+            String current = config == null ? "" : config.getProperty(NOTIFY_KEYSPACE_EVENTS, "");
+
+            StringBuilder updated = new StringBuilder(current);
+            for (char flag : flags.toString().toCharArray()){
+                boolean covered = ALL_ALIAS.indexOf(flag) >= 0 && current.indexOf('A') >= 0;
+                if(current.indexOf(flag) < 0 && !covered){
+                    updated.append(flag);
+                }
+            }
+
+            if(!updated.toString().equals(current)){
+                connection.serverCommands().setConfig(NOTIFY_KEYSPACE_EVENTS, updated.toString());
+                log.info("Set {} on node: {} from '{}' to '{}'", NOTIFY_KEYSPACE_EVENTS, node.id(), current, updated);
+            }
+        }catch (Exception e){
+            //Managed redis often disallows CONFIG, the flags then have to be set on the server
+            log.warn("Could not enable keyspace notifications on node: {}. Make sure {} includes {}", node.id(), NOTIFY_KEYSPACE_EVENTS, flags, e);
+        }
+    }
+}
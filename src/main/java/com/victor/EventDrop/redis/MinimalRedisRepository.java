@@ -0,0 +1,236 @@
+package com.victor.EventDrop.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.KeyScanOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.repository.CrudRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link CrudRepository} over plain entity hashes, for the minimal schema.
+ * An entity is only its hash, at the key {@link RedisEntityWriter#keyOf(RedisData)} gives it, with the entity's TTL,
+ * plus its pointer to its room when that key is tagged with its room's code.
+ * There's no keyspace set, index sets or phantom copies. Listing, counting or clearing the whole keyspace scans for its hashes,
+ * which walks every key in the store, so those are for maintenance, not request paths.
+ * Subclasses keep whatever lookup keys their queries need up to date through {@link #onSave} and {@link #onDelete},
+ * and override {@link #keysOf} when an entity's key can't be built from its id alone.
+ *
+ * @param <T> The entity type
+ * @param <ID> The entity's id type
+ */
+@RequiredArgsConstructor
+public abstract class MinimalRedisRepository<T, ID> implements CrudRepository<T, ID> {
+
+    protected final RedisTemplate<String, Object> redisTemplate;
+    protected final RedisEntityWriter redisEntityWriter;
+    private final Class<T> type;
+    private final String keyspace;
+
+    protected abstract ID idOf(T entity);
+
+    //Writes the entity's lookup keys next to its hash, on the same pipelined connection
+    protected void onSave(RedisConnection connection, T entity, RedisData redisData){
+    }
+
+    //Removes the entity from its lookup keys, on the same pipelined connection
+    protected void onDelete(RedisConnection connection, T entity){
+    }
+
+    @Override
+    public <S extends T> S save(S entity) {
+        saveAll(List.of(entity));
+        return entity;
+    }
+
+    //Replaces each hash as a whole like Spring Data does, so fields cleared on the entity don't linger
+    @Override
+    public <S extends T> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(saved::add);
+        if(saved.isEmpty()){
+            return saved;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (S entity : saved){
+                RedisData redisData = redisEntityWriter.toRedisData(entity);
+                byte[] key = bytes(redisEntityWriter.keyOf(redisData));
+                connection.keyCommands().del(key);
+                connection.hashCommands().hMSet(key, redisData.getBucket().rawMap());
+
+                Long ttl = redisData.getTimeToLive();
+                if(ttl != null && ttl > 0){
+                    connection.keyCommands().expire(key, ttl);
+                    redisEntityWriter.scheduleExpiry(connection, redisData);
+                }
+                redisEntityWriter.writeRoomPointer(connection, redisData);
+                onSave(connection, entity, redisData);
+            }
+            return null;
+        });
+        return saved;
+    }
+
+    @Override
+    public Optional<T> findById(ID id) {
+        List<byte[]> keys = keysOf(List.of(id));
+        if(keys.isEmpty()){
+            return Optional.empty();
+        }
+
+        byte[] key = keys.getFirst();
+        return Optional.ofNullable(redisTemplate.execute((RedisCallback<T>) connection ->
+                redisEntityWriter.read(type, connection.hashCommands().hGetAll(key))));
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        List<byte[]> keys = keysOf(List.of(id));
+        return !keys.isEmpty() && Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.keyCommands().exists(keys.getFirst())));
+    }
+
+    //Reads every hash in one pipeline. Ids whose hash is gone are skipped
+    @Override
+    public List<T> findAllById(Iterable<ID> ids) {
+        List<ID> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        return readAll(keysOf(idList));
+    }
+
+    @Override
+    public void deleteById(ID id) {
+        Optional<T> entity = findById(id);
+        if(entity.isPresent()){
+            delete(entity.get());
+            return;
+        }
+
+        deleteAllById(List.of(id));
+    }
+
+    @Override
+    public void delete(T entity) {
+        deleteAll(List.of(entity));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        List<T> deleted = new ArrayList<>();
+        entities.forEach(deleted::add);
+        if(deleted.isEmpty()){
+            return;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (T entity : deleted){
+                RedisData redisData = redisEntityWriter.toRedisData(entity);
+                byte[] key = bytes(redisEntityWriter.keyOf(redisData));
+                connection.keyCommands().del(key);
+                redisEntityWriter.cancelExpiry(connection, new String(key, StandardCharsets.UTF_8));
+                redisEntityWriter.deleteRoomPointer(connection, redisData);
+                onDelete(connection, entity);
+            }
+            return null;
+        });
+    }
+
+    //Only the hashes are deleted. Subclasses with lookup keys override this to clean those up too
+    @Override
+    public void deleteAllById(Iterable<? extends ID> ids) {
+        List<ID> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        List<byte[]> keys = keysOf(idList);
+        if(keys.isEmpty()){
+            return;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> {
+                connection.keyCommands().del(key);
+                redisEntityWriter.cancelExpiry(connection, new String(key, StandardCharsets.UTF_8));
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public List<T> findAll() {
+        return readAll(scanKeys());
+    }
+
+    @Override
+    public long count() {
+        return scanKeys().size();
+    }
+
+    //Goes through delete so subclasses clean up their lookup keys too
+    @Override
+    public void deleteAll() {
+        deleteAll(findAll());
+    }
+
+    //Reads the hashes at the given keys in one pipeline, skipping the ones that are gone
+    @SuppressWarnings("unchecked")
+    protected List<T> readAll(List<byte[]> keys){
+        if(keys.isEmpty()){
+            return List.of();
+        }
+
+        List<Object> hashes = RedisPipelines.raw(redisTemplate, connection -> keys.forEach(key -> connection.hashCommands().hGetAll(key)));
+
+        List<T> entities = new ArrayList<>(hashes.size());
+        for (Object hash : hashes){
+            if(hash instanceof Map<?, ?> raw){
+                T entity = redisEntityWriter.read(type, (Map<byte[], byte[]>) raw);
+                if(entity != null) entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    //The keyspace's entity hashes. Keys with more parts, e.g. index sets the indexed schema left behind, aren't entities
+    private List<byte[]> scanKeys(){
+        ScanOptions scanOptions = KeyScanOptions
+                .scanOptions(DataType.HASH)
+                .count(100)
+                .match(keyspace + ":*")
+                .build();
+
+        List<byte[]> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(scanOptions)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                String[] keyspaceAndId = RedisEntityWriter.splitKey(key);
+                if(keyspaceAndId != null && keyspace.equals(keyspaceAndId[0])){
+                    keys.add(bytes(key));
+                }
+            }
+        }
+        return keys;
+    }
+
+    protected byte[] keyOf(ID id){
+        return bytes(keyspace + ":" + new String(redisEntityWriter.toBytes(id), StandardCharsets.UTF_8));
+    }
+
+    //The keys of the given ids' hashes. Ids whose key can't be found are left out
+    protected List<byte[]> keysOf(List<ID> ids){
+        return ids.stream().map(this::keyOf).toList();
+    }
+
+    protected static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package com.victor.EventDrop.redis;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.convert.IndexResolver;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
+import org.springframework.data.redis.core.convert.MappingConfiguration;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.index.IndexConfiguration;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.util.TypeInformation;
+
+import java.util.Set;
+
+/**
+ * The converter the minimal schema's repositories and {@link RedisEntityWriter} write with.
+ * Spring Data's repositories aren't enabled in this mode, so nothing else registers one.
+ * It maps entities to the same hashes, but resolves no secondary indexes, so no index sets are written.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.redis.schema.mode", havingValue = "minimal")
+public class MinimalRepositoryConfig {
+
+    @Bean
+    public RedisConverter redisConverter(){
+        RedisMappingContext mappingContext = new RedisMappingContext(
+                new MappingConfiguration(new IndexConfiguration(), new KeyspaceConfiguration())
+        );
+
+        MappingRedisConverter converter = new MappingRedisConverter(mappingContext, new NoIndexResolver(), null);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static class NoIndexResolver implements IndexResolver {
+        @Override
+        public Set<IndexedData> resolveIndexesFor(TypeInformation<?> typeInformation, Object value) {
+            return Set.of();
+        }
+
+        @Override
+        public Set<IndexedData> resolveIndexesFor(String keyspace, String path, TypeInformation<?> typeInformation, Object value) {
+            return Set.of();
+        }
+    }
+}
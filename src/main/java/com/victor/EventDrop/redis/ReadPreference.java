@@ -0,0 +1,11 @@
+package com.victor.EventDrop.redis;
+
+/**
+ * Where a read is served from. See {@link ReplicaReadRouter}.
+ */
+public enum ReadPreference {
+    //Reads that decide something, like quota and join checks, and must see the latest write
+    PRIMARY,
+    //Reads that can be slightly stale. Served by a replica while it's caught up, otherwise by the primary
+    REPLICA_PREFERRED
+}
@@ -16,4 +16,8 @@ public class RedisCloudConfigProperties {
     private int port;
     private String username;
     private String password;
+    //Entity reads and writes, scripts and background work like the sweeper
+    private long entityCommandTimeoutInMillis = 30000;
+    //Session lookups and rate limiting sit on the request path, so they fail fast instead of queueing
+    private long sessionCommandTimeoutInMillis = 2000;
 }
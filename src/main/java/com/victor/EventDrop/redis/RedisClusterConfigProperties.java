@@ -0,0 +1,22 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.cluster")
+public class RedisClusterConfigProperties {
+    //When enabled the connection factories connect to the cluster nodes instead of spring.redis.cloud.host
+    private boolean enabled = false;
+    //Seed nodes as host:port, the rest of the cluster is discovered from them
+    private List<String> nodes = List.of();
+    private int maxRedirects = 3;
+    //How often the masters are re-read, so keyspace subscriptions and the sweep follow failovers and resharding
+    private long topologyRefreshIntervalInMillis = 30000;
+}
@@ -0,0 +1,129 @@
+package com.victor.EventDrop.redis;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The nodes that commands acting on a single node go to, like keyspace notification subscriptions, CONFIG and SCAN.
+ * On a single node that's the primary connection factory. On a cluster every master gets a connection factory of its own,
+ * since redis only publishes a key's notifications and only scans its keys on the master that owns the key.
+ * The masters are read from the cluster's topology on {@link #refresh()}, so failovers and resharding are followed.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RedisClusterNodes {
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final RedisClusterConfigProperties redisClusterConfigProperties;
+    private final ObjectProvider<RedisCloudConfigProperties> redisCloudConfigProperties;
+    private final AsyncTaskExecutor asyncTaskExecutor;
+
+    private final Map<String, RedisNode> masters = new ConcurrentHashMap<>();
+
+    /**
+     * A node commands can be sent to directly.
+     *
+     * @param id The cluster node id, or standalone on a single node
+     * @param connectionFactory Connects to this node only
+     * */
+    public record RedisNode(String id, RedisConnectionFactory connectionFactory) {
+    }
+
+    /**
+     * @return Every master, as of the last refresh on a cluster
+     * */
+    public List<RedisNode> masters(){
+        if(!redisClusterConfigProperties.isEnabled()){
+            return List.of(new RedisNode("standalone", redisConnectionFactory));
+        }
+
+        if(masters.isEmpty()){
+            refresh();
+        }
+        return List.copyOf(masters.values());
+    }
+
+    /**
+     * Re-reads the cluster's masters. Masters that joined get a connection factory,
+     * the connections of masters that left or failed over are closed.
+     *
+     * @return Every master after the refresh
+     * */
+    public synchronized List<RedisNode> refresh(){
+        if(!redisClusterConfigProperties.isEnabled()){
+            return masters();
+        }
+
+        Set<String> current = new HashSet<>();
+        try (RedisClusterConnection connection = redisConnectionFactory.getClusterConnection()) {
+            for (RedisClusterNode node : connection.clusterGetNodes()){
+                if(!node.isMaster() || node.getFlags().contains(RedisClusterNode.Flag.FAIL)){
+                    continue;
+                }
+
+                current.add(node.getId());
+                masters.computeIfAbsent(node.getId(), id -> {
+                    log.info("Connecting to cluster master: {} at {}:{}", id, node.getHost(), node.getPort());
+                    return new RedisNode(id, connectionFactory(node.getHost(), node.getPort()));
+                });
+            }
+        }
+
+        for (String id : new ArrayList<>(masters.keySet())){
+            if(!current.contains(id)){
+                log.info("Cluster master: {} is gone, closing its connection", id);
+                destroy(masters.remove(id));
+            }
+        }
+        return List.copyOf(masters.values());
+    }
+
+    @PreDestroy
+    public void close(){
+        masters.values().forEach(this::destroy);
+        masters.clear();
+    }
+
+    private LettuceConnectionFactory connectionFactory(String host, int port){
+        RedisCloudConfigProperties properties = redisCloudConfigProperties.getObject();
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(host, port);
+        configuration.setUsername(properties.getUsername());
+        configuration.setPassword(properties.getPassword());
+
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration
+                .builder()
+                .commandTimeout(Duration.ofMillis(properties.getEntityCommandTimeoutInMillis()))
+                .build();
+
+        LettuceConnectionFactory lettuceConnectionFactory = new LettuceConnectionFactory(configuration, clientConfiguration);
+        lettuceConnectionFactory.setExecutor(asyncTaskExecutor);
+        lettuceConnectionFactory.afterPropertiesSet();
+        lettuceConnectionFactory.start();
+        return lettuceConnectionFactory;
+    }
+
+    private void destroy(RedisNode node){
+        if(node != null && node.connectionFactory() instanceof LettuceConnectionFactory lettuceConnectionFactory){
+            lettuceConnectionFactory.destroy();
+        }
+    }
+}
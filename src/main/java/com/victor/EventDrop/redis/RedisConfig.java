@@ -1,8 +1,10 @@
 package com.victor.EventDrop.redis;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -33,27 +35,69 @@ public class RedisConfig {
         return new StringRedisSerializer();
     }
 
+    /**
+     * The value serializer of the redis template. Reads both JSON and compact values,
+     * and writes registered types compactly once the compact mode is switched on.
+     * */
     @Bean
+    public CompactRedisSerializer compactRedisSerializer(RedisTypeRegistry redisTypeRegistry,
+                                                         GenericJackson2JsonRedisSerializer genericJackson2JsonRedisSerializer,
+                                                         RedisSerializerConfigProperties redisSerializerConfigProperties){
+        boolean writeCompact = redisSerializerConfigProperties.getMode() == RedisSerializerConfigProperties.Mode.COMPACT;
+        return new CompactRedisSerializer(redisTypeRegistry, genericJackson2JsonRedisSerializer, writeCompact);
+    }
+
+    @Bean
+    @Primary
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
                                              StringRedisSerializer stringRedisSerializer,
-                                             GenericJackson2JsonRedisSerializer genericJackson2JsonRedisSerializer){
-        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
-        redisTemplate.setConnectionFactory(redisConnectionFactory);
-        redisTemplate.setKeySerializer(stringRedisSerializer);
-        redisTemplate.setHashKeySerializer(stringRedisSerializer);
-        redisTemplate.setHashValueSerializer(genericJackson2JsonRedisSerializer);
-        redisTemplate.setValueSerializer(genericJackson2JsonRedisSerializer);
-        return redisTemplate;
+                                             CompactRedisSerializer compactRedisSerializer){
+        return template(redisConnectionFactory, stringRedisSerializer, compactRedisSerializer);
+    }
+
+    /**
+     * The same template on the session connection factory, for the session and rate limit checks on the request path.
+     * */
+    @Bean
+    public RedisTemplate<String, Object> sessionRedisTemplate(@Qualifier("sessionRedisConnectionFactory") RedisConnectionFactory sessionRedisConnectionFactory,
+                                                    StringRedisSerializer stringRedisSerializer,
+                                                    CompactRedisSerializer compactRedisSerializer){
+        return template(sessionRedisConnectionFactory, stringRedisSerializer, compactRedisSerializer);
     }
 
+    /**
+     * The same template on the replica connection factory. Only reads that can tolerate some staleness go through it,
+     * routed by {@link ReplicaReadRouter}.
+     * */
     @Bean
-    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate<String, Object> replicaRedisTemplate(@Qualifier("replicaRedisConnectionFactory") RedisConnectionFactory replicaRedisConnectionFactory,
+                                                    StringRedisSerializer stringRedisSerializer,
+                                                    CompactRedisSerializer compactRedisSerializer){
+        return template(replicaRedisConnectionFactory, stringRedisSerializer, compactRedisSerializer);
+    }
+
+    //The embedded profile subscribes listeners to its store directly
+    @Bean
+    @Profile("!embedded")
+    public RedisMessageListenerContainer redisMessageListenerContainer(@Qualifier("pubSubRedisConnectionFactory") RedisConnectionFactory pubSubRedisConnectionFactory){
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
-        container.setConnectionFactory(redisConnectionFactory);
+        container.setConnectionFactory(pubSubRedisConnectionFactory);
         container.setTaskExecutor(asyncTaskExecutor);
         return container;
     }
 
+    private RedisTemplate<String, Object> template(RedisConnectionFactory redisConnectionFactory,
+                                                   StringRedisSerializer stringRedisSerializer,
+                                                   CompactRedisSerializer compactRedisSerializer){
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(redisConnectionFactory);
+        redisTemplate.setKeySerializer(stringRedisSerializer);
+        redisTemplate.setHashKeySerializer(stringRedisSerializer);
+        redisTemplate.setHashValueSerializer(compactRedisSerializer);
+        redisTemplate.setValueSerializer(compactRedisSerializer);
+        return redisTemplate;
+    }
+
 
 
 }
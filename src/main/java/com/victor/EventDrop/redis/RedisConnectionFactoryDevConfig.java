@@ -3,6 +3,7 @@ package com.victor.EventDrop.redis;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
@@ -12,7 +13,19 @@ import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactor
 @Profile("dev")
 public class RedisConnectionFactoryDevConfig {
 
-    @Bean public RedisConnectionFactory lettuceConnectionFactory(){
+    @Bean @Primary public RedisConnectionFactory lettuceConnectionFactory(){
+        return new LettuceConnectionFactory();
+    }
+
+    @Bean public RedisConnectionFactory sessionRedisConnectionFactory(){
+        return new LettuceConnectionFactory();
+    }
+
+    @Bean public RedisConnectionFactory pubSubRedisConnectionFactory(){
+        return new LettuceConnectionFactory();
+    }
+
+    @Bean public RedisConnectionFactory replicaRedisConnectionFactory(){
         return new LettuceConnectionFactory();
     }
 
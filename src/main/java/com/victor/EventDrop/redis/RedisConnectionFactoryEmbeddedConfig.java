@@ -0,0 +1,70 @@
+package com.victor.EventDrop.redis;
+
+import com.victor.EventDrop.redis.embedded.EmbeddedMessageListenerContainer;
+import com.victor.EventDrop.redis.embedded.EmbeddedRedisConnectionFactory;
+import com.victor.EventDrop.redis.embedded.EmbeddedRedisStore;
+import com.victor.EventDrop.redis.embedded.EmbeddedScripts;
+import com.victor.EventDrop.transport.EventTransportConfigProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+/**
+ * Single node installs and tests without a redis. Every connection factory, and the listener container,
+ * is backed by the same in-process {@link EmbeddedRedisStore}, so no request makes a network hop for its data.
+ * Use it instead of the dev or prod profile. The store isn't persisted, rooms don't survive a restart.
+ * It only covers the commands and scripts the app uses without a redis. Startup fails on a script without an embedded port,
+ * or on the redis-streams event transport, which needs stream commands the store doesn't have.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Profile("embedded")
+public class RedisConnectionFactoryEmbeddedConfig {
+
+    private final RedisEmbeddedConfigProperties redisEmbeddedConfigProperties;
+    private final EventTransportConfigProperties eventTransportConfigProperties;
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public EmbeddedRedisStore embeddedRedisStore(){
+        if(eventTransportConfigProperties.getMode() == EventTransportConfigProperties.Mode.REDIS_STREAMS){
+            throw new IllegalStateException("The embedded store has no streams. Set event-transport.mode to memory or amqp with the embedded profile");
+        }
+
+        List<String> missingPorts = EmbeddedScripts.missingPorts();
+        if(!missingPorts.isEmpty()){
+            throw new IllegalStateException("The embedded store has no port of the scripts: " + missingPorts + ". Add them to EmbeddedScripts");
+        }
+
+        return new EmbeddedRedisStore(
+                redisEmbeddedConfigProperties.getTickInMillis(), redisEmbeddedConfigProperties.getWheelSize(), EmbeddedScripts.ports()
+        );
+    }
+
+    @Bean @Primary public RedisConnectionFactory redisConnectionFactory(EmbeddedRedisStore embeddedRedisStore){
+        return new EmbeddedRedisConnectionFactory(embeddedRedisStore);
+    }
+
+    @Bean public RedisConnectionFactory sessionRedisConnectionFactory(EmbeddedRedisStore embeddedRedisStore){
+        return new EmbeddedRedisConnectionFactory(embeddedRedisStore);
+    }
+
+    @Bean public RedisConnectionFactory pubSubRedisConnectionFactory(EmbeddedRedisStore embeddedRedisStore){
+        return new EmbeddedRedisConnectionFactory(embeddedRedisStore);
+    }
+
+    //There are no replicas, replica reads are served by the store itself
+    @Bean public RedisConnectionFactory replicaRedisConnectionFactory(EmbeddedRedisStore embeddedRedisStore){
+        return new EmbeddedRedisConnectionFactory(embeddedRedisStore);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(EmbeddedRedisStore embeddedRedisStore){
+        return new EmbeddedMessageListenerContainer(embeddedRedisStore);
+    }
+}
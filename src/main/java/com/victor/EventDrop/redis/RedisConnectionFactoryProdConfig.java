@@ -1,40 +1,119 @@
 package com.victor.EventDrop.redis;
 
+import io.lettuce.core.ReadFrom;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
 import java.time.Duration;
 
+/**
+ * Each workload gets its own connection factory, so a burst of entity writes or cleanup traffic
+ * queues on its own connection instead of in front of session lookups and rate limit checks.
+ * All of them point at the same redis, standalone or cluster. The replica factory prefers replicas for reads
+ * that can tolerate some staleness, see {@link ReplicaReadRouter}.
+ */
 @Configuration
 @RequiredArgsConstructor
 @Profile("prod")
 public class RedisConnectionFactoryProdConfig {
 
     private final RedisCloudConfigProperties redisConfigProperties;
+    private final RedisClusterConfigProperties redisClusterConfigProperties;
+    private final RedisReplicaConfigProperties redisReplicaConfigProperties;
+    private final RedisSchemaConfigProperties redisSchemaConfigProperties;
     private final AsyncTaskExecutor asyncTaskExecutor;
 
+    //Entities, scripts and background jobs. Anything that doesn't ask for a specific factory gets this one
     @Bean
+    @Primary
     public RedisConnectionFactory redisConnectionFactory(){
-        RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration();
-        standaloneConfiguration.setPort(redisConfigProperties.getPort());
-        standaloneConfiguration.setHostName(redisConfigProperties.getHost());
-        standaloneConfiguration.setUsername(redisConfigProperties.getUsername());
-        standaloneConfiguration.setPassword(redisConfigProperties.getPassword());
+        return connectionFactory(redisConfigProperties.getEntityCommandTimeoutInMillis());
+    }
+
+    //Session lookups, TTL refreshes, revocations and rate limiting
+    @Bean
+    public RedisConnectionFactory sessionRedisConnectionFactory(){
+        return connectionFactory(redisConfigProperties.getSessionCommandTimeoutInMillis());
+    }
 
+    //Subscriptions hold their connection for the life of the app
+    @Bean
+    public RedisConnectionFactory pubSubRedisConnectionFactory(){
+        return connectionFactory(redisConfigProperties.getEntityCommandTimeoutInMillis());
+    }
+
+    //Stale tolerant reads. Falls back to the primary by itself when no replica is reachable
+    @Bean
+    public RedisConnectionFactory replicaRedisConnectionFactory(){
         LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration
                 .builder()
-                .commandTimeout(Duration.ofSeconds(30))
+                .commandTimeout(Duration.ofMillis(redisReplicaConfigProperties.getCommandTimeoutInMillis()))
+                .readFrom(ReadFrom.REPLICA_PREFERRED)
                 .build();
 
-        LettuceConnectionFactory lettuceConnectionFactory = new LettuceConnectionFactory(standaloneConfiguration, clientConfiguration);
+        LettuceConnectionFactory lettuceConnectionFactory = new LettuceConnectionFactory(replicaConfiguration(), clientConfiguration);
         lettuceConnectionFactory.setExecutor(asyncTaskExecutor);
         return lettuceConnectionFactory;
     }
+
+    private LettuceConnectionFactory connectionFactory(long commandTimeoutInMillis){
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration
+                .builder()
+                .commandTimeout(Duration.ofMillis(commandTimeoutInMillis))
+                .build();
+
+        LettuceConnectionFactory lettuceConnectionFactory = new LettuceConnectionFactory(redisConfiguration(), clientConfiguration);
+        lettuceConnectionFactory.setExecutor(asyncTaskExecutor);
+        return lettuceConnectionFactory;
+    }
+
+    //Replicas that aren't discoverable from the primary, e.g. behind a managed service, are listed explicitly
+    private RedisConfiguration replicaConfiguration(){
+        if(redisClusterConfigProperties.isEnabled() || redisReplicaConfigProperties.getNodes().isEmpty()){
+            return redisConfiguration();
+        }
+
+        RedisStaticMasterReplicaConfiguration replicaConfiguration =
+                new RedisStaticMasterReplicaConfiguration(redisConfigProperties.getHost(), redisConfigProperties.getPort());
+        redisReplicaConfigProperties.getNodes().forEach(node -> {
+            int separator = node.lastIndexOf(':');
+            replicaConfiguration.addNode(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)));
+        });
+        replicaConfiguration.setUsername(redisConfigProperties.getUsername());
+        replicaConfiguration.setPassword(redisConfigProperties.getPassword());
+        return replicaConfiguration;
+    }
+
+    private RedisConfiguration redisConfiguration(){
+        if(redisClusterConfigProperties.isEnabled()){
+            //Only the minimal schema keys a room's entities under its hash tag, the indexed one can't join in one slot
+            if(!redisSchemaConfigProperties.isMinimal()){
+                throw new IllegalStateException("Redis cluster needs spring.redis.schema.mode: minimal");
+            }
+
+            RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration(redisClusterConfigProperties.getNodes());
+            clusterConfiguration.setMaxRedirects(redisClusterConfigProperties.getMaxRedirects());
+            clusterConfiguration.setUsername(redisConfigProperties.getUsername());
+            clusterConfiguration.setPassword(redisConfigProperties.getPassword());
+            return clusterConfiguration;
+        }
+
+        RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration();
+        standaloneConfiguration.setPort(redisConfigProperties.getPort());
+        standaloneConfiguration.setHostName(redisConfigProperties.getHost());
+        standaloneConfiguration.setUsername(redisConfigProperties.getUsername());
+        standaloneConfiguration.setPassword(redisConfigProperties.getPassword());
+        return standaloneConfiguration;
+    }
 }
@@ -0,0 +1,18 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@Profile("embedded")
+@ConfigurationProperties("spring.redis.embedded")
+public class RedisEmbeddedConfigProperties {
+    //The expiry timing wheel's tick. An expired key nothing reads is removed, and its expiry published, at most this late
+    private long tickInMillis = 10;
+    private int wheelSize = 64;
+}
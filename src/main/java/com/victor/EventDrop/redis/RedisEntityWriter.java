@@ -0,0 +1,303 @@
+package com.victor.EventDrop.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link org.springframework.data.redis.core.RedisHash} entities on a caller supplied connection,
+ * using the same key layout as Spring Data's repositories (hash, keyspace set, secondary indexes and phantom copy).
+ * This lets several new entities be written in a single pipeline instead of one repository round trip chain each.
+ * Under the minimal schema only the hash is written, without a keyspace set entry or phantom copy,
+ * and rooms and occupants are keyed under their room's hash tag, e.g. room:{1234ABCD} and occupant:{1234ABCD}:ID,
+ * so a join only touches keys in the room's cluster slot.
+ * Entities with a TTL get their deadline in {@link ExpiryDeadlines} too, when expiries are scheduled.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RedisEntityWriter {
+
+    private final RedisConverter redisConverter;
+    private final RedisSchemaConfigProperties redisSchemaConfigProperties;
+    private final ExpiryDeadlines expiryDeadlines;
+
+    //Spring Data keeps phantom copies around for 5 minutes after the entity expires
+    public static final long PHANTOM_KEY_TTL_IN_SECONDS = 300;
+
+    //Keyspaces keyed under their room's hash tag under the minimal schema, by the room code in their roomCode field
+    private static final Set<String> ROOM_TAGGED_KEYSPACES = Set.of("room", "occupant");
+    private static final String ROOM_CODE_FIELD = "roomCode";
+
+    /**
+     * Writes a new entity. The entity must not exist yet, existing index entries are not cleaned up.
+     *
+     * @param connection The connection to write on, usually a pipelined one
+     * @param entity The entity to write
+     * */
+    public void insert(RedisConnection connection, Object entity){
+        RedisData redisData = toRedisData(entity);
+        byte[] id = toBytes(redisData.getId());
+        byte[] key = toBytes(keyOf(redisData));
+
+        connection.hashCommands().hMSet(key, redisData.getBucket().rawMap());
+        Long ttl = redisData.getTimeToLive();
+        if(redisSchemaConfigProperties.isMinimal()){
+            if(ttl != null && ttl > 0){
+                connection.keyCommands().expire(key, ttl);
+                scheduleExpiry(connection, redisData);
+            }
+            writeRoomPointer(connection, redisData);
+            return;
+        }
+
+        connection.setCommands().sAdd(toBytes(redisData.getKeyspace()), id);
+        if(ttl != null && ttl > 0){
+            connection.keyCommands().expire(key, ttl);
+
+            byte[] phantomKey = toBytes(phantomKeyOf(redisData));
+            connection.hashCommands().hMSet(phantomKey, redisData.getBucket().rawMap());
+            connection.keyCommands().expire(phantomKey, ttl + PHANTOM_KEY_TTL_IN_SECONDS);
+            scheduleExpiry(connection, redisData);
+        }
+
+        byte[] indexSetKey = toBytes(indexSetKeyOf(redisData));
+        for (String indexKey : indexKeysOf(redisData)){
+            connection.setCommands().sAdd(toBytes(indexKey), id);
+            connection.setCommands().sAdd(indexSetKey, toBytes(indexKey));
+        }
+    }
+
+    /**
+     * Deletes an entity with its phantom copy and index entries, like a repository delete but on a caller supplied connection.
+     *
+     * @param connection The connection to delete on, usually a pipelined one
+     * @param keyspace The keyspace of the entity, e.g. occupant
+     * @param id The entity's id
+     * @param roomCode The entity's room, its key is tagged with under the minimal schema
+     * @param indexKeys The index sets the entity is in, usually read from its index set beforehand
+     * */
+    public void delete(RedisConnection connection, String keyspace, Object id, String roomCode, Collection<byte[]> indexKeys){
+        byte[] rawId = toBytes(id);
+        String key = keyOf(keyspace, id, roomCode);
+
+        connection.keyCommands().del(toBytes(key), toBytes(key + ":phantom"), toBytes(key + ":idx"));
+        if(isMinimalSchema()){
+            connection.keyCommands().del(toBytes(roomPointerKeyOf(keyspace, id)));
+        }
+        connection.setCommands().sRem(toBytes(keyspace), rawId);
+        for (byte[] indexKey : indexKeys){
+            connection.setCommands().sRem(indexKey, rawId);
+        }
+        expiryDeadlines.cancel(connection, key);
+    }
+
+    /**
+     * Sets the deadline of an entity that was just written with its TTL, on the same connection.
+     * Does nothing for entities without a TTL, or unless expiries are scheduled.
+     *
+     * @param connection The connection to write on, usually a pipelined one
+     * @param redisData The converted entity
+     * */
+    public void scheduleExpiry(RedisConnection connection, RedisData redisData){
+        Long ttl = redisData.getTimeToLive();
+        if(ttl != null && ttl > 0){
+            expiryDeadlines.schedule(connection, keyOf(redisData), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl));
+        }
+    }
+
+    //Drops the deadline of an entity deleted before it expired
+    public void cancelExpiry(RedisConnection connection, String key){
+        expiryDeadlines.cancel(connection, key);
+    }
+
+    //The deadline set an entity's expiry goes in, for writes that have to name their keys up front like the join script
+    public String expiryKeyOf(RedisData redisData){
+        return expiryDeadlines.partitionKeyOf(keyOf(redisData));
+    }
+
+    public boolean isExpiryScheduled(){
+        return expiryDeadlines.isEnabled();
+    }
+
+    public String keyOf(RedisData redisData){
+        byte[] roomCode = redisData.getBucket().get(ROOM_CODE_FIELD);
+        return keyOf(redisData.getKeyspace(), redisData.getId(), roomCode == null ? null : new String(roomCode, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets an entity's key. Under the minimal schema rooms and occupants are keyed under their room's hash tag,
+     * room:{1234ABCD} for the room itself and occupant:{1234ABCD}:ID for its occupants.
+     *
+     * @param keyspace The keyspace of the entity, e.g. occupant
+     * @param id The entity's id
+     * @param roomCode The entity's room, null if it isn't known
+     * @return The entity's key
+     * */
+    public String keyOf(String keyspace, Object id, String roomCode){
+        String rawId = new String(toBytes(id), StandardCharsets.UTF_8);
+        if(!isMinimalSchema() || roomCode == null || !ROOM_TAGGED_KEYSPACES.contains(keyspace)){
+            return keyspace + ":" + rawId;
+        }
+
+        String tag = "{" + roomCode + "}";
+        return rawId.equals(roomCode) ? keyspace + ":" + tag : keyspace + ":" + tag + ":" + rawId;
+    }
+
+    /**
+     * Writes the pointer from an entity keyed under its room's hash tag to its room, with the entity's TTL,
+     * so it can still be found by its id alone. Rooms themselves and entities of other keyspaces get none.
+     *
+     * @param connection The connection to write on, usually a pipelined one
+     * @param redisData The converted entity
+     * */
+    public void writeRoomPointer(RedisConnection connection, RedisData redisData){
+        if(!hasRoomPointer(redisData)){
+            return;
+        }
+
+        byte[] roomCode = redisData.getBucket().get(ROOM_CODE_FIELD);
+        byte[] pointerKey = toBytes(roomPointerKeyOf(redisData.getKeyspace(), redisData.getId()));
+        Long ttl = redisData.getTimeToLive();
+        if(ttl != null && ttl > 0){
+            connection.stringCommands().setEx(pointerKey, ttl, roomCode);
+        }else{
+            connection.stringCommands().set(pointerKey, roomCode);
+        }
+    }
+
+    //Drops the pointer of an entity deleted before it expired
+    public void deleteRoomPointer(RedisConnection connection, RedisData redisData){
+        if(hasRoomPointer(redisData)){
+            connection.keyCommands().del(toBytes(roomPointerKeyOf(redisData.getKeyspace(), redisData.getId())));
+        }
+    }
+
+    private boolean hasRoomPointer(RedisData redisData){
+        byte[] roomCode = redisData.getBucket().get(ROOM_CODE_FIELD);
+        return isMinimalSchema() && roomCode != null && redisData.getId() != null
+                && ROOM_TAGGED_KEYSPACES.contains(redisData.getKeyspace())
+                && !redisData.getId().equals(new String(roomCode, StandardCharsets.UTF_8));
+    }
+
+    //The pointer from an entity's id to its room under the minimal schema, e.g. occupant-room:ID holding the room code
+    public String roomPointerKeyOf(String keyspace, Object id){
+        return keyspace + "-room:" + new String(toBytes(id), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits an entity's key into its keyspace and id, in either layout: room:1234ABCD, room:{1234ABCD} or occupant:{1234ABCD}:ID.
+     *
+     * @param key The key
+     * @return The keyspace and id, or null for keys that aren't an entity's own, like phantom copies and index sets
+     * */
+    public static String[] splitKey(String key){
+        int separator = key.indexOf(':');
+        if(separator <= 0){
+            return null;
+        }
+
+        String keyspace = key.substring(0, separator);
+        String id = key.substring(separator + 1);
+        if(id.startsWith("{")){
+            int tagEnd = id.indexOf('}');
+            if(tagEnd < 0 || !ROOM_TAGGED_KEYSPACES.contains(keyspace)){
+                return null;
+            }
+
+            String roomCode = id.substring(1, tagEnd);
+            String rest = id.substring(tagEnd + 1);
+            if(rest.isEmpty()){
+                id = roomCode;
+            }else if(rest.startsWith(":")){
+                id = rest.substring(1);
+            }else{
+                return null;
+            }
+        }
+
+        if(id.isEmpty() || id.indexOf(':') >= 0){
+            return null;
+        }
+        return new String[]{keyspace, id};
+    }
+
+    public String phantomKeyOf(RedisData redisData){
+        return keyOf(redisData) + ":phantom";
+    }
+
+    //The set tracking which index sets an entity was added to
+    public String indexSetKeyOf(RedisData redisData){
+        return keyOf(redisData) + ":idx";
+    }
+
+    /**
+     * Gets the secondary index keys of an entity, e.g. occupant:roomCode:1234ABCD
+     *
+     * @param redisData The converted entity
+     * @return The index keys the entity's id belongs in
+     * */
+    public List<String> indexKeysOf(RedisData redisData){
+        List<String> indexKeys = new ArrayList<>();
+        for (IndexedData indexedData : redisData.getIndexedData()){
+            if(!(indexedData instanceof SimpleIndexedPropertyValue indexedValue) || indexedValue.getValue() == null){
+                log.warn("Skipping unsupported index: {} for keyspace: {}", indexedData.getIndexName(), indexedData.getKeyspace());
+                continue;
+            }
+
+            indexKeys.add(indexedValue.getKeyspace() + ":" + indexedValue.getIndexName() + ":"
+                    + new String(toBytes(indexedValue.getValue()), StandardCharsets.UTF_8));
+        }
+        return indexKeys;
+    }
+
+    public long getPhantomKeyTtlInSeconds(){
+        return PHANTOM_KEY_TTL_IN_SECONDS;
+    }
+
+    //Whether entities are written without keyspace sets, index sets and phantom copies
+    public boolean isMinimalSchema(){
+        return redisSchemaConfigProperties.isMinimal();
+    }
+
+    /**
+     * Reads an entity back from its raw hash, e.g. one returned by a script
+     *
+     * @param type The entity type
+     * @param raw The hash's fields and values
+     * @return The entity, or null if the hash is empty
+     * */
+    public <T> T read(Class<T> type, Map<byte[], byte[]> raw){
+        if(raw.isEmpty()){
+            return null;
+        }
+        return redisConverter.read(type, new RedisData(raw));
+    }
+
+    //Converts an entity to the flattened hash Spring Data stores it as
+    public RedisData toRedisData(Object entity){
+        RedisData redisData = new RedisData();
+        redisConverter.write(entity, redisData);
+        return redisData;
+    }
+
+    public byte[] toBytes(Object value){
+        if(value instanceof byte[] bytes){
+            return bytes;
+        }
+        return redisConverter.getConversionService().convert(value, byte[].class);
+    }
+}
@@ -0,0 +1,36 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.expiry")
+public class RedisExpiryConfigProperties {
+    //Switching to the scheduler doesn't backfill deadlines, entities written before the switch expire unhandled
+    private Mode mode = Mode.NOTIFICATIONS;
+    //Deadline sets. Each is leased to one node at a time, so this caps how many nodes share the expiry work
+    private int partitions = 16;
+    private long pollIntervalInMillis = 250;
+    //Due keys claimed per script call, and how many calls one partition gets per poll
+    private int batchSize = 100;
+    private int maxBatchesPerPoll = 10;
+    //A claimed key nobody acknowledged within this is claimed again, e.g. after its node died mid batch
+    private long claimTimeoutInMillis = 30000;
+    private long leaseTtlInMillis = 10000;
+    private long rebalanceIntervalInMillis = 2000;
+
+    public enum Mode {
+        //Keyspace notifications from redis, delivered to every node subscribed
+        NOTIFICATIONS,
+        //Deadlines kept in sorted sets, polled by the node holding each partition's lease
+        SCHEDULER
+    }
+
+    public boolean isScheduler(){
+        return mode == Mode.SCHEDULER;
+    }
+}
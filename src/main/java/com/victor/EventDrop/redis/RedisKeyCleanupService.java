@@ -1,54 +1,204 @@
 package com.victor.EventDrop.redis;
 
+import com.victor.EventDrop.redis.embedded.EmbeddedRedisConnectionFactory;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.DataType;
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.KeyScanOptions;
+import org.springframework.data.redis.connection.ExpirationOptions;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ScanOptions;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sweeps the keyspace for orphaned hashes, keys left without a TTL, and gives them a short one so redis removes them.
+ * The sweep is incremental: every run scans a few pages from where the last one stopped, checks the TTLs of a page
+ * in one pipeline and stops early when redis is slow. The cursor lives in redis, so a restart or another node
+ * picks the sweep up where it was. On a cluster every master is swept with a cursor of its own, SCAN only walks
+ * the node it's sent to. Only the node holding the sweeper lease sweeps.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RedisKeyCleanupService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisSweeperConfigProperties redisSweeperConfigProperties;
+    private final RedisClusterNodes redisClusterNodes;
+    private final RedisLease redisLease;
 
-    @Async
-    @Scheduled(cron = "${spring.redis.other.cleanup-cron}")
-    public void cleanupOrphanedData() {
-        ScanOptions scanOptions = KeyScanOptions
-                .scanOptions(DataType.HASH)
-                .count(100)
-                .match("*")
-                .build();
-
-        log.info("Starting scheduled Redis key cleanup for orphaned data.");
-        try (Cursor<String> cursor = redisTemplate.scan(scanOptions)) {
-            int keysProcessed = 0;
-            while (cursor.hasNext()) {
-                String key = cursor.next();
-                if (key != null && !key.startsWith("metrics:")) {
-                    long ttl = redisTemplate.getExpire(key, TimeUnit.SECONDS);
-
-                    if (ttl == -1 || ttl == -2) {
-                        log.warn("Found orphaned key with no expiry: {}. Setting a 2-second TTL for cleanup.", key);
-                        redisTemplate.expire(key, 2, TimeUnit.SECONDS);
-                        keysProcessed++;
-                    }
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong passOrphansFound = new AtomicLong();
+    private final AtomicLong passOrphansFixed = new AtomicLong();
 
+    //Totals found and fixed by this node since it started
+    @Getter
+    private final AtomicLong orphansFound = new AtomicLong();
+    @Getter
+    private final AtomicLong orphansFixed = new AtomicLong();
+
+    private static final String LEASE_KEY = "orphan-sweeper:lease";
+    private static final String CURSOR_KEY_PREFIX = "orphan-sweeper:cursor:";
+    private static final String START_CURSOR = "0";
+
+    //One SCAN call from a given cursor. Spring Data's scan always starts over at 0. It only lists keys, so it runs on the node it's sent to
+    private static final byte[] SCAN_PAGE_SCRIPT = """
+            return redis.call('SCAN', ARGV[1], 'COUNT', ARGV[2], 'TYPE', 'hash')
+            """.getBytes(StandardCharsets.UTF_8);
+
+    @Scheduled(fixedDelayString = "${spring.redis.sweeper.interval-in-millis:5000}")
+    public void sweep() {
+        //The embedded store starts empty on every restart, there's nothing to sweep
+        if(redisTemplate.getConnectionFactory() instanceof EmbeddedRedisConnectionFactory){
+            log.debug("Skipping the Redis orphan sweep on the embedded store");
+            return;
+        }
+
+        if(!acquireLease()){
+            return;
+        }
+
+        for (RedisClusterNodes.RedisNode node : redisClusterNodes.masters()){
+            try {
+                sweepNode(node);
+            } catch (Exception e) {
+                log.error("An error occurred during the Redis orphan sweep of node: {}", node.id(), e);
+            }
+        }
+    }
+
+    private void sweepNode(RedisClusterNodes.RedisNode node){
+        String cursor = loadCursor(node);
+        for (int page = 0; page < redisSweeperConfigProperties.getMaxPagesPerRun(); page++){
+            long start = System.nanoTime();
+            cursor = sweepPage(node, cursor);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if(START_CURSOR.equals(cursor)){
+                log.info("Finished a Redis orphan sweep pass of node: {}. Found {} orphaned keys, fixed {}.", node.id(), passOrphansFound.getAndSet(0), passOrphansFixed.getAndSet(0));
+                break;
+            }
+
+            //Back off until the next run instead of piling onto a slow redis
+            if(elapsedMillis > redisSweeperConfigProperties.getMaxPageLatencyInMillis()){
+                log.debug("Orphan sweep page took {}ms. Pausing until the next run", elapsedMillis);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sweeps one page of a node's hash keys and saves the cursor after it.
+     *
+     * @param node The node to scan
+     * @param cursor The cursor to continue the scan from
+     * @return The cursor to continue from next time, 0 once the pass is complete
+     * */
+    String sweepPage(RedisClusterNodes.RedisNode node, String cursor){
+        ScanPage page = scanPage(node, cursor);
+        List<byte[]> candidates = page.keys().stream()
+                .filter(key -> !isExcluded(new String(key, StandardCharsets.UTF_8)))
+                .toList();
+
+        if(!candidates.isEmpty()){
+            List<Object> ttls = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                candidates.forEach(key -> connection.keyCommands().ttl(key));
+                return null;
+            });
+
+            List<byte[]> orphans = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++){
+                //-1 means no TTL. -2 means the key is already gone
+                if(ttls.get(i) instanceof Long ttl && ttl == -1){
+                    orphans.add(candidates.get(i));
                 }
             }
 
-            log.info("Finished Redis key cleanup. Processed {} orphaned keys.", keysProcessed);
-        } catch (Exception e) {
-            log.error("An error occurred during the Redis key cleanup task.", e);
+            if(!orphans.isEmpty()){
+                fix(orphans);
+            }
         }
+
+        byte[] cursorKey = cursorKeyOf(node);
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.stringCommands().set(cursorKey, page.cursor().getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        return page.cursor();
+    }
+
+    private void fix(List<byte[]> orphans){
+        long orphanTtl = redisSweeperConfigProperties.getOrphanTtlInSeconds();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            orphans.forEach(key -> {
+                log.warn("Found orphaned key with no expiry: {}. Setting a {}-second TTL for cleanup.", new String(key, StandardCharsets.UTF_8), orphanTtl);
+                //NX so a TTL set concurrently by the app isn't shortened
+                connection.keyCommands().expire(key, orphanTtl, ExpirationOptions.Condition.NX);
+            });
+            return null;
+        });
+
+        long fixed = results.stream().filter(Boolean.TRUE::equals).count();
+        passOrphansFound.addAndGet(orphans.size());
+        passOrphansFixed.addAndGet(fixed);
+        orphansFound.addAndGet(orphans.size());
+        orphansFixed.addAndGet(fixed);
+
+        //Published next to the app's other metrics
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().incrBy("metrics:sweeper:orphansFound".getBytes(StandardCharsets.UTF_8), orphans.size());
+            connection.stringCommands().incrBy("metrics:sweeper:orphansFixed".getBytes(StandardCharsets.UTF_8), fixed);
+            return null;
+        });
+    }
+
+    //One SCAN call on the node, from the given cursor
+    @SuppressWarnings("unchecked")
+    ScanPage scanPage(RedisClusterNodes.RedisNode node, String cursor){
+        byte[] count = String.valueOf(redisSweeperConfigProperties.getBatchSize()).getBytes(StandardCharsets.UTF_8);
+        try (RedisConnection connection = node.connectionFactory().getConnection()) {
+            List<Object> result = connection.scriptingCommands()
+                    .eval(SCAN_PAGE_SCRIPT, ReturnType.MULTI, 0, cursor.getBytes(StandardCharsets.UTF_8), count);
+            if(result == null || result.size() < 2){
+                throw new IllegalStateException("Scan returned no page for cursor: " + cursor);
+            }
+
+            String next = new String((byte[]) result.get(0), StandardCharsets.UTF_8);
+            return new ScanPage(next, (List<byte[]>) result.get(1));
+        }
+    }
+
+    private String loadCursor(RedisClusterNodes.RedisNode node){
+        byte[] cursorKey = cursorKeyOf(node);
+        byte[] cursor = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(cursorKey));
+        return cursor == null ? START_CURSOR : new String(cursor, StandardCharsets.UTF_8);
+    }
+
+    //A master that fails over comes back under a new id and is swept from the start
+    private static byte[] cursorKeyOf(RedisClusterNodes.RedisNode node){
+        return (CURSOR_KEY_PREFIX + node.id()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean isExcluded(String key){
+        return redisSweeperConfigProperties.getExcludedPrefixes().stream().anyMatch(key::startsWith);
+    }
+
+    //The lease outlives one interval slightly, so a slow node doesn't overlap the next holder
+    private boolean acquireLease(){
+        Duration leaseTtl = Duration.ofMillis(redisSweeperConfigProperties.getIntervalInMillis()).plusSeconds(redisSweeperConfigProperties.getLeaseGraceInSeconds());
+        return redisLease.acquire(LEASE_KEY, nodeId, leaseTtl);
+    }
+
+    record ScanPage(String cursor, List<byte[]> keys) {
     }
-}
\ No newline at end of file
+}
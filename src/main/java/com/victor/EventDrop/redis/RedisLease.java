@@ -0,0 +1,71 @@
+package com.victor.EventDrop.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Leases that let one node at a time run a job, like the orphan sweep or an expiry partition.
+ * A lease is a key holding its owner's ID with a TTL. Taking, renewing and giving it up each compare the owner
+ * and act in one script, so a node never renews or drops a lease that ran out and went to another node in between.
+ * The owner and TTL are written as plain strings.
+ */
+@Component
+@RequiredArgsConstructor
+public class RedisLease {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private static final DefaultRedisScript<Long> ACQUIRE_LEASE_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/acquire-lease.lua"), Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_LEASE_SCRIPT =
+            new DefaultRedisScript<>(loadScript("scripts/release-lease.lua"), Long.class);
+
+    /**
+     * Takes a lease, or renews it if the owner already holds it.
+     *
+     * @param leaseKey The lease's key
+     * @param owner The ID of the node taking it
+     * @param ttl How long the lease lasts without another renewal
+     * @return True if the owner holds the lease now
+     * */
+    public boolean acquire(String leaseKey, String owner, Duration ttl){
+        Long acquired = redisTemplate.execute(ACQUIRE_LEASE_SCRIPT, RedisSerializer.string(), rawResult(), List.of(leaseKey),
+                owner, String.valueOf(ttl.toMillis()));
+        return acquired != null && acquired == 1;
+    }
+
+    /**
+     * Gives up a lease if the owner still holds it, so the next node can take it without waiting for it to run out.
+     *
+     * @param leaseKey The lease's key
+     * @param owner The ID of the node giving it up
+     * @return True if the lease was released
+     * */
+    public boolean release(String leaseKey, String owner){
+        Long released = redisTemplate.execute(RELEASE_LEASE_SCRIPT, RedisSerializer.string(), rawResult(), List.of(leaseKey), owner);
+        return released != null && released == 1;
+    }
+
+    //Integer replies come back as a Long, the result serializer isn't used
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> rawResult(){
+        return (RedisSerializer<T>) RedisSerializer.byteArray();
+    }
+
+    private static String loadScript(String path){
+        try{
+            return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to load script: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.victor.EventDrop.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pipelines whose replies come back as the connection returned them.
+ * {@link RedisTemplate#executePipelined} runs hash replies through the template's hash serializers, which turns
+ * an entity's raw hash into strings and compact values the converter can't read. Reads of entity hashes go through here.
+ */
+public final class RedisPipelines {
+
+    private RedisPipelines() {
+    }
+
+    /**
+     * @param redisTemplate The template to get a connection from
+     * @param commands Queues the commands on the pipelined connection
+     * @return One reply per command, in order. Hashes as byte[] to byte[] maps, sets of byte[] and so on
+     * */
+    public static List<Object> raw(RedisTemplate<?, ?> redisTemplate, Consumer<RedisConnection> commands){
+        List<Object> replies = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            try{
+                commands.accept(connection);
+            }catch (RuntimeException e){
+                connection.closePipeline();
+                throw e;
+            }
+            return connection.closePipeline();
+        });
+        return replies == null ? List.of() : replies;
+    }
+}
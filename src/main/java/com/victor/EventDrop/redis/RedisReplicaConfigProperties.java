@@ -0,0 +1,24 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.replica")
+public class RedisReplicaConfigProperties {
+    //When disabled every read goes to the primary
+    private boolean enabled = false;
+    //Replicas as host:port. Left empty, replicas are discovered from the primary, or from the cluster when it's enabled
+    private List<String> nodes = List.of();
+    //Replica reads fall back to the primary while the replicas are further behind than this
+    private long maxLagInMillis = 1000;
+    private long probeIntervalInMillis = 1000;
+    //Kept short, a slow replica read still has the primary to fall back to
+    private long commandTimeoutInMillis = 500;
+}
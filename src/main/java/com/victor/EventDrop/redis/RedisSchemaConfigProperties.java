@@ -0,0 +1,27 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.schema")
+public class RedisSchemaConfigProperties {
+    //Picks the repositories. Switching modes doesn't migrate existing keys, rooms created under the old mode just expire
+    private Mode mode = Mode.INDEXED;
+
+    public enum Mode {
+        //Spring Data's repositories: keyspace sets, secondary index sets and phantom copies for every entity
+        INDEXED,
+        //Hand written repositories: only the entity hashes plus the room scoped sets the services query by.
+        //A room's entities are keyed under its hash tag, so it's the only mode that runs on a redis cluster
+        MINIMAL
+    }
+
+    public boolean isMinimal(){
+        return mode == Mode.MINIMAL;
+    }
+}
@@ -0,0 +1,25 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.serializer")
+public class RedisSerializerConfigProperties {
+    //JSON keeps writing JSON but already reads compact values. Switch to COMPACT once every node runs a version that reads it
+    private Mode mode = Mode.JSON;
+    //Rewrites existing JSON values of registered types in the compact format on startup
+    private boolean migrateOnStartup = false;
+    private List<String> migratePatterns = List.of("metrics:*");
+
+    public enum Mode {
+        JSON,
+        COMPACT
+    }
+}
@@ -0,0 +1,24 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("spring.redis.sweeper")
+public class RedisSweeperConfigProperties {
+    private long intervalInMillis = 5000;
+    //Keys scanned per page. Each page's TTLs are checked in one pipeline
+    private int batchSize = 200;
+    private int maxPagesPerRun = 10;
+    //A page slower than this ends the run early, so the sweep backs off while redis is under load
+    private long maxPageLatencyInMillis = 50;
+    private long orphanTtlInSeconds = 2;
+    private long leaseGraceInSeconds = 10;
+    private List<String> excludedPrefixes = List.of("metrics:");
+}
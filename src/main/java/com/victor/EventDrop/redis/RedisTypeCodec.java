@@ -0,0 +1,167 @@
+package com.victor.EventDrop.redis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Writes and reads one registered type in the compact binary format.
+ * Field order is the format, so fields may only ever be appended, never reordered or removed.
+ *
+ * @param <T> The type this codec handles
+ */
+public interface RedisTypeCodec<T> {
+
+    void write(Writer writer, T value);
+
+    T read(Reader reader);
+
+    /**
+     * Appends values to a growing buffer. Integers are written as zig-zag varints,
+     * nullable values are prefixed by a presence byte.
+     */
+    final class Writer {
+        private final ByteArrayOutputStream out;
+
+        public Writer(int initialSize){
+            this.out = new ByteArrayOutputStream(initialSize);
+        }
+
+        public Writer writeByte(int value){
+            out.write(value);
+            return this;
+        }
+
+        public Writer writeBoolean(boolean value){
+            return writeByte(value ? 1 : 0);
+        }
+
+        public Writer writeVarLong(long value){
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0){
+                out.write((int) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+            out.write((int) zigZag);
+            return this;
+        }
+
+        //Fixed width, big endian
+        public Writer writeLong(long value){
+            for (int shift = 56; shift >= 0; shift -= 8){
+                out.write((int) (value >>> shift));
+            }
+            return this;
+        }
+
+        public Writer writeDouble(double value){
+            return writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        public Writer writeString(String value){
+            if(value == null){
+                return writeVarLong(-1);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        public Writer writeInteger(Integer value){
+            writeBoolean(value != null);
+            return value == null ? this : writeVarLong(value);
+        }
+
+        public Writer writeUuid(UUID value){
+            writeBoolean(value != null);
+            if(value != null){
+                writeLong(value.getMostSignificantBits());
+                writeLong(value.getLeastSignificantBits());
+            }
+            return this;
+        }
+
+        //Seconds since the epoch plus nanos, the same instant LocalDateTime holds without any text formatting
+        public Writer writeDateTime(LocalDateTime value){
+            writeBoolean(value != null);
+            if(value != null){
+                writeVarLong(value.toEpochSecond(ZoneOffset.UTC));
+                writeVarLong(value.getNano());
+            }
+            return this;
+        }
+
+        public byte[] toByteArray(){
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Reads values in the order a {@link Writer} wrote them.
+     */
+    final class Reader {
+        private final ByteBuffer buffer;
+
+        public Reader(byte[] bytes, int offset){
+            this.buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        }
+
+        public int readByte(){
+            return buffer.get() & 0xFF;
+        }
+
+        public boolean readBoolean(){
+            return readByte() != 0;
+        }
+
+        public long readVarLong(){
+            long zigZag = 0;
+            for (int shift = 0; shift < 64; shift += 7){
+                int b = readByte();
+                zigZag |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0){
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new IllegalStateException("Malformed varint");
+        }
+
+        public double readDouble(){
+            return buffer.getDouble();
+        }
+
+        public String readString(){
+            int length = (int) readVarLong();
+            if(length < 0){
+                return null;
+            }
+            if(length > buffer.remaining()){
+                throw new BufferUnderflowException();
+            }
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        public Integer readInteger(){
+            return readBoolean() ? (int) readVarLong() : null;
+        }
+
+        public UUID readUuid(){
+            return readBoolean() ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+        }
+
+        public LocalDateTime readDateTime(){
+            return readBoolean() ? LocalDateTime.ofEpochSecond(readVarLong(), (int) readVarLong(), ZoneOffset.UTC) : null;
+        }
+
+        public int position(){
+            return buffer.position();
+        }
+    }
+}
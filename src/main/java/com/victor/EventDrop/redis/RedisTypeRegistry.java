@@ -0,0 +1,167 @@
+package com.victor.EventDrop.redis;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.metrics.SimpleMetrics;
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.rooms.Room;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The table of types the compact serializer can write, each under a fixed numeric ID.
+ * The ID is stored in place of a class name, so IDs are part of the stored format:
+ * never change or reuse one, register new types under new IDs instead.
+ * Strings and numbers are deliberately not registered. They're already compact as JSON, INCR counters must stay plain text,
+ * and keeping them byte identical keeps set and sorted set members stable across serializer modes.
+ */
+@Component
+@Slf4j
+public final class RedisTypeRegistry {
+
+    private final Map<Class<?>, Registration<?>> byType = new ConcurrentHashMap<>();
+    private final Map<Integer, Registration<?>> byId = new ConcurrentHashMap<>();
+
+    public RedisTypeRegistry(){
+        register(1, LocalDateTime.class, new RedisTypeCodec<>() {
+            @Override
+            public void write(RedisTypeCodec.Writer writer, LocalDateTime value) {
+                writer.writeDateTime(value);
+            }
+
+            @Override
+            public LocalDateTime read(RedisTypeCodec.Reader reader) {
+                return reader.readDateTime();
+            }
+        });
+
+        register(10, SimpleMetrics.class, new RedisTypeCodec<>() {
+            @Override
+            public void write(RedisTypeCodec.Writer writer, SimpleMetrics value) {
+                writer.writeInteger(value.getRoomsCreated())
+                        .writeInteger(value.getFilesUploaded())
+                        .writeInteger(value.getFilesDownloaded());
+            }
+
+            @Override
+            public SimpleMetrics read(RedisTypeCodec.Reader reader) {
+                return new SimpleMetrics(reader.readInteger(), reader.readInteger(), reader.readInteger());
+            }
+        });
+
+        register(11, Room.class, new RedisTypeCodec<>() {
+            @Override
+            public void write(RedisTypeCodec.Writer writer, Room value) {
+                writer.writeString(value.getRoomCode())
+                        .writeString(value.getRoomName())
+                        .writeDateTime(value.getCreatedAt())
+                        .writeDateTime(value.getExpiresAt())
+                        .writeDouble(value.getTtl());
+            }
+
+            @Override
+            public Room read(RedisTypeCodec.Reader reader) {
+                return Room.builder()
+                        .roomCode(reader.readString())
+                        .roomName(reader.readString())
+                        .createdAt(reader.readDateTime())
+                        .expiresAt(reader.readDateTime())
+                        .ttl(reader.readDouble())
+                        .build();
+            }
+        });
+
+        register(12, Occupant.class, new RedisTypeCodec<>() {
+            @Override
+            public void write(RedisTypeCodec.Writer writer, Occupant value) {
+                writer.writeString(value.getRoomCode())
+                        .writeUuid(value.getSessionId())
+                        .writeString(value.getOccupantName())
+                        //By name, so reordering the enum can't change stored roles
+                        .writeString(value.getOccupantRole() == null ? null : value.getOccupantRole().name())
+                        .writeDateTime(value.getJoinedAt());
+            }
+
+            @Override
+            public Occupant read(RedisTypeCodec.Reader reader) {
+                Occupant.OccupantBuilder builder = Occupant.builder()
+                        .roomCode(reader.readString())
+                        .sessionId(reader.readUuid())
+                        .occupantName(reader.readString());
+                String role = reader.readString();
+                return builder
+                        .occupantRole(role == null ? null : OccupantRole.valueOf(role))
+                        .joinedAt(reader.readDateTime())
+                        .build();
+            }
+        });
+
+        register(13, FileDrop.class, new RedisTypeCodec<>() {
+            @Override
+            public void write(RedisTypeCodec.Writer writer, FileDrop value) {
+                writer.writeUuid(value.getFileId())
+                        .writeString(value.getOriginalFileName())
+                        .writeString(value.getFileName())
+                        .writeString(value.getRoomCode())
+                        .writeVarLong(value.getFileSize())
+                        .writeString(value.getBlobUrl())
+                        .writeDateTime(value.getUploadedAt())
+                        .writeBoolean(value.isDeleted());
+            }
+
+            @Override
+            public FileDrop read(RedisTypeCodec.Reader reader) {
+                return FileDrop.builder()
+                        .fileId(reader.readUuid())
+                        .originalFileName(reader.readString())
+                        .fileName(reader.readString())
+                        .roomCode(reader.readString())
+                        .fileSize(reader.readVarLong())
+                        .blobUrl(reader.readString())
+                        .uploadedAt(reader.readDateTime())
+                        .isDeleted(reader.readBoolean())
+                        .build();
+            }
+        });
+    }
+
+    /**
+     * Registers a type with the compact serializer.
+     *
+     * @param id The type's permanent ID, between 1 and 127 so it fits in one byte
+     * @param type The type
+     * @param codec The codec that writes and reads the type
+     * @throws IllegalArgumentException if the ID or the type is already registered
+     * */
+    public <T> void register(int id, Class<T> type, RedisTypeCodec<T> codec){
+        if(id < 1 || id > 127){
+            throw new IllegalArgumentException("Type ID must be between 1 and 127, got: " + id);
+        }
+
+        Registration<T> registration = new Registration<>(id, type, codec);
+        if(byId.putIfAbsent(id, registration) != null){
+            throw new IllegalArgumentException("Type ID " + id + " is already registered");
+        }
+        if(byType.putIfAbsent(type, registration) != null){
+            byId.remove(id);
+            throw new IllegalArgumentException("Type " + type.getName() + " is already registered");
+        }
+        log.debug("Registered compact redis type: {} as {}", type.getSimpleName(), id);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Registration<T> forType(Class<T> type){
+        return (Registration<T>) byType.get(type);
+    }
+
+    public Registration<?> forId(int id){
+        return byId.get(id);
+    }
+
+    public record Registration<T>(int id, Class<T> type, RedisTypeCodec<T> codec) {
+    }
+}
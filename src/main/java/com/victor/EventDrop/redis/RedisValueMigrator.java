@@ -0,0 +1,104 @@
+package com.victor.EventDrop.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.KeyScanOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Rewrites existing JSON string values in the compact format.
+ * Each key is swapped with a compare and set that keeps its TTL, so a value written concurrently by another node is never overwritten.
+ * Values that aren't of a registered type, like INCR counters, are left alone.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RedisValueMigrator {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final CompactRedisSerializer compactRedisSerializer;
+    private final RedisSerializerConfigProperties redisSerializerConfigProperties;
+
+    //Replaces the value only if it is still the one that was read
+    private static final byte[] COMPARE_AND_SET_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('SET', KEYS[1], ARGV[2], 'KEEPTTL') and 1 or 0
+            end
+            return 0
+            """.getBytes(StandardCharsets.UTF_8);
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup(){
+        if(!redisSerializerConfigProperties.isMigrateOnStartup() || !compactRedisSerializer.isWriteCompact()){
+            return;
+        }
+
+        redisSerializerConfigProperties.getMigratePatterns().forEach(this::migrate);
+    }
+
+    /**
+     * Migrates every string key matching a pattern.
+     *
+     * @param pattern The key pattern, e.g. metrics:*
+     * @return The amount of keys rewritten
+     * */
+    public int migrate(String pattern){
+        ScanOptions scanOptions = KeyScanOptions
+                .scanOptions(DataType.STRING)
+                .count(100)
+                .match(pattern)
+                .build();
+
+        log.info("Starting compact value migration for keys matching: {}", pattern);
+        int migrated = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(scanOptions)) {
+            while (cursor.hasNext()) {
+                if(migrateKey(cursor.next())){
+                    migrated++;
+                }
+            }
+            log.info("Finished compact value migration for keys matching: {}. Migrated {} keys.", pattern, migrated);
+        } catch (Exception e) {
+            log.error("An error occurred during compact value migration for keys matching: {}", pattern, e);
+        }
+        return migrated;
+    }
+
+    boolean migrateKey(String key){
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] current = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        if(current == null || CompactRedisSerializer.isCompact(current)){
+            return false;
+        }
+
+        Object value;
+        try{
+            value = compactRedisSerializer.deserialize(current);
+        }catch (Exception e){
+            log.debug("Skipping key: {} with a value that isn't JSON", key);
+            return false;
+        }
+
+        if(!compactRedisSerializer.supports(value)){
+            return false;
+        }
+
+        byte[] compact = compactRedisSerializer.serialize(value);
+        Long swapped = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(COMPARE_AND_SET_SCRIPT, ReturnType.INTEGER, 1, rawKey, current, compact)
+        );
+        return swapped != null && swapped == 1;
+    }
+}
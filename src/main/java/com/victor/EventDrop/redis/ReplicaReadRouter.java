@@ -0,0 +1,229 @@
+package com.victor.EventDrop.redis;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Routes reads to the primary or to a replica by their {@link ReadPreference}.
+ * Replica reads are only used while the replicas are caught up. A probe writes a heartbeat to the primary on a schedule
+ * and reads it back from a replica, and while the replica is further behind than the configured max lag,
+ * or the probe fails, every read goes to the primary. A replica read that finds nothing, e.g. an entity written
+ * a moment ago or a set that's still empty on the replica, is retried on the primary. So is a set read whose ids
+ * the replica doesn't have every hash of yet. How many reads each side served is published under metrics:replica-reads.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReplicaReadRouter {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    @Qualifier("replicaRedisTemplate")
+    private final RedisTemplate<String, Object> replicaRedisTemplate;
+    private final RedisEntityWriter redisEntityWriter;
+    private final RedisReplicaConfigProperties redisReplicaConfigProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //The replica's lag as of the last probe, in millis. Unknown until the first probe has run
+    @Getter
+    private volatile long lagInMillis = Long.MAX_VALUE;
+    private volatile long lastHeartbeat = -1;
+
+    //Totals since this node started
+    @Getter
+    private final AtomicLong replicaReads = new AtomicLong();
+    @Getter
+    private final AtomicLong primaryReads = new AtomicLong();
+    //Replica reads that were retried on the primary because the replica failed or came back empty
+    @Getter
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final long[] published = new long[3];
+
+    private static final String HEARTBEAT_KEY_PREFIX = "replica-lag:heartbeat:";
+    private static final String METRICS_KEY_PREFIX = "metrics:replica-reads:";
+
+    /**
+     * Runs a read on the primary or a replica.
+     *
+     * @param readPreference Where the read may be served from
+     * @param read The read, given the template to read with
+     * @return The read's result. A null, empty optional or empty collection from a replica is replaced by the primary's
+     * */
+    public <T> T read(ReadPreference readPreference, Function<RedisTemplate<String, Object>, T> read){
+        if(readPreference == ReadPreference.PRIMARY || !isReplicaHealthy()){
+            primaryReads.incrementAndGet();
+            return read.apply(redisTemplate);
+        }
+
+        try{
+            T result = read.apply(replicaRedisTemplate);
+            if(!isMissing(result)){
+                replicaReads.incrementAndGet();
+                return result;
+            }
+        }catch (Exception e){
+            log.warn("Replica read failed, retrying on the primary", e);
+        }
+
+        fallbacks.incrementAndGet();
+        primaryReads.incrementAndGet();
+        return read.apply(redisTemplate);
+    }
+
+    /**
+     * Finds an entity by its id, reading its hash directly.
+     *
+     * @param readPreference Where the read may be served from
+     * @param type The entity type
+     * @param keyspace The keyspace of the entity, e.g. fileDrop
+     * @param id The entity's id
+     * @return The entity, or an empty optional if it doesn't exist
+     * */
+    public <T> Optional<T> findById(ReadPreference readPreference, Class<T> type, String keyspace, Object id){
+        byte[] key = bytes(keyspace + ":" + new String(redisEntityWriter.toBytes(id), StandardCharsets.UTF_8));
+        return read(readPreference, template -> Optional.ofNullable(
+                template.execute((RedisCallback<T>) connection -> redisEntityWriter.read(type, connection.hashCommands().hGetAll(key)))
+        ));
+    }
+
+    /**
+     * Finds every entity in a secondary index, e.g. every file drop with a room code.
+     *
+     * @param readPreference Where the read may be served from
+     * @param type The entity type
+     * @param keyspace The keyspace of the entity, e.g. fileDrop
+     * @param indexName The indexed property, e.g. roomCode
+     * @param value The indexed value
+     * @return The entities in the index. Ids whose hash is already gone on the primary are skipped
+     * */
+    public <T> List<T> findAllByIndex(ReadPreference readPreference, Class<T> type, String keyspace, String indexName, Object value){
+        String indexKey = keyspace + ":" + indexName + ":" + new String(redisEntityWriter.toBytes(value), StandardCharsets.UTF_8);
+        return findAllInSet(readPreference, type, keyspace, indexKey);
+    }
+
+    /**
+     * Finds every entity whose id is in a set, e.g. a Spring Data index set or a minimal schema lookup set.
+     * The set is read first, then the hashes in one pipeline. An empty set, or an id without its hash on a replica,
+     * may just not have replicated yet, so either sends the read to the primary.
+     *
+     * @param readPreference Where the read may be served from
+     * @param type The entity type
+     * @param keyspace The keyspace of the entity, e.g. fileDrop
+     * @param setKey The set of entity ids, e.g. room-files:{1234ABCD}
+     * @return The entities in the set. Ids whose hash is already gone on the primary are skipped
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findAllInSet(ReadPreference readPreference, Class<T> type, String keyspace, String setKey){
+        byte[] rawSetKey = bytes(setKey);
+        return read(readPreference, template -> {
+            Set<byte[]> ids = template.execute((RedisCallback<Set<byte[]>>) connection -> connection.setCommands().sMembers(rawSetKey));
+            if(ids == null || ids.isEmpty()){
+                return List.of();
+            }
+
+            List<Object> hashes = RedisPipelines.raw(template, connection ->
+                    ids.forEach(id -> connection.hashCommands().hGetAll(bytes(keyspace + ":" + new String(id, StandardCharsets.UTF_8))))
+            );
+
+            List<T> entities = new ArrayList<>(hashes.size());
+            for (Object hash : hashes){
+                if(hash instanceof Map<?, ?> raw){
+                    T entity = redisEntityWriter.read(type, (Map<byte[], byte[]>) raw);
+                    if(entity != null) entities.add(entity);
+                }
+            }
+
+            //Null sends the read to the primary
+            return template == replicaRedisTemplate && entities.size() < ids.size() ? null : entities;
+        });
+    }
+
+    /**
+     * Measures the replica's lag. The heartbeat the replica returns is compared to the last one written to the primary,
+     * so the lag is how much of the primary's history the replica is missing, give or take one probe interval.
+     * */
+    @Scheduled(fixedDelayString = "${spring.redis.replica.probe-interval-in-millis:1000}")
+    public void probe(){
+        if(!redisReplicaConfigProperties.isEnabled()){
+            return;
+        }
+
+        String heartbeatKey = HEARTBEAT_KEY_PREFIX + nodeId;
+        try{
+            byte[] seen = replicaRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(bytes(heartbeatKey)));
+            long previous = lastHeartbeat;
+            long lag = seen == null || previous < 0 ? Long.MAX_VALUE : Math.max(0, previous - Long.parseLong(new String(seen, StandardCharsets.UTF_8)));
+
+            if(lag > redisReplicaConfigProperties.getMaxLagInMillis() && lagInMillis <= redisReplicaConfigProperties.getMaxLagInMillis()){
+                log.warn("Replica lag is over {}ms. Routing all reads to the primary", redisReplicaConfigProperties.getMaxLagInMillis());
+            }
+            lagInMillis = lag;
+
+            //Written raw so the heartbeat doesn't depend on the value serializer's mode
+            long now = System.currentTimeMillis();
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                connection.stringCommands().set(bytes(heartbeatKey), bytes(String.valueOf(now)));
+                connection.keyCommands().expire(bytes(heartbeatKey), Duration.ofMinutes(1).toSeconds());
+                return null;
+            });
+            lastHeartbeat = now;
+        }catch (Exception e){
+            lagInMillis = Long.MAX_VALUE;
+            log.warn("Failed to probe the replica lag. Routing all reads to the primary", e);
+        }
+
+        publishMetrics();
+    }
+
+    public boolean isReplicaHealthy(){
+        return redisReplicaConfigProperties.isEnabled() && lagInMillis <= redisReplicaConfigProperties.getMaxLagInMillis();
+    }
+
+    //Adds what changed since the last probe to the cluster wide counters
+    private void publishMetrics(){
+        long[] current = {replicaReads.get(), primaryReads.get(), fallbacks.get()};
+        String[] names = {"replica", "primary", "fallback"};
+        try{
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < current.length; i++){
+                    long delta = current[i] - published[i];
+                    if(delta > 0){
+                        connection.stringCommands().incrBy(bytes(METRICS_KEY_PREFIX + names[i]), delta);
+                    }
+                }
+                return null;
+            });
+            System.arraycopy(current, 0, published, 0, current.length);
+        }catch (Exception e){
+            log.debug("Failed to publish replica read metrics", e);
+        }
+    }
+
+    private static boolean isMissing(Object result){
+        return result == null
+                || (result instanceof Optional<?> optional && optional.isEmpty())
+                || (result instanceof Collection<?> collection && collection.isEmpty());
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
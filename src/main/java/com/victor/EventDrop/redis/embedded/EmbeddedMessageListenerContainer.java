@@ -0,0 +1,83 @@
+package com.victor.EventDrop.redis.embedded;
+
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A message listener container that subscribes listeners straight to an {@link EmbeddedRedisStore}.
+ * There's no subscriber connection to open or recover, so listeners are registered on the store as they're added
+ * and receive messages on the store's pub/sub thread.
+ */
+public class EmbeddedMessageListenerContainer extends RedisMessageListenerContainer {
+
+    private final EmbeddedRedisStore store;
+    private volatile boolean running;
+
+    public EmbeddedMessageListenerContainer(EmbeddedRedisStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+    }
+
+    @Override
+    public void addMessageListener(MessageListener listener, Collection<? extends Topic> topics) {
+        store.subscribe(listener, topics);
+    }
+
+    @Override
+    public void addMessageListener(MessageListener listener, Topic topic) {
+        addMessageListener(listener, List.of(topic));
+    }
+
+    @Override
+    public void removeMessageListener(MessageListener listener, Collection<? extends Topic> topics) {
+        store.unsubscribe(listener, topics);
+    }
+
+    @Override
+    public void removeMessageListener(MessageListener listener, Topic topic) {
+        removeMessageListener(listener, List.of(topic));
+    }
+
+    @Override
+    public void removeMessageListener(MessageListener listener) {
+        store.unsubscribe(listener, null);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isListening() {
+        return running;
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+    }
+}
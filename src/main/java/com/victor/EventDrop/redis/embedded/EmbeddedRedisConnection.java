@@ -0,0 +1,399 @@
+package com.victor.EventDrop.redis.embedded;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.ExpirationOptions;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.KeyScanOptions;
+import org.springframework.data.redis.core.ScanCursor;
+import org.springframework.data.redis.core.ScanIteration;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RedisConnection} onto an {@link EmbeddedRedisStore}.
+ * The connection is a proxy that maps each command it's called with, whether on the connection itself or on one of its
+ * command interfaces, onto the store. It covers the commands the app, Spring Data's repositories and RedisTemplate use:
+ * keys and TTLs, strings, hashes, sets, sorted sets, pub/sub publishing, scripts with an embedded port and a few server commands.
+ * Anything else fails with an {@link InvalidDataAccessApiUsageException} naming the command, and asking for the list, geo,
+ * hyperloglog or stream commands fails right away rather than on the first command.
+ * Pipelining is supported the way callers expect it: commands run right away and their results are handed back on close.
+ */
+public class EmbeddedRedisConnection implements InvocationHandler {
+
+    private final EmbeddedRedisStore store;
+    private List<Object> pipeline;
+    private boolean closed;
+
+    private EmbeddedRedisConnection(EmbeddedRedisStore store) {
+        this.store = store;
+    }
+
+    public static RedisConnection open(EmbeddedRedisStore store){
+        return (RedisConnection) Proxy.newProxyInstance(
+                RedisConnection.class.getClassLoader(), new Class<?>[]{RedisConnection.class}, new EmbeddedRedisConnection(store)
+        );
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object[] a = args == null ? new Object[0] : args;
+        switch (method.getName()){
+            case "equals": return proxy == a[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "EmbeddedRedisConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+            case "close":
+                closed = true;
+                pipeline = null;
+                return null;
+            case "isClosed": return closed;
+            case "getNativeConnection": return store;
+            case "isQueueing": return false;
+            case "isPipelined": return pipeline != null;
+            case "openPipeline":
+                if(pipeline == null) pipeline = new ArrayList<>();
+                return null;
+            case "closePipeline":
+                List<Object> results = pipeline == null ? List.of() : pipeline;
+                pipeline = null;
+                return results;
+            //Every command interface is this same connection
+            case "commands", "keyCommands", "stringCommands", "hashCommands", "setCommands", "zSetCommands",
+                 "scriptingCommands", "serverCommands":
+                return proxy;
+            case "listCommands", "geoCommands", "hyperLogLogCommands", "streamCommands":
+                throw new InvalidDataAccessApiUsageException("The embedded store doesn't support " + method.getName()
+                        + ". It only covers what the app needs without a redis, use the dev or prod profile for the rest");
+            case "isSubscribed": return false;
+            case "getSubscription": return null;
+            default:
+                break;
+        }
+
+        if(closed){
+            throw new InvalidDataAccessApiUsageException("Connection is closed");
+        }
+
+        Object result = command(method.getName(), a);
+        if(pipeline == null){
+            return result;
+        }
+
+        //Like lettuce, commands without a reply (status replies) leave no result in the pipeline
+        if(method.getReturnType() != void.class){
+            pipeline.add(result);
+        }
+        return null;
+    }
+
+    private Object command(String name, Object[] a){
+        return switch (name){
+            //Keys
+            case "del", "unlink" -> store.del((byte[][]) a[0]);
+            case "exists" -> a[0] instanceof byte[][] keys ? (Object) store.exists(keys) : (Object) (store.exists(key(a)) > 0);
+            case "touch" -> store.exists((byte[][]) a[0]);
+            case "type" -> store.type(key(a));
+            case "keys" -> new LinkedHashSet<>(store.keys(key(a), null));
+            case "scan" -> scan((ScanOptions) a[0]);
+            case "expire" -> store.expireAt(key(a), now() + millis(a[1], TimeUnit.SECONDS), condition(a));
+            case "pExpire" -> store.expireAt(key(a), now() + millis(a[1], TimeUnit.MILLISECONDS), condition(a));
+            case "expireAt" -> store.expireAt(key(a), a[1] instanceof Instant at ? at.toEpochMilli() : TimeUnit.SECONDS.toMillis((Long) a[1]), condition(a));
+            case "pExpireAt" -> store.expireAt(key(a), a[1] instanceof Instant at ? at.toEpochMilli() : (Long) a[1], condition(a));
+            case "applyExpiration" -> applyExpiration(key(a), (Expiration) a[1], (ExpirationOptions) a[2]);
+            case "persist" -> store.persist(key(a));
+            case "ttl" -> ttl(key(a), a.length > 1 ? (TimeUnit) a[1] : TimeUnit.SECONDS);
+            case "pTtl" -> ttl(key(a), a.length > 1 ? (TimeUnit) a[1] : TimeUnit.MILLISECONDS);
+
+            //Strings
+            case "get" -> store.get(key(a));
+            case "getDel" -> store.atomically(() -> {
+                byte[] value = store.get(key(a));
+                store.del(key(a));
+                return value;
+            });
+            case "set" -> a.length == 2
+                    ? store.set(key(a), (byte[]) a[1], -1, false, RedisStringCommands.SetOption.UPSERT)
+                    : set(key(a), (byte[]) a[1], (Expiration) a[2], (RedisStringCommands.SetOption) a[3]);
+            case "setNX" -> store.set(key(a), (byte[]) a[1], -1, false, RedisStringCommands.SetOption.SET_IF_ABSENT);
+            case "setEx" -> store.set(key(a), (byte[]) a[2], TimeUnit.SECONDS.toMillis((Long) a[1]), false, RedisStringCommands.SetOption.UPSERT);
+            case "pSetEx" -> store.set(key(a), (byte[]) a[2], (Long) a[1], false, RedisStringCommands.SetOption.UPSERT);
+            case "mGet" -> store.atomically(() -> Arrays.stream((byte[][]) a[0]).map(store::get).toList());
+            case "mSet" -> store.atomically(() -> {
+                asMap(a[0]).forEach((key, value) -> store.set(key, value, -1, false, RedisStringCommands.SetOption.UPSERT));
+                return true;
+            });
+            case "incr" -> store.incrBy(key(a), 1);
+            case "incrBy" -> store.incrBy(key(a), integer(name, a[1]));
+            case "decr" -> store.incrBy(key(a), -1);
+            case "decrBy" -> store.incrBy(key(a), -integer(name, a[1]));
+
+            //Hashes
+            case "hSet" -> store.atomically(() -> {
+                boolean added = store.hGet(key(a), (byte[]) a[1]) == null;
+                store.hSet(key(a), Map.of((byte[]) a[1], (byte[]) a[2]));
+                return added;
+            });
+            case "hSetNX" -> store.hSetNX(key(a), (byte[]) a[1], (byte[]) a[2]);
+            case "hMSet" -> {
+                store.hSet(key(a), asMap(a[1]));
+                yield null;
+            }
+            case "hGet" -> store.hGet(key(a), (byte[]) a[1]);
+            case "hMGet" -> store.atomically(() -> Arrays.stream((byte[][]) a[1]).map(field -> store.hGet(key(a), field)).toList());
+            case "hGetAll" -> store.hGetAll(key(a));
+            case "hKeys" -> new LinkedHashSet<>(store.hGetAll(key(a)).keySet());
+            case "hVals" -> new ArrayList<>(store.hGetAll(key(a)).values());
+            case "hLen" -> (long) store.hGetAll(key(a)).size();
+            case "hExists" -> store.hGet(key(a), (byte[]) a[1]) != null;
+            case "hDel" -> store.hDel(key(a), (byte[][]) a[1]);
+            case "hIncrBy" -> store.hIncrBy(key(a), (byte[]) a[1], integer(name, a[2]));
+
+            //Sets
+            case "sAdd" -> store.sAdd(key(a), (byte[][]) a[1]);
+            case "sRem" -> store.sRem(key(a), (byte[][]) a[1]);
+            case "sMembers" -> store.sMembers(key(a));
+            case "sCard" -> (long) store.sMembers(key(a)).size();
+            case "sIsMember" -> store.sIsMember(key(a), (byte[]) a[1]);
+            case "sInter" -> store.sInter((byte[][]) a[0]);
+            case "sUnion" -> store.sUnion((byte[][]) a[0]);
+
+            //Sorted sets
+            case "zAdd" -> zAdd(a);
+            case "zRem" -> store.zRem(key(a), (byte[][]) a[1]);
+            case "zScore" -> store.zScore(key(a), (byte[]) a[1]);
+            case "zMScore" -> store.atomically(() -> Arrays.stream((byte[][]) a[1]).map(member -> store.zScore(key(a), member)).toList());
+            case "zIncrBy" -> store.zIncrBy(key(a), (Double) a[1], (byte[]) a[2]);
+            case "zCard" -> store.zCard(key(a));
+            case "zCount" -> store.zCount(key(a), scoreRange(a));
+            case "zRank" -> store.zRank(key(a), (byte[]) a[1], false);
+            case "zRevRank" -> store.zRank(key(a), (byte[]) a[1], true);
+            case "zRange" -> values(store.zRange(key(a), (Long) a[1], (Long) a[2], false));
+            case "zRangeWithScores" -> new LinkedHashSet<>(store.zRange(key(a), (Long) a[1], (Long) a[2], false));
+            case "zRevRange" -> values(store.zRange(key(a), (Long) a[1], (Long) a[2], true));
+            case "zRevRangeWithScores" -> new LinkedHashSet<>(store.zRange(key(a), (Long) a[1], (Long) a[2], true));
+            case "zRangeByScore" -> values(zRangeByScore(a, false));
+            case "zRangeByScoreWithScores" -> new LinkedHashSet<>(zRangeByScore(a, false));
+            case "zRevRangeByScore" -> values(zRangeByScore(a, true));
+            case "zRevRangeByScoreWithScores" -> new LinkedHashSet<>(zRangeByScore(a, true));
+            case "zRemRangeByScore" -> store.zRemRangeByScore(key(a), scoreRange(a));
+            case "zRemRange" -> store.zRemRange(key(a), (Long) a[1], (Long) a[2]);
+
+            //Pub/sub. Subscribing goes through EmbeddedMessageListenerContainer
+            case "publish" -> store.publish((byte[]) a[0], (byte[]) a[1]);
+
+            //Scripts
+            case "eval" -> {
+                String sha1 = store.sha1((byte[]) a[0]);
+                if(!store.hasScript(sha1)){
+                    throw new InvalidDataAccessApiUsageException("The embedded store has no port of script: " + sha1 + ". Add one to EmbeddedScripts");
+                }
+                yield eval(sha1, (Integer) a[2], (byte[][]) a[3]);
+            }
+            case "evalSha" -> eval(a[0] instanceof byte[] sha1 ? new String(sha1, StandardCharsets.UTF_8) : (String) a[0], (Integer) a[2], (byte[][]) a[3]);
+            case "scriptLoad" -> {
+                String sha1 = store.sha1((byte[]) a[0]);
+                if(!store.hasScript(sha1)){
+                    throw new InvalidDataAccessApiUsageException("The embedded store has no port of script: " + sha1 + ". Add one to EmbeddedScripts");
+                }
+                yield sha1;
+            }
+            case "scriptExists" -> Arrays.stream((String[]) a[0]).map(store::hasScript).toList();
+            case "scriptFlush" -> null;
+
+            //Server and connection
+            case "getConfig" -> store.getConfig((String) a[0]);
+            case "setConfig" -> {
+                store.setConfig((String) a[0], (String) a[1]);
+                yield null;
+            }
+            case "dbSize" -> store.dbSize();
+            case "flushDb", "flushAll" -> {
+                store.flushDb();
+                yield null;
+            }
+            case "info" -> info();
+            case "time" -> (a.length > 0 ? (TimeUnit) a[0] : TimeUnit.MILLISECONDS).convert(now(), TimeUnit.MILLISECONDS);
+            case "ping" -> "PONG";
+            case "echo" -> a[0];
+            case "select" -> {
+                if((Integer) a[0] != 0){
+                    throw new InvalidDataAccessApiUsageException("The embedded store only has database 0");
+                }
+                yield null;
+            }
+            case "setClientName" -> null;
+            default -> throw new InvalidDataAccessApiUsageException("The embedded store doesn't support the command: " + name);
+        };
+    }
+
+    private Boolean set(byte[] key, byte[] value, Expiration expiration, RedisStringCommands.SetOption option){
+        if(expiration == null || expiration.isPersistent()){
+            return store.set(key, value, -1, false, option);
+        }
+        if(expiration.isKeepTtl()){
+            return store.set(key, value, -1, true, option);
+        }
+
+        long ttl = expiration.isUnixTimestamp()
+                ? expiration.getExpirationTimeInMilliseconds() - now()
+                : expiration.getExpirationTimeInMilliseconds();
+        return store.set(key, value, Math.max(1, ttl), false, option);
+    }
+
+    private Boolean applyExpiration(byte[] key, Expiration expiration, ExpirationOptions options){
+        if(expiration.isPersistent()){
+            return store.persist(key);
+        }
+        if(expiration.isKeepTtl()){
+            return store.exists(key) > 0;
+        }
+
+        long expiresAt = expiration.isUnixTimestamp()
+                ? expiration.getExpirationTimeInMilliseconds()
+                : now() + expiration.getExpirationTimeInMilliseconds();
+        return store.expireAt(key, expiresAt, options == null ? null : options.getCondition());
+    }
+
+    //Like redis, a TTL in seconds is rounded to the nearest second. -1 and -2 are passed through as they are
+    private long ttl(byte[] key, TimeUnit unit){
+        long ttl = store.pTtl(key);
+        if(ttl < 0){
+            return ttl;
+        }
+        return unit == TimeUnit.SECONDS ? (ttl + 500) / 1000 : unit.convert(ttl, TimeUnit.MILLISECONDS);
+    }
+
+    private Cursor<byte[]> scan(ScanOptions options){
+        byte[] pattern = options.getBytePattern();
+        DataType type = options instanceof KeyScanOptions keyScanOptions && keyScanOptions.getType() != null
+                ? DataType.fromCode(keyScanOptions.getType())
+                : null;
+        List<byte[]> keys = store.keys(pattern, type);
+
+        //The whole keyspace comes back as a single page, so the cursor is done after the first one
+        return new ScanCursor<byte[]>(options) {
+            @Override
+            protected ScanIteration<byte[]> doScan(CursorId cursorId, ScanOptions options) {
+                return new ScanIteration<>(CursorId.initial(), keys);
+            }
+        }.open();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object zAdd(Object[] a){
+        RedisZSetCommands.ZAddArgs args = a[a.length - 1] instanceof RedisZSetCommands.ZAddArgs zAddArgs ? zAddArgs : null;
+        if(a[1] instanceof Set<?> tuples){
+            return store.atomically(() -> ((Set<Tuple>) tuples).stream()
+                    .filter(tuple -> store.zAdd(key(a), tuple.getScore(), tuple.getValue(), args))
+                    .count());
+        }
+        return store.zAdd(key(a), (Double) a[1], (byte[]) a[2], args);
+    }
+
+    //The range and limit of any of the zRangeByScore overloads: doubles, strings like "(5" or "-inf", or a Range with a Limit
+    private List<Tuple> zRangeByScore(Object[] a, boolean reverse){
+        long offset = 0;
+        long count = -1;
+        if(a.length == 5){
+            offset = (Long) a[3];
+            count = (Long) a[4];
+        }else if(a.length == 3 && a[2] instanceof Limit limit && limit.isLimited()){
+            offset = limit.getOffset();
+            count = limit.getCount();
+        }
+        return store.zRangeByScore(key(a), scoreRange(a), offset, count, reverse);
+    }
+
+    private static EmbeddedRedisStore.ScoreRange scoreRange(Object[] a){
+        if(a[1] instanceof Range<?> range){
+            Range.Bound<?> lower = range.getLowerBound();
+            Range.Bound<?> upper = range.getUpperBound();
+            return new EmbeddedRedisStore.ScoreRange(
+                    lower.getValue().map(value -> ((Number) value).doubleValue()).orElse(Double.NEGATIVE_INFINITY), lower.isInclusive() || !lower.isBounded(),
+                    upper.getValue().map(value -> ((Number) value).doubleValue()).orElse(Double.POSITIVE_INFINITY), upper.isInclusive() || !upper.isBounded()
+            );
+        }
+        if(a[1] instanceof String min){
+            String max = (String) a[2];
+            return new EmbeddedRedisStore.ScoreRange(score(min), !min.startsWith("("), score(max), !max.startsWith("("));
+        }
+        return EmbeddedRedisStore.ScoreRange.closed((Double) a[1], (Double) a[2]);
+    }
+
+    private static double score(String bound){
+        String value = bound.startsWith("(") ? bound.substring(1) : bound;
+        return switch (value){
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            case "+inf", "inf" -> Double.POSITIVE_INFINITY;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    private Object eval(String sha1, int numKeys, byte[][] keysAndArgs){
+        List<byte[]> all = Arrays.asList(keysAndArgs);
+        return store.evalSha(sha1, all.subList(0, numKeys), all.subList(numKeys, all.size()));
+    }
+
+    private Properties info(){
+        Properties info = new Properties();
+        info.setProperty("redis_mode", "embedded");
+        info.setProperty("db0", "keys=" + store.dbSize());
+        info.setProperty("expired_keys", String.valueOf(store.expiredKeys()));
+        return info;
+    }
+
+    private static Set<byte[]> values(List<Tuple> tuples){
+        Set<byte[]> values = new LinkedHashSet<>();
+        tuples.forEach(tuple -> values.add(tuple.getValue()));
+        return values;
+    }
+
+    private static ExpirationOptions.Condition condition(Object[] a){
+        return a.length > 2 && a[2] instanceof ExpirationOptions.Condition condition ? condition : ExpirationOptions.Condition.ALWAYS;
+    }
+
+    private static long millis(Object timeout, TimeUnit unit){
+        return timeout instanceof Duration duration ? duration.toMillis() : unit.toMillis((Long) timeout);
+    }
+
+    private static long integer(String command, Object delta){
+        if(!(delta instanceof Long value)){
+            throw new InvalidDataAccessApiUsageException("The embedded store doesn't support float increments: " + command);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<byte[], byte[]> asMap(Object map){
+        return (Map<byte[], byte[]>) map;
+    }
+
+    private static byte[] key(Object[] a){
+        return (byte[]) a[0];
+    }
+
+    private static long now(){
+        return System.currentTimeMillis();
+    }
+}
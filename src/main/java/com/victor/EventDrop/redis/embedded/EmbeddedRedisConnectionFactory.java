@@ -0,0 +1,46 @@
+package com.victor.EventDrop.redis.embedded;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+/**
+ * Hands out connections onto an {@link EmbeddedRedisStore}. Opening one is only a proxy allocation, there's no socket or pool.
+ */
+@Getter
+@RequiredArgsConstructor
+public class EmbeddedRedisConnectionFactory implements RedisConnectionFactory {
+
+    private final EmbeddedRedisStore store;
+
+    @Override
+    public RedisConnection getConnection() {
+        return EmbeddedRedisConnection.open(store);
+    }
+
+    //Results are already converted to the types RedisTemplate expects
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return true;
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new InvalidDataAccessApiUsageException("The embedded store isn't a cluster");
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new InvalidDataAccessApiUsageException("The embedded store has no sentinels");
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return ex instanceof DataAccessException dataAccessException ? dataAccessException : null;
+    }
+}
@@ -0,0 +1,827 @@
+package com.victor.EventDrop.redis.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.ExpirationOptions;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * An in-process stand in for redis, for single node installs and tests.
+ * Strings, hashes, sets and sorted sets live in a concurrent map keyed by the raw key. Every command runs under one lock,
+ * the way redis runs every command on one thread, so commands and scripts are atomic.
+ * Keys with a TTL expire lazily when they're read and actively off a {@link HierarchicalTimingWheel} ticking on its own thread.
+ * Either way the store publishes the keyspace and keyevent notifications redis would, so the expiry listeners work unchanged.
+ * The wheel only ticks once {@link #start()} is called.
+ * Nothing is persisted, a restart starts empty.
+ */
+@Slf4j
+public class EmbeddedRedisStore implements AutoCloseable {
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final HierarchicalTimingWheel<Key> timingWheel;
+    private final long tickInMillis;
+    private final Map<String, EmbeddedScript> scripts;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Properties config = new Properties();
+
+    private final ScheduledExecutorService expiryExecutor;
+    //One thread like a single subscriber connection, so messages reach a listener in the order they were published
+    private final ExecutorService pubSubExecutor;
+
+    private final AtomicLong expiredKeys = new AtomicLong();
+
+    private static final long NO_EXPIRY = -1;
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+
+    private record Subscription(MessageListener listener, Topic topic, byte[] raw) {}
+
+    /**
+     * @param tickInMillis The timing wheel's tick, how late at most an expired key is removed if nothing reads it
+     * @param wheelSize The slots on each of the timing wheel's wheels
+     * @param scripts The scripts the store can run, by the SHA1 of their source
+     * */
+    public EmbeddedRedisStore(long tickInMillis, int wheelSize, Map<String, EmbeddedScript> scripts) {
+        this.timingWheel = new HierarchicalTimingWheel<>(tickInMillis, wheelSize, System.currentTimeMillis());
+        this.tickInMillis = tickInMillis;
+        this.scripts = Map.copyOf(scripts);
+        //The flags the listeners need: keyspace and keyevent notifications for generic (del) and expired events
+        config.setProperty(NOTIFY_KEYSPACE_EVENTS, "KEgx");
+
+        this.expiryExecutor = Executors.newSingleThreadScheduledExecutor(daemon("embedded-redis-expiry"));
+        this.pubSubExecutor = Executors.newSingleThreadExecutor(daemon("embedded-redis-pubsub"));
+    }
+
+    /**
+     * Starts ticking the timing wheel on the expiry thread. Until then keys only expire when they're read.
+     * */
+    public void start(){
+        expiryExecutor.scheduleAtFixedRate(this::expireDueKeys, tickInMillis, tickInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a group of commands atomically, the way a script runs on redis.
+     * */
+    public <T> T atomically(Supplier<T> commands){
+        lock.lock();
+        try{
+            return commands.get();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    //Keys
+
+    public long del(byte[]... keys){
+        return atomically(() -> {
+            long deleted = 0;
+            for (byte[] key : keys){
+                Key k = new Key(key);
+                if(live(k) != null){
+                    entries.remove(k);
+                    notify(k, "del");
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+    }
+
+    public long exists(byte[]... keys){
+        return atomically(() -> Arrays.stream(keys).filter(key -> live(new Key(key)) != null).count());
+    }
+
+    public DataType type(byte[] key){
+        return atomically(() -> {
+            Entry entry = live(new Key(key));
+            if(entry == null) return DataType.NONE;
+            return switch (entry.value){
+                case byte[] ignored -> DataType.STRING;
+                case HashValue ignored -> DataType.HASH;
+                case SetValue ignored -> DataType.SET;
+                case SortedSetValue ignored -> DataType.ZSET;
+                default -> DataType.NONE;
+            };
+        });
+    }
+
+    /**
+     * Lists the keys matching a glob style pattern, optionally only those of one type.
+     * The embedded store has no cursor to page with, so a scan is a single pass over a snapshot of the keys.
+     * */
+    public List<byte[]> keys(byte[] pattern, DataType type){
+        return atomically(() -> {
+            List<byte[]> keys = new ArrayList<>();
+            for (Key key : List.copyOf(entries.keySet())){
+                if((pattern == null || GlobPattern.matches(pattern, key.bytes)) && live(key) != null
+                        && (type == null || type(key.bytes) == type)){
+                    keys.add(key.bytes);
+                }
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * Sets a key's expiry, with EXPIRE's NX, XX, GT and LT conditions.
+     *
+     * @param key The key
+     * @param expiresAt The unix time in millis the key expires at. A time that has passed deletes the key
+     * @param condition When the expiry may be set
+     * @return False if the key doesn't exist or the condition wasn't met
+     * */
+    public boolean expireAt(byte[] key, long expiresAt, ExpirationOptions.Condition condition){
+        return atomically(() -> {
+            Key k = new Key(key);
+            Entry entry = live(k);
+            if(entry == null) return false;
+
+            boolean volatileKey = entry.expiresAt != NO_EXPIRY;
+            boolean allowed = switch (condition == null ? ExpirationOptions.Condition.ALWAYS : condition){
+                case NX -> !volatileKey;
+                case XX -> volatileKey;
+                //A key without a TTL counts as never expiring
+                case GT -> volatileKey && expiresAt > entry.expiresAt;
+                case LT -> !volatileKey || expiresAt < entry.expiresAt;
+                case ALWAYS -> true;
+            };
+            if(!allowed) return false;
+
+            if(expiresAt <= System.currentTimeMillis()){
+                entries.remove(k);
+                notify(k, "del");
+                return true;
+            }
+
+            entry.expiresAt = expiresAt;
+            schedule(k, entry);
+            return true;
+        });
+    }
+
+    public boolean persist(byte[] key){
+        return atomically(() -> {
+            Entry entry = live(new Key(key));
+            if(entry == null || entry.expiresAt == NO_EXPIRY) return false;
+            entry.expiresAt = NO_EXPIRY;
+            return true;
+        });
+    }
+
+    /**
+     * @return The key's remaining TTL in millis, -1 if it has none, -2 if it doesn't exist
+     * */
+    public long pTtl(byte[] key){
+        return atomically(() -> {
+            Entry entry = live(new Key(key));
+            if(entry == null) return -2L;
+            if(entry.expiresAt == NO_EXPIRY) return -1L;
+            return Math.max(0, entry.expiresAt - System.currentTimeMillis());
+        });
+    }
+
+    //Strings
+
+    public byte[] get(byte[] key){
+        return atomically(() -> read(key, byte[].class));
+    }
+
+    /**
+     * Sets a string, with SET's expiry and NX/XX options.
+     *
+     * @param expiresInMillis The TTL in millis, or -1 for none
+     * @param keepTtl Keeps the existing TTL instead of clearing it
+     * @return False if the option stopped the write
+     * */
+    public boolean set(byte[] key, byte[] value, long expiresInMillis, boolean keepTtl, RedisStringCommands.SetOption option){
+        return atomically(() -> {
+            Key k = new Key(key);
+            Entry entry = live(k);
+            if(option == RedisStringCommands.SetOption.SET_IF_ABSENT && entry != null) return false;
+            if(option == RedisStringCommands.SetOption.SET_IF_PRESENT && entry == null) return false;
+
+            Entry replaced = new Entry(value);
+            entries.put(k, replaced);
+            if(expiresInMillis > 0){
+                replaced.expiresAt = System.currentTimeMillis() + expiresInMillis;
+            }else if(keepTtl && entry != null){
+                replaced.expiresAt = entry.expiresAt;
+            }
+            if(replaced.expiresAt != NO_EXPIRY){
+                schedule(k, replaced);
+            }
+            return true;
+        });
+    }
+
+    public long incrBy(byte[] key, long delta){
+        return atomically(() -> {
+            Key k = new Key(key);
+            Entry entry = live(k);
+            long current = 0;
+            if(entry != null){
+                try{
+                    current = Long.parseLong(new String(cast(entry, byte[].class), StandardCharsets.UTF_8));
+                }catch (NumberFormatException e){
+                    throw new InvalidDataAccessApiUsageException("ERR value is not an integer or out of range");
+                }
+            }
+
+            long updated = Math.addExact(current, delta);
+            byte[] value = String.valueOf(updated).getBytes(StandardCharsets.UTF_8);
+            if(entry == null){
+                entries.put(k, new Entry(value));
+            }else{
+                entry.value = value;
+            }
+            return updated;
+        });
+    }
+
+    //Hashes
+
+    public void hSet(byte[] key, Map<byte[], byte[]> fields){
+        atomically(() -> {
+            HashValue hash = getOrCreate(key, HashValue.class, HashValue::new);
+            fields.forEach((field, value) -> hash.put(new Key(field), value));
+            return null;
+        });
+    }
+
+    public boolean hSetNX(byte[] key, byte[] field, byte[] value){
+        return atomically(() -> getOrCreate(key, HashValue.class, HashValue::new).putIfAbsent(new Key(field), value) == null);
+    }
+
+    public byte[] hGet(byte[] key, byte[] field){
+        return atomically(() -> {
+            HashValue hash = read(key, HashValue.class);
+            return hash == null ? null : hash.get(new Key(field));
+        });
+    }
+
+    public Map<byte[], byte[]> hGetAll(byte[] key){
+        return atomically(() -> {
+            HashValue hash = read(key, HashValue.class);
+            Map<byte[], byte[]> all = new LinkedHashMap<>();
+            if(hash != null){
+                hash.forEach((field, value) -> all.put(field.bytes, value));
+            }
+            return all;
+        });
+    }
+
+    public long hDel(byte[] key, byte[]... fields){
+        return atomically(() -> {
+            HashValue hash = read(key, HashValue.class);
+            if(hash == null) return 0L;
+            long removed = Arrays.stream(fields).filter(field -> hash.remove(new Key(field)) != null).count();
+            removeIfEmpty(key, hash.isEmpty());
+            return removed;
+        });
+    }
+
+    public long hIncrBy(byte[] key, byte[] field, long delta){
+        return atomically(() -> {
+            HashValue hash = getOrCreate(key, HashValue.class, HashValue::new);
+            byte[] current = hash.get(new Key(field));
+            long updated = Math.addExact(current == null ? 0 : Long.parseLong(new String(current, StandardCharsets.UTF_8)), delta);
+            hash.put(new Key(field), String.valueOf(updated).getBytes(StandardCharsets.UTF_8));
+            return updated;
+        });
+    }
+
+    //Sets
+
+    public long sAdd(byte[] key, byte[]... members){
+        return atomically(() -> {
+            SetValue set = getOrCreate(key, SetValue.class, SetValue::new);
+            return Arrays.stream(members).filter(member -> set.add(new Key(member))).count();
+        });
+    }
+
+    public long sRem(byte[] key, byte[]... members){
+        return atomically(() -> {
+            SetValue set = read(key, SetValue.class);
+            if(set == null) return 0L;
+            long removed = Arrays.stream(members).filter(member -> set.remove(new Key(member))).count();
+            removeIfEmpty(key, set.isEmpty());
+            return removed;
+        });
+    }
+
+    public Set<byte[]> sMembers(byte[] key){
+        return atomically(() -> {
+            SetValue set = read(key, SetValue.class);
+            return set == null ? new LinkedHashSet<>() : toBytes(set);
+        });
+    }
+
+    public boolean sIsMember(byte[] key, byte[] member){
+        return atomically(() -> {
+            SetValue set = read(key, SetValue.class);
+            return set != null && set.contains(new Key(member));
+        });
+    }
+
+    public Set<byte[]> sInter(byte[]... keys){
+        return atomically(() -> {
+            Set<Key> result = null;
+            for (byte[] key : keys){
+                SetValue set = read(key, SetValue.class);
+                if(set == null) return new LinkedHashSet<>();
+                if(result == null){
+                    result = new LinkedHashSet<>(set);
+                }else{
+                    result.retainAll(set);
+                }
+            }
+            return result == null ? new LinkedHashSet<>() : toBytes(result);
+        });
+    }
+
+    public Set<byte[]> sUnion(byte[]... keys){
+        return atomically(() -> {
+            Set<Key> result = new LinkedHashSet<>();
+            for (byte[] key : keys){
+                SetValue set = read(key, SetValue.class);
+                if(set != null) result.addAll(set);
+            }
+            return toBytes(result);
+        });
+    }
+
+    //Sorted sets
+
+    /**
+     * Adds or updates a sorted set member, with ZADD's NX, XX, GT and LT flags.
+     *
+     * @return True if the member was added or, with CH, its score changed
+     * */
+    public boolean zAdd(byte[] key, double score, byte[] member, RedisZSetCommands.ZAddArgs args){
+        return atomically(() -> {
+            boolean nx = args != null && args.contains(RedisZSetCommands.ZAddArgs.Flag.NX);
+            boolean xx = args != null && args.contains(RedisZSetCommands.ZAddArgs.Flag.XX);
+            boolean gt = args != null && args.contains(RedisZSetCommands.ZAddArgs.Flag.GT);
+            boolean lt = args != null && args.contains(RedisZSetCommands.ZAddArgs.Flag.LT);
+            boolean ch = args != null && args.contains(RedisZSetCommands.ZAddArgs.Flag.CH);
+
+            if(xx && read(key, SortedSetValue.class) == null) return false;
+            SortedSetValue zset = getOrCreate(key, SortedSetValue.class, SortedSetValue::new);
+            Key m = new Key(member);
+            Double current = zset.scores.get(m);
+            if(current == null){
+                if(xx) return false;
+                zset.put(m, score);
+                return true;
+            }
+
+            if(nx || (gt && score <= current) || (lt && score >= current) || score == current) return false;
+            zset.put(m, score);
+            return ch;
+        });
+    }
+
+    public long zRem(byte[] key, byte[]... members){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            if(zset == null) return 0L;
+            long removed = Arrays.stream(members).filter(member -> zset.remove(new Key(member))).count();
+            removeIfEmpty(key, zset.scores.isEmpty());
+            return removed;
+        });
+    }
+
+    public Double zScore(byte[] key, byte[] member){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            return zset == null ? null : zset.scores.get(new Key(member));
+        });
+    }
+
+    public double zIncrBy(byte[] key, double delta, byte[] member){
+        return atomically(() -> {
+            SortedSetValue zset = getOrCreate(key, SortedSetValue.class, SortedSetValue::new);
+            Key m = new Key(member);
+            double score = zset.scores.getOrDefault(m, 0d) + delta;
+            zset.put(m, score);
+            return score;
+        });
+    }
+
+    public long zCard(byte[] key){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            return zset == null ? 0L : (long) zset.scores.size();
+        });
+    }
+
+    /**
+     * The members within a score range, lowest score first or, reversed, highest first.
+     *
+     * @param offset Members to skip
+     * @param count Members to return at most, negative for all
+     * */
+    public List<Tuple> zRangeByScore(byte[] key, ScoreRange range, long offset, long count, boolean reverse){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            List<Tuple> result = new ArrayList<>();
+            if(zset == null) return result;
+
+            Iterator<Member> members = reverse ? zset.ordered.descendingIterator() : zset.ordered.iterator();
+            long skipped = 0;
+            while (members.hasNext() && (count < 0 || result.size() < count)){
+                Member member = members.next();
+                if(!range.contains(member.score())) continue;
+                if(skipped++ < offset) continue;
+                result.add(new DefaultTuple(member.value().bytes, member.score()));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * The members between two ranks, with ZRANGE's negative indexes counting from the end.
+     * */
+    public List<Tuple> zRange(byte[] key, long start, long end, boolean reverse){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            List<Tuple> result = new ArrayList<>();
+            if(zset == null) return result;
+
+            int size = zset.ordered.size();
+            long from = start < 0 ? Math.max(0, size + start) : start;
+            long to = end < 0 ? size + end : Math.min(end, size - 1);
+            Iterator<Member> members = reverse ? zset.ordered.descendingIterator() : zset.ordered.iterator();
+            for (long rank = 0; members.hasNext() && rank <= to; rank++){
+                Member member = members.next();
+                if(rank >= from) result.add(new DefaultTuple(member.value().bytes, member.score()));
+            }
+            return result;
+        });
+    }
+
+    public Long zRank(byte[] key, byte[] member, boolean reverse){
+        return atomically(() -> {
+            SortedSetValue zset = read(key, SortedSetValue.class);
+            Double score = zset == null ? null : zset.scores.get(new Key(member));
+            if(score == null) return null;
+            long rank = zset.ordered.headSet(new Member(score, new Key(member))).size();
+            return reverse ? zset.ordered.size() - 1 - rank : rank;
+        });
+    }
+
+    public long zCount(byte[] key, ScoreRange range){
+        return atomically(() -> (long) zRangeByScore(key, range, 0, -1, false).size());
+    }
+
+    public long zRemRangeByScore(byte[] key, ScoreRange range){
+        return atomically(() -> zRemAll(key, zRangeByScore(key, range, 0, -1, false)));
+    }
+
+    public long zRemRange(byte[] key, long start, long end){
+        return atomically(() -> zRemAll(key, zRange(key, start, end, false)));
+    }
+
+    //Pub/sub
+
+    /**
+     * Publishes a message to every listener subscribed to the channel or a pattern matching it.
+     * Listeners are called on the store's pub/sub thread, never on the publisher's.
+     *
+     * @return How many listeners the message was handed to
+     * */
+    public long publish(byte[] channel, byte[] message){
+        long receivers = 0;
+        for (Subscription subscription : subscriptions){
+            boolean pattern = subscription.topic() instanceof PatternTopic;
+            if(pattern ? GlobPattern.matches(subscription.raw(), channel) : Arrays.equals(subscription.raw(), channel)){
+                pubSubExecutor.execute(() -> {
+                    try{
+                        subscription.listener().onMessage(new DefaultMessage(channel, message), pattern ? subscription.raw() : null);
+                    }catch (Exception e){
+                        log.error("Listener failed to handle a message on channel: {}", new String(channel, StandardCharsets.UTF_8), e);
+                    }
+                });
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    public void subscribe(MessageListener listener, Collection<? extends Topic> topics){
+        for (Topic topic : topics){
+            if(!(topic instanceof ChannelTopic) && !(topic instanceof PatternTopic)){
+                throw new InvalidDataAccessApiUsageException("Unknown topic type: " + topic.getClass());
+            }
+            subscriptions.add(new Subscription(listener, topic, topic.getTopic().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    public void unsubscribe(MessageListener listener, Collection<? extends Topic> topics){
+        subscriptions.removeIf(subscription -> subscription.listener() == listener && (topics == null || topics.contains(subscription.topic())));
+    }
+
+    //Scripts and server
+
+    /**
+     * Runs a script by its SHA1 atomically. Only the scripts the store was built with can run, as Java ports of their Lua.
+     * */
+    public Object evalSha(String sha1, List<byte[]> keys, List<byte[]> args){
+        EmbeddedScript script = scripts.get(sha1);
+        if(script == null){
+            throw new InvalidDataAccessApiUsageException("NOSCRIPT The embedded store has no port of script: " + sha1);
+        }
+        return atomically(() -> script.run(this, keys, args));
+    }
+
+    public String sha1(byte[] script){
+        return new DefaultRedisScript<>(new String(script, StandardCharsets.UTF_8)).getSha1();
+    }
+
+    public boolean hasScript(String sha1){
+        return scripts.containsKey(sha1);
+    }
+
+    public Properties getConfig(String pattern){
+        Properties matched = new Properties();
+        byte[] raw = pattern.getBytes(StandardCharsets.UTF_8);
+        config.stringPropertyNames().stream()
+                .filter(name -> GlobPattern.matches(raw, name.getBytes(StandardCharsets.UTF_8)))
+                .forEach(name -> matched.setProperty(name, config.getProperty(name)));
+        return matched;
+    }
+
+    public void setConfig(String name, String value){
+        config.setProperty(name, value);
+    }
+
+    public long dbSize(){
+        return entries.size();
+    }
+
+    public void flushDb(){
+        atomically(() -> {
+            entries.clear();
+            return null;
+        });
+    }
+
+    public long expiredKeys(){
+        return expiredKeys.get();
+    }
+
+    @Override
+    public void close() {
+        expiryExecutor.shutdownNow();
+        pubSubExecutor.shutdown();
+    }
+
+    //Moves the timing wheel up to now. Runs on the expiry thread every tick
+    void expireDueKeys(){
+        try{
+            atomically(() -> timingWheel.advance(System.currentTimeMillis(), this::onTimer));
+        }catch (Exception e){
+            log.error("Failed to expire due keys", e);
+        }
+    }
+
+    private void onTimer(Key key, long deadline){
+        Entry entry = entries.get(key);
+        if(entry == null){
+            return;
+        }
+        if(entry.scheduledAt == deadline){
+            entry.scheduledAt = NO_EXPIRY;
+        }
+        if(entry.expiresAt == NO_EXPIRY){
+            return;
+        }
+
+        //A TTL that was extended since is put back on the wheel at its new deadline
+        if(entry.expiresAt <= System.currentTimeMillis()){
+            expire(key, entry);
+        }else{
+            schedule(key, entry);
+        }
+    }
+
+    //Only the earliest deadline is kept on the wheel. A later one is rescheduled when the earlier one fires
+    private void schedule(Key key, Entry entry){
+        if(entry.scheduledAt != NO_EXPIRY && entry.scheduledAt <= entry.expiresAt){
+            return;
+        }
+
+        if(timingWheel.schedule(key, entry.expiresAt)){
+            entry.scheduledAt = entry.expiresAt;
+        }else{
+            expire(key, entry);
+        }
+    }
+
+    //The entry at a key, expiring it first if its TTL has run out, the way redis expires keys on access
+    private Entry live(Key key){
+        Entry entry = entries.get(key);
+        if(entry != null && entry.expiresAt != NO_EXPIRY && entry.expiresAt <= System.currentTimeMillis()){
+            expire(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private void expire(Key key, Entry entry){
+        if(entries.remove(key, entry)){
+            expiredKeys.incrementAndGet();
+            notify(key, "expired");
+        }
+    }
+
+    //The keyspace (__keyspace@0__:key -> event) and keyevent (__keyevent@0__:event -> key) notifications, as configured
+    private void notify(Key key, String event){
+        String flags = config.getProperty(NOTIFY_KEYSPACE_EVENTS, "");
+        char type = event.equals("expired") ? 'x' : 'g';
+        if(flags.indexOf(type) < 0 && flags.indexOf('A') < 0){
+            return;
+        }
+
+        if(flags.indexOf('K') >= 0){
+            publish(concat("__keyspace@0__:", key.bytes), event.getBytes(StandardCharsets.UTF_8));
+        }
+        if(flags.indexOf('E') >= 0){
+            publish(("__keyevent@0__:" + event).getBytes(StandardCharsets.UTF_8), key.bytes);
+        }
+    }
+
+    private <T> T read(byte[] key, Class<T> type){
+        Entry entry = live(new Key(key));
+        return entry == null ? null : cast(entry, type);
+    }
+
+    private <T> T getOrCreate(byte[] key, Class<T> type, Supplier<T> create){
+        Key k = new Key(key);
+        Entry entry = live(k);
+        if(entry == null){
+            T value = create.get();
+            entries.put(k, new Entry(value));
+            return value;
+        }
+        return cast(entry, type);
+    }
+
+    private static <T> T cast(Entry entry, Class<T> type){
+        if(!type.isInstance(entry.value)){
+            throw new InvalidDataAccessApiUsageException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return type.cast(entry.value);
+    }
+
+    //Redis deletes a hash, set or sorted set once its last member is removed
+    private void removeIfEmpty(byte[] key, boolean empty){
+        if(empty){
+            entries.remove(new Key(key));
+        }
+    }
+
+    private long zRemAll(byte[] key, List<Tuple> members){
+        return members.isEmpty() ? 0 : zRem(key, members.stream().map(Tuple::getValue).toArray(byte[][]::new));
+    }
+
+    private static Set<byte[]> toBytes(Collection<Key> keys){
+        Set<byte[]> bytes = new LinkedHashSet<>();
+        keys.forEach(key -> bytes.add(key.bytes));
+        return bytes;
+    }
+
+    private static byte[] concat(String prefix, byte[] suffix){
+        byte[] raw = prefix.getBytes(StandardCharsets.UTF_8);
+        byte[] joined = Arrays.copyOf(raw, raw.length + suffix.length);
+        System.arraycopy(suffix, 0, joined, raw.length, suffix.length);
+        return joined;
+    }
+
+    private static ThreadFactory daemon(String name){
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A score range with inclusive or exclusive ends, like ZRANGEBYSCORE's (min and max.
+     * */
+    public record ScoreRange(double min, boolean minInclusive, double max, boolean maxInclusive) {
+
+        public static ScoreRange closed(double min, double max){
+            return new ScoreRange(min, true, max, true);
+        }
+
+        boolean contains(double score){
+            return (minInclusive ? score >= min : score > min) && (maxInclusive ? score <= max : score < max);
+        }
+    }
+
+    //A raw key, hash field or member, compared by content
+    private static final class Key implements Comparable<Key> {
+        private final byte[] bytes;
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && hash == key.hash && Arrays.equals(bytes, key.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return Arrays.compareUnsigned(bytes, other.bytes);
+        }
+    }
+
+    private static final class Entry {
+        private Object value;
+        private long expiresAt = NO_EXPIRY;
+        //The deadline this key is on the timing wheel at, if any
+        private long scheduledAt = NO_EXPIRY;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+
+    //Never serialized, the store lives in memory only
+    @SuppressWarnings("serial")
+    private static final class HashValue extends LinkedHashMap<Key, byte[]> {}
+
+    @SuppressWarnings("serial")
+    private static final class SetValue extends LinkedHashSet<Key> {}
+
+    //Members ordered by score then by their bytes, like a redis sorted set
+    private record Member(double score, Key value) implements Comparable<Member> {
+        @Override
+        public int compareTo(Member other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : value.compareTo(other.value);
+        }
+    }
+
+    private static final class SortedSetValue {
+        private final Map<Key, Double> scores = new LinkedHashMap<>();
+        private final TreeSet<Member> ordered = new TreeSet<>();
+
+        private void put(Key member, double score){
+            Double previous = scores.put(member, score);
+            if(previous != null){
+                ordered.remove(new Member(previous, member));
+            }
+            ordered.add(new Member(score, member));
+        }
+
+        private boolean remove(Key member){
+            Double score = scores.remove(member);
+            return score != null && ordered.remove(new Member(score, member));
+        }
+    }
+}
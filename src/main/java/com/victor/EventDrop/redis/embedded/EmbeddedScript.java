@@ -0,0 +1,12 @@
+package com.victor.EventDrop.redis.embedded;
+
+import java.util.List;
+
+/**
+ * A Java port of a Lua script, run atomically by the embedded store in place of the script.
+ * Results follow redis' Lua conversions: numbers as longs, strings as byte arrays and tables as lists.
+ */
+@FunctionalInterface
+public interface EmbeddedScript {
+    Object run(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args);
+}
@@ -0,0 +1,262 @@
+package com.victor.EventDrop.redis.embedded;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.ExpirationOptions;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java ports of the app's Lua scripts, keyed by the SHA1 of the script's source.
+ * The scripts are still sent through {@link DefaultRedisScript} as usual, the embedded store looks up the port by the SHA1
+ * it's asked to run. A port has to change along with its script, the argument layouts are documented in the scripts.
+ * A script without a port fails the embedded store's startup, see {@link #missingPorts()}.
+ */
+public final class EmbeddedScripts {
+
+    private EmbeddedScripts() {
+    }
+
+    /**
+     * @return The ports of the scripts under resources/scripts, by the SHA1 of each script
+     * */
+    public static Map<String, EmbeddedScript> ports(){
+        Map<String, EmbeddedScript> ports = new LinkedHashMap<>();
+        ports.put(sha1("scripts/join-room.lua"), EmbeddedScripts::joinRoom);
+        ports.put(sha1("scripts/join-room-minimal.lua"), EmbeddedScripts::joinRoomMinimal);
+        ports.put(sha1("scripts/prune-presence.lua"), EmbeddedScripts::prunePresence);
+        ports.put(sha1("scripts/claim-expiries.lua"), EmbeddedScripts::claimExpiries);
+        ports.put(sha1("scripts/fold-legacy-presence.lua"), EmbeddedScripts::foldLegacyPresence);
+        ports.put(sha1("scripts/acquire-lease.lua"), EmbeddedScripts::acquireLease);
+        ports.put(sha1("scripts/release-lease.lua"), EmbeddedScripts::releaseLease);
+        return ports;
+    }
+
+    /**
+     * Checked as the embedded store starts, so a script added without a port fails the startup rather than its first call.
+     *
+     * @return The scripts under resources/scripts that have no port, or whose port was written for an older version of them
+     * */
+    public static List<String> missingPorts(){
+        Map<String, EmbeddedScript> ports = ports();
+        List<String> missing = new ArrayList<>();
+        try{
+            for (Resource script : new PathMatchingResourcePatternResolver().getResources("classpath*:scripts/*.lua")){
+                String source = script.getContentAsString(StandardCharsets.UTF_8);
+                if(!ports.containsKey(new DefaultRedisScript<>(source).getSha1())){
+                    missing.add(script.getFilename());
+                }
+            }
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to list the scripts under resources/scripts", e);
+        }
+        return missing;
+    }
+
+    //join-room.lua: returns {0} if the room doesn't exist, {-1} if it's full, otherwise {occupant count, room hash field/value pairs...}
+    private static Object joinRoom(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        byte[] roomKey = keys.get(0);
+        byte[] presenceKey = keys.get(1);
+        if(store.exists(roomKey) == 0){
+            return List.of(0L);
+        }
+
+        long now = System.currentTimeMillis();
+        EmbeddedRedisStore.ScoreRange window = presenceWindow(now, number(args.get(4)));
+        if(!tryJoin(store, presenceKey, args.get(0), number(args.get(1)), window, now, store.pTtl(roomKey))){
+            return List.of(-1L);
+        }
+
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        for (int i = 6; i + 1 < args.size(); i += 2){
+            fields.put(args.get(i), args.get(i + 1));
+        }
+
+        long ttl = number(args.get(2));
+        store.hSet(keys.get(2), fields);
+        store.sAdd(keys.get(4), args.get(0));
+        if(ttl > 0){
+            expire(store, keys.get(2), now, ttl * 1000);
+            store.hSet(keys.get(3), fields);
+            expire(store, keys.get(3), now, (ttl + number(args.get(3))) * 1000);
+            if(args.get(5).length > 0){
+                store.zAdd(keys.get(6), now + ttl * 1000, args.get(5), null);
+            }
+        }
+
+        for (int i = 7; i < keys.size(); i++){
+            store.sAdd(keys.get(i), args.get(0));
+            store.sAdd(keys.get(5), keys.get(i));
+        }
+
+        return joined(store, roomKey, presenceKey, window);
+    }
+
+    //join-room-minimal.lua: same replies as join-room.lua, only the room, presence and occupant hashes are touched
+    private static Object joinRoomMinimal(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        byte[] roomKey = keys.get(0);
+        byte[] presenceKey = keys.get(1);
+        if(store.exists(roomKey) == 0){
+            return List.of(0L);
+        }
+
+        long now = System.currentTimeMillis();
+        EmbeddedRedisStore.ScoreRange window = presenceWindow(now, number(args.get(3)));
+        if(!tryJoin(store, presenceKey, args.get(0), number(args.get(1)), window, now, store.pTtl(roomKey))){
+            return List.of(-1L);
+        }
+
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        for (int i = 4; i + 1 < args.size(); i += 2){
+            fields.put(args.get(i), args.get(i + 1));
+        }
+
+        long ttl = number(args.get(2));
+        store.hSet(keys.get(2), fields);
+        if(ttl > 0){
+            expire(store, keys.get(2), now, ttl * 1000);
+        }
+
+        return joined(store, roomKey, presenceKey, window);
+    }
+
+    //{occupant count, room hash field/value pairs...}, the reply of both join scripts
+    private static List<Object> joined(EmbeddedRedisStore store, byte[] roomKey, byte[] presenceKey, EmbeddedRedisStore.ScoreRange window){
+        List<Object> result = new ArrayList<>();
+        result.add(store.zCount(presenceKey, window));
+        store.hGetAll(roomKey).forEach((field, value) -> {
+            result.add(field);
+            result.add(value);
+        });
+        return result;
+    }
+
+    //prune-presence.lua: returns {-1} if the presence set is gone, otherwise {remaining count, stale session ids...}
+    private static Object prunePresence(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        byte[] presenceKey = keys.get(0);
+        if(store.exists(presenceKey) == 0){
+            return List.of(-1L);
+        }
+
+        EmbeddedRedisStore.ScoreRange stale = new EmbeddedRedisStore.ScoreRange(Double.NEGATIVE_INFINITY, true, number(args.get(0)), false);
+        List<Object> result = new ArrayList<>();
+        List<byte[]> staleIds = store.zRangeByScore(presenceKey, stale, 0, -1, false).stream().map(Tuple::getValue).toList();
+        if(!staleIds.isEmpty()){
+            store.zRemRangeByScore(presenceKey, stale);
+        }
+
+        result.add(store.zCard(presenceKey));
+        result.addAll(staleIds);
+        return result;
+    }
+
+    //claim-expiries.lua: returns {key, deadline...} of the due keys, their scores pushed out to the claim timeout
+    private static Object claimExpiries(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        long now = number(args.get(0));
+        long retryAt = now + number(args.get(2));
+        EmbeddedRedisStore.ScoreRange due = EmbeddedRedisStore.ScoreRange.closed(Double.NEGATIVE_INFINITY, now);
+
+        List<Object> result = new ArrayList<>();
+        for (Tuple tuple : store.zRangeByScore(keys.get(0), due, 0, number(args.get(1)), false)){
+            store.zAdd(keys.get(0), retryAt, tuple.getValue(), null);
+            result.add(tuple.getValue());
+            result.add(score(tuple.getScore()));
+        }
+        return result;
+    }
+
+    //fold-legacy-presence.lua: returns the amount of members folded into the hash tagged presence set
+    private static Object foldLegacyPresence(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        byte[] legacyKey = keys.get(0);
+        byte[] presenceKey = keys.get(1);
+        if(store.exists(legacyKey) == 0){
+            return 0L;
+        }
+
+        long ttl = Math.max(store.pTtl(legacyKey), store.pTtl(presenceKey));
+        List<Tuple> members = store.zRange(legacyKey, 0, -1, false);
+        for (Tuple member : members){
+            Double score = store.zScore(presenceKey, member.getValue());
+            store.zAdd(presenceKey, score == null ? member.getScore() : Math.max(score, member.getScore()), member.getValue(), null);
+        }
+        store.del(legacyKey);
+        if(ttl > 0){
+            expire(store, presenceKey, System.currentTimeMillis(), ttl);
+        }
+        return (long) members.size();
+    }
+
+    //acquire-lease.lua: returns 1 if the caller holds the lease now, 0 if another owner does
+    private static Object acquireLease(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        long ttl = number(args.get(1));
+        if(store.set(keys.get(0), args.get(0), ttl, false, RedisStringCommands.SetOption.SET_IF_ABSENT)){
+            return 1L;
+        }
+
+        if(Arrays.equals(store.get(keys.get(0)), args.get(0))){
+            expire(store, keys.get(0), System.currentTimeMillis(), ttl);
+            return 1L;
+        }
+        return 0L;
+    }
+
+    //release-lease.lua: returns 1 if the lease was released, 0 if the caller didn't hold it
+    private static Object releaseLease(EmbeddedRedisStore store, List<byte[]> keys, List<byte[]> args){
+        if(Arrays.equals(store.get(keys.get(0)), args.get(0))){
+            return store.del(keys.get(0));
+        }
+        return 0L;
+    }
+
+    //The capacity check both join scripts share. Members last seen before the window don't count
+    private static boolean tryJoin(EmbeddedRedisStore store, byte[] presenceKey, byte[] sessionId, long maxRoomSize,
+                                   EmbeddedRedisStore.ScoreRange window, long now, long roomTtlInMillis){
+        Double lastSeen = store.zScore(presenceKey, sessionId);
+        boolean isPresent = lastSeen != null && window.contains(lastSeen);
+        if(!isPresent && store.zCount(presenceKey, window) >= maxRoomSize){
+            return false;
+        }
+
+        store.zAdd(presenceKey, now, sessionId, null);
+        //The presence set lives exactly as long as the room
+        if(roomTtlInMillis > 0){
+            expire(store, presenceKey, now, roomTtlInMillis);
+        }
+        return true;
+    }
+
+    private static EmbeddedRedisStore.ScoreRange presenceWindow(long now, long windowInSeconds){
+        return EmbeddedRedisStore.ScoreRange.closed(now - windowInSeconds * 1000, Double.POSITIVE_INFINITY);
+    }
+
+    private static void expire(EmbeddedRedisStore store, byte[] key, long now, long ttlInMillis){
+        store.expireAt(key, now + ttlInMillis, ExpirationOptions.Condition.ALWAYS);
+    }
+
+    //Scores come back from lua as strings, whole numbers without a decimal point
+    private static byte[] score(double score){
+        String value = score == Math.rint(score) && !Double.isInfinite(score) ? String.valueOf((long) score) : String.valueOf(score);
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long number(byte[] arg){
+        return Long.parseLong(new String(arg, StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(String path){
+        try{
+            return new DefaultRedisScript<>(new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8)).getSha1();
+        }catch (Exception e){
+            throw new IllegalStateException("Failed to load script: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.victor.EventDrop.redis.embedded;
+
+/**
+ * Redis' glob style matching, for KEYS, SCAN's MATCH and PSUBSCRIBE patterns.
+ * Supports *, ?, [abc], [^abc], [a-z] and backslash escapes, byte by byte like redis.
+ */
+final class GlobPattern {
+
+    private GlobPattern() {
+    }
+
+    static boolean matches(byte[] pattern, byte[] value){
+        return matches(pattern, 0, value, 0);
+    }
+
+    private static boolean matches(byte[] pattern, int p, byte[] value, int v){
+        while (p < pattern.length){
+            switch (pattern[p]){
+                case '*' -> {
+                    //Collapse runs of stars, then try every split of the rest
+                    while (p + 1 < pattern.length && pattern[p + 1] == '*') p++;
+                    if(p + 1 == pattern.length) return true;
+                    for (int i = v; i <= value.length; i++){
+                        if(matches(pattern, p + 1, value, i)) return true;
+                    }
+                    return false;
+                }
+                case '?' -> {
+                    if(v >= value.length) return false;
+                    v++;
+                }
+                case '[' -> {
+                    if(v >= value.length) return false;
+                    int end = classEnd(pattern, p);
+                    if(!inClass(pattern, p + 1, end, value[v])) return false;
+                    p = end;
+                    v++;
+                }
+                case '\\' -> {
+                    if(p + 1 < pattern.length) p++;
+                    if(v >= value.length || pattern[p] != value[v]) return false;
+                    v++;
+                }
+                default -> {
+                    if(v >= value.length || pattern[p] != value[v]) return false;
+                    v++;
+                }
+            }
+            p++;
+        }
+        return v == value.length;
+    }
+
+    //The index of the class' closing bracket, or the pattern's last byte if it's never closed
+    private static int classEnd(byte[] pattern, int start){
+        int i = start + 1;
+        if(i < pattern.length && pattern[i] == '^') i++;
+        while (i < pattern.length && pattern[i] != ']'){
+            if(pattern[i] == '\\' && i + 1 < pattern.length) i++;
+            i++;
+        }
+        return Math.min(i, pattern.length - 1);
+    }
+
+    private static boolean inClass(byte[] pattern, int start, int end, byte b){
+        boolean negate = start < end && pattern[start] == '^';
+        int i = negate ? start + 1 : start;
+        boolean match = false;
+        while (i < end){
+            if(pattern[i] == '\\' && i + 1 < end){
+                i++;
+                match |= pattern[i] == b;
+            }else if(i + 2 < end && pattern[i + 1] == '-'){
+                int low = Math.min(pattern[i] & 0xff, pattern[i + 2] & 0xff);
+                int high = Math.max(pattern[i] & 0xff, pattern[i + 2] & 0xff);
+                match |= (b & 0xff) >= low && (b & 0xff) <= high;
+                i += 2;
+            }else{
+                match |= pattern[i] == b;
+            }
+            i++;
+        }
+        return negate != match;
+    }
+}
@@ -0,0 +1,150 @@
+package com.victor.EventDrop.redis.embedded;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A hierarchical timing wheel, the embedded store's expiry schedule.
+ * The lowest wheel has one slot per tick. Each wheel above it has slots as wide as a full turn of the one below,
+ * and a new wheel is added on top whenever a deadline is further out than the current wheels reach.
+ * Scheduling is O(1) whatever the deadline. When a higher wheel's slot comes up its items are spread over the
+ * wheels below, until they reach the lowest wheel and fire. Items never fire early and at most one tick late.
+ * Not thread safe, the embedded store only touches it under its own lock.
+ *
+ * @param <T> The scheduled items
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickInMillis;
+    private final int wheelSize;
+    //Wheels stop being added before a turn of the top one would overflow a long
+    private final int maxLevel;
+    //The wheels from the lowest up, each a fixed list of slots
+    private final List<List<ArrayDeque<Timer<T>>>> wheels = new ArrayList<>();
+
+    //The start of the current tick. Items due before it have already fired
+    private long currentTime;
+    private int size;
+
+    private record Timer<T>(T item, long deadline) {}
+
+    /**
+     * @param tickInMillis The width of a slot on the lowest wheel, the precision items fire with
+     * @param wheelSize The slots on each wheel
+     * @param startTime The time the wheel starts at, in millis
+     * */
+    public HierarchicalTimingWheel(long tickInMillis, int wheelSize, long startTime) {
+        if(tickInMillis <= 0 || wheelSize < 2){
+            throw new IllegalArgumentException("A timing wheel needs a positive tick and at least two slots");
+        }
+        this.tickInMillis = tickInMillis;
+        this.wheelSize = wheelSize;
+        int level = 0;
+        for (long span = tickInMillis; span <= Long.MAX_VALUE / wheelSize / wheelSize; span *= wheelSize){
+            level++;
+        }
+        this.maxLevel = level;
+        this.currentTime = startTime - startTime % tickInMillis;
+    }
+
+    /**
+     * Schedules an item to fire at its deadline.
+     *
+     * @param item The item
+     * @param deadline When the item is due, in millis
+     * @return False if the deadline has already passed. The item isn't scheduled then, the caller handles it right away
+     * */
+    public boolean schedule(T item, long deadline){
+        if(deadline < currentTime){
+            return false;
+        }
+
+        add(new Timer<>(item, deadline));
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward, firing every item due up to now.
+     *
+     * @param now The current time in millis
+     * @param expired Called with each item and its deadline as it fires
+     * @return How many items fired
+     * */
+    public int advance(long now, BiConsumer<T, Long> expired){
+        int fired = 0;
+        while (currentTime + tickInMillis <= now){
+            //Every item in the current slot is due within the tick that just ended
+            ArrayDeque<Timer<T>> slot = slot(0, currentTime);
+            Timer<T> timer;
+            while ((timer = slot.poll()) != null){
+                size--;
+                fired++;
+                expired.accept(timer.item(), timer.deadline());
+            }
+
+            currentTime += tickInMillis;
+            cascade();
+        }
+        return fired;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public long currentTime(){
+        return currentTime;
+    }
+
+    //A deadline goes on the lowest wheel whose current turn still covers it
+    private void add(Timer<T> timer){
+        int level = 0;
+        long span = tickInMillis;
+        while (level < maxLevel && timer.deadline() / (span * wheelSize) != currentTime / (span * wheelSize)){
+            level++;
+            span *= wheelSize;
+        }
+        slot(level, timer.deadline()).add(timer);
+    }
+
+    //Where the current time starts a new slot on a higher wheel, that slot's items move down, top wheels first
+    private void cascade(){
+        long[] spans = new long[wheels.size()];
+        long span = tickInMillis;
+        for (int level = 0; level < spans.length; level++){
+            spans[level] = span;
+            span *= wheelSize;
+        }
+
+        for (int level = spans.length - 1; level > 0; level--){
+            if(currentTime % spans[level] != 0){
+                continue;
+            }
+
+            //Drained first, a deadline past the top wheel's turn lands back in the same slot
+            ArrayDeque<Timer<T>> slot = wheels.get(level).get((int) ((currentTime / spans[level]) % wheelSize));
+            List<Timer<T>> timers = new ArrayList<>(slot);
+            slot.clear();
+            timers.forEach(this::add);
+        }
+    }
+
+    private ArrayDeque<Timer<T>> slot(int level, long time){
+        while (wheels.size() <= level){
+            List<ArrayDeque<Timer<T>>> wheel = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++){
+                wheel.add(new ArrayDeque<>());
+            }
+            wheels.add(wheel);
+        }
+
+        long span = tickInMillis;
+        for (int i = 0; i < level; i++){
+            span *= wheelSize;
+        }
+        return wheels.get(level).get((int) ((time / span) % wheelSize));
+    }
+}
@@ -0,0 +1,42 @@
+package com.victor.EventDrop.rooms;
+
+import com.victor.EventDrop.redis.MinimalRedisRepository;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * The room repository of the minimal schema. The room code is the id, so both queries are plain key lookups
+ * on the room's hash tagged key, room:{1234ABCD}.
+ */
+@Repository
+@ConditionalOnProperty(name = "spring.redis.schema.mode", havingValue = "minimal")
+public class MinimalRoomRepository extends MinimalRedisRepository<Room, String> implements RoomRepository {
+
+    public MinimalRoomRepository(RedisTemplate<String, Object> redisTemplate, RedisEntityWriter redisEntityWriter) {
+        super(redisTemplate, redisEntityWriter, Room.class, "room");
+    }
+
+    @Override
+    protected String idOf(Room room) {
+        return room.getRoomCode();
+    }
+
+    @Override
+    protected byte[] keyOf(String roomCode) {
+        return bytes(redisEntityWriter.keyOf("room", roomCode, roomCode));
+    }
+
+    @Override
+    public Optional<Room> findByRoomCode(String roomCode) {
+        return findById(roomCode);
+    }
+
+    @Override
+    public boolean existsByRoomCode(String roomCode) {
+        return existsById(roomCode);
+    }
+}
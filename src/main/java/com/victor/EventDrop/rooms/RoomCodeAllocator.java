@@ -0,0 +1,165 @@
+package com.victor.EventDrop.rooms;
+
+import com.victor.EventDrop.exceptions.RoomCreationException;
+import com.victor.EventDrop.rooms.configproperties.RoomCodePoolConfigProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocates unique room codes.
+ * Codes are pre-generated in the background and handed out from a lock-free pool,
+ * then reserved atomically with SET NX so two creators can never end up with the same code.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RoomCodeAllocator {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RoomCodePoolConfigProperties roomCodePoolConfigProperties;
+    private final AsyncTaskExecutor asyncTaskExecutor;
+
+    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    //One generator per thread so code generation never contends on a shared SecureRandom
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final String ROOM_CODE_CHARS = "1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int ROOM_CODE_LENGTH = 8;
+    private static final String RESERVATION_KEY_PREFIX = "room-code:";
+
+    /**
+     * Reserves a unique room code for the lifetime of a room.
+     *
+     * @param ttl How long the room lives. The code can't be handed out again before then
+     * @return An 8-character room code reserved for the caller
+     * @throws RoomCreationException if no free room code could be reserved
+     * */
+    public String allocate(Duration ttl){
+        int maxAttempts = roomCodePoolConfigProperties.getMaxReservationAttempts();
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++){
+            String roomCode = nextRoomCode();
+            Boolean reserved = redisTemplate.opsForValue().setIfAbsent(reservationKey(roomCode), roomCode, ttl);
+
+            if(Boolean.TRUE.equals(reserved)){
+                log.info("Reserved room code: {}", roomCode);
+                return roomCode;
+            }
+
+            log.info("Room code: {} is already taken. Trying another one...", roomCode);
+        }
+
+        log.info("Failed to reserve a unique room code after {} attempts", maxAttempts);
+        throw new RoomCreationException("Failed to reserve a unique room code after " + maxAttempts + " attempts");
+    }
+
+    //Releases a reserved code when the room behind it couldn't be created
+    public void release(String roomCode){
+        try{
+            redisTemplate.delete(reservationKey(roomCode));
+        }catch (Exception e){
+            log.error("Failed to release reserved room code: {}", roomCode, e);
+        }
+    }
+
+    /**
+     * Tops the pool back up to its configured size.
+     * Candidates that are already reserved are dropped with one pipelined existence check.
+     * */
+    @Scheduled(fixedDelay = 30, timeUnit = TimeUnit.SECONDS)
+    public void refill(){
+        if(!refilling.compareAndSet(false, true)){
+            return;
+        }
+
+        try{
+            int missing = roomCodePoolConfigProperties.getSize() - poolSize.get();
+            if(missing <= 0) return;
+
+            List<String> candidates = new ArrayList<>(missing);
+            for (int i = 0; i < missing; i++){
+                candidates.add(generateRoomCode());
+            }
+
+            List<Object> existing = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                candidates.forEach(code -> connection.keyCommands().exists(reservationKey(code).getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+
+            int added = 0;
+            for (int i = 0; i < candidates.size(); i++){
+                if(!Boolean.TRUE.equals(existing.get(i))){
+                    pool.offer(candidates.get(i));
+                    poolSize.incrementAndGet();
+                    added++;
+                }
+            }
+
+            log.debug("Refilled room code pool with {} codes", added);
+        }catch (Exception e){
+            log.error("Failed to refill room code pool", e);
+        }finally {
+            refilling.set(false);
+        }
+    }
+
+    /**
+     * Generates an 8-character alphanumeric room code.
+     *
+     * @return An 8-character room code.
+     */
+    public String generateRoomCode(){
+        SecureRandom secureRandom = SECURE_RANDOM.get();
+        int len = ROOM_CODE_CHARS.length();
+        StringBuilder sb = new StringBuilder(ROOM_CODE_LENGTH);
+        for (int i = 0; i < ROOM_CODE_LENGTH; i++){
+            sb.append(ROOM_CODE_CHARS.charAt(secureRandom.nextInt(len)));
+        }
+
+        return sb.toString();
+    }
+
+    private String nextRoomCode(){
+        String roomCode = pool.poll();
+
+        if(roomCode == null){
+            //The pool ran dry, don't make the caller wait on a refill
+            triggerRefill();
+            return generateRoomCode();
+        }
+
+        if(poolSize.decrementAndGet() < roomCodePoolConfigProperties.getLowWaterMark()){
+            triggerRefill();
+        }
+
+        return roomCode;
+    }
+
+    private void triggerRefill(){
+        if(!refilling.get()){
+            asyncTaskExecutor.execute(this::refill);
+        }
+    }
+
+    private String reservationKey(String roomCode){
+        return RESERVATION_KEY_PREFIX + roomCode;
+    }
+}
@@ -1,17 +1,26 @@
 package com.victor.EventDrop.rooms;
 
+import com.victor.EventDrop.auth.SessionTtlRefresher;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RoomEmitterHandler {
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, SseEmitter>> sseEmitters;
+    //Each room's event queue doubles as its emit lock, see RoomEventListener
+    private final ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap;
+    private final SessionTtlRefresher sessionTtlRefresher;
 
     public synchronized void removeEmitter(String roomCode, String sessionId) {
         ConcurrentHashMap<String, SseEmitter> sessionsInRoom = sseEmitters.get(roomCode);
@@ -32,4 +41,28 @@ public class RoomEmitterHandler {
     public void removeRoomEmitters(String roomCode){
         sseEmitters.remove(roomCode);
     }
+
+    /**
+     * Pings every SSE client connected to this node.
+     * A connected client counts as present, so each ping refreshes its session and its presence in the room.
+     * Clients whose connection is gone are dropped and left to time out of presence.
+     * A room's pings go out under the same lock as its room state events, so they never interleave on an emitter.
+     * */
+    @Scheduled(fixedDelayString = "${session.heartbeat-interval-in-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void sendHeartbeats(){
+        sseEmitters.forEach((roomCode, sessionsInRoom) -> {
+            ConcurrentLinkedDeque<RoomStateDto> roomLock = roomEventHashMap.computeIfAbsent(roomCode, k -> new ConcurrentLinkedDeque<>());
+            synchronized (roomLock){
+                sessionsInRoom.forEach((sessionId, emitter) -> {
+                    try{
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                        sessionTtlRefresher.touch(sessionId, roomCode);
+                    }catch (IOException | IllegalStateException e){
+                        log.info("Heartbeat failed for session: {} in room: {}. Removing emitter", sessionId, roomCode);
+                        removeEmitter(roomCode, sessionId);
+                    }
+                });
+            }
+        });
+    }
 }
@@ -1,32 +1,39 @@
 package com.victor.EventDrop.rooms;
 
+import com.victor.EventDrop.auth.SessionRevocationList;
+import com.victor.EventDrop.auth.SessionTokenService;
 import com.victor.EventDrop.exceptions.*;
 import com.victor.EventDrop.occupants.Occupant;
 import com.victor.EventDrop.occupants.OccupantRole;
 import com.victor.EventDrop.occupants.OccupantRoomJoinResponse;
 import com.victor.EventDrop.occupants.OccupantService;
-import com.victor.EventDrop.rooms.configproperties.RoomLeaveConfigProperties;
 import com.victor.EventDrop.rooms.dtos.RoomCreateRequestDto;
 import com.victor.EventDrop.rooms.dtos.RoomJoinRequestDto;
 import com.victor.EventDrop.rooms.dtos.RoomJoinResponseDto;
+import com.victor.EventDrop.redis.ExpiryDeadlines;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomEventType;
 import com.victor.EventDrop.rooms.events.RoomJoinEvent;
 import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import com.victor.EventDrop.transport.EventTopic;
+import com.victor.EventDrop.transport.EventTransport;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for managing room-related operations.
@@ -38,23 +45,26 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class RoomServiceImpl implements RoomService {
 
-    private final RoomLeaveConfigProperties roomLeaveConfigProperties;
     private final RoomRepository roomRepository;
-    private final RabbitTemplate rabbitTemplate;
+    private final EventTransport eventTransport;
     private final RoomMapper roomMapper;
-    private final SecureRandom secureRandom;
+    private final RoomCodeAllocator roomCodeAllocator;
+    private final RedisEntityWriter redisEntityWriter;
     private final RedisTemplate<String, Object> redisTemplate;
     private final ApplicationEventPublisher eventPublisher;
     private final OccupantService occupantService;
+    private final SessionTokenService sessionTokenService;
+    private final SessionRevocationList sessionRevocationList;
+    private final ExpiryDeadlines expiryDeadlines;
     @Value("${room.max-ttl-in-minutes}")
     private long maxTtlInMins;
 
-    private static final int MAX_ROOM_CODE_CREATION_ATTEMPTS = 5;
+    private static final long ROOM_DELETE_GRACE_IN_SECONDS = 5;
 
     /**
      * Orchestrates the creation of a new room.
-     * It generates a unique room code, validates the TTL, saves the room to the repository,
-     * and initializes the room's message queue listeners.
+     * It validates the TTL, reserves a unique room code, then writes the room and its owner
+     * in a single pipelined round trip.
      *
      * @param roomCreateRequestDto The DTO containing the room's name and TTL.
      * @return A {@link RoomJoinResponseDto} representing the initial state after the owner joins the room.
@@ -68,7 +78,8 @@ public class RoomServiceImpl implements RoomService {
         //TTL given is in minutes. Convert it to seconds
         double ttlInSeconds = ttlInMinutes * 60.0;
 
-        String roomCode = validateTtlAndGenerateRoomCode(ttlInMinutes);
+        String roomCode = validateTtlAndReserveRoomCode(ttlInMinutes);
+        String username = roomCreateRequestDto.username().trim();
 
         try{
             LocalDateTime createdAt = LocalDateTime.now();
@@ -81,28 +92,58 @@ public class RoomServiceImpl implements RoomService {
                     .expiresAt(createdAt.plusSeconds((long) ttlInSeconds))
                     .build();
 
-            roomRepository.save(room);
+            UUID sessionId = UUID.randomUUID();
+            Occupant owner = Occupant
+                    .builder()
+                    .occupantName(username)
+                    .roomCode(roomCode)
+                    .occupantRole(OccupantRole.OWNER)
+                    .sessionId(sessionId)
+                    .build();
+
+            //The room is brand new, so the owner can't hit the room size limit. Write both in one round trip
+            byte[] presenceKey = Occupant.presenceKey(roomCode).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                redisEntityWriter.insert(connection, room);
+                redisEntityWriter.insert(connection, owner);
+                connection.zSetCommands().zAdd(presenceKey, System.currentTimeMillis(), sessionId.toString().getBytes(StandardCharsets.UTF_8));
+                connection.keyCommands().expire(presenceKey, (long) ttlInSeconds);
+                connection.setCommands().sAdd(Occupant.PRESENCE_ROOMS_KEY.getBytes(StandardCharsets.UTF_8), roomCode.getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+
             eventPublisher.publishEvent(
                     new RoomEvent(
-                            roomCreateRequestDto.username() + " created the room",
+                            username + " created the room",
                             LocalDateTime.now(),
                             RoomEventType.ROOM_CREATE,
                             roomCode,
                             null
                     )
             );
+            eventPublisher.publishEvent(new OccupancyChangedEvent(roomCode, 1));
+            eventPublisher.publishEvent(
+                    new RoomEvent(
+                            username + " joined the room",
+                            LocalDateTime.now(),
+                            RoomEventType.ROOM_JOIN,
+                            roomCode,
+                            null
+                    )
+            );
 
             log.info("Successfully created room: {} with room code: {}", room.getRoomName(), room.getRoomCode());
-            return joinRoom(new RoomJoinRequestDto(roomCreateRequestDto.username(), OccupantRole.OWNER ,roomCode));
+            return roomMapper.toRoomJoinResponseDto(room, sessionTokenService.issue(owner, room.getExpiresAt()), username);
 
         }catch (Exception e){
             log.info("Failed to create room with room-code: {}", roomCode, e);
+            roomCodeAllocator.release(roomCode);
             throw new RoomCreationException(String.format("Failed to create room with room-code: %s", roomCode), e);
         }
     }
 
 
-    protected String validateTtlAndGenerateRoomCode(double ttl){
+    protected String validateTtlAndReserveRoomCode(double ttl){
         //Cant create rooms that last more than 3 days
         if (ttl > maxTtlInMins) {
             throw new RoomTtlExceededException(
@@ -110,36 +151,19 @@ public class RoomServiceImpl implements RoomService {
             );
         }
 
-        return ensureUniqueRoomCode();
-    }
-
-    public String ensureUniqueRoomCode(){
-        String roomCode = generateRoomCode();
-        int currentAttempts = 1;
-
-        while(roomRepository.existsByRoomCode(roomCode) && currentAttempts <= MAX_ROOM_CODE_CREATION_ATTEMPTS){
-            if (currentAttempts == MAX_ROOM_CODE_CREATION_ATTEMPTS) {
-                log.info("Failed to generate unique room code after {} attempts", currentAttempts);
-                throw new RoomCreationException("Failed to generate unique room code after "
-                        + currentAttempts + " attempts");
-            }
-
-            log.info("Found existing room with room code: {}. Regenerating room code...", roomCode);
-            roomCode = generateRoomCode();
-            currentAttempts++;
-        }
-
-        return roomCode;
+        //Keep the code reserved for as long as the room lives
+        return roomCodeAllocator.allocate(Duration.ofSeconds((long) (ttl * 60.0)));
     }
 
     /**
      * Orchestrates the process of an occupant joining a room.
-     * A new session ID is generated, and a message is sent to RabbitMQ to trigger
-     * occupant creation. An SSE event is then published to notify clients.
+     * A new session ID is generated and the occupant is created by a single atomic join on redis,
+     * which also returns the room. An SSE event is then published to notify clients.
      *
      * @param roomJoinRequestDto The DTO containing the room code, username, and role.
      * @return A {@link RoomJoinResponseDto} with the new session ID and room details.
      * @throws NoSuchRoomException if the specified room does not exist.
+     * @throws RoomFullException if the room is already full.
      */
     @Override
     public RoomJoinResponseDto joinRoom(RoomJoinRequestDto roomJoinRequestDto){
@@ -147,15 +171,15 @@ public class RoomServiceImpl implements RoomService {
         String username = roomJoinRequestDto.getUsername().trim();
         log.info("Attempting to join room: {}", roomCode);
 
-        Room room = findByRoomCode(roomCode);
-
-        log.info("Found room with room code: {}. Joining... ", roomCode);
         UUID sessionId = UUID.randomUUID();
 
-        //Join a room
-        OccupantRoomJoinResponse roomJoinResponse = occupantService.createOccupant(new RoomJoinEvent(username, sessionId ,roomJoinRequestDto.getRole(),roomJoinRequestDto.getRoomCode(), room.getExpiresAt()));
+        //Join a room. The room lookup, capacity check and occupant write happen in one round trip,
+        //so the room's expiry isn't known up front
+        OccupantRoomJoinResponse roomJoinResponse = occupantService.createOccupant(new RoomJoinEvent(username, sessionId ,roomJoinRequestDto.getRole(), roomCode, null));
 
-        handleRoomJoinResponse(roomJoinResponse);
+        handleRoomJoinResponse(roomJoinResponse, roomCode);
+        Room room = roomJoinResponse.room();
+        log.info("Joined room with room code: {}", roomCode);
 
         eventPublisher.publishEvent(
                 new RoomEvent(
@@ -168,11 +192,19 @@ public class RoomServiceImpl implements RoomService {
         );
 
 
-        return roomMapper.toRoomJoinResponseDto(room, sessionId.toString(), username);
+        Occupant occupant = Occupant
+                .builder()
+                .sessionId(sessionId)
+                .roomCode(roomCode)
+                .occupantName(username)
+                .occupantRole(roomJoinRequestDto.getRole())
+                .build();
+
+        return roomMapper.toRoomJoinResponseDto(room, sessionTokenService.issue(occupant, room.getExpiresAt()), username);
     }
 
     //Handles the room join response from the listener container
-    public void handleRoomJoinResponse(OccupantRoomJoinResponse roomJoinResponse) {
+    public void handleRoomJoinResponse(OccupantRoomJoinResponse roomJoinResponse, String roomCode) {
         if(roomJoinResponse == null){
             log.info("Failed to join room because occupant room join response is null");
             throw new RoomJoinException("Failed to join room because occupant room join response is null");
@@ -182,6 +214,11 @@ public class RoomServiceImpl implements RoomService {
             log.info("Successfully joined room");
         }else{
             switch (roomJoinResponse.status()){
+                case 404 -> {
+                    log.info("Failed to find room with room code: {}", roomCode);
+                    throw new NoSuchRoomException(String.format("Failed to find room with room code: %s", roomCode));
+                }
+
                 case 409 -> {
                     log.info("Cannot join room because room is full");
                     throw new RoomFullException("Cannot join room because room is full");
@@ -197,7 +234,7 @@ public class RoomServiceImpl implements RoomService {
 
     /**
      * Handles the event of an occupant leaving a room.
-     * A message is sent to RabbitMQ to trigger cleanup of the occupant's session.
+     * An event is published to trigger cleanup of the occupant's session, without waiting on its transport.
      * An SSE event is also published to notify clients.
      *
      * @param occupant The {@link Occupant} object of the individual leaving the room.
@@ -208,13 +245,18 @@ public class RoomServiceImpl implements RoomService {
         String roomCode = occupant.getRoomCode();
         String username = occupant.getOccupantName();
 
-        rabbitTemplate.convertAndSend(
-                roomLeaveConfigProperties.getExchangeName(),
-                roomLeaveConfigProperties.getRoutingKey(),
+        //On the room's shard, so it's handled before the room's expiry if the room expires next
+        boolean published = eventTransport.publish(
+                EventTopic.ROOM_SHARD,
+                roomCode,
                 new RoomLeaveEvent(
                         roomCode, username , occupant.getSessionId()
                 )
         );
+        if(!published){
+            log.error("Failed to publish the leave of occupant: {} in room: {}. The session is still revoked, the occupant is left to expire", username, roomCode);
+        }
+        sessionRevocationList.revokeSession(occupant.getSessionId().toString());
 
 
 
@@ -230,8 +272,11 @@ public class RoomServiceImpl implements RoomService {
     @Override
     public void deleteRoom(@NotNull Occupant occupant){
         leaveRoom(occupant);
-        String roomKey = "room:" + occupant.getRoomCode();
-        redisTemplate.expire(roomKey, Duration.ofSeconds(5));
+        String roomCode = occupant.getRoomCode();
+        sessionRevocationList.revokeRoom(roomCode);
+        String roomKey = redisEntityWriter.keyOf("room", roomCode, roomCode);
+        redisTemplate.expire(roomKey, Duration.ofSeconds(ROOM_DELETE_GRACE_IN_SECONDS));
+        expiryDeadlines.reschedule(roomKey, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ROOM_DELETE_GRACE_IN_SECONDS));
     }
 
     /**
@@ -278,22 +323,4 @@ public class RoomServiceImpl implements RoomService {
     }
 
 
-    /**
-     * Generates a unique, 8-character alphanumeric room code.
-     *
-     * @return An 8-character unique room code.
-     */
-    public String generateRoomCode(){
-        String vars = "1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
-        int len = vars.length();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < 8; i++){
-            int random = secureRandom.nextInt(len);
-            sb.append(vars.charAt(random));
-        }
-
-        log.info("Generated room code: {}", sb);
-        return sb.toString();
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.victor.EventDrop.rooms;
+
+import com.victor.EventDrop.rabbitmq.RetryTiers;
+import com.victor.EventDrop.rooms.configproperties.RoomShardConfigProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes a room's leave and expiry events to one shard, picked by a consistent hash of the room code.
+ * Each shard is a queue with a single active consumer across the nodes, so a room's events are handled in the order they were published
+ * while different rooms' events are handled in parallel, one shard each. Throughput grows with the shard count.
+ * The order is the order the broker received them in. {@link com.victor.EventDrop.rabbitmq.ConfirmedEventPublisher} holds each shard's
+ * routing key until its event is confirmed, so one it has to send again, after a nack or a confirm timeout, still goes before the room's newer events.
+ * The hash is a jump consistent hash, adding a shard only moves the rooms that land on it.
+ * Those rooms' events still queued on their old shard are then raced by their new ones, and removing shards leaves their queues
+ * with no consumer at all. So the count is only changed with the shards drained: every node stopped or off amqp,
+ * the shard queues empty, then the nodes started again with the new count.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class RoomShardRouter {
+
+    private final RoomShardConfigProperties roomShardConfigProperties;
+    private final RetryTiers retryTiers;
+
+    public String exchangeName(){
+        return roomShardConfigProperties.getExchangeName();
+    }
+
+    public int shardCount(){
+        return roomShardConfigProperties.getCount();
+    }
+
+    public int shardOf(String roomCode){
+        return jumpHash(mix(roomCode.hashCode()), shardCount());
+    }
+
+    public String routingKeyOf(String roomCode){
+        return routingKey(shardOf(roomCode));
+    }
+
+    public String routingKey(int shard){
+        return "shard." + shard;
+    }
+
+    //e.g. room-shard-queue.3
+    public String queueName(int shard){
+        return roomShardConfigProperties.getQueuePrefix() + "." + shard;
+    }
+
+    /**
+     * Declares the shard exchange, a quorum queue per shard bound with its shard's routing key, and each shard's parking lot.
+     * Every node consumes every shard, single active consumer leaves one of them consuming it at a time and fails over to the next.
+     *
+     * @return The shard exchange, queues, parking lots and bindings.
+     * */
+    public Declarables declarables(){
+        DirectExchange exchange = new DirectExchange(exchangeName(), true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int shard = 0; shard < shardCount(); shard++){
+            Queue queue = QueueBuilder.durable(queueName(shard)).quorum().singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(routingKey(shard)));
+            declarables.add(QueueBuilder.durable(retryTiers.parkingLot(queueName(shard))).build());
+        }
+        return new Declarables(declarables);
+    }
+
+    //Lamping and Veach's jump consistent hash
+    private static int jumpHash(long key, int buckets){
+        long bucket = -1, next = 0;
+        while (next < buckets){
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    //Spreads the string hash over 64 bits, room codes differ in few characters
+    private static long mix(long key){
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,141 @@
+package com.victor.EventDrop.rooms.config;
+
+import com.rabbitmq.client.GetResponse;
+import com.victor.EventDrop.rabbitmq.RabbitPublisherConfigProperties;
+import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.transport.AmqpEventTransport;
+import com.victor.EventDrop.transport.EventTopic;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retires room expiry queues nothing new is routed to: the queue the cleanup stages used to share,
+ * and the occupants stage's queue, whose cleanup now runs on the room's shard.
+ * Each is unbound first, so no new expiries land on it. The expiries left in it are then moved to where they go now,
+ * the shared queue's to every stage and the occupants queue's to the room's shard. Each is taken with a manual ack
+ * and only acked once the broker confirmed it everywhere it was moved to, so one lost on the way stays in the queue.
+ * The queue is deleted once it's drained empty and no consumer of an older node is left on it.
+ * Until then older nodes keep draining it, a later startup deletes it.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class LegacyRoomQueueRemover implements CommandLineRunner {
+
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpEventTransport amqpEventTransport;
+    private final RoomExpiryConfigProperties roomExpiryConfigProperties;
+    private final RabbitPublisherConfigProperties rabbitPublisherConfigProperties;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    @Override
+    public void run(String... args) {
+        retire(roomExpiryConfigProperties.getQueueName(), List.of(EventTopic.ROOM_EXPIRY, EventTopic.ROOM_SHARD));
+        retire(roomExpiryConfigProperties.getOccupants().getQueueName(), List.of(EventTopic.ROOM_SHARD));
+    }
+
+    /**
+     * Unbinds, drains and deletes a retired queue.
+     *
+     * @param queueName The retired queue
+     * @param topics Where its expiries are published instead, as {@link com.victor.EventDrop.rooms.listeners.RoomExpiryListener} does for new ones
+     * */
+    private void retire(String queueName, List<EventTopic> topics){
+        if(queueName == null || queueName.isBlank()){
+            return;
+        }
+
+        try{
+            if(amqpAdmin.getQueueInfo(queueName) == null){
+                return;
+            }
+
+            amqpAdmin.removeBinding(new Binding(queueName, Binding.DestinationType.QUEUE,
+                    roomExpiryConfigProperties.getExchangeName(), roomExpiryConfigProperties.getRoutingKey(), null));
+            if(!drain(queueName, topics)){
+                log.info("Kept the retired room expiry queue: {} for now, not all of its expiries could be moved", queueName);
+                return;
+            }
+
+            amqpAdmin.deleteQueue(queueName, true, true);
+            log.info("Deleted the retired room expiry queue: {}", queueName);
+        }catch (Exception e){
+            //Still consumed by an older node or not drained yet
+            log.info("Kept the retired room expiry queue: {} for now. Cause: {}", queueName, e.getMessage());
+        }
+    }
+
+    //Moves a queue's expiries one at a time, acking each once it's confirmed. One that can't be moved is requeued and the drain stops
+    private boolean drain(String queueName, List<EventTopic> topics){
+        Boolean drained = rabbitTemplate.execute(channel -> {
+            int moved = 0;
+            GetResponse response;
+            while ((response = channel.basicGet(queueName, false)) != null){
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                RoomExpiryEvent roomExpiryEvent = toEvent(response);
+
+                if(!republish(roomExpiryEvent, topics)){
+                    //The stages are idempotent, so the topics that did get it are fine seeing it again
+                    channel.basicNack(deliveryTag, false, true);
+                    log.warn("Failed to move the expiry of room: {} off the retired queue: {}", roomExpiryEvent.roomCode(), queueName);
+                    return false;
+                }
+                channel.basicAck(deliveryTag, false);
+                moved++;
+            }
+
+            if(moved > 0){
+                log.info("Moved {} expiries off the retired room expiry queue: {}", moved, queueName);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(drained);
+    }
+
+    private RoomExpiryEvent toEvent(GetResponse response){
+        MessageProperties messageProperties = messagePropertiesConverter
+                .toMessageProperties(response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+        messageProperties.setInferredArgumentType(RoomExpiryEvent.class);
+        return (RoomExpiryEvent) rabbitTemplate.getMessageConverter().fromMessage(new Message(response.getBody(), messageProperties));
+    }
+
+    //Waits until every topic has the expiry confirmed or dropped. The publisher gives up on an event within its attempts, so the wait is bounded by them
+    private boolean republish(RoomExpiryEvent roomExpiryEvent, List<EventTopic> topics){
+        List<CompletableFuture<Boolean>> confirmations = topics.stream()
+                .map(topic -> amqpEventTransport.publishConfirmed(topic, roomExpiryEvent.roomCode(), roomExpiryEvent))
+                .toList();
+
+        long maxWaitInMillis = rabbitPublisherConfigProperties.getMaxAttempts()
+                * (rabbitPublisherConfigProperties.getConfirmTimeoutInMillis() + rabbitPublisherConfigProperties.getRedeliveryIntervalInMillis());
+        try{
+            CompletableFuture.allOf(confirmations.toArray(CompletableFuture[]::new)).get(maxWaitInMillis, TimeUnit.MILLISECONDS);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }catch (ExecutionException | TimeoutException e){
+            return false;
+        }
+        return confirmations.stream().allMatch(CompletableFuture::join);
+    }
+}
@@ -1,36 +1,23 @@
 package com.victor.EventDrop.rooms.config;
 
+import com.victor.EventDrop.rooms.RoomShardRouter;
 import com.victor.EventDrop.rooms.configproperties.*;
-import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-
-import java.security.SecureRandom;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
- * RabbitMQ configuration for room-related events.
+ * RabbitMQ configuration for room-related events. Only used with the amqp transport.
  */
 @Configuration
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
 public class RoomConfig {
     private final RoomExpiryConfigProperties roomExpiryConfigProperties;
     private final RoomLeaveConfigProperties roomLeaveConfigProperties;
 
-    /**
-     * Creates a SecureRandom bean for generating cryptographically strong random numbers.
-     *
-     * @return A SecureRandom instance.
-     */
-    @Bean
-    public SecureRandom secureRandom(){
-        return new SecureRandom();
-    }
-
     @Bean
     public Queue roomLeaveQueue(){
         //Hardcoded string for practice
@@ -65,43 +52,52 @@ public class RoomConfig {
     }
 
     /**
-     * Creates a durable queue for room expiry events.
+     * Creates a durable queue for the file cleanup of expired rooms.
      *
-     * @return A Queue for room expiry events.
+     * @return A Queue for the files stage of room expiry.
      */
     @Bean
-    public Queue roomExpiryQueue(){
-        return QueueBuilder.durable(roomExpiryConfigProperties.getQueueName()).quorum().build();
+    public Queue roomExpiryFilesQueue(){
+        return QueueBuilder.durable(roomExpiryConfigProperties.getFiles().getQueueName()).quorum().build();
     }
 
     /**
-     * Binds the room expiry queue to its exchange using a routing key.
+     * Creates this node's queue for the emitter cleanup of expired rooms.
+     * SSE emitters live on the node their client is connected to, so each node needs every expiry.
+     * The queue is exclusive to this node and goes away with it.
      *
-     * @param roomExpiryQueue The queue for room expiry.
-     * @param roomExpiryExchange The exchange for room expiry.
-     * @return A Binding connecting the queue and the exchange.
+     * @return An anonymous Queue for the emitters stage of room expiry.
      */
     @Bean
-    public Binding roomExpiryBinding(Queue roomExpiryQueue, DirectExchange roomExpiryExchange){
-        return BindingBuilder.bind(roomExpiryQueue).to(roomExpiryExchange).with(roomExpiryConfigProperties.getRoutingKey());
+    public Queue roomExpiryEmittersQueue(){
+        return new AnonymousQueue(new Base64UrlNamingStrategy(roomExpiryConfigProperties.getEmitters().getQueueName() + "."));
     }
 
+    /**
+     * Binds every room expiry stage's queue to the expiry exchange with the same routing key,
+     * so each expiry is delivered to every stage rather than to whichever consumer takes it first.
+     * The occupants stage isn't bound here, it's ordered with the room's leaves on the room's shard.
+     *
+     * @param roomExpiryExchange The exchange for room expiry.
+     * @return The bindings of the stage queues.
+     */
     @Bean
-    public ConcurrentHashMap<String, ConcurrentHashMap<String, SseEmitter>> sseEmitters(){
-        return new ConcurrentHashMap<>();
+    public Declarables roomExpiryBindings(DirectExchange roomExpiryExchange, Queue roomExpiryFilesQueue, Queue roomExpiryEmittersQueue){
+        String routingKey = roomExpiryConfigProperties.getRoutingKey();
+        return new Declarables(
+                BindingBuilder.bind(roomExpiryFilesQueue).to(roomExpiryExchange).with(routingKey),
+                BindingBuilder.bind(roomExpiryEmittersQueue).to(roomExpiryExchange).with(routingKey)
+        );
     }
 
     /**
-     * A Hash map meant to handle the publishing of room events to the sse to prevent race conditions with the SSE
-     * @return A thread safe hashmap
+     * Declares the room shards, which carry each room's leaves and occupant cleanup in order.
      *
-     * */
+     * @param roomShardRouter The router the shards are named by.
+     * @return The shard exchange, queues and bindings.
+     */
     @Bean
-    public ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap(){
-        return new ConcurrentHashMap<>();
+    public Declarables roomShardDeclarables(RoomShardRouter roomShardRouter){
+        return roomShardRouter.declarables();
     }
-
-
-
-
-}
\ No newline at end of file
+}
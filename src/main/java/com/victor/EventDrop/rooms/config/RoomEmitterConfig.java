@@ -0,0 +1,31 @@
+package com.victor.EventDrop.rooms.config;
+
+import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * This node's SSE emitters and the room events queued for them, whichever transport carries the room events.
+ */
+@Configuration
+public class RoomEmitterConfig {
+
+    @Bean
+    public ConcurrentHashMap<String, ConcurrentHashMap<String, SseEmitter>> sseEmitters(){
+        return new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A Hash map meant to handle the publishing of room events to the sse to prevent race conditions with the SSE
+     * @return A thread safe hashmap
+     *
+     * */
+    @Bean
+    public ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap(){
+        return new ConcurrentHashMap<>();
+    }
+}
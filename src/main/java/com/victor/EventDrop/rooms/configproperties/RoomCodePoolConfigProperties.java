@@ -0,0 +1,18 @@
+package com.victor.EventDrop.rooms.configproperties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("room.code-pool")
+@Component
+@Getter
+@Setter
+public class RoomCodePoolConfigProperties {
+    //How many pre-generated room codes to keep ready
+    private int size = 64;
+    //Refill the pool in the background once it drops below this many codes
+    private int lowWaterMark = 16;
+    private int maxReservationAttempts = 5;
+}
@@ -10,7 +10,21 @@ import org.springframework.stereotype.Component;
 @Getter
 @Setter
 public class RoomExpiryConfigProperties {
+    //The queue the cleanup stages used to compete on. It's unbound on startup and deleted once it's drained
     private String queueName;
     private String exchangeName;
     private String routingKey;
+    //Each stage has its own queue bound to the exchange, so every stage sees every expiry.
+    //Their consumers are set under spring.rabbitmq.containers.listeners.room-expiry-<stage>
+    private Stage files = new Stage();
+    //Retired like the shared queue, occupant cleanup runs on the room's shard in order with its leaves. See room.shards
+    private Stage occupants = new Stage();
+    //A prefix, emitters live on the node their client is connected to so every node gets its own queue
+    private Stage emitters = new Stage();
+
+    @Getter
+    @Setter
+    public static class Stage {
+        private String queueName;
+    }
 }
@@ -13,4 +13,9 @@ public class RoomLeaveConfigProperties {
     private String queueName;
     private String routingKey;
     private String exchangeName;
+    //Drains the queue in batches, grouping leaves by room, instead of one message at a time
+    private boolean batchEnabled = false;
+    private int batchSize = 30;
+    //How long a consumer waits for a batch to fill before handling what it has
+    private long batchReceiveTimeoutInMillis = 200;
 }
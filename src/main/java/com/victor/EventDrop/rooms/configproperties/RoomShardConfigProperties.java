@@ -0,0 +1,25 @@
+package com.victor.EventDrop.rooms.configproperties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("room.shards")
+@Component
+@Getter
+@Setter
+public class RoomShardConfigProperties {
+    private String exchangeName;
+    //Shard queues are named <prefix>.<shard>
+    private String queuePrefix;
+    //Changing it moves some rooms to another shard. Drain the shard queues before restarting with a new count, see RoomShardRouter
+    private int count = 8;
+    //Max events a shard's consumer takes at once, consecutive leaves in it are deleted together
+    private int batchSize = 30;
+    private long batchReceiveTimeoutInMillis = 200;
+    //A failed batch is retried in place so the shard stays in order, then parked
+    private int maxAttempts = 10;
+    private long initialBackoffInMillis = 200;
+    private long maxBackoffInMillis = 5000;
+}
@@ -0,0 +1,17 @@
+package com.victor.EventDrop.rooms.configproperties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("room.state")
+@Component
+@Getter
+@Setter
+public class RoomStateConfigProperties {
+    //A room's view is rebuilt from redis once it's this old, which bounds how stale it gets if an invalidation from another node is missed
+    private long viewTtlInSeconds = 30;
+    //Most rooms with a cached view on a node. Rooms past it are read from redis until views are purged
+    private int maxViews = 10000;
+}
@@ -0,0 +1,12 @@
+package com.victor.EventDrop.rooms.dtos;
+
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStage;
+
+public record RoomExpiryStageMetricsDto(
+        RoomExpiryStage stage,
+        long handled,
+        long lastLatencyInMillis,
+        long averageLatencyInMillis,
+        long maxLatencyInMillis
+) {
+}
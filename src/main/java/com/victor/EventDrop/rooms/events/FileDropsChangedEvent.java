@@ -0,0 +1,14 @@
+package com.victor.EventDrop.rooms.events;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+
+import java.util.List;
+import java.util.UUID;
+
+//Published in-process whenever file drop metadata of a room is saved or removed
+public record FileDropsChangedEvent(
+        String roomCode,
+        List<FileDrop> upserted,
+        List<UUID> removed
+) {
+}
@@ -0,0 +1,8 @@
+package com.victor.EventDrop.rooms.events;
+
+public record OccupancyChangedEvent(
+        String roomCode,
+        //The occupant count after the change. A negative count means the new count is unknown
+        int occupantCount
+) {
+}
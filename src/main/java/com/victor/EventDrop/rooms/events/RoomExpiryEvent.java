@@ -1,6 +1,11 @@
 package com.victor.EventDrop.rooms.events;
 
+/**
+ * @param roomCode The code of the room that expired
+ * @param expiredAt When the room's expiry was handled, in epoch millis. Each cleanup stage measures its latency from it, 0 from older nodes
+ * */
 public record RoomExpiryEvent(
-        String roomCode
+        String roomCode,
+        long expiredAt
 ) {
 }
@@ -0,0 +1,41 @@
+package com.victor.EventDrop.rooms.events;
+
+import com.victor.EventDrop.rabbitmq.EventSchema;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * v1: roomCode, expiredAt
+ * */
+@Component
+public class RoomExpiryEventSchema implements EventSchema<RoomExpiryEvent> {
+
+    @Override
+    public int tag() {
+        return 2;
+    }
+
+    @Override
+    public Class<RoomExpiryEvent> type() {
+        return RoomExpiryEvent.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(RoomExpiryEvent event, DataOutput out) throws IOException {
+        EventSchema.writeString(out, event.roomCode());
+        out.writeLong(event.expiredAt());
+    }
+
+    @Override
+    public RoomExpiryEvent read(int version, DataInput in) throws IOException {
+        return new RoomExpiryEvent(EventSchema.readString(in), in.readLong());
+    }
+}
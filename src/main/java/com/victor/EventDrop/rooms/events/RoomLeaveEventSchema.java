@@ -0,0 +1,42 @@
+package com.victor.EventDrop.rooms.events;
+
+import com.victor.EventDrop.rabbitmq.EventSchema;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * v1: roomCode, occupantName, sessionId
+ * */
+@Component
+public class RoomLeaveEventSchema implements EventSchema<RoomLeaveEvent> {
+
+    @Override
+    public int tag() {
+        return 1;
+    }
+
+    @Override
+    public Class<RoomLeaveEvent> type() {
+        return RoomLeaveEvent.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(RoomLeaveEvent event, DataOutput out) throws IOException {
+        EventSchema.writeString(out, event.roomCode());
+        EventSchema.writeString(out, event.occupantName());
+        EventSchema.writeUuid(out, event.sessionId());
+    }
+
+    @Override
+    public RoomLeaveEvent read(int version, DataInput in) throws IOException {
+        return new RoomLeaveEvent(EventSchema.readString(in), EventSchema.readString(in), EventSchema.readUuid(in));
+    }
+}
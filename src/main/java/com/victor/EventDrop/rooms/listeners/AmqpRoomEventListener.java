@@ -0,0 +1,47 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.filedrops.FileDropEventListener;
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * The RabbitMQ queues outside the room shards, each handed to the consumer the other transports deliver to.
+ * Only created with the amqp transport, so the queues and container factories it names don't have to exist otherwise.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class AmqpRoomEventListener {
+
+    private final OccupantService occupantService;
+    private final FileDropEventListener fileDropEventListener;
+    private final RoomExpiryListener roomExpiryListener;
+
+    //Leaves published to the leave exchange rather than to a room shard
+    @RabbitListener(id = "room-leave", queues = "${room.leave.queue-name}", autoStartup = "#{!${room.leave.batch-enabled:false}}")
+    public void onRoomLeave(RoomLeaveEvent roomLeaveEvent){
+        occupantService.deleteOccupant(roomLeaveEvent);
+    }
+
+    @RabbitListener(id = "room-leave-batch", queues = "${room.leave.queue-name}", containerFactory = "roomLeaveBatchContainerFactory", autoStartup = "${room.leave.batch-enabled:false}")
+    public void onRoomLeaves(List<RoomLeaveEvent> roomLeaveEvents){
+        occupantService.deleteOccupants(roomLeaveEvents);
+    }
+
+    @RabbitListener(id = "room-expiry-files", queues = "${room.expiry.files.queue-name}")
+    public void onRoomExpiryFiles(RoomExpiryEvent roomExpiryEvent){
+        fileDropEventListener.handleRoomExpiry(roomExpiryEvent);
+    }
+
+    @RabbitListener(id = "room-expiry-emitters", queues = "#{roomExpiryEmittersQueue.name}")
+    public void onRoomExpiryEmitters(RoomExpiryEvent roomExpiryEvent){
+        roomExpiryListener.handleEmitterExpiry(roomExpiryEvent);
+    }
+}
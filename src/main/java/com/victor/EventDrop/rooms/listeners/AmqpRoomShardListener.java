@@ -0,0 +1,82 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.rabbitmq.TieredRetryRecoverer;
+import com.victor.EventDrop.rooms.RoomShardRouter;
+import com.victor.EventDrop.transport.EventTypes;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumes the room shards, one container with a single consumer per shard. See {@link RoomShardRouter}.
+ * Each batch is read into room events and handed to {@link RoomShardListener} in the order it was published.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class AmqpRoomShardListener implements RabbitListenerConfigurer {
+
+    private final RoomShardRouter roomShardRouter;
+    private final RoomShardListener roomShardListener;
+    private final MessageConverter messageConverter;
+    private final TieredRetryRecoverer tieredRetryRecoverer;
+    @Qualifier("roomShardContainerFactory")
+    private final SimpleRabbitListenerContainerFactory roomShardContainerFactory;
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int shard = 0; shard < roomShardRouter.shardCount(); shard++){
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("room-shard-" + shard);
+            endpoint.setQueueNames(roomShardRouter.queueName(shard));
+            endpoint.setBatchListener(true);
+            endpoint.setMessageListener((BatchMessageListener) this::onShardBatch);
+            registrar.registerEndpoint(endpoint, roomShardContainerFactory);
+        }
+    }
+
+    /**
+     * Handles a batch of a shard's messages in the order they were published.
+     * Messages that aren't room events are parked on their own rather than failing the batch.
+     *
+     * @param messages The batch drained from the shard
+     * */
+    public void onShardBatch(List<Message> messages){
+        List<Object> events = new ArrayList<>(messages.size());
+        for (Message message : messages){
+            try{
+                events.add(convert(message));
+            }catch (MessageConversionException e){
+                tieredRetryRecoverer.park(message, e);
+            }
+        }
+        roomShardListener.onEvents(events);
+    }
+
+    //JSON events are read as the type their header names, compact ones carry their type in the payload
+    private Object convert(Message message){
+        Class<?> type = EventTypes.resolve(message.getMessageProperties().getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME));
+        if(type != null){
+            message.getMessageProperties().setInferredArgumentType(type);
+        }
+
+        Object event = messageConverter.fromMessage(message);
+        if(event == null || EventTypes.resolve(event.getClass().getName()) == null){
+            throw new MessageConversionException("Unknown room event type: " + (event == null ? null : event.getClass().getName()));
+        }
+        return event;
+    }
+}
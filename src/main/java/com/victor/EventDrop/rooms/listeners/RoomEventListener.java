@@ -39,7 +39,8 @@ public class RoomEventListener
      *
      * @param roomEvent The event containing the room code and notification details.
      */
-    @Order(Ordered.HIGHEST_PRECEDENCE)
+    //Runs right after the room state cache has applied the event
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
     @EventListener
     public void listen(RoomEvent roomEvent){
 
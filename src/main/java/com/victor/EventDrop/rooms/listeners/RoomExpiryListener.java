@@ -1,16 +1,16 @@
 package com.victor.EventDrop.rooms.listeners;
 
+import com.victor.EventDrop.redis.KeyExpiryHandler;
 import com.victor.EventDrop.rooms.*;
-import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomEventType;
 import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
 import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
+import com.victor.EventDrop.transport.EventTopic;
+import com.victor.EventDrop.transport.EventTransport;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisKeyExpiredEvent;
 import org.springframework.stereotype.Service;
 
@@ -26,31 +26,68 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class RoomExpiryListener {
+public class RoomExpiryListener implements KeyExpiryHandler<Room> {
 
     private final RoomService roomService;
-    private final RabbitTemplate rabbitTemplate;
-    private final RoomExpiryConfigProperties roomExpiryConfigProperties;
+    private final EventTransport eventTransport;
     private final RoomEmitterHandler roomEmitterHandler;
     private final ApplicationEventPublisher applicationEventPublisher;
     private final ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap;
+    private final RoomExpiryStageMetrics roomExpiryStageMetrics;
+
+    @Override
+    public String keyspace() {
+        return "room";
+    }
+
+    @Override
+    public Class<Room> type() {
+        return Room.class;
+    }
+
+    @Override
+    public void onKeyExpired(RedisKeyExpiredEvent<Room> expiredEvent) {
+        handleRoomExpiry(expiredEvent);
+    }
 
     /**
      * Handles the expiration of a room key in Redis.
+     * Only called for room keys, see {@link com.victor.EventDrop.redis.KeyExpiryDispatcher}
+     * The room is deleted and the expiry is fanned out to every cleanup stage, this node's emitters included.
+     * The occupants stage gets it through the room's shard instead, see {@link RoomShardRouter}.
      *
      * @param expiredEvent The Redis key expired event containing the expired Room object.
      */
-    @EventListener
     public void handleRoomExpiry(RedisKeyExpiredEvent<Room> expiredEvent){
-        byte[] expiredEventId = expiredEvent.getId();
-
-        String roomCode = new String(expiredEventId, StandardCharsets.UTF_8);
+        String roomCode = new String(expiredEvent.getId(), StandardCharsets.UTF_8);
+        log.info("Handling expired room: {}", roomCode);
 
-        //Since room codes are strings and not UUIDs, return
-        if (roomCode.contains("#") || roomCode.length() > 8){
-            return;
+        try{
+            roomService.deleteByRoomCode(roomCode);
+            RoomExpiryEvent roomExpiryEvent = new RoomExpiryEvent(roomCode, System.currentTimeMillis());
+            // Publishes the expiry to notify the other cleanup stages of the room's expiration.
+            if(!eventTransport.publish(EventTopic.ROOM_EXPIRY, roomCode, roomExpiryEvent)){
+                log.error("Failed to publish the expiry of room: {}. Its files and emitters aren't cleaned up", roomCode);
+            }
+            //Occupant cleanup goes on the room's shard, after any of its leaves
+            if(!eventTransport.publish(EventTopic.ROOM_SHARD, roomCode, roomExpiryEvent)){
+                log.error("Failed to publish the occupant cleanup of expired room: {}. Its occupants are left to expire", roomCode);
+            }
+        } catch (Exception e){
+            log.error("Failed to handle room expiry for room with code: {}. Cause: {}", roomCode, e.getMessage(), e);
         }
 
+    }
+
+    /**
+     * The emitters stage of room expiry. Every node gets its own copy of each expiry, since the room's clients
+     * can be connected to any node. Clients connected to this node are told the room expired and its emitters are dropped.
+     *
+     * @param roomExpiryEvent The event containing the room code of the expired room.
+     */
+    public void handleEmitterExpiry(RoomExpiryEvent roomExpiryEvent){
+        String roomCode = roomExpiryEvent.roomCode();
+
         handleQueueOnRoomExpiry(roomCode);
         //Send the room event to immediately disconnect users
         applicationEventPublisher.publishEvent(
@@ -62,21 +99,8 @@ public class RoomExpiryListener {
                 null
         ));
 
-        log.info("Handling expired room: {}", roomCode);
         roomEmitterHandler.removeRoomEmitters(roomCode);
-
-        try{
-            roomService.deleteByRoomCode(roomCode);
-            // Publishes a message to RabbitMQ to notify other services of the room's expiration.
-            rabbitTemplate.convertAndSend(
-                    roomExpiryConfigProperties.getExchangeName(),
-                    roomExpiryConfigProperties.getRoutingKey(),
-                    new RoomExpiryEvent(roomCode)
-            );
-        } catch (Exception e){
-            log.error("Failed to handle room expiry for room with code: {}. Cause: {}", roomCode, e.getMessage(), e);
-        }
-
+        roomExpiryStageMetrics.record(RoomExpiryStage.EMITTERS, roomExpiryEvent);
     }
 
 
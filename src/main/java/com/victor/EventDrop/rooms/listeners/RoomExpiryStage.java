@@ -0,0 +1,8 @@
+package com.victor.EventDrop.rooms.listeners;
+
+//The cleanups a room expiry fans out to, each on its own queue
+public enum RoomExpiryStage {
+    FILES,
+    OCCUPANTS,
+    EMITTERS
+}
@@ -0,0 +1,70 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.rooms.dtos.RoomExpiryStageMetricsDto;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cleanup latency of each room expiry stage on this node, from the room's expiry to the stage finishing with it.
+ */
+@Component
+@Slf4j
+public class RoomExpiryStageMetrics {
+
+    private final Map<RoomExpiryStage, Latency> latencies = new EnumMap<>(RoomExpiryStage.class);
+
+    public RoomExpiryStageMetrics() {
+        for (RoomExpiryStage stage : RoomExpiryStage.values()){
+            latencies.put(stage, new Latency());
+        }
+    }
+
+    /**
+     * Records a stage finishing its cleanup of an expired room.
+     *
+     * @param stage The stage
+     * @param roomExpiryEvent The expiry it handled. Events from nodes that don't stamp the expiry time aren't timed
+     * */
+    public void record(RoomExpiryStage stage, RoomExpiryEvent roomExpiryEvent){
+        if(roomExpiryEvent.expiredAt() <= 0){
+            return;
+        }
+
+        long latency = Math.max(0, System.currentTimeMillis() - roomExpiryEvent.expiredAt());
+        latencies.get(stage).record(latency);
+        log.debug("Stage: {} cleaned up room: {} {}ms after it expired", stage, roomExpiryEvent.roomCode(), latency);
+    }
+
+    public List<RoomExpiryStageMetricsDto> metrics(){
+        return Arrays.stream(RoomExpiryStage.values())
+                .map(stage -> latencies.get(stage).toDto(stage))
+                .toList();
+    }
+
+    private static class Latency {
+        private final LongAdder handled = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong last = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long latency){
+            handled.increment();
+            total.add(latency);
+            last.set(latency);
+            max.accumulateAndGet(latency, Math::max);
+        }
+
+        RoomExpiryStageMetricsDto toDto(RoomExpiryStage stage){
+            long count = handled.sum();
+            return new RoomExpiryStageMetricsDto(stage, count, last.get(), count == 0 ? 0 : total.sum() / count, max.get());
+        }
+    }
+}
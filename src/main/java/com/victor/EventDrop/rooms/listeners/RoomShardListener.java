@@ -0,0 +1,55 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.RoomShardRouter;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handles the room shards' events, see {@link RoomShardRouter} for the amqp transport's shards.
+ * A shard's batch is handled in order. Consecutive leaves are deleted together, and an expiry only runs once the room's earlier leaves are done.
+ * A failed batch is retried whole, leaves and occupant expiry are safe to repeat.
+ * The amqp transport's containers hand their batches over through {@link AmqpRoomShardListener}, the other transports through an event subscription.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RoomShardListener {
+
+    private final OccupantService occupantService;
+
+    /**
+     * Handles a batch of a shard's events in the order they were published, whichever transport carried them.
+     *
+     * @param events The room leave and expiry events of the batch
+     * */
+    public void onEvents(List<Object> events){
+        List<RoomLeaveEvent> leaves = new ArrayList<>();
+        for (Object event : events){
+            switch (event){
+                case RoomLeaveEvent leave -> leaves.add(leave);
+                case RoomExpiryEvent expiry -> {
+                    //The room's earlier leaves go first
+                    deleteOccupants(leaves);
+                    occupantService.handleRoomExpiry(expiry);
+                }
+                default -> log.warn("Skipping unexpected room event: {}", event.getClass().getSimpleName());
+            }
+        }
+        deleteOccupants(leaves);
+    }
+
+    private void deleteOccupants(List<RoomLeaveEvent> leaves){
+        if(leaves.isEmpty()){
+            return;
+        }
+        occupantService.deleteOccupants(List.copyOf(leaves));
+        leaves.clear();
+    }
+}
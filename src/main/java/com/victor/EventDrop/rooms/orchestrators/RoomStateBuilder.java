@@ -1,9 +1,7 @@
 package com.victor.EventDrop.rooms.orchestrators;
 
-import com.victor.EventDrop.filedrops.FileDropService;
-import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.filedrops.FileDropMapper;
 import com.victor.EventDrop.rooms.Room;
-import com.victor.EventDrop.rooms.RoomService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -16,13 +14,12 @@ import java.util.Optional;
 @Slf4j
 @RequiredArgsConstructor
 public class RoomStateBuilder {
-    private final FileDropService fileDropService;
-    private final OccupantService occupantService;
-    private final RoomService roomService;
+    private final RoomStateCache roomStateCache;
+    private final FileDropMapper fileDropMapper;
 
     /**
      * Builds a data transfer object (DTO) representing the current state of a room.
-     * This method retrieves all relevant information—room metadata, file drops, and occupant count—
+     * This method reads the room's materialized view (room metadata, file drops, and occupant count)
      * to provide a complete snapshot of the room's state.
      *
      * @param roomCode The room code of the room
@@ -31,9 +28,9 @@ public class RoomStateBuilder {
      * */
     public RoomStateDto get(String roomCode, String notification){
         log.info("Getting current room state for room with room code: {}", roomCode);
-        Optional<Room> optionalRoom = roomService.findOptionalRoomByRoomCode(roomCode);
+        Optional<RoomView> optionalView = roomStateCache.get(roomCode);
 
-        if (optionalRoom.isEmpty()){
+        if (optionalView.isEmpty()){
             return new RoomStateDto(
                     "",
                     "",
@@ -45,13 +42,19 @@ public class RoomStateBuilder {
             );
         }
 
-        Room room = optionalRoom.get();
+        RoomView view = optionalView.get();
+        Room room = view.room();
 
         return new RoomStateDto(
                 room.getRoomCode(),
                 room.getRoomName(),
-                fileDropService.getFileDrops(roomCode),
-                occupantService.getOccupantCount(roomCode),
+                view.fileDrops()
+                        .values()
+                        .stream()
+                        .filter(fileDrop -> !fileDrop.isDeleted())
+                        .map(fileDropMapper::toResponseDto)
+                        .toList(),
+                view.occupantCount(),
                 notification,
                 room.getExpiresAt(),
                 false
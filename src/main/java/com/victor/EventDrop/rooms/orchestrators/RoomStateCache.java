@@ -0,0 +1,303 @@
+package com.victor.EventDrop.rooms.orchestrators;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.filedrops.FileDropRepository;
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.Room;
+import com.victor.EventDrop.rooms.RoomService;
+import com.victor.EventDrop.rooms.configproperties.RoomStateConfigProperties;
+import com.victor.EventDrop.rooms.events.FileDropsChangedEvent;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
+import com.victor.EventDrop.rooms.events.RoomEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A per-node materialized view of every active room.
+ * Views are built once from Redis and then kept up to date by room, file and occupancy events,
+ * so room state reads on the broadcast and download paths don't hit Redis.
+ * Every change bumps the room's version. A view whose version doesn't line up with the change being applied
+ * is dropped and rebuilt on the next read.
+ * File and occupancy events only fire on the node that made the change, so that node also publishes the room's code
+ * and every other node drops its view. Views are rebuilt once they're older than the configured TTL either way,
+ * so a node that missed an invalidation, e.g. while its pub/sub connection was down, isn't stale for long.
+ * A room's version is only kept while it has a view or a build in flight, views nobody read again are purged once past their TTL,
+ * and once the configured number of views is cached new rooms are served without caching them.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RoomStateCache implements MessageListener {
+
+    private final RoomService roomService;
+    private final FileDropRepository fileDropRepository;
+    private final OccupantService occupantService;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final RoomStateConfigProperties roomStateConfigProperties;
+
+    //Tells this node's own invalidations apart from the ones of other nodes
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentHashMap<String, RoomView> views = new ConcurrentHashMap<>();
+    //Only written inside views.compute of the same room, so a room's view and version change together
+    private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Optional<RoomView>>> inFlightBuilds = new ConcurrentHashMap<>();
+
+    //Rooms known to have expired, so reads don't go back to redis for them
+    private final ConcurrentHashMap<String, LocalDateTime> expiredRooms = new ConcurrentHashMap<>();
+
+    private static final int MAX_BUILD_ATTEMPTS = 3;
+    private static final long EXPIRED_ROOM_RETENTION_IN_MINUTES = 60;
+    private static final String INVALIDATIONS_CHANNEL = "room-state-invalidations";
+
+    @PostConstruct
+    public void init(){
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATIONS_CHANNEL));
+    }
+
+    /**
+     * Gets the view of a room, building it from redis if this node doesn't have it yet.
+     * Concurrent builds for the same room are collapsed into one.
+     *
+     * @param roomCode The room code of the room
+     * @return The room's view, or an empty optional if the room doesn't exist
+     * */
+    public Optional<RoomView> get(String roomCode){
+        if(expiredRooms.containsKey(roomCode)){
+            return Optional.empty();
+        }
+
+        RoomView view = views.get(roomCode);
+        if(view != null && !isStale(view)){
+            return Optional.of(view);
+        }
+
+        if(view != null){
+            views.computeIfPresent(roomCode, (k, current) -> current == view ? dropped(k) : current);
+        }
+
+        return build(roomCode);
+    }
+
+    /**
+     * Finds a file drop in a room's view.
+     *
+     * @param roomCode The room code of the room the file belongs to
+     * @param fileId The ID of the file drop
+     * @return The file drop, or an empty optional if the room's view doesn't contain it
+     * */
+    public Optional<FileDrop> findFileDrop(String roomCode, UUID fileId){
+        return get(roomCode).map(view -> view.fileDrops().get(fileId));
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener
+    public void onRoomEvent(RoomEvent roomEvent){
+        String roomCode = roomEvent.roomCode();
+        switch (roomEvent.roomEventType()){
+            case ROOM_CREATE -> {
+                expiredRooms.remove(roomCode);
+                invalidate(roomCode);
+            }
+            case ROOM_EXPIRY -> evict(roomCode);
+            default -> {}
+        }
+    }
+
+    @EventListener
+    public void onOccupancyChanged(OccupancyChangedEvent event){
+        publishInvalidation(event.roomCode());
+        if(event.occupantCount() < 0){
+            invalidate(event.roomCode());
+            return;
+        }
+
+        apply(event.roomCode(), (view, version) -> view.withOccupantCount(event.occupantCount(), version));
+    }
+
+    @EventListener
+    public void onFileDropsChanged(FileDropsChangedEvent event){
+        publishInvalidation(event.roomCode());
+        apply(event.roomCode(), (view, version) -> view.withFileDrops(event.upserted(), event.removed(), version));
+    }
+
+    //A room changed on another node. Messages are <node id>:<room code>
+    @Override
+    public void onMessage(Message message, byte[] pattern){
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if(separator < 0 || body.substring(0, separator).equals(nodeId)){
+            return;
+        }
+
+        invalidate(body.substring(separator + 1));
+    }
+
+    //Drops the view of a room. The next read rebuilds it
+    public void invalidate(String roomCode){
+        views.compute(roomCode, (k, current) -> dropped(k));
+    }
+
+    //Drops all state of an expired room
+    private void evict(String roomCode){
+        expiredRooms.put(roomCode, LocalDateTime.now());
+        views.compute(roomCode, (k, current) -> {
+            versions.remove(k);
+            return null;
+        });
+        log.info("Evicted view of expired room: {}", roomCode);
+    }
+
+    //Drops the views past their TTL that weren't read again, and the versions left without a view, e.g. by a build that found no room
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeStaleViews(){
+        views.forEach((roomCode, view) -> {
+            if(isStale(view)){
+                views.computeIfPresent(roomCode, (k, current) -> isStale(current) ? dropped(k) : current);
+            }
+        });
+        versions.keySet().forEach(roomCode -> views.compute(roomCode, (k, current) -> current == null ? dropped(k) : current));
+    }
+
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpiredRooms(){
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(EXPIRED_ROOM_RETENTION_IN_MINUTES);
+        expiredRooms.values().removeIf(expiredAt -> expiredAt.isBefore(cutoff));
+    }
+
+    //Call inside views.compute of the room. Its version only has to outlive the builds in flight, they check it before installing what they read
+    private RoomView dropped(String roomCode){
+        if(inFlightBuilds.containsKey(roomCode)){
+            versions.merge(roomCode, 1L, Long::sum);
+        }else{
+            versions.remove(roomCode);
+        }
+        return null;
+    }
+
+    private boolean isStale(RoomView view){
+        return System.currentTimeMillis() - view.loadedAt() >= TimeUnit.SECONDS.toMillis(roomStateConfigProperties.getViewTtlInSeconds());
+    }
+
+    private void publishInvalidation(String roomCode){
+        byte[] channel = INVALIDATIONS_CHANNEL.getBytes(StandardCharsets.UTF_8);
+        byte[] message = (nodeId + ":" + roomCode).getBytes(StandardCharsets.UTF_8);
+        try{
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+        }catch (Exception e){
+            //Other nodes catch up once their view's TTL runs out
+            log.warn("Failed to publish invalidation of room: {}", roomCode, e);
+        }
+    }
+
+    //Applies a change to a room's view, or drops the view if it missed a change
+    private void apply(String roomCode, ViewMutation mutation){
+        views.compute(roomCode, (k, current) -> {
+            if(current == null){
+                return dropped(k);
+            }
+
+            long version = versions.merge(k, 1L, Long::sum);
+            if(current.version() != version - 1){
+                log.info("View of room {} is at version {} but expected {}. Invalidating...", k, current.version(), version - 1);
+                return dropped(k);
+            }
+
+            return mutation.apply(current, version);
+        });
+    }
+
+    private Optional<RoomView> build(String roomCode){
+        CompletableFuture<Optional<RoomView>> ours = new CompletableFuture<>();
+        CompletableFuture<Optional<RoomView>> inFlight = inFlightBuilds.putIfAbsent(roomCode, ours);
+
+        if(inFlight != null){
+            try{
+                return inFlight.join();
+            }catch (CompletionException e){
+                if(e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+
+        try{
+            Optional<RoomView> view = load(roomCode);
+            ours.complete(view);
+            return view;
+        }catch (RuntimeException e){
+            ours.completeExceptionally(e);
+            throw e;
+        }finally {
+            inFlightBuilds.remove(roomCode, ours);
+        }
+    }
+
+    private Optional<RoomView> load(String roomCode){
+        RoomView view = null;
+
+        for(int attempt = 1; attempt <= MAX_BUILD_ATTEMPTS; attempt++){
+            long version = versions.getOrDefault(roomCode, 0L);
+            long loadedAt = System.currentTimeMillis();
+            Optional<Room> optionalRoom = roomService.findOptionalRoomByRoomCode(roomCode);
+
+            if(optionalRoom.isEmpty()){
+                return Optional.empty();
+            }
+
+            Map<UUID, FileDrop> fileDrops = new LinkedHashMap<>();
+            fileDropRepository.findByRoomCode(roomCode).forEach(fileDrop -> fileDrops.put(fileDrop.getFileId(), fileDrop));
+            int occupantCount = occupantService.getOccupantCount(roomCode);
+
+            RoomView built = new RoomView(optionalRoom.get(), Collections.unmodifiableMap(fileDrops), occupantCount, version, loadedAt);
+            view = built;
+
+            //Full, the room is served from redis until views are purged
+            if(views.size() >= roomStateConfigProperties.getMaxViews() && !views.containsKey(roomCode)){
+                return Optional.of(built);
+            }
+
+            RoomView installed = views.compute(roomCode, (k, current) ->
+                    versions.getOrDefault(k, 0L) == version && !expiredRooms.containsKey(k) ? built : current);
+
+            if(installed == built){
+                log.info("Built view of room: {} at version: {}", roomCode, version);
+                return Optional.of(built);
+            }
+
+            log.info("Room {} changed while its view was being built. Rebuilding...", roomCode);
+        }
+
+        //Serve the latest snapshot without caching it, the next read will try again
+        return Optional.of(view);
+    }
+
+    @FunctionalInterface
+    private interface ViewMutation {
+        RoomView apply(RoomView view, long version);
+    }
+}
@@ -0,0 +1,35 @@
+package com.victor.EventDrop.rooms.orchestrators;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.rooms.Room;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable, per-node snapshot of a room's state.
+ * Every mutation produces a new view with the next version. Mutations keep the time the view was loaded from redis,
+ * so its age counts from the last time it was known to match redis.
+ */
+public record RoomView(
+        Room room,
+        Map<UUID, FileDrop> fileDrops,
+        int occupantCount,
+        long version,
+        long loadedAt
+) {
+
+    public RoomView withFileDrops(Collection<FileDrop> upserted, Collection<UUID> removed, long version){
+        Map<UUID, FileDrop> updated = new LinkedHashMap<>(fileDrops);
+        removed.forEach(updated::remove);
+        upserted.forEach(fileDrop -> updated.put(fileDrop.getFileId(), fileDrop));
+        return new RoomView(room, Collections.unmodifiableMap(updated), occupantCount, version, loadedAt);
+    }
+
+    public RoomView withOccupantCount(int occupantCount, long version){
+        return new RoomView(room, fileDrops, occupantCount, version, loadedAt);
+    }
+}
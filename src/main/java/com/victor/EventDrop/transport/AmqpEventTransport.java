@@ -0,0 +1,50 @@
+package com.victor.EventDrop.transport;
+
+import com.victor.EventDrop.rabbitmq.ConfirmedEventPublisher;
+import com.victor.EventDrop.rooms.RoomShardRouter;
+import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries events over RabbitMQ through {@link ConfirmedEventPublisher}.
+ * Room shard events go to the room's shard queue, expiries to the expiry exchange's stage queues.
+ * The publisher sends one event per routing key at a time, so a shard's events reach its queue in the order they were published.
+ * They're consumed by {@link com.victor.EventDrop.rooms.listeners.AmqpRoomEventListener} and {@link com.victor.EventDrop.rooms.listeners.AmqpRoomShardListener},
+ * which like every RabbitMQ bean only exist in this mode, rather than through {@link EventSubscription}s.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class AmqpEventTransport implements EventTransport {
+
+    private final ConfirmedEventPublisher confirmedEventPublisher;
+    private final RoomShardRouter roomShardRouter;
+    private final RoomExpiryConfigProperties roomExpiryConfigProperties;
+
+    @Override
+    public boolean publish(EventTopic topic, String key, Object event) {
+        return switch (topic){
+            case ROOM_SHARD -> confirmedEventPublisher.publish(roomShardRouter.exchangeName(), roomShardRouter.routingKeyOf(key), event);
+            case ROOM_EXPIRY -> confirmedEventPublisher.publish(roomExpiryConfigProperties.getExchangeName(), roomExpiryConfigProperties.getRoutingKey(), event);
+        };
+    }
+
+    /**
+     * Publishes an event like {@link #publish}, for callers that have to know once the broker has it.
+     *
+     * @param topic The topic
+     * @param key The ordering key, a room code
+     * @param event The event
+     * @return Completes with true once the broker confirmed the event, false if it was dropped
+     * */
+    public CompletableFuture<Boolean> publishConfirmed(EventTopic topic, String key, Object event) {
+        return switch (topic){
+            case ROOM_SHARD -> confirmedEventPublisher.publishConfirmed(roomShardRouter.exchangeName(), roomShardRouter.routingKeyOf(key), event);
+            case ROOM_EXPIRY -> confirmedEventPublisher.publishConfirmed(roomExpiryConfigProperties.getExchangeName(), roomExpiryConfigProperties.getRoutingKey(), event);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.victor.EventDrop.transport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A group of subscribers to a topic. The memory and redis streams transports hand it its topic's events a batch at a time,
+ * each partition's in order. The amqp transport has its own listeners, see {@link AmqpEventTransport}.
+ *
+ * @param topic The topic
+ * @param group Subscribers sharing a group split the topic's events between them
+ * @param broadcast If every node's subscriber gets every event, for node local state like SSE emitters
+ * @param handler Handles a batch in order
+ */
+@Slf4j
+public record EventSubscription(EventTopic topic, String group, boolean broadcast, Consumer<List<Object>> handler) {
+
+    //A subscription whose handler takes one event of a type at a time, other events are skipped
+    public static <T> EventSubscription each(EventTopic topic, String group, boolean broadcast, Class<T> type, Consumer<T> handler){
+        return new EventSubscription(topic, group, broadcast, events -> events.forEach(event -> {
+            if(type.isInstance(event)){
+                handler.accept(type.cast(event));
+            }
+        }));
+    }
+
+    /**
+     * Hands a batch to the handler, retrying it in place with a backoff so later events don't overtake it.
+     *
+     * @param events The batch
+     * @param eventTransportConfigProperties The attempts and backoff
+     * @return False if the batch still failed after the last attempt
+     * */
+    public boolean deliver(List<Object> events, EventTransportConfigProperties eventTransportConfigProperties){
+        long backoff = eventTransportConfigProperties.getInitialBackoffInMillis();
+        for (int attempt = 1; ; attempt++){
+            try{
+                handler.accept(events);
+                return true;
+            }catch (RuntimeException e){
+                if(attempt >= eventTransportConfigProperties.getMaxAttempts()){
+                    log.error("Subscriber group: {} failed a batch of {} events after {} attempts", group, events.size(), attempt, e);
+                    return false;
+                }
+                log.warn("Subscriber group: {} failed a batch of {} events, retrying in {}ms. Cause: {}", group, events.size(), backoff, e.getMessage());
+            }
+
+            try{
+                Thread.sleep(backoff);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(backoff * 2, eventTransportConfigProperties.getMaxBackoffInMillis());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.victor.EventDrop.transport;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum EventTopic {
+    //A room's leaves and occupant cleanup, keyed by room code and handled in order per room
+    ROOM_SHARD("room-shard"),
+    //Expired rooms, every cleanup stage gets each one
+    ROOM_EXPIRY("room-expiry");
+
+    private final String key;
+}
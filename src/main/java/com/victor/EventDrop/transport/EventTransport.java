@@ -0,0 +1,25 @@
+package com.victor.EventDrop.transport;
+
+/**
+ * Carries room events from their publishers to the {@link EventSubscription}s of their topic.
+ * Picked by event-transport.mode. Events with the same key are handled in the order they were published,
+ * each subscription's group handles an event once, or once per node if the subscription is a broadcast.
+ * Delivery is at least once, subscribers must be safe to repeat.
+ */
+public interface EventTransport {
+
+    /**
+     * Publishes an event without waiting for it to be handled.
+     *
+     * @param topic The topic
+     * @param key The ordering key, a room code
+     * @param event The event
+     * @return False if the event was dropped. Nothing retries it, callers should at least log it
+     * */
+    boolean publish(EventTopic topic, String key, Object event);
+
+    //The same for every transport and node, so a key always lands on the same partition
+    static int partitionOf(String key, int partitions){
+        return Math.floorMod(key.hashCode(), partitions);
+    }
+}
@@ -0,0 +1,37 @@
+package com.victor.EventDrop.transport;
+
+import com.victor.EventDrop.filedrops.FileDropEventListener;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryListener;
+import com.victor.EventDrop.rooms.listeners.RoomShardListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The subscriptions the memory and redis streams transports deliver to, the same consumers the amqp listeners call.
+ * The consumers are looked up on the first event, since the publishers they depend on need a transport first.
+ */
+@Configuration
+public class EventTransportConfig {
+
+    //Leaves and occupant expiry, in order per room
+    @Bean
+    public EventSubscription roomShardSubscription(ObjectProvider<RoomShardListener> roomShardListener){
+        return new EventSubscription(EventTopic.ROOM_SHARD, "room-shard", false,
+                events -> roomShardListener.getObject().onEvents(events));
+    }
+
+    @Bean
+    public EventSubscription roomExpiryFilesSubscription(ObjectProvider<FileDropEventListener> fileDropEventListener){
+        return EventSubscription.each(EventTopic.ROOM_EXPIRY, "room-expiry-files", false, RoomExpiryEvent.class,
+                event -> fileDropEventListener.getObject().handleRoomExpiry(event));
+    }
+
+    //Every node has its own room emitters
+    @Bean
+    public EventSubscription roomExpiryEmittersSubscription(ObjectProvider<RoomExpiryListener> roomExpiryListener){
+        return EventSubscription.each(EventTopic.ROOM_EXPIRY, "room-expiry-emitters", true, RoomExpiryEvent.class,
+                event -> roomExpiryListener.getObject().handleEmitterExpiry(event));
+    }
+}
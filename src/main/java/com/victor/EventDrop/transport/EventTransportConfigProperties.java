@@ -0,0 +1,60 @@
+package com.victor.EventDrop.transport;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("event-transport")
+public class EventTransportConfigProperties {
+    //Switching drops the events still in flight on the old transport
+    private Mode mode = Mode.AMQP;
+    //Events with the same key land on the same partition and are handled in order. Memory and redis streams only,
+    //amqp has room.shards
+    private int partitions = 8;
+    //Most events handed to a subscriber at once
+    private int batchSize = 30;
+    //A failed batch is retried in place so its partition stays in order, then dropped or parked
+    private int maxAttempts = 10;
+    private long initialBackoffInMillis = 200;
+    private long maxBackoffInMillis = 5000;
+    private Memory memory = new Memory();
+    private Redis redis = new Redis();
+
+    public enum Mode {
+        //RabbitMQ exchanges and queues, see room.shards and room.expiry
+        AMQP,
+        //Ring buffers on this node. For single node deployments, events in them are lost with the node
+        MEMORY,
+        //Streams with consumer groups on the app's redis, each partition consumed by the node holding its lease
+        REDIS_STREAMS
+    }
+
+    public boolean isAmqp(){
+        return mode == Mode.AMQP;
+    }
+
+    @Getter
+    @Setter
+    public static class Memory {
+        //Slots in each subscriber's partition, a full one drops new events
+        private int ringBufferSize = 8192;
+    }
+
+    @Getter
+    @Setter
+    public static class Redis {
+        private String keyPrefix = "events:";
+        //Streams are trimmed to about this many entries, handled or not
+        private long maxLength = 100_000;
+        //How long a read waits on an idle stream
+        private long blockInMillis = 1000;
+        private long leaseTtlInMillis = 10000;
+        private long rebalanceIntervalInMillis = 2000;
+        //How often entries left unacknowledged, e.g. ones that couldn't be parked, are read again
+        private long reclaimIntervalInMillis = 5000;
+    }
+}
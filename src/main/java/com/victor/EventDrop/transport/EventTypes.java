@@ -0,0 +1,26 @@
+package com.victor.EventDrop.transport;
+
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+
+import java.util.Map;
+
+/**
+ * The events the transports carry, by the type name sent with them.
+ * Only these are ever read back, a payload can't name a class of its own.
+ */
+public final class EventTypes {
+
+    private static final Map<String, Class<?>> TYPES = Map.of(
+            RoomLeaveEvent.class.getName(), RoomLeaveEvent.class,
+            RoomExpiryEvent.class.getName(), RoomExpiryEvent.class
+    );
+
+    private EventTypes() {
+    }
+
+    //Null if the type isn't a room event
+    public static Class<?> resolve(Object typeName){
+        return typeName == null ? null : TYPES.get(typeName.toString());
+    }
+}
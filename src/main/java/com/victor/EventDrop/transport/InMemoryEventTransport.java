@@ -0,0 +1,112 @@
+package com.victor.EventDrop.transport;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries events between threads of this node, for single node deployments that don't need a broker.
+ * Every subscription has a bounded ring buffer per partition, drained in order by its own virtual thread.
+ * Publishing never blocks, once a buffer is full its new events are dropped and counted.
+ * Events still buffered when the node stops are lost.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "memory")
+public class InMemoryEventTransport implements EventTransport {
+
+    private final EventTransportConfigProperties eventTransportConfigProperties;
+    //Topic -> the partitions of each of its subscriptions
+    private final Map<EventTopic, List<Partition[]>> subscribers = new EnumMap<>(EventTopic.class);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    @Getter
+    private final AtomicLong dropped = new AtomicLong();
+
+    public InMemoryEventTransport(EventTransportConfigProperties eventTransportConfigProperties, List<EventSubscription> eventSubscriptions) {
+        this.eventTransportConfigProperties = eventTransportConfigProperties;
+        for (EventSubscription subscription : eventSubscriptions){
+            Partition[] partitions = new Partition[eventTransportConfigProperties.getPartitions()];
+            for (int i = 0; i < partitions.length; i++){
+                partitions[i] = new Partition(subscription, i, new ArrayBlockingQueue<>(eventTransportConfigProperties.getMemory().getRingBufferSize()));
+            }
+            subscribers.computeIfAbsent(subscription.topic(), k -> new ArrayList<>()).add(partitions);
+        }
+    }
+
+    @PostConstruct
+    public void start(){
+        running = true;
+        subscribers.values().forEach(subscriptions -> subscriptions.forEach(partitions -> {
+            for (Partition partition : partitions){
+                workers.add(Thread.ofVirtual()
+                        .name("events-" + partition.subscription().group() + "-" + partition.index())
+                        .start(() -> drain(partition)));
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void stop(){
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    @Override
+    public boolean publish(EventTopic topic, String key, Object event) {
+        int partition = EventTransport.partitionOf(key, eventTransportConfigProperties.getPartitions());
+        boolean published = true;
+        for (Partition[] partitions : subscribers.getOrDefault(topic, List.of())){
+            if(!partitions[partition].buffer().offer(event)){
+                dropped.incrementAndGet();
+                log.error("Ring buffer of subscriber group: {} is full, dropping event for key: {}", partitions[partition].subscription().group(), key);
+                published = false;
+            }
+        }
+        return published;
+    }
+
+    private void drain(Partition partition){
+        int batchSize = eventTransportConfigProperties.getBatchSize();
+        while (running){
+            List<Object> batch = new ArrayList<>(batchSize);
+            try{
+                Object first = partition.buffer().poll(1, TimeUnit.SECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            partition.buffer().drainTo(batch, batchSize - 1);
+            if(!partition.subscription().deliver(batch, eventTransportConfigProperties)){
+                //Nowhere to park them on this node
+                dropped.addAndGet(batch.size());
+            }
+        }
+
+        if(!partition.buffer().isEmpty()){
+            log.warn("Subscriber group: {} stopped with {} events left in partition: {}",
+                    partition.subscription().group(), partition.buffer().size(), partition.index());
+        }
+    }
+
+    private record Partition(EventSubscription subscription, int index, BlockingQueue<Object> buffer) {
+    }
+}
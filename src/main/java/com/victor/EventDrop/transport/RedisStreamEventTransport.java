@@ -0,0 +1,412 @@
+package com.victor.EventDrop.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.victor.EventDrop.redis.RedisClusterConfigProperties;
+import com.victor.EventDrop.redis.RedisLease;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Carries events over redis streams, one stream per topic partition, read through a consumer group per subscription.
+ * Each stream is hash tagged on its own, so a cluster spreads the partitions over its masters. A node's partitions are then read
+ * one slot at a time, splitting the blocking wait between them, while on a single node they're read together.
+ * Partitions are leased to nodes like the expiry partitions, see {@link com.victor.EventDrop.redis.ExpiryScheduler}, and only the lease holder
+ * reads a partition, so a key's events are handled in order across the nodes. Broadcast subscriptions get a group per node and read every partition.
+ * A node's groups are destroyed as it stops, or by whichever node sees its heartbeat run out if it never got to.
+ * Every lease holder reads under the same consumer name, so entries a dead holder read but never acknowledged are picked up first by the next one.
+ * Each subscription reads on its own virtual thread and connection, blocking while its partitions are idle.
+ * A batch that still fails after its attempts is parked in its stream's parking lot. An entry is only acknowledged once it's handled or parked,
+ * one that couldn't be parked either stays pending and is read again every reclaim interval, by whichever node holds its partition then.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "event-transport.mode", havingValue = "redis-streams")
+public class RedisStreamEventTransport implements EventTransport {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final EventTransportConfigProperties eventTransportConfigProperties;
+    private final List<EventSubscription> eventSubscriptions;
+    private final RedisLease redisLease;
+    private final RedisClusterConfigProperties redisClusterConfigProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    //The partitions this node holds the lease of, read for every subscription that isn't a broadcast
+    private final Set<Integer> partitions = ConcurrentHashMap.newKeySet();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    @Getter
+    private final AtomicLong parked = new AtomicLong();
+
+    private static final byte[] TYPE_FIELD = bytes("type");
+    private static final byte[] PAYLOAD_FIELD = bytes("payload");
+    private static final String CONSUMER = "lease-holder";
+
+    @PostConstruct
+    public void start(){
+        running = true;
+        //Registered before any group exists, so the groups are cleaned up even if this node dies before its first rebalance
+        heartbeat();
+        for (EventSubscription subscription : eventSubscriptions){
+            createGroups(subscription);
+            workers.add(Thread.ofVirtual().name("events-" + subscription.group()).start(() -> consume(subscription)));
+        }
+    }
+
+    //Per node groups go with the node, leases are handed over without waiting for them to run out
+    @PreDestroy
+    public void stop(){
+        running = false;
+        workers.forEach(Thread::interrupt);
+        try{
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.zSetCommands().zRem(nodesKey(), bytes(nodeId));
+                destroyBroadcastGroups(connection, nodeId);
+                return null;
+            });
+            partitions.forEach(this::releaseLease);
+        }catch (Exception e){
+            log.warn("Failed to clean up this node's stream groups and leases. Cause: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean publish(EventTopic topic, String key, Object event) {
+        byte[] stream = streamKey(topic, EventTransport.partitionOf(key, eventTransportConfigProperties.getPartitions()));
+        try{
+            Map<byte[], byte[]> fields = new LinkedHashMap<>();
+            fields.put(TYPE_FIELD, bytes(event.getClass().getName()));
+            fields.put(PAYLOAD_FIELD, objectMapper.writeValueAsBytes(event));
+            redisTemplate.execute((RedisCallback<RecordId>) connection -> add(connection, stream, fields));
+            return true;
+        }catch (Exception e){
+            log.error("Failed to publish event for key: {} to topic: {}", key, topic, e);
+            return false;
+        }
+    }
+
+    /**
+     * Renews this node's leases, then takes or gives up partitions until it holds its share.
+     * */
+    @Scheduled(fixedDelayString = "${event-transport.redis.rebalance-interval-in-millis:2000}")
+    public void rebalance(){
+        try{
+            int share = Math.ceilDiv(eventTransportConfigProperties.getPartitions(), heartbeat());
+            partitions.removeIf(partition -> !acquireLease(partition));
+
+            for (Integer partition : new TreeSet<>(partitions).descendingSet()){
+                if(partitions.size() <= share) break;
+                releaseLease(partition);
+                partitions.remove(partition);
+            }
+
+            for (int partition = 0; partition < eventTransportConfigProperties.getPartitions() && partitions.size() < share; partition++){
+                if(!partitions.contains(partition) && acquireLease(partition)){
+                    partitions.add(partition);
+                }
+            }
+        }catch (Exception e){
+            log.error("Failed to rebalance event stream partitions", e);
+        }
+    }
+
+    //The same connection for the subscription's lifetime, blocking reads would otherwise open a new one each time
+    private void consume(EventSubscription subscription){
+        while (running){
+            try{
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    ReadState state = new ReadState();
+                    while (running){
+                        poll(connection, subscription, state);
+                    }
+                    return null;
+                });
+            }catch (Exception e){
+                if(!running){
+                    break;
+                }
+                log.error("Subscriber group: {} failed to read its streams", subscription.group(), e);
+                sleep(eventTransportConfigProperties.getRedis().getBlockInMillis());
+            }
+        }
+    }
+
+    //Pending entries are looked for when the partitions change and every reclaim interval, new entries otherwise
+    private void poll(RedisConnection connection, EventSubscription subscription, ReadState state){
+        List<Integer> owned = subscription.broadcast() ? allPartitions() : new TreeSet<>(partitions).stream().toList();
+        if(owned.isEmpty()){
+            state.owned = owned;
+            sleep(eventTransportConfigProperties.getRedis().getBlockInMillis());
+            return;
+        }
+
+        //Entries read by an earlier holder of these partitions, or by this one, but never acknowledged go first
+        long now = System.currentTimeMillis();
+        boolean recovering = !owned.equals(state.owned) || now >= state.reclaimAt;
+        List<ByteRecord> records = recovering ? read(connection, subscription, owned, ReadOffset.from("0"), false) : List.of();
+        recovering = !records.isEmpty();
+        if(records.isEmpty()){
+            records = read(connection, subscription, owned, ReadOffset.lastConsumed(), true);
+        }
+
+        //Stream -> its records in order
+        Map<String, List<ByteRecord>> byStream = new LinkedHashMap<>();
+        records.forEach(record -> byStream.computeIfAbsent(new String(record.getStream(), StandardCharsets.UTF_8), k -> new ArrayList<>()).add(record));
+        boolean acknowledged = true;
+        for (Map.Entry<String, List<ByteRecord>> entry : byStream.entrySet()){
+            acknowledged &= handle(connection, subscription, bytes(entry.getKey()), entry.getValue());
+        }
+
+        //There may be more pending entries than one read returns. Ones still left pending wait for the next reclaim instead of spinning
+        if(recovering && acknowledged){
+            state.owned = null;
+            return;
+        }
+        state.owned = owned;
+        if(recovering || now >= state.reclaimAt){
+            state.reclaimAt = now + eventTransportConfigProperties.getRedis().getReclaimIntervalInMillis();
+        }
+    }
+
+    //A read can only cover the streams of one slot on a cluster. Once a slot returns entries the rest aren't waited on
+    @SuppressWarnings("unchecked")
+    private List<ByteRecord> read(RedisConnection connection, EventSubscription subscription, List<Integer> owned, ReadOffset offset, boolean block){
+        Map<Integer, List<StreamOffset<byte[]>>> bySlot = new LinkedHashMap<>();
+        for (int partition : owned){
+            byte[] stream = streamKey(subscription.topic(), partition);
+            int slot = redisClusterConfigProperties.isEnabled() ? ClusterSlotHashUtil.calculateSlot(stream) : 0;
+            bySlot.computeIfAbsent(slot, k -> new ArrayList<>()).add(StreamOffset.create(stream, offset));
+        }
+
+        long blockInMillis = Math.max(1, eventTransportConfigProperties.getRedis().getBlockInMillis() / bySlot.size());
+        List<ByteRecord> records = new ArrayList<>();
+        for (List<StreamOffset<byte[]>> offsets : bySlot.values()){
+            StreamReadOptions options = StreamReadOptions.empty().count(eventTransportConfigProperties.getBatchSize());
+            if(block && records.isEmpty()){
+                options = options.block(Duration.ofMillis(blockInMillis));
+            }
+
+            List<ByteRecord> read = connection.streamCommands().xReadGroup(Consumer.from(groupOf(subscription), CONSUMER), options, offsets.toArray(StreamOffset[]::new));
+            if(read != null){
+                records.addAll(read);
+            }
+        }
+        return records;
+    }
+
+    //Acknowledges the records that were handled or parked. True if that's all of them
+    private boolean handle(RedisConnection connection, EventSubscription subscription, byte[] stream, List<ByteRecord> records){
+        List<Object> events = new ArrayList<>(records.size());
+        List<ByteRecord> readable = new ArrayList<>(records.size());
+        List<ByteRecord> done = new ArrayList<>(records.size());
+        for (ByteRecord record : records){
+            Object event = decode(record);
+            if(event != null){
+                events.add(event);
+                readable.add(record);
+            }else if(record.getValue().isEmpty() || park(connection, stream, record)){
+                //Trimmed entries come back empty, anything else unreadable is parked on its own
+                done.add(record);
+            }
+        }
+
+        if(!events.isEmpty()){
+            if(subscription.deliver(events, eventTransportConfigProperties)){
+                done.addAll(readable);
+            }else{
+                readable.stream().filter(record -> park(connection, stream, record)).forEach(done::add);
+            }
+        }
+
+        if(!done.isEmpty()){
+            connection.streamCommands().xAck(stream, groupOf(subscription), done.stream().map(ByteRecord::getId).toArray(RecordId[]::new));
+        }
+        return done.size() == records.size();
+    }
+
+    private Object decode(ByteRecord record){
+        byte[] type = null, payload = null;
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()){
+            if(Arrays.equals(field.getKey(), TYPE_FIELD)) type = field.getValue();
+            else if(Arrays.equals(field.getKey(), PAYLOAD_FIELD)) payload = field.getValue();
+        }
+
+        Class<?> eventType = type == null ? null : EventTypes.resolve(new String(type, StandardCharsets.UTF_8));
+        if(eventType == null || payload == null){
+            return null;
+        }
+
+        try{
+            return objectMapper.readValue(payload, eventType);
+        }catch (Exception e){
+            log.warn("Failed to read entry: {} of type: {}. Cause: {}", record.getId(), eventType.getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    //False if the parking lot couldn't be written, the entry is left pending then
+    private boolean park(RedisConnection connection, byte[] stream, ByteRecord record){
+        String streamKey = new String(stream, StandardCharsets.UTF_8);
+        try{
+            add(connection, bytes(streamKey + ":parking-lot"), record.getValue());
+        }catch (Exception e){
+            log.error("Failed to park entry: {} of stream: {}, leaving it pending", record.getId(), streamKey, e);
+            return false;
+        }
+
+        parked.incrementAndGet();
+        log.error("Parked entry: {} of stream: {}", record.getId(), streamKey);
+        return true;
+    }
+
+    private RecordId add(RedisConnection connection, byte[] stream, Map<byte[], byte[]> fields){
+        return connection.streamCommands().xAdd(StreamRecords.rawBytes(fields).withStreamKey(stream),
+                RedisStreamCommands.XAddOptions.maxlen(eventTransportConfigProperties.getRedis().getMaxLength()).approximateTrimming(true));
+    }
+
+    //New groups start at the end of their streams, entries from before a group existed aren't replayed
+    private void createGroups(EventSubscription subscription){
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            for (int partition : allPartitions()){
+                try{
+                    connection.streamCommands().xGroupCreate(streamKey(subscription.topic(), partition), groupOf(subscription), ReadOffset.latest(), true);
+                }catch (Exception e){
+                    String cause = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                    if(cause == null || !cause.contains("BUSYGROUP")){
+                        throw e;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    //Nodes whose heartbeat ran out are dropped along with their broadcast groups, by the node whose ZREM removed them
+    private int heartbeat(){
+        long now = System.currentTimeMillis();
+        Long liveNodes = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            byte[] nodesKey = nodesKey();
+            connection.zSetCommands().zAdd(nodesKey, now, bytes(nodeId));
+            Set<byte[]> deadNodes = connection.zSetCommands().zRangeByScore(nodesKey, Double.NEGATIVE_INFINITY, now - eventTransportConfigProperties.getRedis().getLeaseTtlInMillis());
+            if(deadNodes != null){
+                for (byte[] deadNode : deadNodes){
+                    Long removed = connection.zSetCommands().zRem(nodesKey, deadNode);
+                    if(removed != null && removed > 0){
+                        log.info("Event stream node: {} stopped heartbeating, destroying its groups", new String(deadNode, StandardCharsets.UTF_8));
+                        destroyBroadcastGroups(connection, new String(deadNode, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return connection.zSetCommands().zCard(nodesKey);
+        });
+        return liveNodes == null || liveNodes < 1 ? 1 : liveNodes.intValue();
+    }
+
+    private void destroyBroadcastGroups(RedisConnection connection, String node){
+        for (EventSubscription subscription : eventSubscriptions){
+            if(!subscription.broadcast()){
+                continue;
+            }
+            for (int partition : allPartitions()){
+                try{
+                    connection.streamCommands().xGroupDestroy(streamKey(subscription.topic(), partition), groupOf(subscription, node));
+                }catch (Exception e){
+                    log.debug("Failed to destroy group: {} of partition: {}. Cause: {}", groupOf(subscription, node), partition, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private byte[] nodesKey(){
+        return bytes(eventTransportConfigProperties.getRedis().getKeyPrefix() + "nodes");
+    }
+
+    private boolean acquireLease(int partition){
+        String leaseKey = leaseKeyOf(partition);
+        Duration leaseTtl = Duration.ofMillis(eventTransportConfigProperties.getRedis().getLeaseTtlInMillis());
+        return redisLease.acquire(leaseKey, nodeId, leaseTtl);
+    }
+
+    private void releaseLease(int partition){
+        redisLease.release(leaseKeyOf(partition), nodeId);
+    }
+
+    private String leaseKeyOf(int partition){
+        return eventTransportConfigProperties.getRedis().getKeyPrefix() + "lease:" + partition;
+    }
+
+    //Hash tagged by partition, so a topic's partitions don't all land on one master. Its parking lot shares the tag
+    private byte[] streamKey(EventTopic topic, int partition){
+        return bytes(eventTransportConfigProperties.getRedis().getKeyPrefix() + "{" + topic.getKey() + ":" + partition + "}");
+    }
+
+    private String groupOf(EventSubscription subscription){
+        return groupOf(subscription, nodeId);
+    }
+
+    private String groupOf(EventSubscription subscription, String node){
+        return subscription.broadcast() ? subscription.group() + ":" + node : subscription.group();
+    }
+
+    private List<Integer> allPartitions(){
+        return IntStream.range(0, eventTransportConfigProperties.getPartitions()).boxed().toList();
+    }
+
+    //The partitions this node currently holds
+    public Set<Integer> getPartitions(){
+        return Set.copyOf(partitions);
+    }
+
+    //The partitions a subscription's reader last read, and when it next looks for entries left pending
+    private static final class ReadState {
+        private List<Integer> owned;
+        private long reclaimAt;
+    }
+
+    private void sleep(long millis){
+        try{
+            Thread.sleep(millis);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,19 @@
+-- Takes a lease, or renews it if the caller already holds it, in one atomic step.
+-- Read and renewed as separate commands, the lease could run out in between and be taken by another node,
+-- whose lease the renewal would then extend. It only touches the lease key, so it stays single slot on a redis cluster.
+--
+-- KEYS[1] lease key
+-- ARGV[1] the caller's owner ID
+-- ARGV[2] lease TTL in millis
+--
+-- Returns 1 if the caller holds the lease now, 0 if another owner does
+
+if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+    return 1
+end
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+
+return 0
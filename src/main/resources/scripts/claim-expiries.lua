@@ -0,0 +1,17 @@
+-- Claims the due keys of one expiry partition in one atomic step, so no key is handed to two nodes.
+-- Claimed keys stay in the set with their score pushed out to the claim timeout. A node that dies before
+-- acknowledging them doesn't lose them, they come due again and are claimed by whichever node holds the lease then.
+-- It only touches the partition's own key, so it stays single slot on a redis cluster.
+--
+-- KEYS[1] expiry partition sorted set (key -> deadline millis)
+-- ARGV[1] now in millis, ARGV[2] max keys to claim, ARGV[3] claim timeout in millis
+--
+-- Returns {key, deadline, key, deadline...}, earliest deadline first
+
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, tonumber(ARGV[2]))
+local retryAt = tonumber(ARGV[1]) + tonumber(ARGV[3])
+for i = 1, #due, 2 do
+    redis.call('ZADD', KEYS[1], retryAt, due[i])
+end
+
+return due
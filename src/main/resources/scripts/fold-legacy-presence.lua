@@ -0,0 +1,22 @@
+-- Folds a room's presence set from before room keys were hash tagged, room-presence:CODE, into room-presence:{CODE}.
+-- Nodes that aren't upgraded yet keep writing the old key, so it runs ahead of every prune, not just once.
+-- Each member keeps its latest last seen time and the set keeps the longer of the two TTLs.
+-- The two keys are in different slots, so it only runs on a single node. A cluster never had the old keys.
+--
+-- KEYS[1] presence set without the hash tag, KEYS[2] hash tagged presence set
+--
+-- Returns the amount of members folded in
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+local ttl = math.max(redis.call('PTTL', KEYS[1]), redis.call('PTTL', KEYS[2]))
+local folded = redis.call('ZCARD', KEYS[1])
+redis.call('ZUNIONSTORE', KEYS[2], 2, KEYS[2], KEYS[1], 'AGGREGATE', 'MAX')
+redis.call('DEL', KEYS[1])
+if ttl > 0 then
+    redis.call('PEXPIRE', KEYS[2], ttl)
+end
+
+return folded
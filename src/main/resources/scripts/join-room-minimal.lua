@@ -0,0 +1,53 @@
+-- join-room.lua for the minimal schema, where a room's keys all carry its hash tag:
+-- room:{CODE}, room-presence:{CODE} and occupant:{CODE}:ID. They share a cluster slot,
+-- so the whole join stays atomic on a redis cluster too.
+-- The session's pointer to its room and the occupant's expiry deadline live in other slots and are written after it.
+--
+-- KEYS[1] room hash, KEYS[2] room presence sorted set (session id -> last seen millis), KEYS[3] occupant hash
+-- ARGV[1] session id, ARGV[2] max room size, ARGV[3] occupant ttl in seconds, ARGV[4] presence window in seconds,
+-- ARGV[5..n] occupant hash field/value pairs
+--
+-- Returns {0} if the room doesn't exist, {-1} if it is full,
+-- otherwise {occupant count, room hash field/value pairs...}
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {0}
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+-- Members last seen before the cutoff are stale. They don't count, the presence pruner removes them
+local cutoff = now - tonumber(ARGV[4]) * 1000
+
+local maxRoomSize = tonumber(ARGV[2])
+local lastSeen = redis.call('ZSCORE', KEYS[2], ARGV[1])
+local isPresent = lastSeen and tonumber(lastSeen) >= cutoff
+if not isPresent and redis.call('ZCOUNT', KEYS[2], cutoff, '+inf') >= maxRoomSize then
+    return {-1}
+end
+
+redis.call('ZADD', KEYS[2], now, ARGV[1])
+-- The presence set lives exactly as long as the room
+local roomTtl = redis.call('PTTL', KEYS[1])
+if roomTtl > 0 then
+    redis.call('PEXPIRE', KEYS[2], roomTtl)
+end
+
+local fields = {}
+for i = 5, #ARGV do
+    fields[#fields + 1] = ARGV[i]
+end
+
+local ttl = tonumber(ARGV[3])
+redis.call('HSET', KEYS[3], unpack(fields))
+if ttl > 0 then
+    redis.call('EXPIRE', KEYS[3], ttl)
+end
+
+local result = { redis.call('ZCOUNT', KEYS[2], cutoff, '+inf') }
+local room = redis.call('HGETALL', KEYS[1])
+for i = 1, #room do
+    result[#result + 1] = room[i]
+end
+
+return result
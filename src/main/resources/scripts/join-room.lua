@@ -0,0 +1,68 @@
+-- Joins an occupant to a room in one atomic step.
+-- Checks that the room exists, enforces the room's capacity on its presence set,
+-- and writes the occupant with the same key layout Spring Data's repositories use.
+-- The minimal schema joins through join-room-minimal.lua instead.
+-- Every key it touches is passed in KEYS, none is built from another key or an argument.
+--
+-- KEYS[1] room hash, KEYS[2] room presence sorted set (session id -> last seen millis), KEYS[3] occupant hash,
+-- KEYS[4] occupant phantom hash, KEYS[5] occupant keyspace set, KEYS[6] occupant index set,
+-- KEYS[7] expiry deadline set of the occupant's partition, KEYS[8..n] occupant secondary index keys
+-- ARGV[1] session id, ARGV[2] max room size, ARGV[3] occupant ttl in seconds,
+-- ARGV[4] extra phantom ttl in seconds, ARGV[5] presence window in seconds,
+-- ARGV[6] occupant key to schedule the expiry of, empty unless expiries are scheduled, ARGV[7..n] occupant hash field/value pairs
+--
+-- Returns {0} if the room doesn't exist, {-1} if it is full,
+-- otherwise {occupant count, room hash field/value pairs...}
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {0}
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+-- Members last seen before the cutoff are stale. They don't count, the presence pruner removes them
+local cutoff = now - tonumber(ARGV[5]) * 1000
+
+local maxRoomSize = tonumber(ARGV[2])
+local lastSeen = redis.call('ZSCORE', KEYS[2], ARGV[1])
+local isPresent = lastSeen and tonumber(lastSeen) >= cutoff
+if not isPresent and redis.call('ZCOUNT', KEYS[2], cutoff, '+inf') >= maxRoomSize then
+    return {-1}
+end
+
+redis.call('ZADD', KEYS[2], now, ARGV[1])
+-- The presence set lives exactly as long as the room
+local roomTtl = redis.call('PTTL', KEYS[1])
+if roomTtl > 0 then
+    redis.call('PEXPIRE', KEYS[2], roomTtl)
+end
+
+local fields = {}
+for i = 7, #ARGV do
+    fields[#fields + 1] = ARGV[i]
+end
+
+local ttl = tonumber(ARGV[3])
+redis.call('HSET', KEYS[3], unpack(fields))
+redis.call('SADD', KEYS[5], ARGV[1])
+if ttl > 0 then
+    redis.call('EXPIRE', KEYS[3], ttl)
+    redis.call('HSET', KEYS[4], unpack(fields))
+    redis.call('EXPIRE', KEYS[4], ttl + tonumber(ARGV[4]))
+    if ARGV[6] ~= '' then
+        redis.call('ZADD', KEYS[7], now + ttl * 1000, ARGV[6])
+    end
+end
+
+for i = 8, #KEYS do
+    redis.call('SADD', KEYS[i], ARGV[1])
+    redis.call('SADD', KEYS[6], KEYS[i])
+end
+
+local result = { redis.call('ZCOUNT', KEYS[2], cutoff, '+inf') }
+local room = redis.call('HGETALL', KEYS[1])
+for i = 1, #room do
+    result[#result + 1] = room[i]
+end
+
+return result
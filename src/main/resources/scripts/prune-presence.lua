@@ -0,0 +1,24 @@
+-- Prunes the stale members of one room's presence set in one atomic step.
+-- It only touches the room's own key, so it stays single slot on a redis cluster.
+--
+-- KEYS[1] room presence sorted set
+-- ARGV[1] cutoff in millis. Members last seen before it are stale
+--
+-- Returns {-1} if the presence set is gone (the room expired), otherwise {remaining count, stale session ids...}
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {-1}
+end
+
+local cutoff = '(' .. ARGV[1]
+local stale = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', cutoff)
+if #stale > 0 then
+    redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', cutoff)
+end
+
+local result = { redis.call('ZCARD', KEYS[1]) }
+for i = 1, #stale do
+    result[#result + 1] = stale[i]
+end
+
+return result
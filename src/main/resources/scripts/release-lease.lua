@@ -0,0 +1,14 @@
+-- Gives up a lease only if the caller still holds it, in one atomic step.
+-- Checked and deleted as separate commands, the lease could run out in between and be taken by another node,
+-- whose lease the delete would then drop. It only touches the lease key, so it stays single slot on a redis cluster.
+--
+-- KEYS[1] lease key
+-- ARGV[1] the caller's owner ID
+--
+-- Returns 1 if the lease was released, 0 if the caller didn't hold it
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+
+return 0
@@ -0,0 +1,93 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRepository;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.redis.KeyspaceEventSubscriber;
+import com.victor.EventDrop.rooms.RoomRepository;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionFilterTest {
+
+    @Mock
+    private OccupantRepository occupantRepository;
+    @Mock
+    private RoomRepository roomRepository;
+    @Mock
+    private SessionTokenService sessionTokenService;
+    @Mock
+    private SessionRevocationList sessionRevocationList;
+    @Mock
+    private SessionTtlRefresher sessionTtlRefresher;
+    @Mock
+    private KeyspaceEventSubscriber keyspaceEventSubscriber;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+
+    private SessionNearCache sessionNearCache;
+    private SessionFilter sessionFilter;
+    private Occupant occupant;
+
+    @BeforeEach
+    void setUp(){
+        when(sessionConfigProperties.getNearCacheTtlInSeconds()).thenReturn(30L);
+        lenient().when(sessionConfigProperties.getNearCacheMaxSize()).thenReturn(100);
+        sessionNearCache = new SessionNearCache(keyspaceEventSubscriber, sessionConfigProperties, sessionTtlRefresher);
+        sessionFilter = new SessionFilter(occupantRepository, roomRepository, sessionNearCache, sessionTokenService, sessionRevocationList, sessionTtlRefresher);
+        occupant = Occupant.builder()
+                .sessionId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .occupantName("username")
+                .occupantRole(OccupantRole.OCCUPANT)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown(){
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_shouldStopAuthenticatingSession_onceItsOccupantKeyIsDeleted() throws Exception {
+        //Arrange
+        String sessionId = occupant.getSessionId().toString();
+        when(occupantRepository.findBySessionId(sessionId)).thenReturn(occupant, (Occupant) null);
+        when(roomRepository.existsByRoomCode("1234ABCD")).thenReturn(true);
+        sessionFilter.doFilter(request(sessionId), new MockHttpServletResponse(), new MockFilterChain());
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        SecurityContextHolder.clearContext();
+
+        //Act
+        sessionNearCache.onMessage(new DefaultMessage("__keyevent@0__:del".getBytes(StandardCharsets.UTF_8),
+                ("occupant:" + sessionId).getBytes(StandardCharsets.UTF_8)), null);
+        sessionFilter.doFilter(request(sessionId), new MockHttpServletResponse(), new MockFilterChain());
+
+        //Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(occupantRepository, times(2)).findBySessionId(sessionId);
+    }
+
+    private MockHttpServletRequest request(String sessionId){
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rooms/leave");
+        request.setCookies(new Cookie("SESSION_ID", sessionId));
+        return request;
+    }
+}
@@ -0,0 +1,122 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.redis.KeyspaceEventSubscriber;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionNearCacheTest {
+
+    @Mock
+    private KeyspaceEventSubscriber keyspaceEventSubscriber;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+    @Mock
+    private SessionTtlRefresher sessionTtlRefresher;
+
+    @InjectMocks
+    private SessionNearCache sessionNearCache;
+
+    private Occupant occupant;
+
+    @BeforeEach
+    void setUp(){
+        lenient().when(sessionConfigProperties.getNearCacheTtlInSeconds()).thenReturn(30L);
+        lenient().when(sessionConfigProperties.getNearCacheMaxSize()).thenReturn(100);
+        occupant = Occupant.builder()
+                .sessionId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .occupantName("username")
+                .occupantRole(OccupantRole.OCCUPANT)
+                .build();
+    }
+
+    @Test
+    void get_shouldReturnCachedSession(){
+        //Act
+        sessionNearCache.put(occupant, sessionNearCache.stamp());
+
+        //Assert
+        assertEquals(occupant, sessionNearCache.get(occupant.getSessionId().toString()).orElseThrow());
+    }
+
+    @Test
+    void put_shouldNotCache_whenInvalidatedDuringLoad(){
+        //Arrange
+        long stamp = sessionNearCache.stamp();
+        sessionNearCache.invalidate(occupant.getSessionId().toString());
+
+        //Act
+        sessionNearCache.put(occupant, stamp);
+
+        //Assert
+        assertTrue(sessionNearCache.get(occupant.getSessionId().toString()).isEmpty());
+    }
+
+    @Test
+    void onMessage_shouldDropSession_whenOccupantKeyIsDeleted(){
+        //Arrange
+        sessionNearCache.put(occupant, sessionNearCache.stamp());
+
+        //Act
+        sessionNearCache.onMessage(message("occupant:" + occupant.getSessionId()), null);
+
+        //Assert
+        assertTrue(sessionNearCache.get(occupant.getSessionId().toString()).isEmpty());
+        verify(sessionTtlRefresher, times(1)).forget(occupant.getSessionId().toString());
+    }
+
+    @Test
+    void onMessage_shouldDropEverySessionOfRoom_whenRoomKeyExpires(){
+        //Arrange
+        sessionNearCache.put(occupant, sessionNearCache.stamp());
+
+        //Act
+        sessionNearCache.onMessage(message("room:1234ABCD"), null);
+
+        //Assert
+        assertTrue(sessionNearCache.get(occupant.getSessionId().toString()).isEmpty());
+    }
+
+    @Test
+    void onMessage_shouldDropSession_whenRoomTaggedOccupantKeyExpires(){
+        //Arrange
+        sessionNearCache.put(occupant, sessionNearCache.stamp());
+
+        //Act
+        sessionNearCache.onMessage(message("occupant:{1234ABCD}:" + occupant.getSessionId()), null);
+
+        //Assert
+        assertTrue(sessionNearCache.get(occupant.getSessionId().toString()).isEmpty());
+        verify(sessionTtlRefresher, times(1)).forget(occupant.getSessionId().toString());
+    }
+
+    @Test
+    void onMessage_shouldIgnoreIndexKeys(){
+        //Arrange
+        sessionNearCache.put(occupant, sessionNearCache.stamp());
+
+        //Act
+        sessionNearCache.onMessage(message("occupant:roomCode:1234ABCD"), null);
+
+        //Assert
+        assertTrue(sessionNearCache.get(occupant.getSessionId().toString()).isPresent());
+    }
+
+    private DefaultMessage message(String key){
+        return new DefaultMessage("__keyevent@0__:del".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.OccupantRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionRevocationListTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+    @Mock
+    private ZSetOperations<String, Object> zSetOperations;
+
+    @InjectMocks
+    private SessionRevocationList sessionRevocationList;
+
+    private SessionToken token;
+
+    @BeforeEach
+    void setUp(){
+        when(sessionConfigProperties.isTokenModeEnabled()).thenReturn(true);
+        when(sessionConfigProperties.getRevocationFalsePositiveRate()).thenReturn(0.01);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.rangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(Set.of());
+        sessionRevocationList.init();
+
+        token = new SessionToken(UUID.randomUUID(), "1234ABCD", OccupantRole.OCCUPANT, "username", Long.MAX_VALUE);
+    }
+
+    @Test
+    void isRevoked_shouldNotTouchRedis_forUnrevokedToken(){
+        //Act && Assert
+        assertFalse(sessionRevocationList.isRevoked(token));
+        verify(zSetOperations, never()).score(anyString(), any());
+    }
+
+    @Test
+    void isRevoked_shouldRejectRevokedSession(){
+        //Arrange
+        sessionRevocationList.revokeSession(token.sessionId().toString());
+        when(zSetOperations.score("session-revocations", token.sessionId().toString())).thenReturn(1.0);
+
+        //Act && Assert
+        assertTrue(sessionRevocationList.isRevoked(token));
+        verify(zSetOperations, times(1)).add(eq("session-revocations"), eq(token.sessionId().toString()), anyDouble());
+    }
+
+    @Test
+    void isRevoked_shouldRejectEverySessionOfRevokedRoom(){
+        //Arrange
+        sessionRevocationList.revokeRoom("1234ABCD");
+        when(zSetOperations.score("session-revocations", "room:1234ABCD")).thenReturn(1.0);
+
+        //Act && Assert
+        assertTrue(sessionRevocationList.isRevoked(token));
+    }
+
+    @Test
+    void bloomFilter_shouldNeverReturnFalseNegatives(){
+        //Arrange
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++){
+            filter.put("session-" + i);
+        }
+
+        //Act && Assert
+        for (int i = 0; i < 1000; i++){
+            assertTrue(filter.mightContain("session-" + i));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionTokenServiceTest {
+
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+
+    @InjectMocks
+    private SessionTokenService sessionTokenService;
+
+    private Occupant occupant;
+
+    @BeforeEach
+    void setUp(){
+        when(sessionConfigProperties.isTokenModeEnabled()).thenReturn(true);
+        lenient().when(sessionConfigProperties.getTokenSecret()).thenReturn("a-test-secret-that-is-long-enough-1234");
+        sessionTokenService.init();
+
+        occupant = Occupant.builder()
+                .sessionId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .occupantName("user|name")
+                .occupantRole(OccupantRole.OWNER)
+                .build();
+    }
+
+    @Test
+    void verify_shouldReturnTokenContents_forIssuedToken(){
+        //Act
+        String token = sessionTokenService.issue(occupant, LocalDateTime.now().plusMinutes(10));
+        SessionToken sessionToken = sessionTokenService.verify(token).orElseThrow();
+
+        //Assert
+        assertTrue(sessionTokenService.isToken(token));
+        assertEquals(occupant, sessionToken.toOccupant());
+    }
+
+    @Test
+    void verify_shouldRejectTamperedToken(){
+        //Arrange
+        String token = sessionTokenService.issue(occupant, LocalDateTime.now().plusMinutes(10));
+        char first = token.charAt(0);
+        String tampered = (first == 'A' ? 'B' : 'A') + token.substring(1);
+
+        //Act && Assert
+        assertTrue(sessionTokenService.verify(tampered).isEmpty());
+    }
+
+    @Test
+    void verify_shouldRejectTokenPastRoomExpiry(){
+        //Arrange
+        String token = sessionTokenService.issue(occupant, LocalDateTime.now().minusSeconds(1));
+
+        //Act && Assert
+        assertTrue(sessionTokenService.verify(token).isEmpty());
+    }
+
+    @Test
+    void issue_shouldReturnPlainSessionId_whenTokenModeIsDisabled(){
+        //Arrange
+        when(sessionConfigProperties.isTokenModeEnabled()).thenReturn(false);
+
+        //Act
+        String cookieValue = sessionTokenService.issue(occupant, LocalDateTime.now().plusMinutes(10));
+
+        //Assert
+        assertEquals(occupant.getSessionId().toString(), cookieValue);
+    }
+}
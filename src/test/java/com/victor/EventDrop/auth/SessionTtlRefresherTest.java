@@ -0,0 +1,107 @@
+package com.victor.EventDrop.auth;
+
+import com.victor.EventDrop.redis.ExpiryDeadlines;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionTtlRefresherTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+    @Mock
+    private ExpiryDeadlines expiryDeadlines;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+
+    @InjectMocks
+    private SessionTtlRefresher sessionTtlRefresher;
+
+    @BeforeEach
+    void setUp(){
+        lenient().when(sessionConfigProperties.getTtlInSeconds()).thenReturn(300L);
+        lenient().when(sessionConfigProperties.getRefreshThresholdInSeconds()).thenReturn(240L);
+    }
+
+    @Test
+    void flush_shouldBatchRefreshesOfManySessionsIntoOnePipeline(){
+        //Arrange
+        for (int i = 0; i < 50; i++){
+            sessionTtlRefresher.touch("session-" + i, "1234ABCD");
+        }
+
+        //Act
+        sessionTtlRefresher.flush();
+
+        //Assert
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void touch_shouldNotRefreshAgain_whileTtlIsAboveThreshold(){
+        //Arrange
+        sessionTtlRefresher.touch("session", "1234ABCD");
+        sessionTtlRefresher.flush();
+
+        //Act
+        for (int i = 0; i < 100; i++){
+            sessionTtlRefresher.touch("session", "1234ABCD");
+        }
+        sessionTtlRefresher.flush();
+
+        //Assert
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void touch_shouldRefresh_onceTtlDropsBelowThreshold(){
+        //Arrange
+        when(sessionConfigProperties.getRefreshThresholdInSeconds()).thenReturn(301L);
+        sessionTtlRefresher.touch("session", "1234ABCD");
+        sessionTtlRefresher.flush();
+
+        //Act
+        sessionTtlRefresher.touch("session", "1234ABCD");
+        sessionTtlRefresher.flush();
+
+        //Assert
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void flush_shouldRetryBatch_whenPipelineFails(){
+        //Arrange
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenThrow(new RuntimeException("redis down"))
+                .thenReturn(List.of());
+        sessionTtlRefresher.touch("session", "1234ABCD");
+
+        //Act
+        sessionTtlRefresher.flush();
+        sessionTtlRefresher.flush();
+
+        //Assert
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void flush_shouldDoNothing_whenNoSessionIsDue(){
+        sessionTtlRefresher.flush();
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,119 @@
+package com.victor.EventDrop.benchmarks;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires a storm of joins at a single room through the join script and reports latency percentiles.
+ * Not a unit test, run it by hand against a disposable redis:
+ * <pre>
+ *     REDIS_URL=redis://localhost:6379 java ... com.victor.EventDrop.benchmarks.JoinStormBenchmark [joinsPerSecond] [seconds] [maxRoomSize]
+ * </pre>
+ * Defaults to 500 joins/sec for 20 seconds into a room of 30. Half the joined sessions leave again right away,
+ * so the room keeps churning at its cap, and the run fails if the room ever ends up over its max size.
+ */
+public class JoinStormBenchmark {
+
+    private static final String ROOM_CODE = "BENCH001";
+
+    public static void main(String[] args) throws Exception {
+        int joinsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int maxRoomSize = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String redisUrl = System.getenv().getOrDefault("REDIS_URL", "redis://localhost:6379");
+
+        String script = new ClassPathResource("scripts/join-room.lua").getContentAsString(StandardCharsets.UTF_8);
+        RedisClient client = RedisClient.create(redisUrl);
+
+        try (StatefulRedisConnection<byte[], byte[]> connection = client.connect(ByteArrayCodec.INSTANCE)) {
+            RedisAsyncCommands<byte[], byte[]> redis = connection.async();
+            String sha = redis.scriptLoad(script.getBytes(StandardCharsets.UTF_8)).get();
+
+            String roomKey = "room:" + ROOM_CODE;
+            String presenceKey = "room-presence:{" + ROOM_CODE + "}";
+            redis.del(bytes(roomKey), bytes(presenceKey)).get();
+            redis.hset(bytes(roomKey), bytes("roomCode"), bytes(ROOM_CODE)).get();
+            redis.expire(bytes(roomKey), seconds + 60L).get();
+
+            int total = joinsPerSecond * seconds;
+            long[] latencies = new long[total];
+            List<CompletableFuture<Void>> inFlight = new ArrayList<>(total);
+            long[] outcomes = new long[3]; //joined, full, missing
+
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / joinsPerSecond;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < total; i++) {
+                //Open loop: each join is sent on schedule no matter how slow earlier ones were
+                long sendAt = start + i * intervalNanos;
+                long wait = sendAt - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+                int index = i;
+                String sessionId = UUID.randomUUID().toString();
+                byte[][] keys = {
+                        bytes(roomKey), bytes(presenceKey), bytes("occupant:" + sessionId), bytes("occupant:" + sessionId + ":phantom"),
+                        bytes("occupant"), bytes("occupant:" + sessionId + ":idx"), bytes("occupant:roomCode:" + ROOM_CODE)
+                };
+                byte[][] values = {
+                        bytes(sessionId), bytes(String.valueOf(maxRoomSize)), bytes("300"), bytes("300"), bytes("300"),
+                        bytes("sessionId"), bytes(sessionId), bytes("roomCode"), bytes(ROOM_CODE), bytes("occupantName"), bytes("bench")
+                };
+
+                long sentAt = System.nanoTime();
+                CompletableFuture<Void> join = redis.<List<Object>>evalsha(sha, ScriptOutputType.MULTI, keys, values)
+                        .toCompletableFuture()
+                        .thenAccept(result -> {
+                            latencies[index] = System.nanoTime() - sentAt;
+                            long count = (Long) result.get(0);
+                            synchronized (outcomes) {
+                                outcomes[count > 0 ? 0 : count < 0 ? 1 : 2]++;
+                            }
+                            //Leave again so the room keeps churning
+                            if (count > 0 && index % 2 == 0) {
+                                redis.zrem(bytes(presenceKey), bytes(sessionId));
+                            }
+                        });
+                inFlight.add(join);
+            }
+
+            CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).get(1, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - start;
+
+            long occupants = redis.zcard(bytes(presenceKey)).get();
+            Arrays.sort(latencies);
+            System.out.printf("joins: %d in %.1fs (%.0f/s)%n", total, elapsed / 1e9, total / (elapsed / 1e9));
+            System.out.printf("joined: %d, rejected as full: %d, missing room: %d%n", outcomes[0], outcomes[1], outcomes[2]);
+            System.out.printf("latency p50: %.2fms, p99: %.2fms, p99.9: %.2fms, max: %.2fms%n",
+                    percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 99.9), latencies[total - 1] / 1e6);
+            System.out.printf("final occupancy: %d of %d%n", occupants, maxRoomSize);
+
+            if (occupants > maxRoomSize) {
+                throw new IllegalStateException("Room overshot its max size: " + occupants + " > " + maxRoomSize);
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
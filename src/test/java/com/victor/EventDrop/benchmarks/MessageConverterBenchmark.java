@@ -0,0 +1,109 @@
+package com.victor.EventDrop.benchmarks;
+
+import com.rabbitmq.client.AMQP;
+import com.victor.EventDrop.rabbitmq.CompactMessageConverter;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomExpiryEventSchema;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEventSchema;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compares the JSON and compact message converters on the room events: messages per second written and read,
+ * and bytes on the wire, counting the content header frame with its properties and headers as well as the body.
+ * Not a unit test, run it by hand:
+ * <pre>
+ *     java ... com.victor.EventDrop.benchmarks.MessageConverterBenchmark [messages] [rounds]
+ * </pre>
+ * Defaults to 500000 messages per round, best of 5 rounds after a warmup round. Messages get the same properties
+ * {@link com.victor.EventDrop.rabbitmq.ConfirmedEventPublisher} stamps, and are read the way the listeners read them.
+ */
+public class MessageConverterBenchmark {
+
+    //Frame type, channel and size, then the frame end byte
+    private static final int FRAME_OVERHEAD = 8;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        json.setCreateMessageIds(true);
+        CompactMessageConverter compact = new CompactMessageConverter(json, List.of(new RoomLeaveEventSchema(), new RoomExpiryEventSchema()), true);
+        compact.setCreateMessageIds(true);
+
+        List<Object> events = List.of(
+                new RoomLeaveEvent("1234ABCD", "victor", UUID.randomUUID()),
+                new RoomExpiryEvent("1234ABCD", System.currentTimeMillis())
+        );
+
+        for (Object event : events) {
+            for (var converter : List.of(new Named("json", json), new Named("compact", compact))) {
+                run(converter, event, messages, rounds);
+            }
+        }
+    }
+
+    private static void run(Named converter, Object event, int messages, int rounds) throws Exception {
+        Message sample = write(converter.converter(), event);
+        if (!event.equals(read(converter.converter(), sample, event.getClass()))) {
+            throw new IllegalStateException(converter.name() + " didn't read back " + event);
+        }
+
+        double bestWrite = 0, bestRead = 0;
+        for (int round = 0; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                sample = write(converter.converter(), event);
+            }
+            double writes = messages / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                read(converter.converter(), sample, event.getClass());
+            }
+            double reads = messages / ((System.nanoTime() - start) / 1e9);
+
+            //Round 0 is the warmup
+            if (round > 0) {
+                bestWrite = Math.max(bestWrite, writes);
+                bestRead = Math.max(bestRead, reads);
+            }
+        }
+
+        int body = sample.getBody().length;
+        int header = headerFrameSize(sample);
+        System.out.printf("%s %s: %.0f writes/s, %.0f reads/s, body: %dB, header frame: %dB, on the wire: %dB%n",
+                event.getClass().getSimpleName(), converter.name(), bestWrite, bestRead, body, header, header + body + FRAME_OVERHEAD);
+    }
+
+    private static Message write(MessageConverter converter, Object event) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setMessageId(UUID.randomUUID().toString());
+        messageProperties.setTimestamp(new Date());
+        return converter.toMessage(event, messageProperties);
+    }
+
+    private static Object read(MessageConverter converter, Message message, Class<?> type) {
+        //As the listener adapters do from the method's parameter
+        message.getMessageProperties().setInferredArgumentType(type);
+        return converter.fromMessage(message);
+    }
+
+    //The content header frame the client sends ahead of the body, with the message's properties and headers
+    private static int headerFrameSize(Message message) throws Exception {
+        AMQP.BasicProperties properties = new DefaultMessagePropertiesConverter().fromMessageProperties(message.getMessageProperties(), "UTF-8");
+        return properties.toFrame(1, message.getBody().length).size();
+    }
+
+    private record Named(String name, MessageConverter converter) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.victor.EventDrop.benchmarks;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.filedrops.MinimalFileDropRepository;
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.redis.ExpiryDeadlines;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.redis.RedisExpiryConfigProperties;
+import com.victor.EventDrop.redis.RedisSchemaConfigProperties;
+import com.victor.EventDrop.rooms.Room;
+import io.lettuce.core.RedisURI;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.convert.IndexResolver;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
+import org.springframework.data.redis.core.convert.MappingConfiguration;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.PathIndexResolver;
+import org.springframework.data.redis.core.index.IndexConfiguration;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.util.TypeInformation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Reports how many bytes a room takes in redis under the indexed and the minimal schema.
+ * Writes the same rooms, each with its occupants and files, in both layouts and sums MEMORY USAGE over every key.
+ * Not a unit test, run it by hand against a disposable redis. It flushes the selected database:
+ * <pre>
+ *     REDIS_URL=redis://localhost:6379/15 java ... com.victor.EventDrop.benchmarks.RedisSchemaMemoryBenchmark [rooms] [occupantsPerRoom] [filesPerRoom]
+ * </pre>
+ * Defaults to 200 rooms of 10 occupants and 5 files.
+ */
+public class RedisSchemaMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int occupantsPerRoom = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int filesPerRoom = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        RedisURI uri = RedisURI.create(System.getenv().getOrDefault("REDIS_URL", "redis://localhost:6379/15"));
+
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(uri.getHost(), uri.getPort());
+        configuration.setDatabase(uri.getDatabase());
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            System.out.printf("%d rooms, %d occupants and %d files each%n", rooms, occupantsPerRoom, filesPerRoom);
+            System.out.printf("%-8s %8s %14s %14s%n", "schema", "keys", "total bytes", "bytes/room");
+
+            long indexed = report("indexed", connection, RedisSchemaConfigProperties.Mode.INDEXED, rooms, occupantsPerRoom, filesPerRoom);
+            long minimal = report("minimal", connection, RedisSchemaConfigProperties.Mode.MINIMAL, rooms, occupantsPerRoom, filesPerRoom);
+            System.out.printf("minimal uses %.1f%% of the indexed schema's memory%n", 100.0 * minimal / indexed);
+
+            connection.serverCommands().flushDb();
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static long report(String name, RedisConnection connection, RedisSchemaConfigProperties.Mode mode,
+                               int rooms, int occupantsPerRoom, int filesPerRoom){
+        connection.serverCommands().flushDb();
+        RedisEntityWriter writer = writer(mode);
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int r = 0; r < rooms; r++){
+            String roomCode = String.format("R%07d", r);
+            connection.openPipeline();
+            writer.insert(connection, Room.builder()
+                    .roomCode(roomCode).roomName("Room " + r).createdAt(now).expiresAt(now.plusHours(2)).ttl(7200).build());
+
+            byte[] presenceKey = bytes(Occupant.presenceKey(roomCode));
+            for (int o = 0; o < occupantsPerRoom; o++){
+                UUID sessionId = UUID.randomUUID();
+                writer.insert(connection, Occupant.builder()
+                        .roomCode(roomCode).sessionId(sessionId).occupantName("occupant" + o)
+                        .occupantRole(o == 0 ? OccupantRole.OWNER : OccupantRole.OCCUPANT).joinedAt(now).build());
+                //Both schemas keep the presence set
+                connection.zSetCommands().zAdd(presenceKey, System.currentTimeMillis(), bytes(sessionId.toString()));
+            }
+
+            for (int f = 0; f < filesPerRoom; f++){
+                UUID fileId = UUID.randomUUID();
+                writer.insert(connection, FileDrop.builder()
+                        .fileId(fileId).originalFileName("file" + f + ".pdf").fileName(roomCode + "/file" + f + ".pdf")
+                        .roomCode(roomCode).fileSize(1_000_000L + f)
+                        .blobUrl("https://eventdrop112.blob.core.windows.net/eventdrop-uploads/" + roomCode + "/file" + f + ".pdf")
+                        .uploadedAt(now).build());
+                if(mode == RedisSchemaConfigProperties.Mode.MINIMAL){
+                    connection.setCommands().sAdd(bytes(MinimalFileDropRepository.roomFilesKey(roomCode)), bytes(fileId.toString()));
+                }
+            }
+            connection.closePipeline();
+        }
+
+        long keys = 0, total = 0;
+        try (Cursor<byte[]> cursor = connection.keyCommands().scan(ScanOptions.scanOptions().count(1000).build())) {
+            while (cursor.hasNext()){
+                byte[] key = cursor.next();
+                Object usage = connection.execute("MEMORY", bytes("USAGE"), key, bytes("SAMPLES"), bytes("0"));
+                keys++;
+                total += usage instanceof Long bytes ? bytes : 0;
+            }
+        }
+
+        System.out.printf("%-8s %8d %14d %14d%n", name, keys, total, total / rooms);
+        return total;
+    }
+
+    //The same converter setup the app uses in each mode: Spring Data's index resolver, or none at all
+    private static RedisEntityWriter writer(RedisSchemaConfigProperties.Mode mode){
+        RedisMappingContext mappingContext = new RedisMappingContext(
+                new MappingConfiguration(new IndexConfiguration(), new KeyspaceConfiguration())
+        );
+        IndexResolver indexResolver = mode == RedisSchemaConfigProperties.Mode.INDEXED
+                ? new PathIndexResolver(mappingContext)
+                : new IndexResolver() {
+                    @Override
+                    public Set<IndexedData> resolveIndexesFor(TypeInformation<?> typeInformation, Object value) {
+                        return Set.of();
+                    }
+
+                    @Override
+                    public Set<IndexedData> resolveIndexesFor(String keyspace, String path, TypeInformation<?> typeInformation, Object value) {
+                        return Set.of();
+                    }
+                };
+
+        MappingRedisConverter converter = new MappingRedisConverter(mappingContext, indexResolver, null);
+        converter.afterPropertiesSet();
+
+        RedisSchemaConfigProperties properties = new RedisSchemaConfigProperties();
+        properties.setMode(mode);
+        //Expiries aren't scheduled, the schemas are compared without deadline sets
+        return new RedisEntityWriter(converter, properties, new ExpiryDeadlines(null, converter, new RedisExpiryConfigProperties()));
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
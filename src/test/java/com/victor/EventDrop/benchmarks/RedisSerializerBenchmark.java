@@ -0,0 +1,91 @@
+package com.victor.EventDrop.benchmarks;
+
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.redis.CompactRedisSerializer;
+import com.victor.EventDrop.redis.RedisTypeRegistry;
+import com.victor.EventDrop.rooms.Room;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares the JSON and compact redis value serializers on the entities the app stores.
+ * Reports bytes per entity and encode/decode time. Not a unit test and needs no redis, run it by hand:
+ * <pre>
+ *     java ... com.victor.EventDrop.benchmarks.RedisSerializerBenchmark [iterations]
+ * </pre>
+ * Defaults to 200,000 iterations per entity and serializer, after a warm up of the same size.
+ */
+public class RedisSerializerBenchmark {
+
+    //Keeps the JIT from dropping the measured work
+    private static long sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+        //The JSON baseline needs the java time module to write LocalDateTime at all
+        json.configure(objectMapper -> objectMapper.registerModule(new JavaTimeModule()));
+        CompactRedisSerializer compact = new CompactRedisSerializer(new RedisTypeRegistry(), json, true);
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Object> entities = new LinkedHashMap<>();
+        entities.put("Room", Room.builder()
+                .roomCode("1234ABCD").roomName("Friday standup").createdAt(now).expiresAt(now.plusHours(2)).ttl(7200).build());
+        entities.put("Occupant", Occupant.builder()
+                .roomCode("1234ABCD").sessionId(UUID.randomUUID()).occupantName("victor")
+                .occupantRole(OccupantRole.OCCUPANT).joinedAt(now).build());
+        entities.put("FileDrop", FileDrop.builder()
+                .fileId(UUID.randomUUID()).originalFileName("slides.pdf").fileName("1234ABCD/slides.pdf").roomCode("1234ABCD")
+                .fileSize(4_823_119).blobUrl("https://eventdrop112.blob.core.windows.net/eventdrop-uploads/1234ABCD/slides.pdf")
+                .uploadedAt(now).build());
+
+        System.out.printf("%-10s %-8s %8s %14s %14s%n", "entity", "format", "bytes", "encode ns/op", "decode ns/op");
+        entities.forEach((name, entity) -> {
+            report(name, "json", json, entity, iterations);
+            report(name, "compact", compact, entity, iterations);
+        });
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    private static void report(String name, String format, RedisSerializer<Object> serializer, Object entity, int iterations){
+        byte[] bytes = serializer.serialize(entity);
+        Object decoded = serializer.deserialize(bytes);
+        if(!entity.equals(decoded)){
+            throw new IllegalStateException(format + " did not round trip " + name + ": " + decoded);
+        }
+
+        //Warm up
+        run(serializer, entity, bytes, iterations);
+
+        long encodeStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++){
+            sink += serializer.serialize(entity).length;
+        }
+        long encodeNanos = System.nanoTime() - encodeStart;
+
+        long decodeStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++){
+            sink += serializer.deserialize(bytes).hashCode();
+        }
+        long decodeNanos = System.nanoTime() - decodeStart;
+
+        System.out.printf("%-10s %-8s %8d %14.0f %14.0f%n",
+                name, format, bytes.length, (double) encodeNanos / iterations, (double) decodeNanos / iterations);
+    }
+
+    private static void run(RedisSerializer<Object> serializer, Object entity, byte[] bytes, int iterations){
+        for (int i = 0; i < iterations; i++){
+            sink += serializer.serialize(entity).length;
+            sink += serializer.deserialize(bytes).hashCode();
+        }
+    }
+}
@@ -6,8 +6,12 @@ import com.victor.EventDrop.filedrops.dtos.BatchDeleteResult;
 import com.victor.EventDrop.filedrops.dtos.BatchUploadResult;
 import com.victor.EventDrop.filedrops.dtos.FileDownloadResponseDto;
 import com.victor.EventDrop.filedrops.dtos.FileDropResponseDto;
+import com.victor.EventDrop.redis.ReadPreference;
+import com.victor.EventDrop.redis.RedisSchemaConfigProperties;
+import com.victor.EventDrop.redis.ReplicaReadRouter;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomEventType;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -55,6 +59,12 @@ class FileDropServiceImplTest {
     private AsyncTaskExecutor asyncTaskExecutor;
     @Mock
     private ApplicationEventPublisher applicationEventPublisher;
+    @Mock
+    private RoomStateCache roomStateCache;
+    @Mock
+    private ReplicaReadRouter replicaReadRouter;
+    @Mock
+    private RedisSchemaConfigProperties redisSchemaConfigProperties;
 
     @InjectMocks
     private FileDropServiceImpl fileDropService;
@@ -196,7 +206,7 @@ class FileDropServiceImplTest {
         void downloadFile_whenSuccessful_shouldReturnDownloadDto() {
             // Arrange
             String expectedUrl = "http://storage.com/signed-url";
-            when(fileDropRepository.findById(fileId)).thenReturn(Optional.of(fileDrop));
+            when(replicaReadRouter.findById(ReadPreference.REPLICA_PREFERRED, FileDrop.class, "fileDrop", fileId)).thenReturn(Optional.of(fileDrop));
             when(fileDropStorageClient.downloadFile(fileDrop.getFileName(), fileDrop.getBlobUrl())).thenReturn(expectedUrl);
 
             // Act
@@ -207,10 +217,25 @@ class FileDropServiceImplTest {
             assertEquals(expectedUrl, result.downloadUrl());
         }
 
+        @Test
+        void downloadFile_whenFileInRoomView_shouldNotReadRepository() {
+            // Arrange
+            String expectedUrl = "http://storage.com/signed-url";
+            when(roomStateCache.findFileDrop(roomCode, fileId)).thenReturn(Optional.of(fileDrop));
+            when(fileDropStorageClient.downloadFile(fileDrop.getFileName(), fileDrop.getBlobUrl())).thenReturn(expectedUrl);
+
+            // Act
+            FileDownloadResponseDto result = fileDropService.downloadFile(fileId, roomCode);
+
+            // Assert
+            assertEquals(expectedUrl, result.downloadUrl());
+            verifyNoInteractions(replicaReadRouter);
+        }
+
         @Test
         void downloadFile_whenFileNotExists_shouldThrowNoSuchFileDropException() {
             // Arrange
-            when(fileDropRepository.findById(fileId)).thenReturn(Optional.empty());
+            when(replicaReadRouter.findById(ReadPreference.REPLICA_PREFERRED, FileDrop.class, "fileDrop", fileId)).thenReturn(Optional.empty());
 
             // Act & Assert
             var ex =
@@ -290,7 +315,8 @@ class FileDropServiceImplTest {
             FileDrop deletedDrop = FileDrop.builder().isDeleted(true).originalFileName("deleted.txt").build();
             var activeDto = new FileDropResponseDto(UUID.randomUUID().toString(), "active.txt", 123L, LocalDateTime.now());
 
-            when(fileDropRepository.findByRoomCode(roomCode)).thenReturn(List.of(activeDrop, deletedDrop));
+            when(replicaReadRouter.findAllByIndex(ReadPreference.REPLICA_PREFERRED, FileDrop.class, "fileDrop", "roomCode", roomCode))
+                    .thenReturn(List.of(activeDrop, deletedDrop));
             when(fileDropMapper.toResponseDto(activeDrop)).thenReturn(activeDto);
 
             // Act
@@ -302,6 +328,25 @@ class FileDropServiceImplTest {
             verify(fileDropMapper, never()).toResponseDto(deletedDrop);
         }
 
+        @Test
+        void getFileDrops_shouldListTheRoomsFileSet_inTheMinimalSchema() {
+            // Arrange
+            FileDrop activeDrop = FileDrop.builder().isDeleted(false).originalFileName("active.txt").build();
+            var activeDto = new FileDropResponseDto(UUID.randomUUID().toString(), "active.txt", 123L, LocalDateTime.now());
+
+            when(redisSchemaConfigProperties.isMinimal()).thenReturn(true);
+            when(replicaReadRouter.findAllInSet(ReadPreference.REPLICA_PREFERRED, FileDrop.class, "fileDrop", "room-files:{" + roomCode + "}"))
+                    .thenReturn(List.of(activeDrop));
+            when(fileDropMapper.toResponseDto(activeDrop)).thenReturn(activeDto);
+
+            // Act
+            List<FileDropResponseDto> result = fileDropService.getFileDrops(roomCode);
+
+            // Assert
+            assertEquals(List.of(activeDto), result);
+            verify(replicaReadRouter, never()).findAllByIndex(any(), any(), any(), any(), any());
+        }
+
         @Test
         void publishRoomEvent_shouldCallApplicationEventPublisher() {
             // Arrange
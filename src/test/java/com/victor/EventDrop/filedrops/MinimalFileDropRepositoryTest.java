@@ -0,0 +1,113 @@
+package com.victor.EventDrop.filedrops;
+
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MinimalFileDropRepositoryTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+
+    private MinimalFileDropRepository repository;
+    private FileDrop fileDrop;
+
+    @BeforeEach
+    void setUp(){
+        repository = new MinimalFileDropRepository(redisTemplate, redisEntityWriter);
+        fileDrop = FileDrop.builder()
+                .fileId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .fileName("1234ABCD/slides.pdf")
+                .build();
+        lenient().when(redisEntityWriter.toBytes(any())).thenAnswer(invocation -> invocation.getArgument(0).toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void save_shouldWriteTheHash_andAddTheFileToItsRoomsSet_withoutIndexesOrPhantom(){
+        //Arrange
+        RedisData redisData = new RedisData(Bucket.newBucketFromStringMap(Map.of("fileName", "1234ABCD/slides.pdf")));
+        redisData.setTimeToLive(86400L);
+        RedisConnection connection = mock(RedisConnection.class, RETURNS_DEEP_STUBS);
+        when(redisEntityWriter.toRedisData(fileDrop)).thenReturn(redisData);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of();
+        });
+
+        //Act
+        repository.save(fileDrop);
+
+        //Assert
+        byte[] key = ("fileDrop:" + fileDrop.getFileId()).getBytes(StandardCharsets.UTF_8);
+        verify(connection.hashCommands(), times(1)).hMSet(eq(key), anyMap());
+        verify(connection.keyCommands(), times(1)).expire(key, 86400L);
+        verify(connection.setCommands(), times(1)).sAdd("room-files:{1234ABCD}".getBytes(StandardCharsets.UTF_8),
+                fileDrop.getFileId().toString().getBytes(StandardCharsets.UTF_8));
+        verify(connection.setCommands(), never()).sAdd(eq("fileDrop".getBytes(StandardCharsets.UTF_8)), any(byte[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void findByFileName_shouldOnlySearchTheFilesOfTheNamesRoom(){
+        //Arrange
+        Map<byte[], byte[]> hash = Map.of("fileName".getBytes(StandardCharsets.UTF_8), "1234ABCD/slides.pdf".getBytes(StandardCharsets.UTF_8));
+        Set<byte[]> ids = Set.of(fileDrop.getFileId().toString().getBytes(StandardCharsets.UTF_8));
+        //The room's id set, then its hashes, once per lookup
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(ids, List.of(hash), ids, List.of(hash));
+        when(redisEntityWriter.read(FileDrop.class, hash)).thenReturn(fileDrop);
+
+        //Act
+        FileDrop found = repository.findByFileName("1234ABCD/slides.pdf");
+        FileDrop missing = repository.findByFileName("1234ABCD/other.pdf");
+
+        //Assert
+        assertEquals(fileDrop, found);
+        assertNull(missing);
+        assertNull(repository.findByFileName("no-room-prefix.pdf"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void findAll_shouldScanTheKeyspacesHashes_skippingKeysThatArentEntities(){
+        //Arrange
+        Map<byte[], byte[]> hash = Map.of("fileName".getBytes(StandardCharsets.UTF_8), "1234ABCD/slides.pdf".getBytes(StandardCharsets.UTF_8));
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, false);
+        when(cursor.next()).thenReturn("fileDrop:" + fileDrop.getFileId(), "fileDrop:roomCode:1234ABCD");
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(List.of(hash));
+        when(redisEntityWriter.read(FileDrop.class, hash)).thenReturn(fileDrop);
+
+        //Act
+        List<FileDrop> fileDrops = repository.findAll();
+
+        //Assert
+        assertEquals(List.of(fileDrop), fileDrops);
+        verify(redisEntityWriter, times(1)).read(FileDrop.class, hash);
+        verify(cursor, times(1)).close();
+    }
+}
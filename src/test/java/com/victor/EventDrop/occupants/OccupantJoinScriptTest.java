@@ -0,0 +1,213 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.rooms.Room;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OccupantJoinScriptTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+
+    @InjectMocks
+    private OccupantJoinScript occupantJoinScript;
+
+    private Occupant occupant;
+
+    @BeforeEach
+    void setUp(){
+        occupant = Occupant.builder()
+                .sessionId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .occupantName("username")
+                .occupantRole(OccupantRole.OCCUPANT)
+                .build();
+    }
+
+    //The join writes the occupant inside the script, so it needs the occupant's key layout
+    private void stubRedisData(){
+        RedisData redisData = redisData();
+        when(redisEntityWriter.keyOf("room", "1234ABCD", "1234ABCD")).thenReturn("room:1234ABCD");
+        when(redisEntityWriter.keyOf(redisData)).thenReturn("occupant:" + occupant.getSessionId());
+        when(redisEntityWriter.phantomKeyOf(redisData)).thenReturn("occupant:" + occupant.getSessionId() + ":phantom");
+        when(redisEntityWriter.indexSetKeyOf(redisData)).thenReturn("occupant:" + occupant.getSessionId() + ":idx");
+        when(redisEntityWriter.indexKeysOf(redisData)).thenReturn(List.of("occupant:roomCode:1234ABCD"));
+        when(redisEntityWriter.toBytes(any())).thenAnswer(invocation -> invocation.getArgument(0).toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Under the minimal schema the room and occupant keys carry the room's hash tag
+    private RedisData stubMinimalRedisData(){
+        RedisData redisData = redisData();
+        when(redisEntityWriter.isMinimalSchema()).thenReturn(true);
+        when(redisEntityWriter.keyOf("room", "1234ABCD", "1234ABCD")).thenReturn("room:{1234ABCD}");
+        when(redisEntityWriter.keyOf(redisData)).thenReturn("occupant:{1234ABCD}:" + occupant.getSessionId());
+        when(redisEntityWriter.toBytes(any())).thenAnswer(invocation -> invocation.getArgument(0).toString().getBytes(StandardCharsets.UTF_8));
+        return redisData;
+    }
+
+    private RedisData redisData(){
+        RedisData redisData = new RedisData(Bucket.newBucketFromStringMap(Map.of("occupantName", "username")));
+        redisData.setKeyspace("occupant");
+        redisData.setId(occupant.getSessionId().toString());
+        redisData.setTimeToLive(300L);
+        when(redisEntityWriter.toRedisData(occupant)).thenReturn(redisData);
+        return redisData;
+    }
+
+    @Test
+    void join_shouldReturnRoom_whenJoined(){
+        //Arrange
+        stubRedisData();
+        Room room = Room.builder().roomCode("1234ABCD").build();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(3L, "roomCode".getBytes(StandardCharsets.UTF_8), "1234ABCD".getBytes(StandardCharsets.UTF_8)));
+        when(redisEntityWriter.read(eq(Room.class), anyMap())).thenReturn(room);
+
+        //Act
+        OccupantJoinResult result = occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        assertEquals(OccupantJoinResult.Status.JOINED, result.status());
+        assertEquals(3, result.occupantCount());
+        assertEquals(room, result.room());
+    }
+
+    @Test
+    void join_shouldPassEveryKeyTheScriptTouches(){
+        //Arrange
+        stubRedisData();
+        String sessionId = occupant.getSessionId().toString();
+        when(redisEntityWriter.expiryKeyOf(any())).thenReturn("expiry-deadlines:{3}");
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(0L));
+
+        //Act
+        occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), eq(List.of(
+                "room:1234ABCD", Occupant.presenceKey("1234ABCD"), "occupant:" + sessionId, "occupant:" + sessionId + ":phantom",
+                "occupant", "occupant:" + sessionId + ":idx", "expiry-deadlines:{3}", "occupant:roomCode:1234ABCD"
+        )), any(Object[].class));
+    }
+
+    @Test
+    void joinRoomScript_shouldOnlyTouchDeclaredKeys() throws Exception {
+        assertOnlyTouchesDeclaredKeys("scripts/join-room.lua");
+    }
+
+    @Test
+    void joinRoomMinimalScript_shouldOnlyTouchDeclaredKeys() throws Exception {
+        assertOnlyTouchesDeclaredKeys("scripts/join-room-minimal.lua");
+    }
+
+    private static void assertOnlyTouchesDeclaredKeys(String path) throws Exception {
+        //Arrange
+        String script = new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        Matcher call = Pattern.compile("redis\\.call\\('(\\w+)'(?:,\\s*([^,)]+))?").matcher(script);
+
+        //Act & Assert
+        while (call.find()){
+            if(call.group(2) != null){
+                assertTrue(call.group(2).matches("KEYS\\[[^\\]]+\\]"), "Undeclared key in: " + call.group());
+            }
+        }
+    }
+
+    @Test
+    void join_shouldReportFullRoom(){
+        //Arrange
+        stubRedisData();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(-1L));
+
+        //Act
+        OccupantJoinResult result = occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        assertEquals(OccupantJoinResult.Status.ROOM_FULL, result.status());
+        verify(redisEntityWriter, never()).read(any(), anyMap());
+    }
+
+    @Test
+    void join_shouldReportMissingRoom(){
+        //Arrange
+        stubRedisData();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(0L));
+
+        //Act
+        OccupantJoinResult result = occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        assertEquals(OccupantJoinResult.Status.NO_SUCH_ROOM, result.status());
+        assertNull(result.room());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void join_underMinimalSchema_shouldOnlyPassKeysOfTheRoomsSlot(){
+        //Arrange
+        stubMinimalRedisData();
+        String sessionId = occupant.getSessionId().toString();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(4L, "roomCode".getBytes(StandardCharsets.UTF_8), "1234ABCD".getBytes(StandardCharsets.UTF_8)));
+        when(redisEntityWriter.read(eq(Room.class), anyMap())).thenReturn(Room.builder().roomCode("1234ABCD").build());
+
+        //Act
+        OccupantJoinResult result = occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        assertEquals(OccupantJoinResult.Status.JOINED, result.status());
+        assertEquals(4, result.occupantCount());
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), eq(List.of(
+                "room:{1234ABCD}", "room-presence:{1234ABCD}", "occupant:{1234ABCD}:" + sessionId
+        )), any(Object[].class));
+        //The session's pointer and the expiry deadline live in other slots and go after the script
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void join_underMinimalSchema_shouldNotWriteAroundTheScript_whenRoomIsFull(){
+        //Arrange
+        stubMinimalRedisData();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(-1L));
+
+        //Act
+        OccupantJoinResult result = occupantJoinScript.join(occupant, 30);
+
+        //Assert
+        assertEquals(OccupantJoinResult.Status.ROOM_FULL, result.status());
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+}
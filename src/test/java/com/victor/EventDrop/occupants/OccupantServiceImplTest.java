@@ -1,7 +1,15 @@
 package com.victor.EventDrop.occupants;
 
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.auth.SessionRevocationList;
 import com.victor.EventDrop.exceptions.OccupantDeletionException;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.rooms.Room;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
+import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStage;
+import com.victor.EventDrop.rooms.listeners.RoomExpiryStageMetrics;
 import com.victor.EventDrop.rooms.events.RoomJoinEvent;
 import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,13 +18,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisKeyExpiredEvent;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.lang.reflect.Field;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -31,6 +44,24 @@ class OccupantServiceImplTest {
     @Mock
     private OccupantRepository occupantRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private OccupantJoinScript occupantJoinScript;
+
+    @Mock
+    private SessionRevocationList sessionRevocationList;
+
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+
+    @Mock
+    private RoomExpiryStageMetrics roomExpiryStageMetrics;
+
     @InjectMocks
     private OccupantServiceImpl occupantService;
 
@@ -54,32 +85,45 @@ class OccupantServiceImplTest {
     @Test
     void createOccupant_shouldReturn200_whenRoomNotFull() throws IllegalAccessException, NoSuchFieldException {
         //Arrange
-        when(occupantRepository.findByRoomCode(roomJoinEvent.roomCode())).thenReturn(List.of());
+        Room room = Room.builder().roomCode(roomJoinEvent.roomCode()).build();
+        when(occupantJoinScript.join(any(Occupant.class), eq(2)))
+                .thenReturn(new OccupantJoinResult(OccupantJoinResult.Status.JOINED, 1, room));
 
         OccupantRoomJoinResponse response = occupantService.createOccupant(roomJoinEvent);
 
         assertNotNull(response);
         assertEquals(200, response.status());
         assertTrue(response.success());
-        verify(occupantRepository, times(1)).save(any(Occupant.class));
+        assertEquals(room, response.room());
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent(roomJoinEvent.roomCode(), 1));
     }
 
     @Test
     void createOccupant_shouldReturn409_whenRoomFull() throws IllegalAccessException, NoSuchFieldException {
-        when(occupantRepository.findByRoomCode(roomJoinEvent.roomCode()))
-                .thenReturn(List.of(new Occupant(), new Occupant()));
+        when(occupantJoinScript.join(any(Occupant.class), eq(2)))
+                .thenReturn(new OccupantJoinResult(OccupantJoinResult.Status.ROOM_FULL, 2, null));
 
         OccupantRoomJoinResponse response = occupantService.createOccupant(roomJoinEvent);
 
         assertEquals(409, response.status());
         assertFalse(response.success());
-        verify(occupantRepository, never()).save(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void createOccupant_shouldReturn404_whenRoomDoesNotExist() {
+        when(occupantJoinScript.join(any(Occupant.class), eq(2)))
+                .thenReturn(new OccupantJoinResult(OccupantJoinResult.Status.NO_SUCH_ROOM, 0, null));
+
+        OccupantRoomJoinResponse response = occupantService.createOccupant(roomJoinEvent);
+
+        assertEquals(404, response.status());
+        assertFalse(response.success());
     }
 
     @Test
     void createOccupant_shouldReturn500_whenSaveThrowsException() {
-        when(occupantRepository.findByRoomCode(roomJoinEvent.roomCode())).thenReturn(List.of());
-        when(occupantRepository.save(any())).thenThrow(new RuntimeException());
+        when(occupantJoinScript.join(any(Occupant.class), eq(2))).thenThrow(new RuntimeException());
 
         OccupantRoomJoinResponse response = occupantService.createOccupant(roomJoinEvent);
 
@@ -128,17 +172,109 @@ class OccupantServiceImplTest {
     }
 
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void deleteOccupants_shouldDeleteEachOccupantWithItsIndexKeys_underIndexedSchema() {
+        //Arrange
+        RedisConnection connection = mock(RedisConnection.class, RETURNS_DEEP_STUBS);
+        Set<byte[]> indexKeys = Set.of("occupant:roomCode:room1".getBytes());
+        when(redisTemplate.executePipelined(any(RedisCallback.class), any(RedisSerializer.class))).thenReturn(List.of(indexKeys));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of(1L, 0L);
+        });
+
+        //Act
+        occupantService.deleteOccupants(List.of(new RoomLeaveEvent("room1", "a", roomJoinEvent.sessionId())));
+
+        //Assert
+        verify(redisEntityWriter, times(1)).delete(connection, "occupant", roomJoinEvent.sessionId().toString(), "room1", indexKeys);
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("room1", 0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deleteOccupants_shouldNotReadIndexSets_underMinimalSchema() {
+        //Arrange
+        RedisConnection connection = mock(RedisConnection.class, RETURNS_DEEP_STUBS);
+        when(redisEntityWriter.isMinimalSchema()).thenReturn(true);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return List.of(1L, 0L);
+        });
+
+        //Act
+        occupantService.deleteOccupants(List.of(new RoomLeaveEvent("room1", "a", roomJoinEvent.sessionId())));
+
+        //Assert
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class), any(RedisSerializer.class));
+        verify(connection.setCommands(), never()).sMembers(any());
+        verify(redisEntityWriter, times(1)).delete(connection, "occupant", roomJoinEvent.sessionId().toString(), "room1", Set.of());
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("room1", 0));
+    }
+
+    @Test
+    void deleteOccupants_shouldGroupLeavesByRoom_andPublishOncePerRoom() {
+        //Arrange
+        List<RoomLeaveEvent> leaves = List.of(
+                new RoomLeaveEvent("room1", "a", UUID.randomUUID()),
+                new RoomLeaveEvent("room2", "b", UUID.randomUUID()),
+                new RoomLeaveEvent("room1", "c", UUID.randomUUID())
+        );
+        when(redisTemplate.executePipelined(any(RedisCallback.class), any(RedisSerializer.class))).thenReturn(List.of(Set.of(), Set.of(), Set.of()));
+        //zRem and zCount of room1, then of room2
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(2L, 1L, 1L, 0L));
+
+        //Act
+        occupantService.deleteOccupants(leaves);
+
+        //Assert
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("room1", 1));
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("room2", 0));
+        verify(eventPublisher, times(2)).publishEvent(any(RoomEvent.class));
+        verify(occupantRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void deleteOccupants_shouldThrowOccupantDeletionException_whenPipelineFails() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class), any(RedisSerializer.class))).thenThrow(new RuntimeException());
+
+        assertThrows(OccupantDeletionException.class,
+                () -> occupantService.deleteOccupants(List.of(new RoomLeaveEvent("room1", "a", UUID.randomUUID()))));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+
     @Test
     void getOccupantCount_shouldReturnCorrectSize() {
-        when(occupantRepository.findByRoomCode("room1")).thenReturn(List.of(new Occupant(), new Occupant()));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(2L);
         int count = occupantService.getOccupantCount("room1");
         assertEquals(2, count);
+        verify(occupantRepository, never()).findByRoomCode(anyString());
+    }
+
+    @Test
+    void handleSessionExpiry_shouldRevokeSession_andLeaveOccupancyToPruner() {
+        //Arrange
+        UUID sessionId = UUID.randomUUID();
+        @SuppressWarnings("unchecked")
+        RedisKeyExpiredEvent<Occupant> expiredEvent = mock(RedisKeyExpiredEvent.class);
+        when(expiredEvent.getId()).thenReturn(sessionId.toString().getBytes());
+
+        //Act
+        occupantService.handleSessionExpiry(expiredEvent);
+
+        //Assert
+        verify(occupantRepository, times(1)).deleteBySessionId(sessionId.toString());
+        verify(sessionRevocationList, times(1)).revokeSession(sessionId.toString());
+        verifyNoInteractions(redisTemplate, eventPublisher);
     }
 
 
     @Test
     void handleRoomExpiry_shouldExpireAllOccupants() {
-        RoomExpiryEvent expiryEvent = new RoomExpiryEvent("room1");
+        RoomExpiryEvent expiryEvent = new RoomExpiryEvent("room1", System.currentTimeMillis());
         Occupant o1 = mock(Occupant.class);
         Occupant o2 = mock(Occupant.class);
         when(o1.getSessionId()).thenReturn(UUID.randomUUID());
@@ -147,11 +283,12 @@ class OccupantServiceImplTest {
 
         assertDoesNotThrow(() -> occupantService.handleRoomExpiry(expiryEvent));
         verify(redisTemplate, times(2)).expire(anyString(), eq(Duration.ofSeconds(2)));
+        verify(roomExpiryStageMetrics, times(1)).record(RoomExpiryStage.OCCUPANTS, expiryEvent);
     }
 
     @Test
     void handleRoomExpiry_shouldReturnIfNoOccupants() {
-        RoomExpiryEvent expiryEvent = new RoomExpiryEvent("room1");
+        RoomExpiryEvent expiryEvent = new RoomExpiryEvent("room1", System.currentTimeMillis());
         when(occupantRepository.findByRoomCode("room1")).thenReturn(List.of());
 
         assertDoesNotThrow(() -> occupantService.handleRoomExpiry(expiryEvent));
@@ -0,0 +1,165 @@
+package com.victor.EventDrop.occupants;
+
+import com.victor.EventDrop.auth.SessionConfigProperties;
+import com.victor.EventDrop.auth.SessionRevocationList;
+import com.victor.EventDrop.redis.RedisClusterConfigProperties;
+import com.victor.EventDrop.redis.RedisLease;
+import com.victor.EventDrop.rooms.RoomEmitterHandler;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
+import com.victor.EventDrop.rooms.events.RoomEvent;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PresencePrunerTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private OccupantRepository occupantRepository;
+    @Mock
+    private SessionRevocationList sessionRevocationList;
+    @Mock
+    private SessionConfigProperties sessionConfigProperties;
+    @Mock
+    private RoomEmitterHandler roomEmitterHandler;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private RedisClusterConfigProperties redisClusterConfigProperties;
+    @Mock
+    private RedisLease redisLease;
+    @Mock
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Mock
+    private RoomStateCache roomStateCache;
+
+    @InjectMocks
+    private PresencePruner presencePruner;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pruneRoom_shouldRemoveStaleSessions_andPublishOneUpdatePerRoom(){
+        //Arrange
+        UUID first = UUID.randomUUID(), second = UUID.randomUUID();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any()))
+                .thenReturn(List.of(3L, first.toString().getBytes(StandardCharsets.UTF_8), second.toString().getBytes(StandardCharsets.UTF_8)));
+
+        //Act
+        int pruned = presencePruner.pruneRoom("1234ABCD", System.currentTimeMillis());
+
+        //Assert
+        assertEquals(2, pruned);
+        verify(occupantRepository, times(1)).deleteAllById(List.of(first, second));
+        verify(sessionRevocationList, times(1)).revokeSession(first.toString());
+        verify(roomEmitterHandler, times(1)).removeEmitter("1234ABCD", second.toString());
+        verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("1234ABCD", 3));
+        verify(eventPublisher, times(1)).publishEvent(any(RoomEvent.class));
+        //The other nodes' clients are told too
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void onMessage_shouldDropEmitters_andPushTheRoomsState_forSessionsAnotherNodePruned(){
+        //Arrange
+        UUID sessionId = UUID.randomUUID();
+        DefaultMessage message = new DefaultMessage("presence-pruned".getBytes(StandardCharsets.UTF_8),
+                ("other-node|1234ABCD|" + sessionId).getBytes(StandardCharsets.UTF_8));
+
+        //Act
+        presencePruner.onMessage(message, null);
+
+        //Assert
+        verify(roomStateCache, times(1)).invalidate("1234ABCD");
+        verify(roomEmitterHandler, times(1)).removeEmitter("1234ABCD", sessionId.toString());
+        verify(eventPublisher, times(1)).publishEvent(any(RoomEvent.class));
+        verifyNoInteractions(occupantRepository, sessionRevocationList);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pruneRoom_shouldDoNothing_whenNoSessionIsStale(){
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any()))
+                .thenReturn(List.of(4L));
+
+        assertEquals(0, presencePruner.pruneRoom("1234ABCD", System.currentTimeMillis()));
+        verifyNoInteractions(occupantRepository, eventPublisher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pruneRoom_shouldDropRoomFromTheIndex_whenItsPresenceSetIsGone(){
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any()))
+                .thenReturn(List.of(-1L));
+
+        assertEquals(0, presencePruner.pruneRoom("1234ABCD", System.currentTimeMillis()));
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+        verifyNoInteractions(occupantRepository, eventPublisher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pruneRoom_shouldFoldThePresenceSetWithoutAHashTag_firstOnASingleNode(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any()))
+                .thenReturn(List.of(4L));
+
+        //Act
+        presencePruner.pruneRoom("1234ABCD", System.currentTimeMillis());
+
+        //Assert
+        InOrder inOrder = inOrder(redisTemplate);
+        inOrder.verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(List.of("room-presence:1234ABCD", "room-presence:{1234ABCD}")));
+        inOrder.verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), eq(List.of("room-presence:{1234ABCD}")), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pruneRoom_shouldNotFold_onACluster(){
+        //Arrange
+        when(redisClusterConfigProperties.isEnabled()).thenReturn(true);
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any()))
+                .thenReturn(List.of(4L));
+
+        //Act
+        presencePruner.pruneRoom("1234ABCD", System.currentTimeMillis());
+
+        //Assert
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void prune_shouldSkip_whenAnotherNodeHoldsTheLease(){
+        //Arrange
+        when(sessionConfigProperties.getPresencePruneIntervalInSeconds()).thenReturn(30L);
+        when(redisLease.acquire(eq("presence-pruner-lease"), anyString(), any(Duration.class))).thenReturn(false);
+
+        //Act
+        presencePruner.prune();
+
+        //Assert
+        verify(redisTemplate, never()).execute(any(RedisCallback.class));
+        verifyNoInteractions(occupantRepository, eventPublisher);
+    }
+}
@@ -0,0 +1,110 @@
+package com.victor.EventDrop.rabbitmq;
+
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomExpiryEventSchema;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEventSchema;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMessageConverterTest {
+
+    private final Jackson2JsonMessageConverter jackson2JsonMessageConverter = new Jackson2JsonMessageConverter();
+    private final CompactMessageConverter compactMessageConverter = converter(true);
+
+    @Test
+    void toMessage_shouldWriteRoomEventsCompact_andReadThemBack(){
+        //Arrange
+        RoomLeaveEvent leave = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+        RoomExpiryEvent expiry = new RoomExpiryEvent("12345678", System.currentTimeMillis());
+
+        //Act
+        Message leaveMessage = compactMessageConverter.toMessage(leave, new MessageProperties());
+        Message expiryMessage = compactMessageConverter.toMessage(expiry, new MessageProperties());
+
+        //Assert
+        assertEquals(CompactMessageConverter.CONTENT_TYPE, leaveMessage.getMessageProperties().getContentType());
+        assertNull(leaveMessage.getMessageProperties().getHeader("__TypeId__"));
+        assertTrue(leaveMessage.getBody().length < jackson2JsonMessageConverter.toMessage(leave, new MessageProperties()).getBody().length);
+        assertEquals(leave, compactMessageConverter.fromMessage(leaveMessage));
+        assertEquals(expiry, compactMessageConverter.fromMessage(expiryMessage));
+    }
+
+    @Test
+    void fromMessage_shouldReadJson_fromNodesThatDontWriteCompact(){
+        //Arrange
+        RoomLeaveEvent leave = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+        Message message = converter(false).toMessage(leave, new MessageProperties());
+        message.getMessageProperties().setInferredArgumentType(RoomLeaveEvent.class);
+
+        //Act
+        Object event = compactMessageConverter.fromMessage(message);
+
+        //Assert
+        assertEquals("application/json", message.getMessageProperties().getContentType());
+        assertEquals(leave, event);
+    }
+
+    @Test
+    void toMessage_shouldWriteJson_forEventsWithoutASchema(){
+        //Act
+        Message message = compactMessageConverter.toMessage(Map.of("roomCode", "12345678"), new MessageProperties());
+
+        //Assert
+        assertEquals("application/json", message.getMessageProperties().getContentType());
+        assertNotNull(message.getMessageProperties().getMessageId());
+    }
+
+    @Test
+    void fromMessage_shouldSkipTheFields_ofNewerSchemaVersions() throws IOException {
+        //Arrange
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        EventSchema.writeVarInt(out, 2);
+        EventSchema.writeVarInt(out, 7);
+        EventSchema.writeString(out, "12345678");
+        out.writeLong(42);
+        EventSchema.writeString(out, "a field added in a later version");
+        Message message = compactMessage(bytes.toByteArray());
+
+        //Act
+        Object event = compactMessageConverter.fromMessage(message);
+
+        //Assert
+        assertEquals(new RoomExpiryEvent("12345678", 42), event);
+    }
+
+    @Test
+    void fromMessage_shouldThrow_onUnknownTags(){
+        //Arrange
+        Message message = compactMessage(new byte[]{ 99, 1 });
+
+        //Act & Assert
+        assertThrows(MessageConversionException.class, () -> compactMessageConverter.fromMessage(message));
+    }
+
+    private CompactMessageConverter converter(boolean writeCompact){
+        CompactMessageConverter converter = new CompactMessageConverter(jackson2JsonMessageConverter,
+                List.of(new RoomLeaveEventSchema(), new RoomExpiryEventSchema()), writeCompact);
+        converter.setCreateMessageIds(true);
+        return converter;
+    }
+
+    private Message compactMessage(byte[] body){
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(CompactMessageConverter.CONTENT_TYPE);
+        return new Message(body, messageProperties);
+    }
+}
@@ -0,0 +1,182 @@
+package com.victor.EventDrop.rabbitmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConfirmedEventPublisherTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    private final RabbitPublisherConfigProperties rabbitPublisherConfigProperties = new RabbitPublisherConfigProperties();
+    private ConfirmedEventPublisher confirmedEventPublisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp(){
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        lenient().when(rabbitTemplate.getMessageConverter()).thenReturn(new SimpleMessageConverter());
+        lenient().when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation ->
+                ((RabbitOperations.OperationsCallback<Object>) invocation.getArgument(0)).doInRabbit(rabbitTemplate));
+        confirmedEventPublisher = new ConfirmedEventPublisher(rabbitTemplate, rabbitPublisherConfigProperties);
+    }
+
+    @Test
+    void publish_shouldOnlyBuffer_untilTheNextFlush(){
+        //Act
+        boolean accepted = confirmedEventPublisher.publish("exchange", "routing-key", "event");
+
+        //Assert
+        assertTrue(accepted);
+        assertEquals(1, confirmedEventPublisher.getHeld());
+        verifyNoMoreInteractions(ignoreStubs(rabbitTemplate));
+    }
+
+    @Test
+    void flush_shouldReleaseEvent_onceTheBrokerConfirmsIt(){
+        //Arrange
+        confirmedEventPublisher.publish("exchange", "routing-key", "event");
+
+        //Act
+        confirmedEventPublisher.flush();
+        CorrelationData correlationData = sentCorrelationData(1);
+        correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+
+        //Assert
+        assertEquals(1, confirmedEventPublisher.getConfirmed().get());
+        assertEquals(0, confirmedEventPublisher.getHeld());
+    }
+
+    @Test
+    void redeliver_shouldSendNackedEventAgain(){
+        //Arrange
+        confirmedEventPublisher.publish("exchange", "routing-key", "event");
+        confirmedEventPublisher.flush();
+        sentCorrelationData(1).getFuture().complete(new CorrelationData.Confirm(false, "broker busy"));
+
+        //Act
+        confirmedEventPublisher.redeliver();
+        confirmedEventPublisher.flush();
+
+        //Assert
+        sentCorrelationData(2);
+        assertEquals(1, confirmedEventPublisher.getRedelivered().get());
+        assertEquals(1, confirmedEventPublisher.getHeld());
+    }
+
+    @Test
+    void flush_shouldHoldLaterEventsOfTheRoutingKey_untilANackedEventIsSentAgain(){
+        //Arrange
+        confirmedEventPublisher.publish("exchange", "routing-key", "first");
+        confirmedEventPublisher.publish("exchange", "routing-key", "second");
+        confirmedEventPublisher.flush();
+        sentCorrelationData(1).getFuture().complete(new CorrelationData.Confirm(false, "broker busy"));
+
+        //Act
+        confirmedEventPublisher.flush();
+        confirmedEventPublisher.redeliver();
+        confirmedEventPublisher.flush();
+        sentCorrelationData(2).getFuture().complete(new CorrelationData.Confirm(true, null));
+        confirmedEventPublisher.flush();
+
+        //Assert
+        assertEquals(List.of("first", "first", "second"), sentBodies(3));
+        assertEquals(1, confirmedEventPublisher.getHeld());
+    }
+
+    @Test
+    void flush_shouldNotHoldOtherRoutingKeys_whileAnEventIsUnconfirmed(){
+        //Arrange
+        confirmedEventPublisher.publish("exchange", "routing-key", "first");
+        confirmedEventPublisher.publish("exchange", "routing-key", "second");
+        confirmedEventPublisher.publish("exchange", "other-routing-key", "other");
+
+        //Act
+        confirmedEventPublisher.flush();
+
+        //Assert
+        verify(rabbitTemplate, times(1)).send(eq("exchange"), eq("routing-key"), any(Message.class), any(CorrelationData.class));
+        verify(rabbitTemplate, times(1)).send(eq("exchange"), eq("other-routing-key"), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void publishConfirmed_shouldComplete_onlyOnceTheBrokerConfirmsTheEvent(){
+        //Arrange
+        CompletableFuture<Boolean> confirmation = confirmedEventPublisher.publishConfirmed("exchange", "routing-key", "event");
+        confirmedEventPublisher.flush();
+        sentCorrelationData(1).getFuture().complete(new CorrelationData.Confirm(false, "broker busy"));
+        assertFalse(confirmation.isDone());
+
+        //Act
+        confirmedEventPublisher.redeliver();
+        confirmedEventPublisher.flush();
+        sentCorrelationData(2).getFuture().complete(new CorrelationData.Confirm(true, null));
+
+        //Assert
+        assertTrue(confirmation.join());
+    }
+
+    @Test
+    void publishConfirmed_shouldCompleteWithFalse_whenTheEventIsDropped(){
+        //Arrange
+        rabbitPublisherConfigProperties.setMaxAttempts(1);
+        CompletableFuture<Boolean> confirmation = confirmedEventPublisher.publishConfirmed("exchange", "routing-key", "event");
+        confirmedEventPublisher.flush();
+
+        //Act
+        sentCorrelationData(1).getFuture().complete(new CorrelationData.Confirm(false, "broker busy"));
+
+        //Assert
+        assertFalse(confirmation.join());
+        assertEquals(0, confirmedEventPublisher.getHeld());
+    }
+
+    @Test
+    void publish_shouldDropEvent_whenTheBufferIsFull(){
+        //Arrange
+        rabbitPublisherConfigProperties.setBufferCapacity(1);
+        confirmedEventPublisher.publish("exchange", "routing-key", "event");
+
+        //Act
+        boolean accepted = confirmedEventPublisher.publish("exchange", "routing-key", "event");
+
+        //Assert
+        assertFalse(accepted);
+        assertEquals(1, confirmedEventPublisher.getDropped().get());
+        assertEquals(1, confirmedEventPublisher.getHeld());
+    }
+
+    private CorrelationData sentCorrelationData(int sends){
+        ArgumentCaptor<CorrelationData> captor = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(sends)).send(eq("exchange"), eq("routing-key"), any(Message.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private List<String> sentBodies(int sends){
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(sends)).send(eq("exchange"), eq("routing-key"), captor.capture(), any(CorrelationData.class));
+        return captor.getAllValues().stream().map(message -> new String(message.getBody(), StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,81 @@
+package com.victor.EventDrop.rabbitmq;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueInformation;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConsumerLagMetricsTest {
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+
+    @InjectMocks
+    private ConsumerLagMetrics consumerLagMetrics;
+
+    @Test
+    void record_shouldTimeMessages_fromWhenTheyWerePublished(){
+        //Arrange
+        consumerLagMetrics.register("room-leave", "room-leave-queue");
+
+        //Act
+        consumerLagMetrics.record("room-leave", message(System.currentTimeMillis() - 500, null));
+
+        //Assert
+        ConsumerLagDto lag = consumerLagMetrics.metrics().get(0);
+        assertEquals(1, lag.received());
+        assertTrue(lag.lastLagInMillis() >= 500);
+        assertEquals(lag.lastLagInMillis(), lag.maxLagInMillis());
+    }
+
+    @Test
+    void record_shouldSkipRetriedMessages_andUnregisteredListeners(){
+        //Arrange
+        consumerLagMetrics.register("room-leave", "room-leave-queue");
+
+        //Act
+        consumerLagMetrics.record("room-leave", message(System.currentTimeMillis() - 5000, 1));
+        consumerLagMetrics.record("other", message(System.currentTimeMillis(), null));
+
+        //Assert
+        List<ConsumerLagDto> metrics = consumerLagMetrics.metrics();
+        assertEquals(1, metrics.size());
+        assertEquals(0, metrics.get(0).received());
+    }
+
+    @Test
+    void sample_shouldReadDepthAndConsumers_ofTheListenersQueues(){
+        //Arrange
+        consumerLagMetrics.register("room-leave", "room-leave-queue");
+        when(amqpAdmin.getQueueInfo("room-leave-queue")).thenReturn(new QueueInformation("room-leave-queue", 42, 3));
+
+        //Act
+        consumerLagMetrics.sample();
+
+        //Assert
+        ConsumerLagDto lag = consumerLagMetrics.metrics().get(0);
+        assertEquals(42, lag.depth());
+        assertEquals(3, lag.consumers());
+    }
+
+    private Message message(long publishedAt, Integer attempt){
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setTimestamp(new Date(publishedAt));
+        if(attempt != null){
+            messageProperties.setHeader(TieredRetryRecoverer.ATTEMPT_HEADER, attempt);
+        }
+        return new Message(new byte[0], messageProperties);
+    }
+}
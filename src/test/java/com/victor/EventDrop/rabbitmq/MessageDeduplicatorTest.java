@@ -0,0 +1,151 @@
+package com.victor.EventDrop.rabbitmq;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import com.victor.EventDrop.redis.RedisLease;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageDeduplicatorTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisConnection connection;
+    @Mock
+    private RedisStringCommands stringCommands;
+    @Mock
+    private RedisLease redisLease;
+    @Mock
+    private MethodInvocation invocation;
+
+    private MessageDeduplicator messageDeduplicator;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp(){
+        messageDeduplicator = new MessageDeduplicator(redisTemplate, new RabbitDedupConfigProperties(), redisLease);
+        lenient().when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(answer -> answer.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+        lenient().when(connection.stringCommands()).thenReturn(stringCommands);
+    }
+
+    @Test
+    void invoke_shouldHandleFirstDelivery_andSkipItsRedeliveryWithoutRedis() throws Throwable{
+        //Arrange
+        Message message = message("id-1");
+        when(invocation.getArguments()).thenReturn(new Object[]{null, message});
+        when(stringCommands.set(eq(bytes("dedup:room-leave-queue:id-1")), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(true);
+
+        //Act
+        messageDeduplicator.invoke(invocation);
+        messageDeduplicator.invoke(invocation);
+
+        //Assert
+        verify(invocation, times(1)).proceed();
+        verify(stringCommands, times(1)).set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT));
+        verify(stringCommands, times(1)).set(eq(bytes("dedup:room-leave-queue:id-1")), eq(bytes("done")), any(Expiration.class), eq(RedisStringCommands.SetOption.UPSERT));
+        DuplicateMetricsDto duplicates = messageDeduplicator.metrics().get(0);
+        assertEquals(1, duplicates.suppressed());
+        assertEquals(1, duplicates.suppressedLocally());
+    }
+
+    @Test
+    void claim_shouldSuppress_messagesAnotherNodeHandled(){
+        //Arrange
+        when(stringCommands.set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(false);
+        when(stringCommands.get(bytes("dedup:room-leave-queue:id-1"))).thenReturn(bytes("done"));
+
+        //Act & Assert
+        assertFalse(messageDeduplicator.claim(message("id-1")));
+        assertEquals(1, messageDeduplicator.metrics().get(0).suppressed());
+    }
+
+    @Test
+    void claim_shouldFail_whileAnotherDeliveryIsHandlingTheMessage(){
+        //Arrange
+        when(stringCommands.set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(false);
+        when(stringCommands.get(bytes("dedup:room-leave-queue:id-1"))).thenReturn(bytes("other-node"));
+
+        //Act & Assert
+        assertThrows(AmqpException.class, () -> messageDeduplicator.claim(message("id-1")));
+        assertEquals(1, messageDeduplicator.metrics().get(0).deferred());
+    }
+
+    @Test
+    void invoke_shouldReleaseTheClaim_whenTheListenerFails() throws Throwable{
+        //Arrange
+        when(invocation.getArguments()).thenReturn(new Object[]{null, message("id-1")});
+        when(stringCommands.set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(true);
+        when(invocation.proceed()).thenThrow(new IllegalStateException("redis down"));
+
+        //Act & Assert
+        assertThrows(IllegalStateException.class, () -> messageDeduplicator.invoke(invocation));
+        verify(redisLease, times(1)).release(eq("dedup:room-leave-queue:id-1"), anyString());
+        verify(redisTemplate, never()).delete(anyString());
+        verify(stringCommands, never()).set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.UPSERT));
+    }
+
+    @Test
+    void invoke_shouldOnlyHandTheListener_aBatchsFirstDeliveries() throws Throwable{
+        //Arrange
+        Message first = message("id-1"), duplicate = message("id-2");
+        Object[] arguments = {null, List.of(first, duplicate)};
+        when(invocation.getArguments()).thenReturn(arguments);
+        when(stringCommands.set(eq(bytes("dedup:room-leave-queue:id-1")), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(true);
+        when(stringCommands.set(eq(bytes("dedup:room-leave-queue:id-2")), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(false);
+        when(stringCommands.get(bytes("dedup:room-leave-queue:id-2"))).thenReturn(bytes("done"));
+
+        //Act
+        messageDeduplicator.invoke(invocation);
+
+        //Assert
+        assertEquals(List.of(first), arguments[1]);
+        verify(invocation, times(1)).proceed();
+    }
+
+    @Test
+    void claim_shouldKeepTheLocalSetBounded_droppingTheOldestIds(){
+        //Arrange
+        RabbitDedupConfigProperties properties = new RabbitDedupConfigProperties();
+        properties.setLocalCacheSize(2);
+        messageDeduplicator = new MessageDeduplicator(redisTemplate, properties, redisLease);
+        when(stringCommands.set(any(), any(), any(Expiration.class), eq(RedisStringCommands.SetOption.SET_IF_ABSENT))).thenReturn(true);
+        messageDeduplicator.complete(message("id-1"));
+        messageDeduplicator.complete(message("id-2"));
+        messageDeduplicator.complete(message("id-3"));
+
+        //Act & Assert
+        //id-1 was evicted, so it's claimed in redis again
+        assertTrue(messageDeduplicator.claim(message("id-1")));
+        assertFalse(messageDeduplicator.claim(message("id-3")));
+    }
+
+    private Message message(String messageId){
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setMessageId(messageId);
+        messageProperties.setConsumerQueue("room-leave-queue");
+        return new Message(new byte[0], messageProperties);
+    }
+
+    private byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
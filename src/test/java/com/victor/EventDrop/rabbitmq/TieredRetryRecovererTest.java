@@ -0,0 +1,95 @@
+package com.victor.EventDrop.rabbitmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TieredRetryRecovererTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    private final RabbitRetryConfigProperties rabbitRetryConfigProperties = new RabbitRetryConfigProperties();
+    private TieredRetryRecoverer tieredRetryRecoverer;
+
+    @BeforeEach
+    void setUp(){
+        rabbitRetryConfigProperties.setQueues(List.of("room-leave-queue"));
+        tieredRetryRecoverer = new TieredRetryRecoverer(rabbitTemplate, new RetryTiers(rabbitRetryConfigProperties), rabbitRetryConfigProperties);
+        lenient().when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+    }
+
+    @Test
+    void recover_shouldMoveFirstFailure_toTheFirstTier(){
+        //Arrange
+        Message message = message(null);
+
+        //Act
+        tieredRetryRecoverer.recover(message, new IllegalStateException("redis down"));
+
+        //Assert
+        verify(rabbitTemplate, times(1)).send(eq(""), eq("room-leave-queue.retry.1s"), eq(message), any(CorrelationData.class));
+        assertEquals(1, (int) message.getMessageProperties().getHeader(TieredRetryRecoverer.ATTEMPT_HEADER));
+        assertEquals(1, tieredRetryRecoverer.getRouted("room-leave-queue.retry.1s"));
+    }
+
+    @Test
+    void recover_shouldMoveRetriedMessage_toTheNextTier(){
+        //Arrange
+        Message message = message(2);
+
+        //Act
+        tieredRetryRecoverer.recover(message, new IllegalStateException("redis down"));
+
+        //Assert
+        verify(rabbitTemplate, times(1)).send(eq(""), eq("room-leave-queue.retry.30s"), eq(message), any(CorrelationData.class));
+    }
+
+    @Test
+    void recover_shouldPark_afterTheLastTier_orWhenTheMessageCantBeConverted(){
+        //Act
+        tieredRetryRecoverer.recover(message(3), new IllegalStateException("redis down"));
+        tieredRetryRecoverer.recover(message(null), new MessageConversionException("bad json"));
+
+        //Assert
+        verify(rabbitTemplate, times(2)).send(eq(""), eq("room-leave-queue.parking-lot"), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void recover_shouldReject_whenTheQueueHasNoTiers(){
+        //Arrange
+        Message message = message(null);
+        message.getMessageProperties().setConsumerQueue("other-queue");
+
+        //Act & Assert
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> tieredRetryRecoverer.recover(message, new IllegalStateException()));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private Message message(Integer attempt){
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setConsumerQueue("room-leave-queue");
+        if(attempt != null){
+            messageProperties.setHeader(TieredRetryRecoverer.ATTEMPT_HEADER, attempt);
+        }
+        return new Message("{}".getBytes(), messageProperties);
+    }
+}
@@ -0,0 +1,96 @@
+package com.victor.EventDrop.redis;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.metrics.SimpleMetrics;
+import com.victor.EventDrop.occupants.Occupant;
+import com.victor.EventDrop.occupants.OccupantRole;
+import com.victor.EventDrop.rooms.Room;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRedisSerializerTest {
+
+    private RedisTypeRegistry redisTypeRegistry;
+    private GenericJackson2JsonRedisSerializer jsonSerializer;
+    private CompactRedisSerializer compactRedisSerializer;
+
+    @BeforeEach
+    void setUp(){
+        redisTypeRegistry = new RedisTypeRegistry();
+        jsonSerializer = new GenericJackson2JsonRedisSerializer();
+        compactRedisSerializer = new CompactRedisSerializer(redisTypeRegistry, jsonSerializer, true);
+    }
+
+    @Test
+    void registeredTypes_shouldRoundTrip(){
+        //Arrange
+        LocalDateTime now = LocalDateTime.now();
+        Room room = Room.builder().roomCode("1234ABCD").roomName("room_name").createdAt(now).expiresAt(now.plusMinutes(10)).ttl(600).build();
+        Occupant occupant = Occupant.builder().roomCode("1234ABCD").sessionId(UUID.randomUUID()).occupantName("username")
+                .occupantRole(OccupantRole.OWNER).joinedAt(now).build();
+        FileDrop fileDrop = FileDrop.builder().fileId(UUID.randomUUID()).originalFileName("test.txt").fileName("1234ABCD/test.txt")
+                .roomCode("1234ABCD").fileSize(1L << 33).blobUrl("https://blob/test.txt").uploadedAt(now).isDeleted(true).build();
+        SimpleMetrics metrics = new SimpleMetrics(1, null, 3);
+
+        //Act & Assert
+        for (Object value : new Object[]{room, occupant, fileDrop, metrics, now}){
+            byte[] bytes = compactRedisSerializer.serialize(value);
+            assertTrue(CompactRedisSerializer.isCompact(bytes));
+            assertEquals(value, compactRedisSerializer.deserialize(bytes));
+        }
+    }
+
+    @Test
+    void compactValues_shouldBeSmallerThanJson(){
+        SimpleMetrics metrics = new SimpleMetrics(10, 20, 30);
+
+        assertTrue(compactRedisSerializer.serialize(metrics).length < jsonSerializer.serialize(metrics).length);
+    }
+
+    @Test
+    void unregisteredTypes_andStrings_shouldStayJson(){
+        byte[] bytes = compactRedisSerializer.serialize("session:1234");
+
+        assertArrayEquals(jsonSerializer.serialize("session:1234"), bytes);
+        assertEquals("session:1234", compactRedisSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void deserialize_shouldReadLegacyJson_andPlainCounters(){
+        SimpleMetrics metrics = new SimpleMetrics(1, 2, 3);
+
+        assertEquals(metrics, compactRedisSerializer.deserialize(jsonSerializer.serialize(metrics)));
+        assertEquals(42, compactRedisSerializer.deserialize("42".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void jsonMode_shouldWriteJson_butStillReadCompact(){
+        CompactRedisSerializer jsonMode = new CompactRedisSerializer(redisTypeRegistry, jsonSerializer, false);
+        SimpleMetrics metrics = new SimpleMetrics(1, 2, 3);
+
+        assertFalse(CompactRedisSerializer.isCompact(jsonMode.serialize(metrics)));
+        assertEquals(metrics, jsonMode.deserialize(compactRedisSerializer.serialize(metrics)));
+    }
+
+    @Test
+    void deserialize_shouldThrow_onUnknownTypeOrVersion(){
+        byte[] unknownType = {CompactRedisSerializer.MARKER, CompactRedisSerializer.FORMAT_VERSION, 99};
+        byte[] unknownVersion = {CompactRedisSerializer.MARKER, 9, 10};
+
+        assertThrows(SerializationException.class, () -> compactRedisSerializer.deserialize(unknownType));
+        assertThrows(SerializationException.class, () -> compactRedisSerializer.deserialize(unknownVersion));
+    }
+
+    @Test
+    void register_shouldRejectReusedIds(){
+        assertThrows(IllegalArgumentException.class, () -> redisTypeRegistry.register(10, String.class, null));
+    }
+}
@@ -0,0 +1,79 @@
+package com.victor.EventDrop.redis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpirySchedulerTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private KeyExpiryDispatcher keyExpiryDispatcher;
+    @Mock
+    private ExpiryDeadlines expiryDeadlines;
+    @Mock
+    private RedisLease redisLease;
+
+    private final RedisExpiryConfigProperties redisExpiryConfigProperties = new RedisExpiryConfigProperties();
+    private ExpiryScheduler expiryScheduler;
+
+    @BeforeEach
+    void setUp(){
+        redisExpiryConfigProperties.setMode(RedisExpiryConfigProperties.Mode.SCHEDULER);
+        expiryScheduler = new ExpiryScheduler(redisTemplate, keyExpiryDispatcher, expiryDeadlines, redisExpiryConfigProperties, redisLease);
+        when(expiryDeadlines.partitionKey(3)).thenReturn("expiry:{3}");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void drain_shouldAcknowledgeHandledKeys_andRescheduleExtendedOnes(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(bytes("room:1234ABCD"), bytes("1000"), bytes("room:5678EFGH"), bytes("2000")));
+        when(keyExpiryDispatcher.expire("expiry:{3}", "room:1234ABCD")).thenReturn(0L);
+        when(keyExpiryDispatcher.expire("expiry:{3}", "room:5678EFGH")).thenReturn(60000L);
+
+        //Act
+        int handled = expiryScheduler.drain(3);
+
+        //Assert
+        assertEquals(1, handled);
+        assertEquals(1, expiryScheduler.getExpiriesHandled().get());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void drain_shouldLeaveKeyClaimed_whenItsExpiryFails(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(), any(), any()))
+                .thenReturn(List.of(bytes("room:1234ABCD"), bytes("1000")));
+        when(keyExpiryDispatcher.expire("expiry:{3}", "room:1234ABCD")).thenThrow(new IllegalStateException("redis down"));
+
+        //Act
+        int handled = expiryScheduler.drain(3);
+
+        //Assert
+        assertEquals(0, handled);
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    private byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,149 @@
+package com.victor.EventDrop.redis;
+
+import com.victor.EventDrop.rooms.Room;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyExpiredEvent;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KeyExpiryDispatcherTest {
+
+    @Mock
+    private KeyspaceEventSubscriber keyspaceEventSubscriber;
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+    @Mock
+    private KeyExpiryHandler<Room> roomHandler;
+
+    private final RedisExpiryConfigProperties redisExpiryConfigProperties = new RedisExpiryConfigProperties();
+    private KeyExpiryDispatcher keyExpiryDispatcher;
+
+    @BeforeEach
+    void setUp(){
+        when(roomHandler.keyspace()).thenReturn("room");
+        keyExpiryDispatcher = new KeyExpiryDispatcher(keyspaceEventSubscriber, redisTemplate, redisEntityWriter, redisExpiryConfigProperties, List.of(roomHandler));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onMessage_shouldRouteExpiredKey_toItsKeyspaceHandler(){
+        //Arrange
+        Map<byte[], byte[]> phantom = Map.of("roomName".getBytes(), "room_name".getBytes());
+        Room room = Room.builder().roomCode("1234ABCD").build();
+        when(roomHandler.type()).thenReturn(Room.class);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(List.of(phantom, Set.of()));
+        when(redisEntityWriter.read(Room.class, phantom)).thenReturn(room);
+
+        //Act
+        keyExpiryDispatcher.onMessage(message("__keyspace@0__:room:1234ABCD", "expired"), null);
+
+        //Assert
+        ArgumentCaptor<RedisKeyExpiredEvent<Room>> captor = ArgumentCaptor.forClass(RedisKeyExpiredEvent.class);
+        verify(roomHandler, times(1)).onKeyExpired(captor.capture());
+        assertEquals("room", captor.getValue().getKeyspace());
+        assertArrayEquals("1234ABCD".getBytes(StandardCharsets.UTF_8), captor.getValue().getId());
+        assertEquals(room, captor.getValue().getValue());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void onMessage_shouldDropPhantomKeys_otherEvents_andUnroutedKeyspaces(){
+        keyExpiryDispatcher.onMessage(message("__keyspace@0__:room:1234ABCD:phantom", "expired"), null);
+        keyExpiryDispatcher.onMessage(message("__keyspace@0__:room:1234ABCD", "hset"), null);
+        keyExpiryDispatcher.onMessage(message("__keyspace@0__:metrics:1", "expired"), null);
+        keyExpiryDispatcher.onMessage(message("__keyspace@0__:count#127.0.0.1#5", "expired"), null);
+
+        verify(roomHandler, never()).onKeyExpired(any());
+        verifyNoInteractions(redisTemplate, redisEntityWriter);
+    }
+
+    @Test
+    void constructor_shouldRejectTwoHandlersForOneKeyspace(){
+        assertThrows(IllegalStateException.class,
+                () -> new KeyExpiryDispatcher(keyspaceEventSubscriber, redisTemplate, redisEntityWriter, redisExpiryConfigProperties, List.of(roomHandler, roomHandler)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void expire_shouldRemoveAndRouteKey_whoseDeadlineCameUp(){
+        //Arrange
+        Map<byte[], byte[]> hash = Map.of("roomName".getBytes(), "room_name".getBytes());
+        Room room = Room.builder().roomCode("1234ABCD").build();
+        when(roomHandler.type()).thenReturn(Room.class);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(List.of(-2L, Map.of(), hash, Set.of()));
+        when(redisEntityWriter.read(Room.class, hash)).thenReturn(room);
+
+        //Act
+        long remaining = keyExpiryDispatcher.expire("expiry:{3}", "room:1234ABCD");
+
+        //Assert
+        ArgumentCaptor<RedisKeyExpiredEvent<Room>> captor = ArgumentCaptor.forClass(RedisKeyExpiredEvent.class);
+        assertEquals(0, remaining);
+        verify(roomHandler, times(1)).onKeyExpired(captor.capture());
+        assertEquals(room, captor.getValue().getValue());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void expire_shouldReturnRemainingTtl_whenKeyWasExtended(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenReturn(List.of(60000L, Map.of("roomName".getBytes(), "room_name".getBytes()), Map.of(), Set.of()));
+
+        //Act
+        long remaining = keyExpiryDispatcher.expire("expiry:{3}", "room:1234ABCD");
+
+        //Assert
+        assertEquals(60000L, remaining);
+        verify(roomHandler, never()).onKeyExpired(any());
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void expire_shouldSkipKey_thatWasDeletedBeforeItsDeadline(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(List.of(-2L, Map.of(), Map.of(), Set.of()));
+
+        //Act
+        long remaining = keyExpiryDispatcher.expire("expiry:{3}", "room:1234ABCD");
+
+        //Assert
+        assertEquals(0, remaining);
+        verify(roomHandler, never()).onKeyExpired(any());
+    }
+
+    @Test
+    void subscribe_shouldNotSubscribe_whenExpiriesAreScheduled(){
+        //Arrange
+        redisExpiryConfigProperties.setMode(RedisExpiryConfigProperties.Mode.SCHEDULER);
+
+        //Act
+        keyExpiryDispatcher.subscribe();
+
+        //Assert
+        verify(keyspaceEventSubscriber, never()).subscribe(any(), anyCollection(), anyString());
+    }
+
+    private DefaultMessage message(String channel, String body){
+        return new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package com.victor.EventDrop.redis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KeyspaceEventSubscriberTest {
+
+    @Mock
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Mock
+    private RedisClusterNodes redisClusterNodes;
+    @Mock
+    private AsyncTaskExecutor asyncTaskExecutor;
+    @Mock
+    private RedisConnectionFactory redisConnectionFactory;
+    @Mock
+    private RedisConnection connection;
+    @Mock
+    private RedisServerCommands serverCommands;
+    @Mock
+    private MessageListener listener;
+
+    private final List<PatternTopic> topics = List.of(new PatternTopic("__keyevent@*__:del"));
+    private KeyspaceEventSubscriber keyspaceEventSubscriber;
+
+    @BeforeEach
+    void setUp(){
+        keyspaceEventSubscriber = new KeyspaceEventSubscriber(redisMessageListenerContainer, redisClusterNodes, new RedisClusterConfigProperties(), asyncTaskExecutor);
+        when(redisClusterNodes.masters()).thenReturn(List.of(new RedisClusterNodes.RedisNode("standalone", redisConnectionFactory)));
+        when(redisConnectionFactory.getConnection()).thenReturn(connection);
+        when(connection.serverCommands()).thenReturn(serverCommands);
+    }
+
+    @Test
+    void subscribe_shouldAddTheMissingFlags_andSubscribeOnTheSharedContainer(){
+        //Arrange
+        when(serverCommands.getConfig("notify-keyspace-events")).thenReturn(config("Ex"));
+
+        //Act
+        keyspaceEventSubscriber.subscribe(listener, topics, "Egx");
+
+        //Assert
+        verify(serverCommands, times(1)).setConfig("notify-keyspace-events", "Exg");
+        verify(redisMessageListenerContainer, times(1)).addMessageListener(listener, topics);
+    }
+
+    @Test
+    void subscribe_shouldLeaveTheFlags_whenAllCoversTheEventTypes(){
+        //Arrange
+        when(serverCommands.getConfig("notify-keyspace-events")).thenReturn(config("KEA"));
+
+        //Act
+        keyspaceEventSubscriber.subscribe(listener, topics, "Egx");
+
+        //Assert
+        verify(serverCommands, never()).setConfig(anyString(), anyString());
+        verify(redisMessageListenerContainer, times(1)).addMessageListener(listener, topics);
+    }
+
+    private Properties config(String flags){
+        Properties config = new Properties();
+        config.setProperty("notify-keyspace-events", flags);
+        return config;
+    }
+}
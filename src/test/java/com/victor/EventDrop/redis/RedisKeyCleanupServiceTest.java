@@ -0,0 +1,137 @@
+package com.victor.EventDrop.redis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisKeyCleanupServiceTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisClusterNodes redisClusterNodes;
+    @Mock
+    private RedisConnectionFactory nodeConnectionFactory;
+    @Mock
+    private RedisLease redisLease;
+
+    private RedisSweeperConfigProperties properties;
+    private RedisKeyCleanupService cleanupService;
+    private RedisClusterNodes.RedisNode node;
+
+    @BeforeEach
+    void setUp(){
+        properties = new RedisSweeperConfigProperties();
+        cleanupService = spy(new RedisKeyCleanupService(redisTemplate, properties, redisClusterNodes, redisLease));
+        node = new RedisClusterNodes.RedisNode("standalone", nodeConnectionFactory);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sweepPage_shouldExpireOnlyKeysWithoutTtl_inOnePipeline(){
+        //Arrange
+        doReturn(new RedisKeyCleanupService.ScanPage("17", List.of(bytes("room:A"), bytes("room:B"), bytes("metrics:1"), bytes("room:C"))))
+                .when(cleanupService).scanPage(node, "0");
+        //TTL checks, then the expiries, then the metrics
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of(-1L, 120L, -2L))
+                .thenReturn(List.of(true))
+                .thenReturn(List.of(1L, 1L));
+
+        //Act
+        String cursor = cleanupService.sweepPage(node, "0");
+
+        //Assert
+        assertEquals("17", cursor);
+        assertEquals(1, cleanupService.getOrphansFound().get());
+        assertEquals(1, cleanupService.getOrphansFixed().get());
+        verify(redisTemplate, times(3)).executePipelined(any(RedisCallback.class));
+        //The cursor is saved after every page
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sweep_shouldResumeFromSavedCursor_whenHoldingTheLease(){
+        //Arrange
+        when(redisLease.acquire(eq("orphan-sweeper:lease"), anyString(), any(Duration.class))).thenReturn(true);
+        when(redisClusterNodes.masters()).thenReturn(List.of(node));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(bytes("42"));
+        doReturn("0").when(cleanupService).sweepPage(node, "42");
+
+        //Act
+        cleanupService.sweep();
+
+        //Assert
+        verify(cleanupService, times(1)).sweepPage(node, "42");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sweep_shouldSweepEveryMaster_fromItsOwnCursor(){
+        //Arrange
+        RedisClusterNodes.RedisNode other = new RedisClusterNodes.RedisNode("b4f1", nodeConnectionFactory);
+        when(redisLease.acquire(eq("orphan-sweeper:lease"), anyString(), any(Duration.class))).thenReturn(true);
+        when(redisClusterNodes.masters()).thenReturn(List.of(node, other));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(bytes("42"), bytes("7"));
+        doReturn("0").when(cleanupService).sweepPage(any(RedisClusterNodes.RedisNode.class), anyString());
+
+        //Act
+        cleanupService.sweep();
+
+        //Assert
+        verify(cleanupService, times(1)).sweepPage(node, "42");
+        verify(cleanupService, times(1)).sweepPage(other, "7");
+    }
+
+    @Test
+    void scanPage_shouldScanTheNode_fromTheGivenCursor(){
+        //Arrange
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisScriptingCommands scriptingCommands = mock(RedisScriptingCommands.class);
+        when(nodeConnectionFactory.getConnection()).thenReturn(connection);
+        when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        when(scriptingCommands.eval(any(byte[].class), eq(ReturnType.MULTI), eq(0), any(byte[][].class)))
+                .thenReturn(List.of(bytes("17"), List.of(bytes("room:A"))));
+
+        //Act
+        RedisKeyCleanupService.ScanPage page = cleanupService.scanPage(node, "42");
+
+        //Assert
+        assertEquals("17", page.cursor());
+        assertArrayEquals(bytes("room:A"), page.keys().get(0));
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    void sweep_shouldDoNothing_whenAnotherNodeHoldsTheLease(){
+        //Arrange
+        when(redisLease.acquire(eq("orphan-sweeper:lease"), anyString(), any(Duration.class))).thenReturn(false);
+
+        //Act
+        cleanupService.sweep();
+
+        //Assert
+        verify(cleanupService, never()).sweepPage(any(), anyString());
+    }
+
+    private byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
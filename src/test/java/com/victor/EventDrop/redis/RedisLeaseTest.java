@@ -0,0 +1,67 @@
+package com.victor.EventDrop.redis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisLeaseTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @InjectMocks
+    private RedisLease redisLease;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void acquire_shouldTakeOrRenewInOneScript_withTheOwnerAndTtlAsPlainStrings(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), eq(RedisSerializer.string()), any(RedisSerializer.class),
+                eq(List.of("orphan-sweeper:lease")), eq("node-a"), eq("30000"))).thenReturn(1L);
+
+        //Act
+        boolean acquired = redisLease.acquire("orphan-sweeper:lease", "node-a", Duration.ofSeconds(30));
+
+        //Assert
+        assertTrue(acquired);
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void acquire_shouldReturnFalse_whenAnotherOwnerHoldsTheLease(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class), anyList(), any(), any()))
+                .thenReturn(0L);
+
+        //Act & Assert
+        assertFalse(redisLease.acquire("orphan-sweeper:lease", "node-a", Duration.ofSeconds(30)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void release_shouldOnlyDeleteThroughTheCompareScript(){
+        //Arrange
+        when(redisTemplate.execute(any(RedisScript.class), eq(RedisSerializer.string()), any(RedisSerializer.class),
+                eq(List.of("expiry:{3}:lease")), eq("node-a"))).thenReturn(0L);
+
+        //Act
+        boolean released = redisLease.release("expiry:{3}:lease", "node-a");
+
+        //Assert
+        assertFalse(released);
+        verify(redisTemplate, never()).delete(anyString());
+    }
+}
@@ -0,0 +1,112 @@
+package com.victor.EventDrop.redis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaReadRouterTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisTemplate<String, Object> replicaRedisTemplate;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+
+    private RedisReplicaConfigProperties properties;
+    private ReplicaReadRouter replicaReadRouter;
+
+    @BeforeEach
+    void setUp(){
+        properties = new RedisReplicaConfigProperties();
+        properties.setEnabled(true);
+        properties.setMaxLagInMillis(1000);
+        replicaReadRouter = new ReplicaReadRouter(redisTemplate, replicaRedisTemplate, redisEntityWriter, properties);
+    }
+
+    @Test
+    void read_shouldUsePrimary_untilTheLagIsKnown(){
+        //Act
+        String result = replicaReadRouter.read(ReadPreference.REPLICA_PREFERRED, template -> template == redisTemplate ? "primary" : "replica");
+
+        //Assert
+        assertEquals("primary", result);
+        assertEquals(1, replicaReadRouter.getPrimaryReads().get());
+        assertEquals(0, replicaReadRouter.getReplicaReads().get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void read_shouldUseReplica_whileItIsCaughtUp_andFallBackWhenItMissesTheValue(){
+        //Arrange
+        catchUp();
+
+        //Act
+        String replicaResult = replicaReadRouter.read(ReadPreference.REPLICA_PREFERRED, template -> template == redisTemplate ? "primary" : "replica");
+        Optional<String> missingResult = replicaReadRouter.read(ReadPreference.REPLICA_PREFERRED,
+                template -> template == redisTemplate ? Optional.of("primary") : Optional.empty());
+        String primaryResult = replicaReadRouter.read(ReadPreference.PRIMARY, template -> template == redisTemplate ? "primary" : "replica");
+
+        //Assert
+        assertEquals("replica", replicaResult);
+        assertEquals(Optional.of("primary"), missingResult);
+        assertEquals("primary", primaryResult);
+        assertEquals(1, replicaReadRouter.getReplicaReads().get());
+        assertEquals(2, replicaReadRouter.getPrimaryReads().get());
+        assertEquals(1, replicaReadRouter.getFallbacks().get());
+    }
+
+    @Test
+    void read_shouldFallBackToPrimary_whenTheReplicaReturnsAnEmptyCollection(){
+        //Arrange
+        catchUp();
+
+        //Act
+        List<String> result = replicaReadRouter.read(ReadPreference.REPLICA_PREFERRED,
+                template -> template == redisTemplate ? List.of("primary") : List.of());
+
+        //Assert
+        assertEquals(List.of("primary"), result);
+        assertEquals(0, replicaReadRouter.getReplicaReads().get());
+        assertEquals(1, replicaReadRouter.getFallbacks().get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void probe_shouldRouteToPrimary_whenTheReplicaFallsBehind(){
+        //Arrange
+        catchUp();
+        assertTrue(replicaReadRouter.isReplicaHealthy());
+
+        //The replica still returns a heartbeat from long before the last one written
+        when(replicaRedisTemplate.execute(any(RedisCallback.class))).thenReturn("1".getBytes(StandardCharsets.UTF_8));
+
+        //Act
+        replicaReadRouter.probe();
+
+        //Assert
+        assertFalse(replicaReadRouter.isReplicaHealthy());
+    }
+
+    //Two probes: the first writes a heartbeat, the second sees it on the replica
+    @SuppressWarnings("unchecked")
+    private void catchUp(){
+        replicaReadRouter.probe();
+
+        when(replicaRedisTemplate.execute(any(RedisCallback.class))).thenAnswer(invocation ->
+                String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+        replicaReadRouter.probe();
+    }
+}
@@ -0,0 +1,19 @@
+package com.victor.EventDrop.redis.embedded;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedScriptsTest {
+
+    @Test
+    void missingPorts_shouldBeEmpty_forEveryScriptUnderResources(){
+        //Act
+        List<String> missing = EmbeddedScripts.missingPorts();
+
+        //Assert
+        assertTrue(missing.isEmpty(), "Scripts without an embedded port: " + missing);
+    }
+}
@@ -0,0 +1,88 @@
+package com.victor.EventDrop.redis.embedded;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    private HierarchicalTimingWheel<String> wheel;
+
+    @BeforeEach
+    void setUp(){
+        //A small wheel so deadlines a few hundred millis out already cascade through several levels
+        wheel = new HierarchicalTimingWheel<>(10, 4, 1_000);
+    }
+
+    @Test
+    void schedule_shouldReturnFalse_whenDeadlineHasPassed(){
+        //Act
+        boolean scheduled = wheel.schedule("key", 999);
+
+        //Assert
+        assertFalse(scheduled);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_shouldNotFireItems_beforeTheirDeadline(){
+        //Arrange
+        wheel.schedule("key", 1_055);
+        List<String> fired = new ArrayList<>();
+
+        //Act
+        int count = wheel.advance(1_050, (item, deadline) -> fired.add(item));
+
+        //Assert
+        assertEquals(0, count);
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void advance_shouldFireEveryItem_noEarlierThanItsDeadlineAndAtMostOneTickLate(){
+        //Arrange
+        long[] deadlines = {1_000, 1_009, 1_010, 1_039, 1_040, 1_161, 1_999, 2_345, 9_876, 65_000};
+        for (long deadline : deadlines){
+            assertTrue(wheel.schedule("key-" + deadline, deadline));
+        }
+        Map<String, Long> firedAt = new LinkedHashMap<>();
+
+        //Act
+        for (long now = 1_000; now <= 70_000; now++){
+            long time = now;
+            wheel.advance(now, (item, deadline) -> firedAt.put(item, time));
+        }
+
+        //Assert
+        assertEquals(deadlines.length, firedAt.size());
+        assertEquals(0, wheel.size());
+        for (long deadline : deadlines){
+            long at = firedAt.get("key-" + deadline);
+            assertTrue(at > deadline, "fired early: " + deadline + " at " + at);
+            assertTrue(at <= deadline + 10, "fired late: " + deadline + " at " + at);
+        }
+    }
+
+    @Test
+    void advance_shouldFireItemsInDeadlineOrder_whenTheWheelJumpsAhead(){
+        //Arrange
+        wheel.schedule("late", 1_700);
+        wheel.schedule("early", 1_020);
+        wheel.schedule("middle", 1_300);
+        List<String> fired = new ArrayList<>();
+
+        //Act
+        int count = wheel.advance(5_000, (item, deadline) -> fired.add(item));
+
+        //Assert
+        assertEquals(3, count);
+        assertEquals(List.of("early", "middle", "late"), fired);
+    }
+}
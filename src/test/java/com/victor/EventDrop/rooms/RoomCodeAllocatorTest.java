@@ -0,0 +1,114 @@
+package com.victor.EventDrop.rooms;
+
+import com.victor.EventDrop.exceptions.RoomCreationException;
+import com.victor.EventDrop.rooms.configproperties.RoomCodePoolConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoomCodeAllocatorTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RoomCodePoolConfigProperties roomCodePoolConfigProperties;
+    @Mock
+    private AsyncTaskExecutor asyncTaskExecutor;
+    @Mock
+    private ValueOperations<String, Object> valueOperations;
+
+    @InjectMocks
+    private RoomCodeAllocator roomCodeAllocator;
+
+    @BeforeEach
+    void setUp(){
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(roomCodePoolConfigProperties.getMaxReservationAttempts()).thenReturn(5);
+        lenient().when(roomCodePoolConfigProperties.getSize()).thenReturn(4);
+        lenient().when(roomCodePoolConfigProperties.getLowWaterMark()).thenReturn(1);
+    }
+
+    @Test
+    void allocate_shouldReserveRoomCode_withSetIfAbsent(){
+        //Arrange
+        Duration ttl = Duration.ofMinutes(10);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(ttl))).thenReturn(true);
+
+        //Act
+        String roomCode = roomCodeAllocator.allocate(ttl);
+
+        //Assert
+        assertEquals(8, roomCode.length());
+        verify(valueOperations, times(1)).setIfAbsent("room-code:" + roomCode, roomCode, ttl);
+    }
+
+    @Test
+    void allocate_shouldThrowRoomCreationException_whenEveryCodeIsTaken(){
+        //Arrange
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        //Act && Assert
+        RoomCreationException ex = assertThrows(RoomCreationException.class, () -> roomCodeAllocator.allocate(Duration.ofMinutes(1)));
+        assertEquals("Failed to reserve a unique room code after 5 attempts", ex.getMessage());
+        verify(valueOperations, times(5)).setIfAbsent(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void allocate_shouldServeCodesFromPool_afterRefill(){
+        //Arrange
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.nCopies(4, false));
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        roomCodeAllocator.refill();
+
+        //Act
+        String roomCode = roomCodeAllocator.allocate(Duration.ofMinutes(1));
+
+        //Assert
+        assertNotNull(roomCode);
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        //Three codes are still pooled, above the low water mark
+        verify(asyncTaskExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    void refill_shouldDropCodesThatAreAlreadyReserved(){
+        //Arrange
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(true, true, true, true));
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        //Act
+        roomCodeAllocator.refill();
+        roomCodeAllocator.allocate(Duration.ofMinutes(1));
+
+        //Assert
+        //Nothing was pooled, so the allocation had to generate a code and kick off a refill
+        verify(asyncTaskExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void generateRoomCode_shouldGenerate8DigitRoomCode(){
+        String str = roomCodeAllocator.generateRoomCode();
+
+        //Assert
+        assertNotNull(str);
+        assertEquals(8, str.length());
+    }
+}
@@ -1,5 +1,7 @@
 package com.victor.EventDrop.rooms;
 
+import com.victor.EventDrop.auth.SessionTtlRefresher;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,7 +12,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -20,12 +24,16 @@ class RoomEmitterHandlerTest {
 
 
     private ConcurrentHashMap<String, ConcurrentHashMap<String, SseEmitter>> sseEmitters;
+    private ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap;
     private RoomEmitterHandler handler;
+    @Mock
+    private SessionTtlRefresher sessionTtlRefresher;
 
     @BeforeEach
     void setUp() {
         sseEmitters = new ConcurrentHashMap<>();
-        handler = new RoomEmitterHandler(sseEmitters);
+        roomEventHashMap = new ConcurrentHashMap<>();
+        handler = new RoomEmitterHandler(sseEmitters, roomEventHashMap, sessionTtlRefresher);
     }
 
     @Test
@@ -88,4 +96,48 @@ class RoomEmitterHandlerTest {
         // then
         assertFalse(sseEmitters.containsKey(roomCode));
     }
-}
\ No newline at end of file
+
+    @Test
+    void sendHeartbeats_shouldTouchLiveSessions_andDropDeadEmitters() throws IOException {
+        // given
+        SseEmitter live = mock(SseEmitter.class);
+        SseEmitter dead = mock(SseEmitter.class);
+        doThrow(new IOException("broken pipe")).when(dead).send(any(SseEmitter.SseEventBuilder.class));
+
+        ConcurrentHashMap<String, SseEmitter> sessions = new ConcurrentHashMap<>();
+        sessions.put("live", live);
+        sessions.put("dead", dead);
+        sseEmitters.put("room4", sessions);
+
+        // when
+        handler.sendHeartbeats();
+
+        // then
+        verify(sessionTtlRefresher, times(1)).touch("live", "room4");
+        verify(sessionTtlRefresher, never()).touch(eq("dead"), anyString());
+        assertTrue(sseEmitters.get("room4").containsKey("live"));
+        assertFalse(sseEmitters.get("room4").containsKey("dead"));
+    }
+
+    @Test
+    void sendHeartbeats_shouldPingUnderTheRoomsEmitLock() throws IOException {
+        // given
+        SseEmitter emitter = mock(SseEmitter.class);
+        ConcurrentLinkedDeque<RoomStateDto> roomLock = new ConcurrentLinkedDeque<>();
+        roomEventHashMap.put("room5", roomLock);
+        ConcurrentHashMap<String, SseEmitter> sessions = new ConcurrentHashMap<>();
+        sessions.put("s1", emitter);
+        sseEmitters.put("room5", sessions);
+        doAnswer(invocation -> {
+            assertTrue(Thread.holdsLock(roomLock));
+            return null;
+        }).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        // when
+        handler.sendHeartbeats();
+
+        // then
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(sessionTtlRefresher, times(1)).touch("s1", "room5");
+    }
+}
@@ -1,16 +1,23 @@
 package com.victor.EventDrop.rooms;
 
+import com.victor.EventDrop.auth.SessionRevocationList;
+import com.victor.EventDrop.auth.SessionTokenService;
 import com.victor.EventDrop.exceptions.*;
 import com.victor.EventDrop.occupants.Occupant;
 import com.victor.EventDrop.occupants.OccupantRole;
 import com.victor.EventDrop.occupants.OccupantRoomJoinResponse;
-import com.victor.EventDrop.rooms.configproperties.RoomLeaveConfigProperties;
+import com.victor.EventDrop.occupants.OccupantService;
 import com.victor.EventDrop.rooms.dtos.RoomCreateRequestDto;
 import com.victor.EventDrop.rooms.dtos.RoomJoinRequestDto;
 import com.victor.EventDrop.rooms.dtos.RoomJoinResponseDto;
+import com.victor.EventDrop.redis.ExpiryDeadlines;
+import com.victor.EventDrop.redis.RedisEntityWriter;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomJoinEvent;
 import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import com.victor.EventDrop.transport.EventTopic;
+import com.victor.EventDrop.transport.EventTransport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,10 +26,12 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
@@ -33,18 +42,28 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class RoomServiceImplTest {
 
-    @Mock
-    private RoomLeaveConfigProperties roomLeaveConfigProperties;
     @Mock
     private RoomRepository roomRepository;
     @Mock
-    private RabbitTemplate rabbitTemplate;
+    private EventTransport eventTransport;
     @Mock
     private RoomMapper roomMapper;
     @Mock
-    private SecureRandom secureRandom;
+    private RoomCodeAllocator roomCodeAllocator;
+    @Mock
+    private RedisEntityWriter redisEntityWriter;
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
     @Mock
     private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private OccupantService occupantService;
+    @Mock
+    private SessionTokenService sessionTokenService;
+    @Mock
+    private SessionRevocationList sessionRevocationList;
+    @Mock
+    private ExpiryDeadlines expiryDeadlines;
 
     @InjectMocks
     @Spy
@@ -95,21 +114,12 @@ class RoomServiceImplTest {
     public void createRoom_shouldReturnRoomJoinResponseDto(){
         //Arrange
         double ttl = roomCreateRequestDto.ttl();
-        OccupantRoomJoinResponse occupantRoomJoinResponse = new OccupantRoomJoinResponse(true, 200);
 
-        doReturn("1234ABCD").when(roomService).validateTtlAndGenerateRoomCode(ttl);
-        when(roomRepository.findByRoomCode(anyString())).thenReturn(Optional.of(room));
+        doReturn("1234ABCD").when(roomService).validateTtlAndReserveRoomCode(ttl);
         try(MockedStatic<UUID> staticUuid = mockStatic(UUID.class)){
             staticUuid.when(UUID::randomUUID).thenReturn(sessionIdAsUuid);
-            assertEquals(sessionIdAsUuid.toString(), sessionId);
-            when(rabbitTemplate.convertSendAndReceive(
-                    anyString(),
-                    anyString(),
-                    any(RoomJoinEvent.class)
-            )).thenReturn(occupantRoomJoinResponse);
-
-            when(roomMapper.toRoomJoinResponseDto(room, sessionId , "my_name")).thenReturn(roomJoinResponseDto);
-
+            when(sessionTokenService.issue(any(Occupant.class), any(LocalDateTime.class))).thenReturn(sessionId);
+            when(roomMapper.toRoomJoinResponseDto(any(Room.class), eq(sessionId), eq("my_name"))).thenReturn(roomJoinResponseDto);
 
             //Act
             RoomJoinResponseDto expectedResponseDto = roomService.createRoom(roomCreateRequestDto);
@@ -117,73 +127,68 @@ class RoomServiceImplTest {
             //Assert
             assertNotNull(expectedResponseDto);
             assertEquals(roomJoinResponseDto, expectedResponseDto);
-            verify(roomRepository, times(1)).save(any(Room.class));
+            verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+            verify(roomRepository, never()).save(any(Room.class));
             verify(eventPublisher, times(2)).publishEvent(any(RoomEvent.class));
+            verify(eventPublisher, times(1)).publishEvent(new OccupancyChangedEvent("1234ABCD", 1));
         }
     }
 
-
     @Test
-    public void createRoom_shouldThrowRoomTtlExceededException_givenTtlGreaterThan3Days(){
-
+    public void createRoom_shouldReleaseRoomCode_whenWriteFails(){
         //Arrange
-        RoomCreateRequestDto invalidRoomCreateRequestDto = new RoomCreateRequestDto(
-                "room_name",
-                4321,
-                "my_name"
-        );
+        double ttl = roomCreateRequestDto.ttl();
+
+        doReturn("1234ABCD").when(roomService).validateTtlAndReserveRoomCode(ttl);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenThrow(new RuntimeException("redis down"));
 
         //Act && Assert
-        RoomTtlExceededException ex = assertThrows(RoomTtlExceededException.class, () -> {
-           roomService.createRoom(invalidRoomCreateRequestDto);
-        });
-        assertEquals("Room TTL of 4321 minutes exceeded the maximum of 0 minutes.", ex.getMessage());
+        assertThrows(RoomCreationException.class, () -> roomService.createRoom(roomCreateRequestDto));
+        verify(roomCodeAllocator, times(1)).release("1234ABCD");
+        verify(eventPublisher, never()).publishEvent(any(RoomEvent.class));
     }
 
     @Test
-    public void ensureUniqueDigitRoomCode_shouldReturnUnique8DigitRoomCode(){
+    public void validateTtlAndReserveRoomCode_shouldReserveCodeForRoomLifetime(){
         //Arrange
-        when(roomRepository.existsByRoomCode(anyString())).thenReturn(false);
+        ReflectionTestUtils.setField(roomService, "maxTtlInMins", 1440L);
+        when(roomCodeAllocator.allocate(Duration.ofMinutes(1))).thenReturn("1234ABCD");
 
         //Act
-        String roomCode = roomService.ensureUniqueRoomCode();
+        String roomCode = roomService.validateTtlAndReserveRoomCode(1);
 
         //Assert
-        assertNotNull(roomCode);
-        assertEquals(8, roomCode.length());
-        verify(roomRepository, times(1)).existsByRoomCode(anyString());
+        assertEquals("1234ABCD", roomCode);
     }
 
+
     @Test
-    public void ensureUniqueDigitRoomCode_shouldThrowRoomCreationException_whenRoomExistsByRoomCodeAfter5Attempts(){
+    public void createRoom_shouldThrowRoomTtlExceededException_givenTtlGreaterThan3Days(){
+
         //Arrange
-        String roomCode = "room-code";
-        when(roomService.generateRoomCode()).thenReturn(roomCode, roomCode, roomCode, roomCode, roomCode);
-        when(roomRepository.existsByRoomCode(roomCode)).thenReturn(true, true, true, true, true);
+        RoomCreateRequestDto invalidRoomCreateRequestDto = new RoomCreateRequestDto(
+                "room_name",
+                4321,
+                "my_name"
+        );
 
         //Act && Assert
-        RoomCreationException ex = assertThrows(RoomCreationException.class, () -> {
-            roomService.ensureUniqueRoomCode();
+        RoomTtlExceededException ex = assertThrows(RoomTtlExceededException.class, () -> {
+           roomService.createRoom(invalidRoomCreateRequestDto);
         });
-        verify(roomService, times(5)).generateRoomCode();
-        verify(roomRepository, times(5)).existsByRoomCode(roomCode);
-        assertEquals("Failed to generate unique room code after 5 attempts", ex.getMessage());
+        assertEquals("Room TTL of 4321 minutes exceeded the maximum of 0 minutes.", ex.getMessage());
     }
 
     @Test
     public void joinRoom_shouldReturnRoomJoinResponseDto(){
         //Arrange
-        OccupantRoomJoinResponse occupantRoomJoinResponse = new OccupantRoomJoinResponse(true, 200);
+        OccupantRoomJoinResponse occupantRoomJoinResponse = new OccupantRoomJoinResponse(true, 200, room);
 
-        when(roomRepository.findByRoomCode(anyString())).thenReturn(Optional.of(room));
         try(MockedStatic<UUID> staticUuid = mockStatic(UUID.class)){
             staticUuid.when(UUID::randomUUID).thenReturn(sessionIdAsUuid);
             assertEquals(sessionIdAsUuid.toString(), sessionId);
-            when(rabbitTemplate.convertSendAndReceive(
-                    anyString(),
-                    anyString(),
-                    any(RoomJoinEvent.class)
-            )).thenReturn(occupantRoomJoinResponse);
+            when(occupantService.createOccupant(any(RoomJoinEvent.class))).thenReturn(occupantRoomJoinResponse);
+            when(sessionTokenService.issue(any(Occupant.class), eq(room.getExpiresAt()))).thenReturn(sessionId);
             when(roomMapper.toRoomJoinResponseDto(room, sessionId , "my_name")).thenReturn(roomJoinResponseDto);
 
 
@@ -193,10 +198,21 @@ class RoomServiceImplTest {
             //Assert
             assertNotNull(expectedResponseDto);
             assertEquals(roomJoinResponseDto, expectedResponseDto);
+            verify(roomRepository, never()).findByRoomCode(anyString());
             verify(eventPublisher, times(1)).publishEvent(any(RoomEvent.class));
         }
     }
 
+    @Test
+    public void joinRoom_shouldThrowNoSuchRoomException_whenRoomDoesNotExist(){
+        //Arrange
+        when(occupantService.createOccupant(any(RoomJoinEvent.class))).thenReturn(new OccupantRoomJoinResponse(false, 404));
+
+        //Act && Assert
+        assertThrows(NoSuchRoomException.class, () -> roomService.joinRoom(roomJoinRequestDto));
+        verify(eventPublisher, never()).publishEvent(any(RoomEvent.class));
+    }
+
     @Test
     public void handleRoomJoinResponse_shouldThrowRoomJoinException_givenNullJoinResponse(){
         //Arrange
@@ -204,7 +220,7 @@ class RoomServiceImplTest {
 
         //Act
         RoomJoinException ex = assertThrows(RoomJoinException.class, () -> {
-            roomService.handleRoomJoinResponse(occupantRoomJoinResponse);
+            roomService.handleRoomJoinResponse(occupantRoomJoinResponse, "1234ABCD");
         });
         assertEquals("Failed to join room because occupant room join response is null", ex.getMessage());
     }
@@ -215,11 +231,11 @@ class RoomServiceImplTest {
         OccupantRoomJoinResponse occupantRoomJoinResponse = new OccupantRoomJoinResponse(true, 200);
 
         //Act
-        doNothing().when(roomService).handleRoomJoinResponse(occupantRoomJoinResponse);
+        doNothing().when(roomService).handleRoomJoinResponse(occupantRoomJoinResponse, "1234ABCD");
 
         //Assert
         assertDoesNotThrow(() -> {
-            roomService.handleRoomJoinResponse(occupantRoomJoinResponse);
+            roomService.handleRoomJoinResponse(occupantRoomJoinResponse, "1234ABCD");
         });
 
     }
@@ -231,7 +247,7 @@ class RoomServiceImplTest {
 
         //Act && Assert
         RoomFullException ex = assertThrows(RoomFullException.class, () -> {
-            roomService.handleRoomJoinResponse(occupantRoomJoinResponse);
+            roomService.handleRoomJoinResponse(occupantRoomJoinResponse, "1234ABCD");
         });
         assertEquals("Cannot join room because room is full", ex.getMessage());
 
@@ -244,7 +260,7 @@ class RoomServiceImplTest {
 
         //Act && Assert
         RoomJoinException ex = assertThrows(RoomJoinException.class, () -> {
-            roomService.handleRoomJoinResponse(occupantRoomJoinResponse);
+            roomService.handleRoomJoinResponse(occupantRoomJoinResponse, "1234ABCD");
         });
         assertEquals("An unexpected error occurred while trying to join this room", ex.getMessage());
 
@@ -259,8 +275,6 @@ class RoomServiceImplTest {
         when(roomRepository.findByRoomCode("room-code")).thenReturn(Optional.of(room));
         when(occupant.getOccupantName()).thenReturn("occupant-name");
         when(occupant.getSessionId()).thenReturn(UUID.randomUUID());
-        when(roomLeaveConfigProperties.getRoutingKey()).thenReturn("room-leave-routing-key-");
-        when(roomLeaveConfigProperties.getExchangeName()).thenReturn("room-leave-exchange");
 
 
         //Act
@@ -269,7 +283,8 @@ class RoomServiceImplTest {
         //Assert
         verify(occupant, times(1)).getRoomCode();
         verify(occupant, times(1)).getOccupantName();
-        verify(rabbitTemplate, times(1)).convertAndSend(anyString(), anyString(), any(RoomLeaveEvent.class));
+        verify(eventTransport, times(1)).publish(eq(EventTopic.ROOM_SHARD), eq("room-code"), any(RoomLeaveEvent.class));
+        verify(sessionRevocationList, times(1)).revokeSession(anyString());
         verify(eventPublisher, times(1)).publishEvent(any(RoomEvent.class));
     }
 
@@ -282,9 +297,8 @@ class RoomServiceImplTest {
         when(roomRepository.findByRoomCode("room-code")).thenReturn(Optional.of(room));
         when(occupant.getOccupantName()).thenReturn("occupant-name");
         when(occupant.getSessionId()).thenReturn(UUID.randomUUID());
-        when(roomLeaveConfigProperties.getRoutingKey()).thenReturn("room-leave-routing-key-");
-        when(roomLeaveConfigProperties.getExchangeName()).thenReturn("room-leave-exchange");
         when(occupant.getRoomCode()).thenReturn("room-code");
+        when(redisEntityWriter.keyOf("room", "room-code", "room-code")).thenReturn("room:room-code");
 
 
         //Act
@@ -293,8 +307,10 @@ class RoomServiceImplTest {
         //Assert
         verify(occupant, times(2)).getRoomCode();
         verify(occupant, times(1)).getOccupantName();
-        verify(rabbitTemplate, times(1)).convertAndSend(anyString(), anyString(), any(RoomLeaveEvent.class));
+        verify(eventTransport, times(1)).publish(eq(EventTopic.ROOM_SHARD), anyString(), any(RoomLeaveEvent.class));
+        verify(sessionRevocationList, times(1)).revokeRoom("room-code");
         verify(eventPublisher, times(1)).publishEvent(any(RoomEvent.class));
+        verify(expiryDeadlines, times(1)).reschedule(eq("room:room-code"), anyLong());
     }
 
     @Test
@@ -348,15 +364,6 @@ class RoomServiceImplTest {
 
     }
 
-    @Test
-    public void generateRoomCode_shouldGenerate8DigitRoomCode(){
-        String str = roomService.generateRoomCode();
-
-        //Assert
-        assertNotNull(str);
-        assertEquals(8, str.length());
-    }
-
 
 
 
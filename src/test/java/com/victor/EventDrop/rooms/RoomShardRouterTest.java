@@ -0,0 +1,85 @@
+package com.victor.EventDrop.rooms;
+
+import com.victor.EventDrop.rabbitmq.RabbitRetryConfigProperties;
+import com.victor.EventDrop.rabbitmq.RetryTiers;
+import com.victor.EventDrop.rooms.configproperties.RoomShardConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Queue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomShardRouterTest {
+
+    private final RoomShardConfigProperties roomShardConfigProperties = new RoomShardConfigProperties();
+    private RoomShardRouter roomShardRouter;
+
+    @BeforeEach
+    void setUp(){
+        roomShardConfigProperties.setExchangeName("room-shard-exchange");
+        roomShardConfigProperties.setQueuePrefix("room-shard-queue");
+        roomShardConfigProperties.setCount(8);
+        roomShardRouter = new RoomShardRouter(roomShardConfigProperties, new RetryTiers(new RabbitRetryConfigProperties()));
+    }
+
+    @Test
+    void shardOf_shouldKeepARoomOnOneShard_andSpreadRoomsOverAllShards(){
+        //Arrange
+        Set<Integer> shards = new HashSet<>();
+
+        //Act
+        for (int i = 0; i < 1000; i++){
+            String roomCode = String.format("%08d", i);
+            int shard = roomShardRouter.shardOf(roomCode);
+            assertEquals(shard, roomShardRouter.shardOf(roomCode));
+            assertTrue(shard >= 0 && shard < 8);
+            shards.add(shard);
+        }
+
+        //Assert
+        assertEquals(8, shards.size());
+    }
+
+    @Test
+    void shardOf_shouldOnlyMoveRoomsToTheNewShard_whenAShardIsAdded(){
+        //Arrange
+        int[] before = new int[1000];
+        for (int i = 0; i < before.length; i++){
+            before[i] = roomShardRouter.shardOf(String.format("%08d", i));
+        }
+
+        //Act
+        roomShardConfigProperties.setCount(9);
+
+        //Assert
+        for (int i = 0; i < before.length; i++){
+            int after = roomShardRouter.shardOf(String.format("%08d", i));
+            assertTrue(after == before[i] || after == 8);
+        }
+    }
+
+    @Test
+    void declarables_shouldBindEachShardsQueue_withItsRoutingKey(){
+        //Act
+        Set<String> queues = new HashSet<>();
+        Set<String> routingKeys = new HashSet<>();
+        roomShardRouter.declarables().getDeclarables().forEach(declarable -> {
+            if(declarable instanceof Queue queue){
+                queues.add(queue.getName());
+            }else if(declarable instanceof Binding binding){
+                routingKeys.add(binding.getDestination() + "=" + binding.getRoutingKey());
+            }
+        });
+
+        //Assert
+        assertTrue(queues.contains("room-shard-queue.0"));
+        assertTrue(queues.contains("room-shard-queue.7.parking-lot"));
+        assertEquals(16, queues.size());
+        assertTrue(routingKeys.contains("room-shard-queue.3=shard.3"));
+        assertEquals(8, routingKeys.size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.victor.EventDrop.rooms.config;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.victor.EventDrop.rabbitmq.RabbitPublisherConfigProperties;
+import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.transport.AmqpEventTransport;
+import com.victor.EventDrop.transport.EventTopic;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LegacyRoomQueueRemoverTest {
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+    @Mock
+    private AmqpEventTransport amqpEventTransport;
+    @Mock
+    private MessageConverter messageConverter;
+    @Mock
+    private Channel channel;
+
+    private LegacyRoomQueueRemover legacyRoomQueueRemover;
+    private final RoomExpiryEvent roomExpiryEvent = new RoomExpiryEvent("1234ABCD", 1L);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        RoomExpiryConfigProperties roomExpiryConfigProperties = new RoomExpiryConfigProperties();
+        roomExpiryConfigProperties.setExchangeName("room-expiry-exchange");
+        roomExpiryConfigProperties.setRoutingKey("room-expiry-routing-key");
+        roomExpiryConfigProperties.getOccupants().setQueueName("room-expiry-occupants-queue");
+        RabbitPublisherConfigProperties rabbitPublisherConfigProperties = new RabbitPublisherConfigProperties();
+        rabbitPublisherConfigProperties.setMaxAttempts(1);
+        rabbitPublisherConfigProperties.setConfirmTimeoutInMillis(50);
+        rabbitPublisherConfigProperties.setRedeliveryIntervalInMillis(50);
+        legacyRoomQueueRemover = new LegacyRoomQueueRemover(amqpAdmin, rabbitTemplate, amqpEventTransport,
+                roomExpiryConfigProperties, rabbitPublisherConfigProperties);
+
+        when(amqpAdmin.getQueueInfo("room-expiry-occupants-queue")).thenReturn(new QueueInformation("room-expiry-occupants-queue", 1, 0));
+        when(rabbitTemplate.getMessageConverter()).thenReturn(messageConverter);
+        when(messageConverter.fromMessage(any(Message.class))).thenReturn(roomExpiryEvent);
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                ((ChannelCallback<Object>) invocation.getArgument(0)).doInRabbit(channel));
+    }
+
+    private static GetResponse response(long deliveryTag){
+        return new GetResponse(new Envelope(deliveryTag, false, "", "room-expiry-occupants-queue"), new AMQP.BasicProperties(), new byte[0], 0);
+    }
+
+    @Test
+    void run_shouldAckEachExpiry_onlyOnceItsMoveIsConfirmed_beforeDeletingTheQueue() throws Exception {
+        //Arrange
+        when(channel.basicGet("room-expiry-occupants-queue", false)).thenReturn(response(1), response(2), null);
+        when(amqpEventTransport.publishConfirmed(EventTopic.ROOM_SHARD, "1234ABCD", roomExpiryEvent))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        //Act
+        legacyRoomQueueRemover.run();
+
+        //Assert
+        InOrder inOrder = inOrder(amqpAdmin, amqpEventTransport, channel);
+        inOrder.verify(amqpAdmin).removeBinding(any(Binding.class));
+        inOrder.verify(amqpEventTransport).publishConfirmed(EventTopic.ROOM_SHARD, "1234ABCD", roomExpiryEvent);
+        inOrder.verify(channel).basicAck(1, false);
+        inOrder.verify(amqpEventTransport).publishConfirmed(EventTopic.ROOM_SHARD, "1234ABCD", roomExpiryEvent);
+        inOrder.verify(channel).basicAck(2, false);
+        inOrder.verify(amqpAdmin).deleteQueue("room-expiry-occupants-queue", true, true);
+    }
+
+    @Test
+    void run_shouldRequeueTheExpiry_andKeepTheQueue_whenItsMoveIsDropped() throws Exception {
+        //Arrange
+        when(channel.basicGet("room-expiry-occupants-queue", false)).thenReturn(response(1));
+        when(amqpEventTransport.publishConfirmed(EventTopic.ROOM_SHARD, "1234ABCD", roomExpiryEvent))
+                .thenReturn(CompletableFuture.completedFuture(false));
+
+        //Act
+        legacyRoomQueueRemover.run();
+
+        //Assert
+        verify(channel, times(1)).basicNack(1, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(amqpAdmin, never()).deleteQueue(anyString(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void run_shouldNotAck_orDeleteTheQueue_whileTheMoveIsUnconfirmed() throws Exception {
+        //Arrange
+        when(channel.basicGet("room-expiry-occupants-queue", false)).thenReturn(response(1));
+        when(amqpEventTransport.publishConfirmed(EventTopic.ROOM_SHARD, "1234ABCD", roomExpiryEvent))
+                .thenReturn(new CompletableFuture<>());
+
+        //Act
+        legacyRoomQueueRemover.run();
+
+        //Assert
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, times(1)).basicNack(1, false, true);
+        verify(amqpAdmin, never()).deleteQueue(anyString(), anyBoolean(), anyBoolean());
+    }
+}
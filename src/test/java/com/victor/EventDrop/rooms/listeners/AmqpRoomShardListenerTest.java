@@ -0,0 +1,109 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rabbitmq.CompactMessageConverter;
+import com.victor.EventDrop.rabbitmq.TieredRetryRecoverer;
+import com.victor.EventDrop.rooms.RoomShardRouter;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomExpiryEventSchema;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEventSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AmqpRoomShardListenerTest {
+
+    @Mock
+    private RoomShardRouter roomShardRouter;
+    @Mock
+    private OccupantService occupantService;
+    @Mock
+    private TieredRetryRecoverer tieredRetryRecoverer;
+    @Mock
+    private SimpleRabbitListenerContainerFactory roomShardContainerFactory;
+
+    private final Jackson2JsonMessageConverter messageConverter = new Jackson2JsonMessageConverter();
+    private AmqpRoomShardListener amqpRoomShardListener;
+
+    @BeforeEach
+    void setUp(){
+        amqpRoomShardListener = new AmqpRoomShardListener(roomShardRouter, new RoomShardListener(occupantService), messageConverter,
+                tieredRetryRecoverer, roomShardContainerFactory);
+    }
+
+    @Test
+    void onShardBatch_shouldDeleteARoomsLeaves_beforeExpiringItsOccupants(){
+        //Arrange
+        RoomLeaveEvent first = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+        RoomLeaveEvent second = new RoomLeaveEvent("12345678", "ada", UUID.randomUUID());
+        RoomExpiryEvent expiry = new RoomExpiryEvent("12345678", System.currentTimeMillis());
+        RoomLeaveEvent later = new RoomLeaveEvent("87654321", "alan", UUID.randomUUID());
+
+        //Act
+        amqpRoomShardListener.onShardBatch(List.of(message(first), message(second), message(expiry), message(later)));
+
+        //Assert
+        InOrder inOrder = inOrder(occupantService);
+        inOrder.verify(occupantService).deleteOccupants(List.of(first, second));
+        inOrder.verify(occupantService).handleRoomExpiry(expiry);
+        inOrder.verify(occupantService).deleteOccupants(List.of(later));
+        verifyNoInteractions(tieredRetryRecoverer);
+    }
+
+    @Test
+    void onShardBatch_shouldPark_messagesThatArentRoomEvents(){
+        //Arrange
+        Message unknown = messageConverter.toMessage("not a room event", new MessageProperties());
+        RoomLeaveEvent leave = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+
+        //Act
+        amqpRoomShardListener.onShardBatch(List.of(unknown, message(leave)));
+
+        //Assert
+        verify(tieredRetryRecoverer, times(1)).park(eq(unknown), any(MessageConversionException.class));
+        verify(occupantService, times(1)).deleteOccupants(List.of(leave));
+    }
+
+    @Test
+    void onShardBatch_shouldReadCompactEvents_withoutTypeHeaders(){
+        //Arrange
+        CompactMessageConverter compactMessageConverter = new CompactMessageConverter(messageConverter,
+                List.of(new RoomLeaveEventSchema(), new RoomExpiryEventSchema()), true);
+        amqpRoomShardListener = new AmqpRoomShardListener(roomShardRouter, new RoomShardListener(occupantService), compactMessageConverter,
+                tieredRetryRecoverer, roomShardContainerFactory);
+        RoomLeaveEvent leave = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+        RoomExpiryEvent expiry = new RoomExpiryEvent("12345678", System.currentTimeMillis());
+
+        //Act
+        amqpRoomShardListener.onShardBatch(List.of(
+                compactMessageConverter.toMessage(leave, new MessageProperties()),
+                compactMessageConverter.toMessage(expiry, new MessageProperties())
+        ));
+
+        //Assert
+        InOrder inOrder = inOrder(occupantService);
+        inOrder.verify(occupantService).deleteOccupants(List.of(leave));
+        inOrder.verify(occupantService).handleRoomExpiry(expiry);
+        verifyNoInteractions(tieredRetryRecoverer);
+    }
+
+    private Message message(Object event){
+        return messageConverter.toMessage(event, new MessageProperties());
+    }
+}
@@ -3,19 +3,25 @@ package com.victor.EventDrop.rooms.listeners;
 import com.victor.EventDrop.rooms.Room;
 import com.victor.EventDrop.rooms.RoomEmitterHandler;
 import com.victor.EventDrop.rooms.RoomService;
-import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
 import com.victor.EventDrop.rooms.events.RoomEvent;
 import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.orchestrators.RoomStateDto;
+import com.victor.EventDrop.transport.EventTopic;
+import com.victor.EventDrop.transport.EventTransport;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.redis.core.RedisKeyExpiredEvent;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,56 +29,56 @@ class RoomExpiryListenerTest {
     @Mock
     private RoomService roomService;
     @Mock
-    private RabbitTemplate rabbitTemplate;
-    @Mock
-    private RoomExpiryConfigProperties roomExpiryConfigProperties;
+    private EventTransport eventTransport;
     @Mock
     private RoomEmitterHandler roomEmitterHandler;
     @Mock
     private  ApplicationEventPublisher applicationEventPublisher;
+    @Spy
+    private ConcurrentHashMap<String, ConcurrentLinkedDeque<RoomStateDto>> roomEventHashMap = new ConcurrentHashMap<>();
+    @Mock
+    private RoomExpiryStageMetrics roomExpiryStageMetrics;
 
     @InjectMocks
     private RoomExpiryListener roomExpiryListener;
 
     @Test
-    public void handleRoomExpiry_shouldCompleteExpiryChain(){
+    public void handleRoomExpiry_shouldDeleteRoom_andFanOutItsExpiry(){
         //Arrange
         @SuppressWarnings("unchecked")
         RedisKeyExpiredEvent<Room> expiredEvent = Mockito.mock(RedisKeyExpiredEvent.class);
         when(expiredEvent.getId()).thenReturn(new byte[]{ '1', '2', '3', '4', '5', '6', '7', '8'});
-        when(roomExpiryConfigProperties.getExchangeName()).thenReturn("rm.ex");
-        when(roomExpiryConfigProperties.getRoutingKey()).thenReturn("rm.rk");
 
         //Act
         roomExpiryListener.handleRoomExpiry(expiredEvent);
 
         //Assert
         verify(roomService, times(1)).deleteByRoomCode(anyString());
-        verify(applicationEventPublisher, times(1)).publishEvent(any(RoomEvent.class));
-        verify(roomEmitterHandler, times(1)).removeRoomEmitters(anyString());
-        verify(rabbitTemplate, times(1)).convertAndSend(
-                anyString(), anyString(), any(RoomExpiryEvent.class)
+        verify(eventTransport, times(1)).publish(
+                eq(EventTopic.ROOM_EXPIRY), eq("12345678"), any(RoomExpiryEvent.class)
         );
+        //Occupants are cleaned up on the room's shard, after its leaves
+        verify(eventTransport, times(1)).publish(
+                eq(EventTopic.ROOM_SHARD), eq("12345678"), any(RoomExpiryEvent.class)
+        );
+        //Emitters are cleaned up by the emitters stage, on every node
+        verifyNoInteractions(applicationEventPublisher, roomEmitterHandler);
 
     }
 
     @Test
-    public void handleRoomExpiry_shouldDoNothingGivenInvalidRoomCode(){
+    public void handleEmitterExpiry_shouldDisconnectThisNodesClients(){
         //Arrange
-        @SuppressWarnings("unchecked")
-        RedisKeyExpiredEvent<Room> expiredEvent = Mockito.mock(RedisKeyExpiredEvent.class);
-        when(expiredEvent.getId()).thenReturn(new byte[]{ '1', '2', '3', '4', '5', '6', '7', '8', '9', '0' });
+        RoomExpiryEvent roomExpiryEvent = new RoomExpiryEvent("12345678", System.currentTimeMillis());
+        roomEventHashMap.put("12345678", new ConcurrentLinkedDeque<>());
 
         //Act
-        roomExpiryListener.handleRoomExpiry(expiredEvent);
+        roomExpiryListener.handleEmitterExpiry(roomExpiryEvent);
 
         //Assert
-        verify(applicationEventPublisher, times(0)).publishEvent(any(RoomEvent.class));
-        verify(roomService, times(0)).deleteByRoomCode(anyString());
-
+        verify(applicationEventPublisher, times(1)).publishEvent(any(RoomEvent.class));
+        verify(roomEmitterHandler, times(1)).removeRoomEmitters("12345678");
+        verify(roomExpiryStageMetrics, times(1)).record(RoomExpiryStage.EMITTERS, roomExpiryEvent);
+        assertFalse(roomEventHashMap.containsKey("12345678"));
     }
-
-
-
-
-}
\ No newline at end of file
+}
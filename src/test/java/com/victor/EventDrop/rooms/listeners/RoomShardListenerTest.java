@@ -0,0 +1,41 @@
+package com.victor.EventDrop.rooms.listeners;
+
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.events.RoomExpiryEvent;
+import com.victor.EventDrop.rooms.events.RoomLeaveEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoomShardListenerTest {
+
+    @Mock
+    private OccupantService occupantService;
+
+    @InjectMocks
+    private RoomShardListener roomShardListener;
+
+    @Test
+    void onEvents_shouldSkip_eventsThatArentRoomEvents(){
+        //Arrange
+        RoomLeaveEvent leave = new RoomLeaveEvent("12345678", "victor", UUID.randomUUID());
+        RoomExpiryEvent expiry = new RoomExpiryEvent("12345678", System.currentTimeMillis());
+
+        //Act
+        roomShardListener.onEvents(List.of(leave, "not a room event", expiry));
+
+        //Assert
+        InOrder inOrder = inOrder(occupantService);
+        inOrder.verify(occupantService).deleteOccupants(List.of(leave));
+        inOrder.verify(occupantService).handleRoomExpiry(expiry);
+    }
+}
@@ -0,0 +1,312 @@
+package com.victor.EventDrop.rooms.orchestrators;
+
+import com.victor.EventDrop.filedrops.FileDrop;
+import com.victor.EventDrop.filedrops.FileDropRepository;
+import com.victor.EventDrop.occupants.OccupantService;
+import com.victor.EventDrop.rooms.Room;
+import com.victor.EventDrop.rooms.RoomService;
+import com.victor.EventDrop.rooms.configproperties.RoomStateConfigProperties;
+import com.victor.EventDrop.rooms.events.FileDropsChangedEvent;
+import com.victor.EventDrop.rooms.events.OccupancyChangedEvent;
+import com.victor.EventDrop.rooms.events.RoomEvent;
+import com.victor.EventDrop.rooms.events.RoomEventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoomStateCacheTest {
+
+    @Mock
+    private RoomService roomService;
+    @Mock
+    private FileDropRepository fileDropRepository;
+    @Mock
+    private OccupantService occupantService;
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    @Mock
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Spy
+    private RoomStateConfigProperties roomStateConfigProperties = new RoomStateConfigProperties();
+
+    @InjectMocks
+    private RoomStateCache roomStateCache;
+
+    private Room room;
+    private FileDrop fileDrop;
+
+    @BeforeEach
+    void setUp(){
+        room = Room.builder()
+                .roomCode("1234ABCD")
+                .roomName("room_name")
+                .ttl(60)
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusMinutes(1))
+                .build();
+
+        fileDrop = FileDrop.builder()
+                .fileId(UUID.randomUUID())
+                .roomCode("1234ABCD")
+                .fileName("1234ABCD/test.txt")
+                .originalFileName("test.txt")
+                .build();
+    }
+
+    @Test
+    void get_shouldBuildViewOnce_andServeLaterReadsFromMemory(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of(fileDrop));
+        when(occupantService.getOccupantCount("1234ABCD")).thenReturn(2);
+
+        //Act
+        RoomView first = roomStateCache.get("1234ABCD").orElseThrow();
+        RoomView second = roomStateCache.get("1234ABCD").orElseThrow();
+
+        //Assert
+        assertSame(first, second);
+        assertEquals(2, first.occupantCount());
+        assertEquals(fileDrop, first.fileDrops().get(fileDrop.getFileId()));
+        verify(roomService, times(1)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    void get_shouldReturnEmpty_whenRoomDoesNotExist(){
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.empty());
+
+        assertTrue(roomStateCache.get("1234ABCD").isEmpty());
+        verifyNoInteractions(fileDropRepository, occupantService);
+    }
+
+    @Test
+    void events_shouldUpdateViewWithoutRebuilding(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        when(occupantService.getOccupantCount("1234ABCD")).thenReturn(1);
+        roomStateCache.get("1234ABCD");
+
+        //Act
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", 2));
+        roomStateCache.onFileDropsChanged(new FileDropsChangedEvent("1234ABCD", List.of(fileDrop), List.of()));
+        RoomView view = roomStateCache.get("1234ABCD").orElseThrow();
+
+        //Assert
+        assertEquals(2, view.occupantCount());
+        assertEquals(2, view.version());
+        assertTrue(view.fileDrops().containsKey(fileDrop.getFileId()));
+        verify(roomService, times(1)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    void unknownOccupancy_shouldInvalidateView(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        when(occupantService.getOccupantCount("1234ABCD")).thenReturn(3, 2);
+        roomStateCache.get("1234ABCD");
+
+        //Act
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", -1));
+        RoomView view = roomStateCache.get("1234ABCD").orElseThrow();
+
+        //Assert
+        assertEquals(2, view.occupantCount());
+        verify(roomService, times(2)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void events_shouldPublishInvalidation_forOtherNodes(){
+        //Act
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", 2));
+
+        //Assert
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    void invalidationFromAnotherNode_shouldRebuildView(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of(), List.of(fileDrop));
+        when(occupantService.getOccupantCount("1234ABCD")).thenReturn(1);
+        roomStateCache.get("1234ABCD");
+
+        //Act
+        roomStateCache.onMessage(new DefaultMessage("room-state-invalidations".getBytes(StandardCharsets.UTF_8),
+                "other-node:1234ABCD".getBytes(StandardCharsets.UTF_8)), null);
+        RoomView view = roomStateCache.get("1234ABCD").orElseThrow();
+
+        //Assert
+        assertTrue(view.fileDrops().containsKey(fileDrop.getFileId()));
+        verify(roomService, times(2)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    void get_shouldRebuildView_onceItsTtlRunsOut(){
+        //Arrange
+        roomStateConfigProperties.setViewTtlInSeconds(0);
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        when(occupantService.getOccupantCount("1234ABCD")).thenReturn(1, 2);
+
+        //Act
+        roomStateCache.get("1234ABCD");
+        RoomView view = roomStateCache.get("1234ABCD").orElseThrow();
+
+        //Assert
+        assertEquals(2, view.occupantCount());
+        verify(roomService, times(2)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    void roomExpiry_shouldEvictView_andSkipRedisOnLaterReads(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        roomStateCache.get("1234ABCD");
+
+        //Act
+        roomStateCache.onRoomEvent(new RoomEvent("expired", LocalDateTime.now(), RoomEventType.ROOM_EXPIRY, "1234ABCD", null));
+
+        //Assert
+        assertTrue(roomStateCache.get("1234ABCD").isEmpty());
+        verify(roomService, times(1)).findOptionalRoomByRoomCode("1234ABCD");
+    }
+
+    @Test
+    void get_shouldCollapseConcurrentColdBuilds() throws Exception {
+        //Arrange
+        CountDownLatch buildStarted = new CountDownLatch(1);
+        CountDownLatch releaseBuild = new CountDownLatch(1);
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenAnswer(invocation -> {
+            buildStarted.countDown();
+            releaseBuild.await();
+            return Optional.of(room);
+        });
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try{
+            //Act
+            Future<Optional<RoomView>> first = executor.submit(() -> roomStateCache.get("1234ABCD"));
+            buildStarted.await();
+            List<Future<Optional<RoomView>>> waiters = List.of(
+                    executor.submit(() -> roomStateCache.get("1234ABCD")),
+                    executor.submit(() -> roomStateCache.get("1234ABCD"))
+            );
+            Thread.sleep(50);
+            releaseBuild.countDown();
+
+            //Assert
+            RoomView view = first.get().orElseThrow();
+            for (Future<Optional<RoomView>> waiter : waiters){
+                assertSame(view, waiter.get().orElseThrow());
+            }
+            verify(roomService, times(1)).findOptionalRoomByRoomCode("1234ABCD");
+        }finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void roomExpiry_shouldDropTheRoomsViewAndVersion(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        roomStateCache.get("1234ABCD");
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", 2));
+
+        //Act
+        roomStateCache.onRoomEvent(new RoomEvent("expired", LocalDateTime.now(), RoomEventType.ROOM_EXPIRY, "1234ABCD", null));
+
+        //Assert
+        assertTrue(mapOf("views").isEmpty());
+        assertTrue(mapOf("versions").isEmpty());
+    }
+
+    @Test
+    void purgeStaleViews_shouldDropViewsAndVersions_onceTheirTtlRunsOut(){
+        //Arrange
+        roomStateConfigProperties.setViewTtlInSeconds(0);
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        roomStateCache.get("1234ABCD");
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", 2));
+
+        //Act
+        roomStateCache.purgeStaleViews();
+
+        //Assert
+        assertTrue(mapOf("views").isEmpty());
+        assertTrue(mapOf("versions").isEmpty());
+    }
+
+    @Test
+    void invalidate_shouldNotKeepAVersion_whenNoBuildIsInFlight(){
+        //Arrange
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(fileDropRepository.findByRoomCode("1234ABCD")).thenReturn(List.of());
+        roomStateCache.get("1234ABCD");
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("1234ABCD", 2));
+
+        //Act
+        roomStateCache.invalidate("1234ABCD");
+        roomStateCache.onOccupancyChanged(new OccupancyChangedEvent("5678EFGH", 2));
+
+        //Assert
+        assertTrue(mapOf("views").isEmpty());
+        assertTrue(mapOf("versions").isEmpty());
+    }
+
+    @Test
+    void get_shouldNotCacheMoreViewsThanConfigured(){
+        //Arrange
+        roomStateConfigProperties.setMaxViews(1);
+        Room other = Room.builder().roomCode("5678EFGH").roomName("other_room").build();
+        when(roomService.findOptionalRoomByRoomCode("1234ABCD")).thenReturn(Optional.of(room));
+        when(roomService.findOptionalRoomByRoomCode("5678EFGH")).thenReturn(Optional.of(other));
+        when(fileDropRepository.findByRoomCode(anyString())).thenReturn(List.of());
+
+        //Act
+        roomStateCache.get("1234ABCD");
+        RoomView first = roomStateCache.get("5678EFGH").orElseThrow();
+        RoomView second = roomStateCache.get("5678EFGH").orElseThrow();
+
+        //Assert
+        assertEquals("5678EFGH", first.room().getRoomCode());
+        assertNotSame(first, second);
+        assertEquals(1, mapOf("views").size());
+        verify(roomService, times(2)).findOptionalRoomByRoomCode("5678EFGH");
+    }
+
+    private Map<?, ?> mapOf(String field){
+        return (Map<?, ?>) ReflectionTestUtils.getField(roomStateCache, field);
+    }
+}
@@ -0,0 +1,93 @@
+package com.victor.EventDrop.transport;
+
+import com.victor.EventDrop.rabbitmq.ConfirmedEventPublisher;
+import com.victor.EventDrop.rabbitmq.RabbitPublisherConfigProperties;
+import com.victor.EventDrop.rabbitmq.RabbitRetryConfigProperties;
+import com.victor.EventDrop.rabbitmq.RetryTiers;
+import com.victor.EventDrop.rooms.RoomShardRouter;
+import com.victor.EventDrop.rooms.configproperties.RoomExpiryConfigProperties;
+import com.victor.EventDrop.rooms.configproperties.RoomShardConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AmqpEventTransportTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    private final RoomShardConfigProperties roomShardConfigProperties = new RoomShardConfigProperties();
+    private RoomShardRouter roomShardRouter;
+    private ConfirmedEventPublisher confirmedEventPublisher;
+    private AmqpEventTransport amqpEventTransport;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp(){
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new SimpleMessageConverter());
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation ->
+                ((RabbitOperations.OperationsCallback<Object>) invocation.getArgument(0)).doInRabbit(rabbitTemplate));
+
+        roomShardConfigProperties.setExchangeName("room-shard-exchange");
+        roomShardConfigProperties.setCount(8);
+        roomShardRouter = new RoomShardRouter(roomShardConfigProperties, new RetryTiers(new RabbitRetryConfigProperties()));
+        confirmedEventPublisher = new ConfirmedEventPublisher(rabbitTemplate, new RabbitPublisherConfigProperties());
+        amqpEventTransport = new AmqpEventTransport(confirmedEventPublisher, roomShardRouter, new RoomExpiryConfigProperties());
+    }
+
+    @Test
+    void publish_shouldNotLetARoomsNextEventReachItsShardFirst_whenAnEventIsNacked(){
+        //Arrange
+        amqpEventTransport.publish(EventTopic.ROOM_SHARD, "1234ABCD", "leave-1");
+        amqpEventTransport.publish(EventTopic.ROOM_SHARD, "1234ABCD", "leave-2");
+        confirmedEventPublisher.flush();
+        sent(1).getFirst().correlationData().getFuture().complete(new CorrelationData.Confirm(false, "broker busy"));
+
+        //Act
+        confirmedEventPublisher.flush();
+        confirmedEventPublisher.redeliver();
+        confirmedEventPublisher.flush();
+        sent(2).getLast().correlationData().getFuture().complete(new CorrelationData.Confirm(true, null));
+        confirmedEventPublisher.flush();
+
+        //Assert
+        assertEquals(List.of("leave-1", "leave-1", "leave-2"), sent(3).stream().map(Sent::body).toList());
+    }
+
+    private List<Sent> sent(int sends){
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<CorrelationData> correlationData = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(sends)).send(eq("room-shard-exchange"), eq(roomShardRouter.routingKeyOf("1234ABCD")),
+                messages.capture(), correlationData.capture());
+
+        List<Sent> sent = new ArrayList<>();
+        for (int i = 0; i < sends; i++){
+            sent.add(new Sent(new String(messages.getAllValues().get(i).getBody(), StandardCharsets.UTF_8), correlationData.getAllValues().get(i)));
+        }
+        return sent;
+    }
+
+    private record Sent(String body, CorrelationData correlationData) {}
+}
@@ -0,0 +1,78 @@
+package com.victor.EventDrop.transport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryEventTransportTest {
+
+    private InMemoryEventTransport inMemoryEventTransport;
+
+    @AfterEach
+    void tearDown(){
+        if(inMemoryEventTransport != null){
+            inMemoryEventTransport.stop();
+        }
+    }
+
+    @Test
+    void publish_shouldDeliverAKeysEvents_inOrder() throws InterruptedException {
+        //Arrange
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(300);
+        EventSubscription subscription = new EventSubscription(EventTopic.ROOM_SHARD, "room-shard", false, events -> events.forEach(event -> {
+            String[] parts = event.toString().split(":");
+            received.computeIfAbsent(parts[0], k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(parts[1]));
+            latch.countDown();
+        }));
+        inMemoryEventTransport = new InMemoryEventTransport(properties(1024), List.of(subscription));
+        inMemoryEventTransport.start();
+
+        //Act
+        for (int i = 0; i < 100; i++){
+            for (String key : List.of("room-a", "room-b", "room-c")){
+                inMemoryEventTransport.publish(EventTopic.ROOM_SHARD, key, key + ":" + i);
+            }
+        }
+
+        //Assert
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) expected.add(i);
+        received.values().forEach(events -> assertEquals(expected, events));
+    }
+
+    @Test
+    void publish_shouldOnlyDeliverToTheTopicsSubscribers(){
+        //Arrange
+        EventSubscription subscription = new EventSubscription(EventTopic.ROOM_EXPIRY, "room-expiry-files", false, events -> {});
+        inMemoryEventTransport = new InMemoryEventTransport(properties(1), List.of(subscription));
+
+        //Act
+        boolean first = inMemoryEventTransport.publish(EventTopic.ROOM_EXPIRY, "room-a", "expiry");
+        boolean full = inMemoryEventTransport.publish(EventTopic.ROOM_EXPIRY, "room-a", "expiry");
+        boolean unsubscribed = inMemoryEventTransport.publish(EventTopic.ROOM_SHARD, "room-a", "leave");
+
+        //Assert
+        assertTrue(first);
+        assertFalse(full);
+        assertTrue(unsubscribed);
+        assertEquals(1, inMemoryEventTransport.getDropped().get());
+    }
+
+    private EventTransportConfigProperties properties(int ringBufferSize){
+        EventTransportConfigProperties properties = new EventTransportConfigProperties();
+        properties.setPartitions(2);
+        properties.getMemory().setRingBufferSize(ringBufferSize);
+        return properties;
+    }
+}